@@ -16,6 +16,8 @@ limitations under the License.
 
 package com.jhlabs.composite;
 
+import pixelitor.utils.PixelKernels;
+
 import java.awt.*;
 import java.awt.image.ColorModel;
 
@@ -36,33 +38,7 @@ public final class MultiplyComposite extends RGBComposite {
 
         @Override
         public void composeRGB(int[] src, int[] dst, float alpha) {
-            int w = src.length;
-
-            for (int i = 0; i < w; i += 4) {
-                int sr = src[i];
-                int dir = dst[i];
-                int sg = src[i + 1];
-                int dig = dst[i + 1];
-                int sb = src[i + 2];
-                int dib = dst[i + 2];
-                int sa = src[i + 3];
-                int dia = dst[i + 3];
-
-                int t = dir * sr + 0x80;
-                int dor = ((t >> 8) + t) >> 8;
-                t = dig * sg + 0x80;
-                int dog = ((t >> 8) + t) >> 8;
-                t = dib * sb + 0x80;
-                int dob = ((t >> 8) + t) >> 8;
-
-                float a = alpha * sa / 255.0f;
-                float ac = 1 - a;
-
-                dst[i] = (int) (a * dor + ac * dir);
-                dst[i + 1] = (int) (a * dog + ac * dig);
-                dst[i + 2] = (int) (a * dob + ac * dib);
-                dst[i + 3] = (int) (sa * alpha + dia * ac);
-            }
+            PixelKernels.get().multiplyBlend(src, dst, alpha);
         }
     }
 }
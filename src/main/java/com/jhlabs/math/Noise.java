@@ -19,6 +19,7 @@ package com.jhlabs.math;
 import com.jhlabs.image.ImageMath;
 
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Perlin Noise functions
@@ -26,9 +27,18 @@ import java.util.Random;
 public class Noise implements Function1D, Function2D, Function3D {
     private static final Random randomGenerator = new Random();
 
+    // incremented at each reseed, so that the cached noise values can be invalidated.
+    // Atomic, because the filters read it on the worker threads.
+    private static final AtomicInteger seedVersion = new AtomicInteger();
+
     public static void reseed() {
         randomGenerator.setSeed(System.nanoTime());
         init();
+        seedVersion.incrementAndGet();
+    }
+
+    public static int getSeedVersion() {
+        return seedVersion.get();
     }
 
     private static final int B = 0x100;
@@ -25,14 +25,19 @@ package org.jdesktop.swingx.painter.effects;
 import com.jhlabs.image.ImageMath;
 import pixelitor.colors.Colors;
 import pixelitor.filters.gui.UserPreset;
+import pixelitor.utils.DistanceTransform;
 
 import java.awt.*;
 import java.awt.geom.Area;
+import java.awt.geom.PathIterator;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.util.Arrays;
 import java.util.Objects;
 
 /**
@@ -118,6 +123,7 @@ public class AbstractAreaEffect implements AreaEffect {
                     RenderingHints.VALUE_ANTIALIAS_ON);
                 g2.translate(getEffectWidth() - getOffset().getX(),
                     getEffectWidth() - getOffset().getY());
+                g2.setComposite(AlphaComposite.SrcOver);
                 paintBorderGlow(g2, clipShape, width, height);
 
                 // clip out the parts we don't want
@@ -198,7 +204,14 @@ public class AbstractAreaEffect implements AreaEffect {
      */
 
     /**
-     * Paints the border glow
+     * Paints the border glow.
+     *
+     * lbalazscs: the glow used to be painted by stroking the shape brushSteps
+     * times with increasing widths, which was slow for complex shapes such as
+     * text. Now the effect is calculated from the distances to the outline
+     * of the rasterized shape, and it is cached until the shape or the
+     * settings change. Subclasses can change the look of the effect
+     * by overriding {@link #getColorAtDistance(double)}.
      *
      * @param g2
      * @param clipShape
@@ -207,49 +220,304 @@ public class AbstractAreaEffect implements AreaEffect {
      */
     protected void paintBorderGlow(Graphics2D g2,
                                    Shape clipShape, int width, int height) {
+        g2.translate(offset.getX(), offset.getY());
 
-        int steps = getBrushSteps();
-        boolean inside = isRenderInsideShape();
+        ShapeGeometry geometry = new ShapeGeometry(clipShape);
+        DistanceFieldImage effectImage = getDistanceFieldImage(clipShape, geometry);
+        if (effectImage != null) {
+            g2.drawImage(effectImage.image,
+                geometry.originX + effectImage.x,
+                geometry.originY + effectImage.y, null);
+        }
 
-        g2.setPaint(getBrushColor());
-        g2.translate(offset.getX(), offset.getY());
+        g2.translate(-offset.getX(), -offset.getY());
+    }
 
-        if (isShouldFillShape()) {
-            // set the inside/outside mode
-            if (inside) {
-                g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_ATOP, 1f));
-                Area a1 = new Area(new Rectangle(
-                    (int) -offset.getX() - 20,
-                    (int) -offset.getY() - 20,
-                    width + 40, height + 40));
-                Area a2 = new Area(clipShape);
-                a1.subtract(a2);
-                g2.fill(a1);
-            } else {
-                g2.setComposite(AlphaComposite.getInstance(AlphaComposite.DST_OVER, 1f));
-                g2.fill(clipShape);
+    /**
+     * Returns the (not premultiplied) ARGB color of the effect at the given
+     * distance (in pixels) from the outline of the shape, or 0 if the
+     * effect doesn't reach that far. The same function is used inside
+     * and outside the shape, the unwanted side is clipped away later.
+     *
+     * The default implementation gives the same result as the
+     * earlier stroke-based implementation: a pixel was covered by
+     * all the strokes wider than twice its distance, and every
+     * stroke added 1/brushSteps opacity.
+     */
+    protected int getColorAtDistance(double distance) {
+        int steps = Math.max(1, getBrushSteps());
+        if (effectWidthDouble <= 0) {
+            return 0;
+        }
+
+        // the stroke i reached the distance i * effectWidth / (2 * steps),
+        // therefore the first stroke was only a hairline on the outline
+        double hairline = Math.max(0, 1 - 2 * distance);
+        double numStrokes = steps - 1 - 2 * distance * steps / effectWidthDouble + hairline;
+        if (numStrokes <= 0) {
+            return 0;
+        }
+        double alpha = 1.0 - Math.pow(1.0 - 1.0 / steps, numStrokes);
+        return withAlpha(brushColor, alpha);
+    }
+
+    /**
+     * Returns the maximal distance from the outline
+     * for which the effect can have a visible color.
+     */
+    private double getMaxEffectDistance() {
+        return effectWidthDouble / 2.0 + 2.0;
+    }
+
+    protected static int withAlpha(Color color, double alphaMultiplier) {
+        int alpha = (int) (color.getAlpha() * alphaMultiplier + 0.5);
+        return alpha << 24 | (color.getRGB() & 0x00_FF_FF_FF);
+    }
+
+    // the distance resolution of the color table is 1/8 pixel
+    private static final int TABLE_RESOLUTION = 8;
+
+    private transient volatile DistanceFieldImage cachedImage;
+
+    private DistanceFieldImage getDistanceFieldImage(Shape shape, ShapeGeometry geometry) {
+        int[] colorTable = createColorTable();
+
+        // when rendering inside the shape, the fill had no visible
+        // effect, because it was painted into an empty buffer with SRC_ATOP
+        boolean fill = isShouldFillShape() && !isRenderInsideShape();
+
+        // the side of the outline that will be clipped away
+        // doesn't have to be calculated, unless it can be shifted
+        // into view by the offset
+        boolean shifted = offset.getX() != 0 || offset.getY() != 0;
+        boolean unclipped = !isShapeMasked() || shifted;
+        boolean needInside = !fill && (isRenderInsideShape() || unclipped);
+        boolean needOutside = !isRenderInsideShape() || unclipped;
+
+        DistanceFieldImage cached = cachedImage;
+        if (cached != null && cached.matches(geometry, colorTable, fill, needInside, needOutside)) {
+            return cached;
+        }
+
+        DistanceFieldImage created = DistanceFieldImage.create(shape, geometry,
+            colorTable, fill, needInside, needOutside, getMaxEffectDistance(), brushColor);
+        cachedImage = created;
+        return created;
+    }
+
+    private int[] createColorTable() {
+        int size = (int) (getMaxEffectDistance() * TABLE_RESOLUTION) + 2;
+        int[] table = new int[size];
+        for (int i = 0; i < size; i++) {
+            table[i] = getColorAtDistance(i / (double) TABLE_RESOLUTION);
+        }
+        return table;
+    }
+
+    /**
+     * The path segments of a shape, used for detecting shape changes.
+     * The coordinates are relative to the integer origin of the bounds,
+     * so that a shape moved by whole pixels (for example while it's
+     * dragged) can reuse the effect image. They are also quantized,
+     * so that the rounding errors of the translation don't matter.
+     */
+    private static class ShapeGeometry {
+        private static final double COORD_RESOLUTION = 1024.0;
+
+        // not part of the identity
+        private final int originX;
+        private final int originY;
+
+        private final int windingRule;
+        private final int[] types;
+        private final long[] coords;
+
+        ShapeGeometry(Shape shape) {
+            Rectangle2D bounds = shape.getBounds2D();
+            originX = (int) Math.floor(bounds.getX());
+            originY = (int) Math.floor(bounds.getY());
+
+            PathIterator it = shape.getPathIterator(null);
+            windingRule = it.getWindingRule();
+
+            int[] segTypes = new int[64];
+            long[] segCoords = new long[6 * 64];
+            int numSegments = 0;
+            int numCoords = 0;
+            double[] seg = new double[6];
+            while (!it.isDone()) {
+                if (numSegments == segTypes.length) {
+                    segTypes = Arrays.copyOf(segTypes, numSegments * 2);
+                }
+                if (numCoords + 6 > segCoords.length) {
+                    segCoords = Arrays.copyOf(segCoords, segCoords.length * 2);
+                }
+                int type = it.currentSegment(seg);
+                segTypes[numSegments++] = type;
+                int n = switch (type) {
+                    case PathIterator.SEG_MOVETO, PathIterator.SEG_LINETO -> 2;
+                    case PathIterator.SEG_QUADTO -> 4;
+                    case PathIterator.SEG_CUBICTO -> 6;
+                    default -> 0; // SEG_CLOSE
+                };
+                for (int i = 0; i < n; i += 2) {
+                    segCoords[numCoords++] = Math.round((seg[i] - originX) * COORD_RESOLUTION);
+                    segCoords[numCoords++] = Math.round((seg[i + 1] - originY) * COORD_RESOLUTION);
+                }
+                it.next();
             }
+            types = Arrays.copyOf(segTypes, numSegments);
+            coords = Arrays.copyOf(segCoords, numCoords);
         }
 
-        // set the inside/outside mode
-        /*
-        if(inside) {
-            g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_ATOP, brushAlpha));
-        } else {
-            g2.setComposite(AlphaComposite.getInstance(AlphaComposite.DST_OVER, brushAlpha));
-        }*/
-        float brushAlpha = 1.0f / steps;
-        g2.setComposite(AlphaComposite.getInstance(AlphaComposite.DST_OVER, brushAlpha));
-
-        // draw the effect
-        for (float i = 0; i < steps; i = i + 1f) {
-            float brushWidth = (float) (i * effectWidthDouble / steps);
-            g2.setStroke(new BasicStroke(brushWidth,
-                BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-            g2.draw(clipShape);
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ShapeGeometry)) {
+                return false;
+            }
+            ShapeGeometry that = (ShapeGeometry) o;
+            return windingRule == that.windingRule
+                && Arrays.equals(types, that.types)
+                && Arrays.equals(coords, that.coords);
         }
-        g2.translate(-offset.getX(), -offset.getY());
 
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(types) + Arrays.hashCode(coords);
+        }
+    }
+
+    /**
+     * The rendered effect of a shape, positioned at (x, y)
+     * relative to the origin of the shape geometry.
+     */
+    private static class DistanceFieldImage {
+        private final ShapeGeometry geometry;
+        private final int[] colorTable;
+        private final boolean fill;
+        private final boolean inside;
+        private final boolean outside;
+
+        private final BufferedImage image;
+        private final int x;
+        private final int y;
+
+        private DistanceFieldImage(ShapeGeometry geometry, int[] colorTable,
+                                   boolean fill, boolean inside, boolean outside,
+                                   BufferedImage image, int x, int y) {
+            this.geometry = geometry;
+            this.colorTable = colorTable;
+            this.fill = fill;
+            this.inside = inside;
+            this.outside = outside;
+            this.image = image;
+            this.x = x;
+            this.y = y;
+        }
+
+        private boolean matches(ShapeGeometry geometry, int[] colorTable,
+                                boolean fill, boolean inside, boolean outside) {
+            return this.fill == fill
+                && this.inside == inside
+                && this.outside == outside
+                && Arrays.equals(this.colorTable, colorTable)
+                && this.geometry.equals(geometry);
+        }
+
+        /**
+         * Rasterizes the shape with antialiasing, and colors each pixel
+         * based on its distance from the outline. Pixels with partial
+         * coverage are on the outline, and their distance is estimated
+         * from the coverage, for the others the exact Euclidean distance
+         * transform of the coverage mask is used.
+         */
+        static DistanceFieldImage create(Shape shape, ShapeGeometry geometry,
+                                         int[] colorTable, boolean fill,
+                                         boolean needInside, boolean needOutside,
+                                         double maxDistance, Color fillColor) {
+            Rectangle2D bounds = shape.getBounds2D();
+            int margin = (int) Math.ceil(maxDistance) + 1;
+            int x = (int) Math.floor(bounds.getX()) - margin;
+            int y = (int) Math.floor(bounds.getY()) - margin;
+            long longWidth = (long) Math.ceil(bounds.getMaxX()) + margin - x;
+            long longHeight = (long) Math.ceil(bounds.getMaxY()) + margin - y;
+            if (longWidth <= 0 || longHeight <= 0 || longWidth * longHeight > Integer.MAX_VALUE) {
+                return null;
+            }
+            int width = (int) longWidth;
+            int height = (int) longHeight;
+            int numPixels = width * height;
+
+            BufferedImage coverageImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+            Graphics2D g = coverageImage.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setColor(Color.WHITE);
+            g.translate(-x, -y);
+            g.fill(shape);
+            g.dispose();
+            byte[] coverage = ((DataBufferByte) coverageImage.getRaster().getDataBuffer()).getData();
+
+            float[] distToInside = null;
+            float[] distToOutside = null;
+            if (needOutside) {
+                boolean[] target = new boolean[numPixels];
+                for (int i = 0; i < numPixels; i++) {
+                    target[i] = (coverage[i] & 0xFF) >= 128;
+                }
+                distToInside = DistanceTransform.squaredDistances(target, width, height);
+            }
+            if (needInside) {
+                boolean[] target = new boolean[numPixels];
+                for (int i = 0; i < numPixels; i++) {
+                    target[i] = (coverage[i] & 0xFF) < 128;
+                }
+                distToOutside = DistanceTransform.squaredDistances(target, width, height);
+            }
+
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            int fillRGB = fillColor.getRGB() & 0x00_FF_FF_FF;
+            int fillAlpha = fillColor.getAlpha();
+            for (int i = 0; i < numPixels; i++) {
+                int c = coverage[i] & 0xFF;
+                double distance;
+                if (c >= 128) { // inside
+                    if (fill) {
+                        pixels[i] = fillColor.getRGB();
+                        continue;
+                    }
+                    if (c < 255) {
+                        // also needed for the antialiased clipping of the inside
+                        distance = (c - 127.5) / 255;
+                    } else if (distToOutside != null) {
+                        distance = Math.sqrt(distToOutside[i]) - 0.5;
+                    } else {
+                        continue;
+                    }
+                } else {
+                    if (distToInside == null) {
+                        continue;
+                    }
+                    distance = c > 0 ? (127.5 - c) / 255 : Math.sqrt(distToInside[i]) - 0.5;
+                }
+
+                int index = (int) (distance * TABLE_RESOLUTION + 0.5);
+                int color = index < colorTable.length ? colorTable[index] : 0;
+                if (fill && c > 0) {
+                    // the partially covered fill is under the glow
+                    double glowAlpha = (color >>> 24) / 255.0;
+                    double alpha = glowAlpha + (1 - glowAlpha) * c * fillAlpha / (255.0 * 255.0);
+                    color = (int) (alpha * 255 + 0.5) << 24 | fillRGB;
+                }
+                pixels[i] = color;
+            }
+
+            return new DistanceFieldImage(geometry, colorTable, fill,
+                needInside, needOutside, image, x - geometry.originX, y - geometry.originY);
+        }
     }
 
     /**
@@ -68,58 +68,42 @@ public class NeonBorderEffect extends AbstractAreaEffect {
         setOpacity(opacity);
     }
 
+    // lbalazscs: the stroke-based implementation was replaced by a
+    // distance-based one, see AbstractAreaEffect.paintBorderGlow
     @Override
-    protected void paintBorderGlow(Graphics2D gfx, Shape clipShape, int width, int height) {
-
-        /*
-        // draw the effect
-        for(float i=steps-1; i>=0; i=i-1f) {
-            float brushWidth = i * getEffectWidth()/steps;
-            gfx.setPaint(interpolateColor(i/steps,edgeColor,centerColor));
-            gfx.setStroke(new BasicStroke(brushWidth,
-                    BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-            gfx.draw(clipShape);
-        }*/
-
-        /* // an interesting outline effect. stroke the shape with a wide brush
-        * // then stroke again with slightly less wide one, then don't fill the middle
-       for(int i=0; i<2; i++) {
-           float brushWidth = (2-i)*5;
-           p("width = " + brushWidth);
-           gfx.setPaint(interpolateColor((float)(1-i), Color.BLACK, Color.WHITE));
-           gfx.setStroke(new BasicStroke(brushWidth));
-           gfx.draw(clipShape);
-       }
-        */
-        gfx.translate(getOffset().getX(), getOffset().getY());
-        gfx.setComposite(AlphaComposite.SrcOver);
+    protected int getColorAtDistance(double distance) {
         int steps = getEffectWidthInt();
         if (borderPosition == BorderPosition.Centered) {
             steps = steps / 2;
         }
-        for (int i = 0; i < steps; i++) {
-            // make the brush width smaller each time until there is nothing left
-            float brushWidth = steps + 1 - i;
-            float half = steps / 2.0f;
+        if (steps <= 0) {
+            return 0;
+        }
+
+        // the stroke i had the width steps + 1 - i, and the
+        // narrower strokes were painted over the wider ones
+        double outerEdge = (steps + 1) / 2.0;
+        if (distance >= outerEdge + 0.5) {
+            return 0;
+        }
+        int i = (int) Math.floor(steps + 1 - 2 * distance);
+        i = Math.max(0, Math.min(steps - 1, i));
 
-            if (borderPosition == BorderPosition.Centered) {
-                gfx.setPaint(interpolateColor((float) (steps - i) / steps, getEdgeColor(), getCenterColor()));
+        Color color;
+        float half = steps / 2.0f;
+        if (borderPosition == BorderPosition.Centered) {
+            color = interpolateColor((float) (steps - i) / steps, getEdgeColor(), getCenterColor());
+        } else {
+            if (i < half) {
+                color = interpolateColor((half - i) / half, getEdgeColor(), getCenterColor());
             } else {
-                if (i < half) {
-                    gfx.setPaint(interpolateColor((half - i) / half, getEdgeColor(), getCenterColor()));
-                } else {
-                    gfx.setPaint(interpolateColor((i - half) / half, getEdgeColor(), getCenterColor()));
-                }
+                color = interpolateColor((i - half) / half, getEdgeColor(), getCenterColor());
             }
-
-            // to make the effect softer use a different stroke
-            gfx.setStroke(new BasicStroke(brushWidth,
-                    BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-            //gfx.setStroke(new BasicStroke(brushWidth));
-            gfx.draw(clipShape);
         }
-        gfx.translate(-getOffset().getX(), -getOffset().getY());
 
+        // antialiasing at the outer edge
+        double coverage = Math.min(1.0, outerEdge + 0.5 - distance);
+        return withAlpha(color, coverage);
     }
 
     private static Color interpolateColor(float t, Color start, Color end) {
@@ -40,6 +40,7 @@ import pixelitor.tools.pen.Paths;
 import pixelitor.tools.util.PPoint;
 import pixelitor.tools.util.PRectangle;
 import pixelitor.utils.ImageUtils;
+import pixelitor.utils.MemoryInfo;
 import pixelitor.utils.Messages;
 import pixelitor.utils.VisibleForTesting;
 
@@ -92,6 +93,13 @@ public class Composition implements Serializable {
 
     private transient BufferedImage compositeImage;
 
+    // the part of the cached composite image that is out of date, or null
+    private transient Rectangle compositeDirtyArea;
+
+    // true if the cached composite image is also used outside the
+    // composition, and therefore it must not be updated in place
+    private transient boolean compositeImageShared;
+
     private transient View view;
 
     private transient Selection selection;
@@ -143,6 +151,7 @@ public class Composition implements Serializable {
 
     /**
      * Creates and returns a deep copy of this composition.
+     * The layer and mask images are shared copy-on-write.
      */
     public Composition copy(boolean forUndo, boolean copySelection) {
         var canvasCopy = new Canvas(canvas);
@@ -198,6 +207,8 @@ public class Composition implements Serializable {
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
         // init transient variables
         compositeImage = null; // will be set when needed
+        compositeDirtyArea = null;
+        compositeImageShared = false;
         file = null; // will be set later
         dirty = false;
         view = null; // will be set later
@@ -422,6 +433,7 @@ public class Composition implements Serializable {
         int layerIndex = layerList.indexOf(layer);
         var bellowLayer = (ImageLayer) layerList.get(layerIndex - 1);
 
+        bellowLayer.copyImageIfShared();
         var bellowImage = bellowLayer.getImage();
         var maskViewModeBefore = view.getMaskViewMode();
         var imageBefore = ImageUtils.copyImage(bellowImage);
@@ -434,6 +446,7 @@ public class Composition implements Serializable {
             bellowLayer.setImage(result);
         }
         g.dispose();
+        bellowLayer.pixelsChanged(new Rectangle(bellowImage.getWidth(), bellowImage.getHeight()));
 
         bellowLayer.updateIconImage();
 
@@ -830,19 +843,40 @@ public class Composition implements Serializable {
         view.repaint();
     }
 
+    /**
+     * Repaints the area of a line with the given thickness.
+     * The thickness is in image space, and it's added
+     * to all sides of the line's bounding box.
+     */
     public void repaintRegion(PPoint start, PPoint end, double thickness) {
-        invalidateCompositeCache();
-        if (view != null) { // during reload image it can be null
-            view.repaintRegion(start, end, thickness);
-            view.repaintNavigator(false);
-        }
+        double minX = Math.min(start.getImX(), end.getImX()) - thickness;
+        double minY = Math.min(start.getImY(), end.getImY()) - thickness;
+        double maxX = Math.max(start.getImX(), end.getImX()) + thickness;
+        double maxY = Math.max(start.getImY(), end.getImY()) + thickness;
+
+        repaintRegion(new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY));
     }
 
     public void repaintRegion(PRectangle area) {
-        invalidateCompositeCache();
+        repaintRegion(area.getIm());
+    }
+
+    /**
+     * Repaints the given image-space area. Only this area of the
+     * composite image is recalculated, and the repaint requests
+     * are batched, the view is repainted at most once per frame.
+     */
+    private void repaintRegion(Rectangle2D imArea) {
+        // round outwards, and add one more pixel to account for the antialiasing
+        int x = (int) Math.floor(imArea.getX()) - 1;
+        int y = (int) Math.floor(imArea.getY()) - 1;
+        int width = (int) Math.ceil(imArea.getMaxX()) + 2 - x;
+        int height = (int) Math.ceil(imArea.getMaxY()) + 2 - y;
+        var area = new Rectangle(x, y, width, height);
+
+        invalidateCompositeRegion(area);
         if (view != null) { // during reload image it can be null
-            view.repaintRegion(area);
-            view.repaintNavigator(false);
+            view.scheduleRepaint(area);
         }
     }
 
@@ -1140,10 +1174,88 @@ public class Composition implements Serializable {
     public BufferedImage getCompositeImage() {
         if (compositeImage == null) {
             compositeImage = calculateCompositeImage();
+            compositeDirtyArea = null;
+        } else if (compositeDirtyArea != null) {
+            Rectangle area = compositeDirtyArea;
+            compositeDirtyArea = null;
+            if (!compositeImageShared && canRecalculateCompositeRegion()) {
+                recalculateCompositeRegion(area);
+            } else {
+                invalidateCompositeCache();
+                compositeImage = calculateCompositeImage();
+            }
         }
         return compositeImage;
     }
 
+    /**
+     * Returns the composite image for a reader outside the composition
+     * (for example the clipboard), which can use it without copying,
+     * because from now on the composition doesn't modify it in place.
+     */
+    public BufferedImage getCompositeImageForReader() {
+        BufferedImage image = getCompositeImage();
+        compositeImageShared = true;
+        return image;
+    }
+
+    /**
+     * Returns whether the composite image can be recalculated only
+     * in a region. This is not possible if some layers process the
+     * whole image composited so far (adjustment layers and
+     * watermarked text layers), because they might not work locally.
+     */
+    private boolean canRecalculateCompositeRegion() {
+        for (Layer layer : layerList) {
+            if (layer.isVisible() && layer.isAdjustment()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Recalculates the given region of the cached composite image,
+     * the layers are composited in the same way as in
+     * {@link #calculateCompositeImage()}, but with a clip.
+     */
+    private void recalculateCompositeRegion(Rectangle area) {
+        Rectangle clip = area.intersection(canvas.getBounds());
+        if (clip.isEmpty()) {
+            return;
+        }
+
+        Graphics2D g = compositeImage.createGraphics();
+        g.setClip(clip);
+        g.setComposite(AlphaComposite.Clear);
+        g.fill(clip);
+        g.setComposite(AlphaComposite.SrcOver);
+
+        boolean firstVisibleLayer = true;
+        for (Layer layer : layerList) {
+            if (layer.isVisible()) {
+                layer.applyLayer(g, compositeImage, firstVisibleLayer);
+                firstVisibleLayer = false;
+            }
+        }
+        g.dispose();
+    }
+
+    /**
+     * Marks the given image-space area of the cached composite image
+     * as out of date, it will be recalculated when needed
+     */
+    private void invalidateCompositeRegion(Rectangle area) {
+        if (compositeImage == null) {
+            return; // the whole image will be calculated anyway
+        }
+        if (compositeDirtyArea == null) {
+            compositeDirtyArea = new Rectangle(area);
+        } else {
+            compositeDirtyArea.add(area);
+        }
+    }
+
     public void imageChanged() {
         imageChanged(FULL);
     }
@@ -1171,11 +1283,28 @@ public class Composition implements Serializable {
         }
     }
 
+    /**
+     * Returns the number of bytes used by the cached composite image
+     */
+    public long getCompositeCacheMemoryUsage() {
+        return MemoryInfo.getImageSize(compositeImage);
+    }
+
+    /**
+     * Releases the cached composite image in order to save memory,
+     * it will be recalculated when needed
+     */
+    public void releaseCompositeCache() {
+        invalidateCompositeCache();
+    }
+
     private void invalidateCompositeCache() {
-        if (compositeImage != null) {
+        if (compositeImage != null && !compositeImageShared) {
             compositeImage.flush();
         }
         compositeImage = null;
+        compositeDirtyArea = null;
+        compositeImageShared = false;
     }
 
     public boolean isActive() {
@@ -25,6 +25,7 @@ import pixelitor.utils.Threads;
 import pixelitor.utils.debug.Debug;
 import pixelitor.utils.test.Events;
 
+import java.awt.Dimension;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.util.Optional;
@@ -73,15 +74,16 @@ public final class ConsistencyChecks {
         if (edit.isPresent()) {
             var currentImg = dr.getSelectedSubImage(false);
             var fadeableEdit = edit.get();
-            var previousImg = fadeableEdit.getBackupImage();
-            if (previousImg == null) {
+            Dimension previousSize = fadeableEdit.getBackupSize();
+            if (previousSize == null) {
                 // soft reference expired: fade wouldn't work, but not a bug
                 return true;
             }
 
-            if (isSizeDifferent(currentImg, previousImg)) {
+            if (currentImg.getWidth() != previousSize.width
+                || currentImg.getHeight() != previousSize.height) {
                 var comp = dr.getComp();
-                differentSizeForFade(currentImg, previousImg, comp);
+                differentSizeForFade(currentImg, fadeableEdit.getBackupImage(), comp);
                 return false;
             }
 
@@ -89,10 +91,6 @@ public final class ConsistencyChecks {
         return true;
     }
 
-    private static boolean isSizeDifferent(BufferedImage a, BufferedImage b) {
-        return a.getWidth() != b.getWidth() || a.getHeight() != b.getHeight();
-    }
-
     private static void differentSizeForFade(BufferedImage currentImg, BufferedImage previousImg, Composition comp) {
         Events.postProgramError("fade would not work", comp, null);
 
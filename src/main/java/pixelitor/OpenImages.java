@@ -20,6 +20,7 @@ package pixelitor;
 import pixelitor.gui.*;
 import pixelitor.gui.utils.Dialogs;
 import pixelitor.history.History;
+import pixelitor.io.AutoSave;
 import pixelitor.io.IO;
 import pixelitor.io.IOTasks;
 import pixelitor.layers.*;
@@ -102,6 +103,7 @@ public class OpenImages {
 
     public static void imageClosed(View view) {
         views.remove(view);
+        AutoSave.compClosed(view.getComp());
         if (views.isEmpty()) {
             onAllImagesClosed();
         }
@@ -444,9 +446,13 @@ public class OpenImages {
     }
 
     public static Composition addJustLoadedComp(Composition comp) {
+        return addJustLoadedComp(comp, true);
+    }
+
+    public static Composition addJustLoadedComp(Composition comp, boolean activate) {
         assert comp != null;
 
-        addAsNewComp(comp);
+        addAsNewComp(comp, activate);
 
         File file = comp.getFile();
         RecentFilesMenu.getInstance().addFile(file);
@@ -461,6 +467,15 @@ public class OpenImages {
     }
 
     public static void addAsNewComp(Composition comp) {
+        addAsNewComp(comp, true);
+    }
+
+    /**
+     * Adds a new view for the given composition. If activate is false,
+     * then the view is added in the background, and the activation
+     * work is done only if the user selects it.
+     */
+    public static void addAsNewComp(Composition comp, boolean activate) {
         try {
             assert comp.getView() == null : "already has a view";
 
@@ -469,8 +484,10 @@ public class OpenImages {
             view.setCursor(Tools.getCurrent().getStartingCursor());
             views.add(view);
             MaskViewMode.NORMAL.activate(view, comp.getActiveLayer());
-            ImageArea.addNewView(view);
-            setActiveView(view, false);
+            ImageArea.addNewView(view, activate);
+            if (activate) {
+                setActiveView(view, false);
+            }
         } catch (Exception e) {
             Messages.showException(e);
         }
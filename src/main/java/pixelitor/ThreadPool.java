@@ -21,12 +21,16 @@ import com.jhlabs.image.AbstractBufferedImageOp;
 import pixelitor.utils.ProgressTracker;
 
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RunnableFuture;
 
 /**
  * A thread pool for parallel execution on multiple CPU cores
@@ -114,6 +118,69 @@ public class ThreadPool {
         }
     }
 
+    /**
+     * Runs the task of the given future in the current thread if no
+     * pool thread started it yet. This should be called before waiting
+     * for a future in a pool thread (for example in an IO task),
+     * because otherwise waiting for a queued task could cause a deadlock.
+     */
+    public static void runIfNotStarted(Future<?> future) {
+        if (future instanceof RunnableFuture) {
+            // does nothing if the task was already started
+            ((RunnableFuture<?>) future).run();
+        }
+    }
+
+    /**
+     * Waits for the result of the given future, and runs its task in the
+     * current thread if no pool thread started it yet, so that it can be
+     * called also from pool threads (see {@link #runIfNotStarted(Future)}).
+     * The unchecked exceptions and errors of the task are rethrown as they
+     * are, the checked exceptions and the interruption are wrapped
+     * in a {@link CompletionException}.
+     */
+    public static <T> T getResult(Future<T> future) {
+        runIfNotStarted(future);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CompletionException(cause);
+        }
+    }
+
+    /**
+     * Same as {@link #getResult(Future)}, but for tasks
+     * that can throw an {@link IOException}, which is rethrown.
+     */
+    public static <T> T getIOResult(Future<T> future) throws IOException {
+        try {
+            return getResult(future);
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof InterruptedException) {
+                throw new InterruptedIOException();
+            }
+            throw e;
+        }
+    }
+
+    public static int getNumCores() {
+        return NUM_CORES;
+    }
+
     public static Executor getExecutor() {
         return executorService;
     }
@@ -47,6 +47,10 @@ public class Automate {
     private static volatile boolean overwriteAll = false;
     private static volatile boolean stopProcessing = false;
 
+    // the maximal size of the JPEG output files in KB, or 0 if
+    // the files are saved with the default JPEG quality
+    private static volatile int jpegMaxKB = 0;
+
     private Automate() {
     }
 
@@ -133,7 +137,7 @@ public class Automate {
         // so that it doesn't ask to save again after we just saved it
         comp.setDirty(false);
 
-        var saveSettings = new SaveSettings(format, file);
+        var saveSettings = createSaveSettings(format, file);
         CompletableFuture<Void> retVal = null;
 
         if (file.exists() && !overwriteAll) {
@@ -170,6 +174,23 @@ public class Automate {
         }
     }
 
+    private static SaveSettings createSaveSettings(FileFormat format, File file) {
+        int maxKB = jpegMaxKB;
+        if (format == FileFormat.JPG && maxKB > 0) {
+            // the quality is searched for each image
+            return JpegSettings.withMaxSize(1024L * maxKB, false, file);
+        }
+        return new SaveSettings(format, file);
+    }
+
+    public static int getJpegMaxKB() {
+        return jpegMaxKB;
+    }
+
+    public static void setJpegMaxKB(int maxKB) {
+        jpegMaxKB = maxKB;
+    }
+
     private static File calcOutputFile(Composition comp, File lastSaveDir, FileFormat format) {
         String inFileName = comp.getFile().getName();
         String outFileName = FileUtils.replaceExt(inFileName, format.toString());
@@ -24,6 +24,7 @@ import pixelitor.gui.utils.ValidationResult;
 import pixelitor.io.Dirs;
 import pixelitor.io.FileFormat;
 
+import javax.swing.*;
 import java.awt.GridBagLayout;
 import java.io.File;
 
@@ -33,6 +34,7 @@ import static pixelitor.gui.utils.BrowseFilesSupport.SelectionMode.DIRECTORY;
 /**
  * A panel for selecting an opening directory,
  * a saving directory, and a saving format
+ * (with an optional target size for JPEG)
  */
 class OpenSaveDirsPanel extends ValidatedPanel {
     private final BrowseFilesSupport inputChooser
@@ -43,6 +45,8 @@ class OpenSaveDirsPanel extends ValidatedPanel {
             "Select Output Folder", DIRECTORY);
 
     private final FileFormatSelector outputFormatSelector;
+    private final JCheckBox jpegMaxSizeCB;
+    private final JSpinner jpegMaxSizeSpinner;
 
     OpenSaveDirsPanel() {
         setLayout(new GridBagLayout());
@@ -53,6 +57,22 @@ class OpenSaveDirsPanel extends ValidatedPanel {
 
         outputFormatSelector = new FileFormatSelector(FileFormat.getLastOutput());
         gbh.addLabelAndControlNoStretch("Output Format:", outputFormatSelector);
+
+        int lastMaxKB = Automate.getJpegMaxKB();
+        jpegMaxSizeCB = new JCheckBox("", lastMaxKB > 0);
+        jpegMaxSizeSpinner = new JSpinner(new SpinnerNumberModel(
+            lastMaxKB > 0 ? lastMaxKB : 500, 1, Integer.MAX_VALUE, 10));
+        gbh.addLabelAndTwoControls("JPEG Target Size (KB):", jpegMaxSizeCB, jpegMaxSizeSpinner);
+
+        outputFormatSelector.addActionListener(e -> updateJpegMaxSizeEnabled());
+        jpegMaxSizeCB.addActionListener(e -> updateJpegMaxSizeEnabled());
+        updateJpegMaxSizeEnabled();
+    }
+
+    private void updateJpegMaxSizeEnabled() {
+        boolean jpeg = getSelectedFormat() == FileFormat.JPG;
+        jpegMaxSizeCB.setEnabled(jpeg);
+        jpegMaxSizeSpinner.setEnabled(jpeg && jpegMaxSizeCB.isSelected());
     }
 
     private static void addDirChooser(String label,
@@ -105,5 +125,8 @@ class OpenSaveDirsPanel extends ValidatedPanel {
         Dirs.setLastSaveIfValid(out);
 
         FileFormat.setLastOutput(getSelectedFormat());
+
+        boolean useMaxSize = getSelectedFormat() == FileFormat.JPG && jpegMaxSizeCB.isSelected();
+        Automate.setJpegMaxKB(useMaxSize ? (int) jpegMaxSizeSpinner.getValue() : 0);
     }
 }
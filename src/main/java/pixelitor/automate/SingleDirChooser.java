@@ -24,6 +24,7 @@ import pixelitor.gui.utils.ValidatedPanel;
 import pixelitor.gui.utils.ValidationResult;
 import pixelitor.io.Dirs;
 import pixelitor.io.FileFormat;
+import pixelitor.io.PngCompression;
 
 import javax.swing.*;
 import java.awt.BorderLayout;
@@ -37,28 +38,37 @@ import static pixelitor.gui.utils.BrowseFilesSupport.SelectionMode.DIRECTORY;
 
 /**
  * A panel that can be used to select a single directory
- * and optionally an output format
+ * and optionally an output format or a PNG compression
  */
 public class SingleDirChooser extends ValidatedPanel {
     private final BrowseFilesSupport dirChooser;
     private FileFormatSelector fileFormatSelector;
+    private JComboBox<PngCompression> pngCompressionSelector;
 
     private SingleDirChooser(String label, String initialPath,
                              String fileChooserTitle,
-                             FileFormat outputFormat) {
+                             FileFormat outputFormat,
+                             boolean addPngCompressionChooser) {
         dirChooser = new BrowseFilesSupport(initialPath, fileChooserTitle, DIRECTORY);
         JTextField dirTF = dirChooser.getNameTF();
         JButton browseButton = dirChooser.getBrowseButton();
 
         boolean addOutputChooser = outputFormat != null;
-        if (addOutputChooser) {
+        if (addOutputChooser || addPngCompressionChooser) {
             setLayout(new GridBagLayout());
             var gbh = new GridBagHelper(this);
             gbh.addLabelAndTwoControls(label, dirTF, browseButton);
 
-            fileFormatSelector = new FileFormatSelector(outputFormat);
-
-            gbh.addLabelAndControlNoStretch("Output Format:", fileFormatSelector);
+            if (addOutputChooser) {
+                fileFormatSelector = new FileFormatSelector(outputFormat);
+                gbh.addLabelAndControlNoStretch("Output Format:", fileFormatSelector);
+            }
+            if (addPngCompressionChooser) {
+                pngCompressionSelector = new JComboBox<>(PngCompression.values());
+                pngCompressionSelector.setSelectedItem(PngCompression.getLastUsed());
+                pngCompressionSelector.setName("pngCompressionSelector");
+                gbh.addLabelAndControlNoStretch("PNG Compression:", pngCompressionSelector);
+            }
         } else {
             setLayout(new BorderLayout());
             add(new JLabel(label), WEST);
@@ -108,8 +118,37 @@ public class SingleDirChooser extends ValidatedPanel {
     public static boolean selectOutputDir(FileFormat defaultFormat) {
         var chooserPanel = new SingleDirChooser("Output Folder:",
                 Dirs.getLastSave().getAbsolutePath(),
-                "Select Output Folder", defaultFormat);
+                "Select Output Folder", defaultFormat, false);
+
+        boolean selectionWasMade = showDialog(chooserPanel);
 
+        if (defaultFormat != null) {
+            FileFormat.setLastOutput(chooserPanel.getSelectedFormat());
+        }
+
+        return selectionWasMade;
+    }
+
+    /**
+     * Lets the user select the output directory and the compression
+     * of the PNG images that will be written into it.
+     * Returns true if a selection was made, false if the operation was cancelled.
+     */
+    public static boolean selectOutputDirForPNG() {
+        var chooserPanel = new SingleDirChooser("Output Folder:",
+                Dirs.getLastSave().getAbsolutePath(),
+                "Select Output Folder", null, true);
+
+        boolean selectionWasMade = showDialog(chooserPanel);
+        if (selectionWasMade) {
+            PngCompression.setLastUsed(
+                (PngCompression) chooserPanel.pngCompressionSelector.getSelectedItem());
+        }
+
+        return selectionWasMade;
+    }
+
+    private static boolean showDialog(SingleDirChooser chooserPanel) {
         boolean[] selectionWasMade = {false};
         new DialogBuilder()
                 .validatedContent(chooserPanel)
@@ -120,11 +159,6 @@ public class SingleDirChooser extends ValidatedPanel {
                     selectionWasMade[0] = true;
                 })
                 .show();
-
-        if (defaultFormat != null) {
-            FileFormat.setLastOutput(chooserPanel.getSelectedFormat());
-        }
-
         return selectionWasMade[0];
     }
 }
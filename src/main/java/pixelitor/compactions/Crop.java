@@ -102,12 +102,8 @@ public class Crop implements CompAction {
             newComp.cropSelection(cropRect);
         }
 
-        newComp.forEachLayer(layer -> {
-            layer.crop(cropRect, deleteCroppedPixels, allowGrowing);
-            if (layer.hasMask()) {
-                layer.getMask().crop(cropRect, deleteCroppedPixels, allowGrowing);
-            }
-        });
+        ParallelLayerTasks.run(newComp, "Crop", layer -> true,
+            layer -> layer.crop(cropRect, deleteCroppedPixels, allowGrowing));
 
         newCanvas.changeSize(cropRect.width, cropRect.height, view);
 
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.compactions;
+
+import pixelitor.Composition;
+import pixelitor.ThreadPool;
+import pixelitor.layers.ImageLayer;
+import pixelitor.layers.Layer;
+import pixelitor.utils.MemoryInfo;
+import pixelitor.utils.ProgressTracker;
+import pixelitor.utils.StatusBarProgressTracker;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Runs the per-layer work of a composition action (flip, rotate,
+ * crop, etc.) on the {@link ThreadPool}. The layers and their masks are
+ * independent tasks, the largest ones are started first, and the number
+ * of tasks running at the same time is also limited by the memory
+ * needed for their new images.
+ *
+ * The calling thread waits until all tasks are finished, and it also
+ * executes the tasks that no pool thread started yet, so this can also
+ * be called from a pool thread.
+ */
+class ParallelLayerTasks {
+    // the memory budget is counted in kilobytes so that it fits into an int
+    private static final int MEMORY_BUDGET_KB = (int) Math.min(
+        Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 4 / 1024);
+
+    private static final Semaphore memoryBudget = new Semaphore(MEMORY_BUDGET_KB);
+
+    private ParallelLayerTasks() {
+    }
+
+    /**
+     * Runs the given task for the layers of the given composition that
+     * are accepted by the filter, and also for all the layer masks.
+     * The progress is shown in the status bar if it takes a long time.
+     */
+    static void run(Composition comp, String name,
+                    Predicate<Layer> layerFilter, Consumer<Layer> task) {
+        List<Layer> targets = new ArrayList<>();
+        comp.forEachLayer(layer -> {
+            if (layerFilter.test(layer)) {
+                targets.add(layer);
+            }
+            if (layer.hasMask()) {
+                targets.add(layer.getMask());
+            }
+        });
+
+        if (targets.size() <= 1) {
+            targets.forEach(task);
+            return;
+        }
+
+        // the calling thread also updates the tracker
+        var pt = new StatusBarProgressTracker(name, targets.size());
+        run(targets, task, pt);
+        pt.finished();
+    }
+
+    private static void run(List<Layer> targets, Consumer<Layer> task,
+                            ProgressTracker pt) {
+        // starting the largest tasks first means that the whole
+        // action takes about as much time as the largest layer
+        targets.sort(Comparator.comparingInt(ParallelLayerTasks::estimateMemoryKB).reversed());
+
+        List<Future<?>> futures = new ArrayList<>(targets.size());
+        for (Layer target : targets) {
+            int kb = estimateMemoryKB(target);
+            futures.add(ThreadPool.submit(() -> {
+                memoryBudget.acquireUninterruptibly(kb);
+                try {
+                    task.accept(target);
+                } finally {
+                    memoryBudget.release(kb);
+                }
+            }));
+        }
+
+        RuntimeException runtimeException = null;
+        Error error = null;
+        for (Future<?> future : futures) {
+            // wait for the other tasks before rethrowing
+            try {
+                ThreadPool.getResult(future);
+            } catch (Error e) {
+                if (error == null) {
+                    error = e;
+                }
+            } catch (RuntimeException e) {
+                if (runtimeException == null) {
+                    runtimeException = e;
+                }
+            }
+            pt.unitDone();
+        }
+
+        if (error != null) {
+            throw error;
+        }
+        if (runtimeException != null) {
+            throw runtimeException;
+        }
+    }
+
+    /**
+     * Estimates the memory needed for the new image of the given layer
+     * by assuming that it will be about as large as the current one.
+     */
+    private static int estimateMemoryKB(Layer layer) {
+        if (layer instanceof ImageLayer) {
+            long bytes = MemoryInfo.getImageSize(((ImageLayer) layer).getImage());
+            return (int) Math.min(bytes / 1024 + 1, MEMORY_BUDGET_KB);
+        }
+        return 0;
+    }
+}
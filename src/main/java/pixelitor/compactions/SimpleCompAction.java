@@ -26,8 +26,6 @@ import pixelitor.guides.Guides;
 import pixelitor.history.CompositionReplacedEdit;
 import pixelitor.history.History;
 import pixelitor.layers.ContentLayer;
-import pixelitor.layers.Layer;
-import pixelitor.layers.LayerMask;
 import pixelitor.selection.SelectionActions;
 import pixelitor.utils.Messages;
 
@@ -65,7 +63,9 @@ public abstract class SimpleCompAction extends NamedAction implements CompAction
         var canvasAT = createCanvasTransform(newCanvas);
         newComp.imCoordsChanged(canvasAT, false);
 
-        newComp.forEachLayer(this::processLayer);
+        ParallelLayerTasks.run(newComp, getEditName(),
+            layer -> layer instanceof ContentLayer,
+            layer -> transform((ContentLayer) layer));
 
         if (affectsCanvasSize) {
             changeCanvasSize(newCanvas, view);
@@ -96,23 +96,14 @@ public abstract class SimpleCompAction extends NamedAction implements CompAction
         return CompletableFuture.completedFuture(newComp);
     }
 
-    private void processLayer(Layer layer) {
-        if (layer instanceof ContentLayer) {
-            ContentLayer contentLayer = (ContentLayer) layer;
-            transform(contentLayer);
-        }
-        if (layer.hasMask()) {
-            LayerMask mask = layer.getMask();
-            transform(mask);
-        }
-    }
-
     protected abstract void changeCanvasSize(Canvas newCanvas, View view);
 
     protected abstract String getEditName();
 
     /**
-     * Applies the transformation to the given content layer.
+     * Applies the transformation to the given content layer or layer mask.
+     * It can be called on multiple threads at the same time
+     * (but never for the same layer).
      */
     protected abstract void transform(ContentLayer contentLayer);
 
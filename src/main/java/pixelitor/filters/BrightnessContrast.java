@@ -39,6 +39,7 @@ public class BrightnessContrast extends ParametrizedFilter {
 
     public BrightnessContrast() {
         super(ShowOriginal.YES);
+        setPointFilter();
 
         setParams(
             brightnessParam,
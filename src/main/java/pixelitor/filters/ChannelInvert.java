@@ -80,6 +80,7 @@ public class ChannelInvert extends ParametrizedFilter {
 
     public ChannelInvert() {
         super(ShowOriginal.YES);
+        setPointFilter();
 
         setParams(invertTypeSelector);
     }
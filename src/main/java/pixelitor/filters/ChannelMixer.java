@@ -283,6 +283,7 @@ public class ChannelMixer extends ParametrizedFilter {
 
     public ChannelMixer() {
         super(ShowOriginal.YES);
+        setPointFilter();
 
         var normalize = new FilterButtonModel("Normalize", normalizeAction,
                 "Makes sure that the sum of the channel contributions is 100%");
@@ -22,6 +22,7 @@ import pixelitor.ThreadPool;
 import pixelitor.filters.gui.ColorParam;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.filters.gui.ShowOriginal;
+import pixelitor.filters.util.NoiseFieldCache;
 import pixelitor.utils.ImageUtils;
 import pixelitor.utils.ProgressTracker;
 import pixelitor.utils.StatusBarProgressTracker;
@@ -90,80 +91,110 @@ public class Clouds extends ParametrizedFilter {
         int[] color1 = {c1.getAlpha(), c1.getRed(), c1.getGreen(), c1.getBlue()};
         int[] color2 = {c2.getAlpha(), c2.getRed(), c2.getGreen(), c2.getBlue()};
 
+        // a new permutation table is created for each reseed,
+        // therefore its identity also identifies the seed
+        int[] perm = p;
+
+        // the noise doesn't depend on the colors, so it's
+        // not recalculated while only the colors are changed
+        var key = new NoiseFieldCache.Key(NAME, width, height, perm, scale, roughness);
+        float[] noise = NoiseFieldCache.get(key,
+            (y, line) -> calculateNoiseLine(perm, scale, roughness, y, line), pt);
+
         Future<?>[] futures = new Future[height];
         for (int y = 0; y < height; y++) {
-            int finalY = y;
-            Runnable lineTask = () -> calculateLine(scale, roughness, width, finalY, destData, color1, color2);
+            int lineStart = y * width;
+            Runnable lineTask = () -> {
+                for (int i = lineStart, end = lineStart + width; i < end; i++) {
+                    destData[i] = ImageUtils.lerpAndPremultiply(noise[i], color1, color2);
+                }
+            };
             futures[y] = ThreadPool.submit(lineTask);
         }
-        ThreadPool.waitFor(futures, pt);
+        ThreadPool.waitFor(futures, ProgressTracker.NULL_TRACKER);
     }
 
-    private static void calculateLine(float startingScale, float roughness,
-                                      int width, int y, int[] destData,
-                                      int[] color1, int[] color2) {
-        for (int x = 0; x < width; x++) {
-            float scale = startingScale;
-            float noiseValue = 0.0f;
-            float contribution = 1.0f;
-
-            for (int i = 0; i < 8 && contribution > 0.03f && scale > 0; i++) {
-                float scaledX = x / scale;
-                float scaledY = y / scale;
-                float n = perlinNoise2D(scaledX, scaledY);
-                noiseValue += contribution * n;
-                scale /= 2;
-                contribution *= roughness;
-            }
+    /**
+     * Calculates the noise values in the [0..1] range for a line.
+     * The octaves are calculated one after the other for the whole
+     * line, because then the noise calculations that depend only on
+     * the lattice cell (or only on y) can be shared between the pixels.
+     */
+    private static void calculateNoiseLine(int[] perm, float startingScale,
+                                           float roughness, int y, float[] line) {
+        int width = line.length;
+        float scale = startingScale;
+        float contribution = 1.0f;
+        for (int i = 0; i < 8 && contribution > 0.03f && scale > 0; i++) {
+            addPerlinNoiseLine(perm, scale, contribution, y, line);
+            scale /= 2;
+            contribution *= roughness;
+        }
 
-            noiseValue = (1.0f + noiseValue) / 2.0f;
+        for (int x = 0; x < width; x++) {
+            float noiseValue = (1.0f + line[x]) / 2.0f;
             if (noiseValue < 0.0f) {
                 noiseValue = 0.0f;
             } else if (noiseValue > 1.0f) {
                 noiseValue = 1.0f;
             }
-
-            destData[x + y * width] = ImageUtils.lerpAndPremultiply(
-                    noiseValue, color1, color2);
+            line[x] = noiseValue;
         }
     }
 
     /**
-     * A 2D version of the algorithm from http://mrl.nyu.edu/~perlin/noise/
+     * Adds one octave of a 2D version of the algorithm
+     * from http://mrl.nyu.edu/~perlin/noise/ to the given line.
      */
-    private static float perlinNoise2D(float x, float y) {
-        // find unit grid cell containing point + wrap the integer cells at 255
-        int gridX = ((int) x) & 255;
-        int gridY = ((int) y) & 255;
-
-        // get relative coordinates of point within cell
-        x -= ((int) x);
-        y -= ((int) y);
-
-        // compute the fade curves for x and y
-        float u = ImageMath.smootherStep01(x);
-        float v = ImageMath.smootherStep01(y);
-
-        // calculate hashed gradient indices
-        int a = p[gridX] + gridY;
-        int aa = p[a];
-        int ab = p[a + 1];
-        int b = p[gridX + 1] + gridY;
-        int ba = p[b];
-        int bb = p[b + 1];
-
-        float noiseSE = grad2D(p[aa], x, y);
-        float noiseSW = grad2D(p[ba], x - 1, y);
-        float noiseNE = grad2D(p[ab], x, y - 1);
-        float noiseNW = grad2D(p[bb], x - 1, y - 1);
-
-        float noiseS = ImageMath.lerp(u, noiseSE, noiseSW);
-        float noiseN = ImageMath.lerp(u, noiseNE, noiseNW);
-
-        float noise = ImageMath.lerp(v, noiseS, noiseN);
-
-        // noise is in the range [-1..1]
-        return noise;
+    private static void addPerlinNoiseLine(int[] perm, float scale,
+                                           float contribution, int y, float[] line) {
+        float scaledY = y / scale;
+
+        // the cell row and the vertical fade are the same for the whole line
+        int gridY = ((int) scaledY) & 255;
+        float relY = scaledY - ((int) scaledY);
+        float v = ImageMath.smootherStep01(relY);
+
+        int cellX = -1;
+        int hashSE = 0;
+        int hashSW = 0;
+        int hashNE = 0;
+        int hashNW = 0;
+        for (int x = 0, width = line.length; x < width; x++) {
+            float scaledX = x / scale;
+
+            // find unit grid cell containing point + wrap the integer cells at 255
+            int intX = (int) scaledX;
+            if (intX != cellX) {
+                // calculate hashed gradient indices only for new cells
+                cellX = intX;
+                int gridX = intX & 255;
+                int a = perm[gridX] + gridY;
+                int b = perm[gridX + 1] + gridY;
+                hashSE = perm[perm[a]];
+                hashNE = perm[perm[a + 1]];
+                hashSW = perm[perm[b]];
+                hashNW = perm[perm[b + 1]];
+            }
+
+            // get relative coordinates of point within cell
+            float relX = scaledX - intX;
+
+            // compute the fade curve for x
+            float u = ImageMath.smootherStep01(relX);
+
+            float noiseSE = grad2D(hashSE, relX, relY);
+            float noiseSW = grad2D(hashSW, relX - 1, relY);
+            float noiseNE = grad2D(hashNE, relX, relY - 1);
+            float noiseNW = grad2D(hashNW, relX - 1, relY - 1);
+
+            float noiseS = ImageMath.lerp(u, noiseSE, noiseSW);
+            float noiseN = ImageMath.lerp(u, noiseNE, noiseNW);
+
+            // noise is in the range [-1..1]
+            float noise = ImageMath.lerp(v, noiseS, noiseN);
+            line[x] += contribution * noise;
+        }
     }
 
     private static float grad2D(int hash, float x, float y) {
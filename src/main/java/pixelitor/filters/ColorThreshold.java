@@ -38,6 +38,7 @@ public class ColorThreshold extends ParametrizedFilter {
 
     public ColorThreshold() {
         super(ShowOriginal.YES);
+        setPointFilter();
 
         var threshold = new GroupedRangeParam(i18n("threshold"),
             new RangeParam[]{
@@ -46,6 +46,7 @@ public class Colorize extends ParametrizedFilter {
 
     public Colorize() {
         super(ShowOriginal.YES);
+        setPointFilter();
 
         setParams(
             colorParam,
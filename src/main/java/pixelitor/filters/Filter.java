@@ -18,6 +18,8 @@
 package pixelitor.filters;
 
 import pixelitor.ChangeReason;
+import pixelitor.filters.gui.RangeParam;
+import pixelitor.filters.util.BoundedPreview;
 import pixelitor.filters.util.FilterAction;
 import pixelitor.filters.util.FilterUtils;
 import pixelitor.gui.PixelitorWindow;
@@ -37,6 +39,7 @@ import java.io.Serializable;
 
 import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
 import static pixelitor.ChangeReason.FILTER_WITHOUT_DIALOG;
+import static pixelitor.ChangeReason.PREVIEWING;
 
 /**
  * The superclass of all Pixelitor filters and color adjustments
@@ -47,6 +50,14 @@ public abstract class Filter implements Serializable {
 
     private transient FilterAction filterAction;
 
+    // not null only while a filter dialog with bounded previews is shown
+    private transient BoundedPreview boundedPreview;
+
+    private PreviewScope previewScope = PreviewScope.GLOBAL;
+
+    // determines the preview margin of neighborhood filters
+    private transient RangeParam previewRadius;
+
     // used for making sure that there are no
     // unnecessary filter executions triggered
     public static long runCount = 0;
@@ -101,7 +112,12 @@ public abstract class Filter implements Serializable {
             }
 
             BufferedImage src = dr.getFilterSourceImage();
-            BufferedImage dest = transformImage(src);
+            BufferedImage dest;
+            if (cr == PREVIEWING && boundedPreview != null) {
+                dest = boundedPreview.transform(src);
+            } else {
+                dest = transformImage(src);
+            }
 
             assert dest != null;
 
@@ -162,6 +178,79 @@ public abstract class Filter implements Serializable {
         return dest;
     }
 
+    /**
+     * Returns how much of the image is needed for calculating the
+     * preview of a part of it. Only the filters that don't depend
+     * on the image size or on absolute positions can return
+     * something other than {@link PreviewScope#GLOBAL}.
+     */
+    public PreviewScope getPreviewScope() {
+        // null if the filter was deserialized from an older pxc file
+        return previewScope == null ? PreviewScope.GLOBAL : previewScope;
+    }
+
+    /**
+     * For {@link PreviewScope#NEIGHBORHOOD} filters, returns the
+     * distance (in pixels) within which the input pixels
+     * can influence an output pixel.
+     */
+    public int getPreviewMargin() {
+        if (previewRadius == null) {
+            return 0;
+        }
+        return (int) Math.ceil(previewRadius.getValueAsDouble());
+    }
+
+    /**
+     * Called in the constructor of the filters where each output pixel
+     * depends only on the input pixel at the same position.
+     */
+    protected void setPointFilter() {
+        previewScope = PreviewScope.POINT;
+    }
+
+    /**
+     * Called in the constructor of the filters where each output pixel
+     * depends only on the input pixels within the given radius.
+     */
+    protected void setNeighborhoodFilter(RangeParam radius) {
+        previewScope = PreviewScope.NEIGHBORHOOD;
+        previewRadius = radius;
+    }
+
+    /**
+     * While a filter dialog is shown, the previews can be calculated
+     * only for the visible part of large images.
+     */
+    protected void startBoundedPreview(Drawable dr) {
+        if (getPreviewScope() != PreviewScope.GLOBAL) {
+            boundedPreview = new BoundedPreview(this, dr);
+        }
+    }
+
+    /**
+     * Called when the filter dialog is accepted. If the last
+     * preview was bounded, then the filter runs again on the
+     * whole image, at full resolution.
+     */
+    protected void finishBoundedPreview(Drawable dr) {
+        if (boundedPreview == null) {
+            return;
+        }
+        boolean wasPartial = boundedPreview.isPartial();
+        stopBoundedPreview();
+        if (wasPartial) {
+            run(dr, PREVIEWING, PixelitorWindow.get());
+        }
+    }
+
+    protected void stopBoundedPreview() {
+        if (boundedPreview != null) {
+            boundedPreview.dispose();
+            boundedPreview = null;
+        }
+    }
+
     public void setFilterAction(FilterAction filterAction) {
         this.filterAction = filterAction;
     }
@@ -35,6 +35,7 @@ public class GradientMap extends ParametrizedFilter {
 
     public GradientMap() {
         super(ShowOriginal.YES);
+        setPointFilter();
 
         setParams(gradient);
     }
@@ -50,6 +50,7 @@ public class HueSat extends ParametrizedFilter {
 
     public HueSat() {
         super(ShowOriginal.YES);
+        setPointFilter();
 
         setParams(
             hue,
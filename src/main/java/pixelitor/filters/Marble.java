@@ -19,9 +19,12 @@ package pixelitor.filters;
 
 import com.jhlabs.image.Colormap;
 import com.jhlabs.image.PointFilter;
+import com.jhlabs.math.Noise;
 import pixelitor.filters.gui.*;
 import pixelitor.filters.gui.IntChoiceParam.Item;
+import pixelitor.filters.util.NoiseFieldCache;
 import pixelitor.gui.GUIText;
+import pixelitor.utils.StatusBarProgressTracker;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
@@ -110,7 +113,15 @@ public class Marble extends ParametrizedFilter {
         filter.setSmoothDetails(smoothDetails.isChecked());
         filter.setTime(time.getValueAsFloat() / 5.0f);
 
-        return filter.filter(src, dest);
+        // the noise fields and the point filter are tracked together
+        int numFields = type.getValue() == Impl.TYPE_GRID ? 2 : 1;
+        var pt = new StatusBarProgressTracker(NAME, src.getHeight() * (numFields + 1));
+        filter.setProgressTracker(pt);
+
+        dest = filter.filter(src, dest);
+
+        pt.finished();
+        return dest;
     }
 
     private static class Impl extends PointFilter {
@@ -133,6 +144,11 @@ public class Marble extends ParametrizedFilter {
         private boolean smoothDetails;
         private float time;
 
+        // the cached noise values (without the time) for each pixel
+        private int width;
+        private float[] noise;
+        private float[] gridNoise;
+
         protected Impl() {
             super(NAME);
         }
@@ -177,9 +193,51 @@ public class Marble extends ParametrizedFilter {
 
         @Override
         public BufferedImage filter(BufferedImage src, BufferedImage dst) {
-            cx = src.getWidth() / 2.0f;
-            cy = src.getHeight() / 2.0f;
-            return super.filter(src, dst);
+            width = src.getWidth();
+            int height = src.getHeight();
+            cx = width / 2.0f;
+            cy = height / 2.0f;
+
+            // the noise depends only on the geometry and on the details,
+            // so it's not recalculated while the colors, the wave type
+            // or the time are changed
+            noise = calcNoiseField(height, false);
+            gridNoise = type == TYPE_GRID ? calcNoiseField(height, true) : null;
+
+            dst = super.filter(src, dst);
+
+            noise = null;
+            gridNoise = null;
+            return dst;
+        }
+
+        private float[] calcNoiseField(int height, boolean grid) {
+            var key = new NoiseFieldCache.Key(NAME, width, height,
+                Noise.getSeedVersion(), grid, rotAngle, zoom,
+                strength, octaves, detailsStrength, smoothDetails);
+            return NoiseFieldCache.get(key, (y, line) -> {
+                double dy = y - cy;
+                for (int x = 0; x < line.length; x++) {
+                    double dx = x - cx;
+                    float nx = (float) (m00 * dx + m01 * dy);
+                    float ny = (float) (m10 * dx + m11 * dy);
+                    nx /= zoom;
+                    ny /= zoom;
+
+                    // the second field of the grid has swapped and negated coordinates
+                    line[x] = grid ? calcNoise(-ny, -nx) : calcNoise(nx, ny);
+                }
+            }, pt);
+        }
+
+        private float calcNoise(float nx, float ny) {
+            float f = strength * noise2(nx * 0.1f, ny * 0.1f);
+            if (smoothDetails) {
+                f += detailsStrength * turbulence2B(nx * 0.2f, ny * 0.2f, octaves);
+            } else {
+                f += detailsStrength * turbulence2(nx * 0.2f, ny * 0.2f, octaves);
+            }
+            return f;
         }
 
         @Override
@@ -191,17 +249,13 @@ public class Marble extends ParametrizedFilter {
             nx /= zoom;
             ny /= zoom;
 
-            float f = strength * noise2(nx * 0.1f, ny * 0.1f);
-            if (smoothDetails) {
-                f += detailsStrength * turbulence2B(nx * 0.2f, ny * 0.2f, octaves);
-            } else {
-                f += detailsStrength * turbulence2(nx * 0.2f, ny * 0.2f, octaves);
-            }
+            int index = y * width + x;
+            float f = noise[index];
             f += time;
 
             float c = switch (type) {
                 case TYPE_LINES -> calcLinesColor(nx, f);
-                case TYPE_GRID -> calcGridColor(nx, ny, f);
+                case TYPE_GRID -> calcGridColor(nx, ny, f, gridNoise[index]);
                 case TYPE_RINGS -> calcRingsColor(dy, dx, f);
                 case TYPE_STAR -> calcStarColor(dy, dx, f);
                 default -> throw new IllegalStateException();
@@ -214,14 +268,7 @@ public class Marble extends ParametrizedFilter {
             return (float) wave01(nx + f, waveType);
         }
 
-        private float calcGridColor(float nx, float ny, float f) {
-            float f2 = strength * noise2(ny * -0.1f, nx * -0.1f);
-            if (smoothDetails) {
-                f2 += detailsStrength * turbulence2B(ny * -0.2f, nx * -0.2f, octaves);
-            } else {
-                f2 += detailsStrength * turbulence2(ny * -0.2f, nx * -0.2f, octaves);
-            }
-
+        private float calcGridColor(float nx, float ny, float f, float f2) {
             return (float) (wave01(nx + f, waveType) + wave01(ny + f2, waveType)) / 2.0f;
         }
 
@@ -53,6 +53,7 @@ public class Morphology extends ParametrizedFilter {
 
     public Morphology() {
         super(ShowOriginal.YES);
+        setNeighborhoodFilter(radius);
 
         setParams(op, kernel, radius);
     }
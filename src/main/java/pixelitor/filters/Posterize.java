@@ -40,6 +40,7 @@ public class Posterize extends ParametrizedFilter {
 
     public Posterize() {
         super(ShowOriginal.YES);
+        setPointFilter();
 
         var levels = new GroupedRangeParam("Levels",
             new RangeParam[]{
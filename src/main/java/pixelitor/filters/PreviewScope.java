@@ -0,0 +1,45 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters;
+
+/**
+ * Describes how much of the source image a filter needs
+ * in order to calculate the preview of a part of the image.
+ */
+public enum PreviewScope {
+    /**
+     * Each output pixel depends only on the input pixel at the same
+     * position, therefore the visible part can be previewed
+     * even at the reduced resolution of the current zoom level.
+     */
+    POINT,
+
+    /**
+     * Each output pixel depends only on the input pixels within the
+     * distance returned by {@link Filter#getPreviewMargin()}, therefore
+     * the visible part can be previewed at full resolution.
+     */
+    NEIGHBORHOOD,
+
+    /**
+     * The output depends on the whole image (for example on its size,
+     * on random seeds distributed over it, or on global statistics),
+     * therefore the whole image has to be previewed.
+     */
+    GLOBAL
+}
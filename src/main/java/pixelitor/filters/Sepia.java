@@ -35,6 +35,7 @@ public class Sepia extends ParametrizedFilter {
 
     public Sepia() {
         super(ShowOriginal.YES);
+        setPointFilter();
 
         setParams(intensity);
     }
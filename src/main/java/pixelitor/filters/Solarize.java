@@ -46,6 +46,7 @@ public class Solarize extends ParametrizedFilter {
 
     public Solarize() {
         super(ShowOriginal.YES);
+        setPointFilter();
 
         setParams(
             type,
@@ -57,6 +57,7 @@ public class Threshold extends ParametrizedFilter {
 
     public Threshold() {
         super(ShowOriginal.YES);
+        setPointFilter();
 
         setParams(threshold, criterion);
     }
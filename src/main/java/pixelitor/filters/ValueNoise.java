@@ -23,8 +23,10 @@ import pixelitor.filters.gui.ColorParam;
 import pixelitor.filters.gui.EnumParam;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.filters.gui.ShowOriginal;
+import pixelitor.filters.util.NoiseFieldCache;
 import pixelitor.filters.util.NoiseInterpolation;
 import pixelitor.utils.ImageUtils;
+import pixelitor.utils.ProgressTracker;
 import pixelitor.utils.StatusBarProgressTracker;
 
 import java.awt.Color;
@@ -95,37 +97,84 @@ public class ValueNoise extends ParametrizedFilter {
         int width = dest.getWidth();
         int height = dest.getHeight();
         float frequency = 1.0f / scale.getValueAsFloat();
-
+        int octaves = details.getValue();
         float persistence = persistenceParam.getPercentageValF();
+        NoiseInterpolation interp = interpolation.getSelected();
 
         var pt = new StatusBarProgressTracker(NAME, height);
-        NoiseInterpolation interp = interpolation.getSelected();
+
+        // the noise doesn't depend on the colors, so it's
+        // not recalculated while only the colors are changed
+        int seed1 = r1;
+        int seed2 = r2;
+        int seed3 = r3;
+        var key = new NoiseFieldCache.Key(NAME, width, height,
+            seed1, seed2, seed3, frequency, octaves, persistence, interp);
+        float[] noise = NoiseFieldCache.get(key, (y, line) -> generateValueNoiseLine(
+            y, octaves, frequency, persistence, interp, seed1, seed2, seed3, line), pt);
 
         Future<?>[] futures = new Future[height];
         for (int y = 0; y < height; y++) {
-            int finalY = y;
-            Runnable lineTask = () -> calculateLine(lookupTable, destData,
-                width, frequency, persistence, finalY, interp);
+            int lineStart = y * width;
+            Runnable lineTask = () -> {
+                for (int i = lineStart, end = lineStart + width; i < end; i++) {
+                    destData[i] = lookupTable[(int) (255 * noise[i])];
+                }
+            };
             futures[y] = ThreadPool.submit(lineTask);
         }
-        ThreadPool.waitFor(futures, pt);
+        ThreadPool.waitFor(futures, ProgressTracker.NULL_TRACKER);
 
         pt.finished();
 
         return dest;
     }
 
-    private void calculateLine(int[] lookupTable, int[] destData,
-                               int width, float frequency, float persistence,
-                               int y, NoiseInterpolation interp) {
-        for (int x = 0; x < width; x++) {
-            int octaves = details.getValue();
-
-            int noise = (int) (255 * generateValueNoise(x, y,
-                octaves, frequency, persistence, interp));
+    /**
+     * Calculates the same values as {@link #generateValueNoise} for a
+     * whole line, but faster, because the lattice values are calculated
+     * only once for each lattice cell, and the interpolation
+     * in the y direction only once for each octave.
+     */
+    static void generateValueNoiseLine(int y, int octaves,
+                                       float frequency, float persistence,
+                                       NoiseInterpolation interp,
+                                       int seed1, int seed2, int seed3,
+                                       float[] line) {
+        int width = line.length;
+        float amplitude = 1.0f;
+        for (int lcv = 0; lcv < octaves; lcv++) {
+            float fy = y * frequency;
+            int cellY = (int) fy;
+            float ty = interp.step(fy - cellY);
+
+            int cellX = -1;
+            float n1 = 0;
+            float n2 = 0;
+            float n3 = 0;
+            float n4 = 0;
+            for (int x = 0; x < width; x++) {
+                float fx = x * frequency;
+                int intX = (int) fx;
+                if (intX != cellX) {
+                    cellX = intX;
+                    n1 = noise(intX, cellY, seed1, seed2, seed3);
+                    n2 = noise(intX + 1, cellY, seed1, seed2, seed3);
+                    n3 = noise(intX, cellY + 1, seed1, seed2, seed3);
+                    n4 = noise(intX + 1, cellY + 1, seed1, seed2, seed3);
+                }
+                float tx = interp.step(fx - intX);
+                float i1 = ImageMath.lerp(tx, n1, n2);
+                float i2 = ImageMath.lerp(tx, n3, n4);
+
+                line[x] += ImageMath.lerp(ty, i1, i2) * amplitude;
+            }
+            frequency *= 2;
+            amplitude *= persistence;
+        }
 
-            int value = lookupTable[noise];
-            destData[x + y * width] = value;
+        for (int x = 0; x < width; x++) {
+            line[x] = ImageMath.clamp01(line[x]);
         }
     }
 
@@ -169,10 +218,14 @@ public class ValueNoise extends ParametrizedFilter {
     }
 
     private static float noise(int x, int y) {
+        return noise(x, y, r1, r2, r3);
+    }
+
+    private static float noise(int x, int y, int seed1, int seed2, int seed3) {
         int n = x + y * 57;
         n = (n << 13) ^ n;
 
-        return (1.0f - ((n * (n * n * r1 + r2) + r3) & 0x7fffffff) / 1.07374182E+9f);
+        return (1.0f - ((n * (n * n * seed1 + seed2) + seed3) & 0x7fffffff) / 1.07374182E+9f);
     }
 
     private static float interpolate(float x, float y, float a, NoiseInterpolation interp) {
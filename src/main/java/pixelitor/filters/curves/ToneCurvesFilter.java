@@ -38,6 +38,10 @@ public class ToneCurvesFilter extends FilterWithGUI {
     private CurvesFilter filter;
     private ToneCurves curves;
 
+    public ToneCurvesFilter() {
+        setPointFilter();
+    }
+
     @Override
     public FilterGUI createGUI(Drawable dr) {
         return new ToneCurvesGUI(this, dr);
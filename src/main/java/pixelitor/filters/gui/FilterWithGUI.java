@@ -99,6 +99,7 @@ public abstract class FilterWithGUI extends Filter implements DialogMenuOwner {
     @Override
     public void startOn(Drawable dr) {
         dr.startPreviewing();
+        startBoundedPreview(dr);
 
         FilterGUI gui = createGUI(dr);
         new DialogBuilder()
@@ -108,8 +109,14 @@ public abstract class FilterWithGUI extends Filter implements DialogMenuOwner {
             .content(gui)
             .align(FRAME_RIGHT)
             .withScrollbars()
-            .okAction(() -> dr.onFilterDialogAccepted(getName()))
-            .cancelAction(dr::onFilterDialogCanceled)
+            .okAction(() -> {
+                finishBoundedPreview(dr);
+                dr.onFilterDialogAccepted(getName());
+            })
+            .cancelAction(() -> {
+                stopBoundedPreview();
+                dr.onFilterDialogCanceled();
+            })
             .show();
     }
 }
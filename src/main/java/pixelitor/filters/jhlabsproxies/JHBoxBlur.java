@@ -42,6 +42,7 @@ public class JHBoxBlur extends ParametrizedFilter {
 
     public JHBoxBlur() {
         super(ShowOriginal.YES);
+        setNeighborhoodFilter(radius.getRangeParam(0));
 
         setParams(
                 radius,
@@ -79,4 +80,12 @@ public class JHBoxBlur extends ParametrizedFilter {
 
         return dest;
     }
+
+    // the horizontal and vertical radius can differ,
+    // and each iteration spreads the pixels further
+    @Override
+    public int getPreviewMargin() {
+        return (int) Math.ceil(Math.max(radius.getValueAsFloat(0), radius.getValueAsFloat(1)))
+            * numberOfIterations.getValue();
+    }
 }
\ No newline at end of file
@@ -41,6 +41,7 @@ public class JHGaussianBlur extends ParametrizedFilter {
 
     public JHGaussianBlur() {
         super(ShowOriginal.YES);
+        setNeighborhoodFilter(radius);
 
         setParams(
             radius.withDecimalPlaces(1),
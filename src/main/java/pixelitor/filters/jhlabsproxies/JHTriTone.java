@@ -43,6 +43,7 @@ public class JHTriTone extends ParametrizedFilter {
 
     public JHTriTone() {
         super(ShowOriginal.YES);
+        setPointFilter();
 
         setParams(
                 shadowColor, midtonesColor, highlightsColor
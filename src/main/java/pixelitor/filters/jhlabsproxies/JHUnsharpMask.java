@@ -39,6 +39,7 @@ public class JHUnsharpMask extends ParametrizedFilter {
 
     public JHUnsharpMask() {
         super(ShowOriginal.YES);
+        setNeighborhoodFilter(radius);
 
         setParams(
             amount,
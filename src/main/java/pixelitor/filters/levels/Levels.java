@@ -39,6 +39,7 @@ public class Levels extends FilterWithGUI {
     private RGBLookup rgbLookup;
 
     public Levels() {
+        setPointFilter();
     }
 
     @Override
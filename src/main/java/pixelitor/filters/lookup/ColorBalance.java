@@ -59,6 +59,7 @@ public class ColorBalance extends ParametrizedFilter {
 
     public ColorBalance() {
         super(ShowOriginal.YES);
+        setPointFilter();
 
         setParams(
             affect,
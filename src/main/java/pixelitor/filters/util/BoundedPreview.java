@@ -0,0 +1,218 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.util;
+
+import pixelitor.filters.Filter;
+import pixelitor.filters.PreviewScope;
+import pixelitor.gui.View;
+import pixelitor.layers.Drawable;
+import pixelitor.utils.ImageUtils;
+
+import javax.swing.*;
+import javax.swing.event.ChangeListener;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+
+import static java.awt.RenderingHints.KEY_INTERPOLATION;
+import static java.awt.RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+import static pixelitor.ChangeReason.PREVIEWING;
+
+/**
+ * Calculates the filter previews only for the visible part
+ * of large images, while a filter dialog is shown.
+ *
+ * The filtered part is written into a copy of the source image,
+ * which is reused between the previews. If the user scrolls or
+ * zooms, then the preview is recalculated for the new visible part.
+ */
+public class BoundedPreview {
+    // smaller images are always previewed entirely
+    private static final int MIN_PIXELS = 2_000_000;
+
+    // if the previewed part would be a larger fraction
+    // of the image, then the whole image is previewed
+    private static final double MAX_FRACTION = 0.6;
+
+    private static final int VIEWPORT_DELAY_MILLIS = 200;
+
+    private final Filter filter;
+    private final Drawable dr;
+    private final View view;
+
+    private BufferedImage src; // the source image of the last preview
+    private BufferedImage dest; // reused between the previews
+
+    // the part of dest that contains filtered pixels, or null
+    // if the last preview was calculated for the whole image
+    private Rectangle filteredRegion;
+    private double filteredScaling;
+
+    private JViewport viewport;
+    private ChangeListener viewportListener;
+    private Timer viewportTimer;
+
+    public BoundedPreview(Filter filter, Drawable dr) {
+        this.filter = filter;
+        this.dr = dr;
+
+        View drView = dr.getComp().getView();
+        if (drView == null || drView.isMock()) {
+            view = null;
+            return;
+        }
+        view = drView;
+
+        // recalculate the preview when the visible part changes,
+        // but only after the scrolling/zooming has stopped
+        viewportTimer = new Timer(VIEWPORT_DELAY_MILLIS, e -> visiblePartChanged());
+        viewportTimer.setRepeats(false);
+        viewportListener = e -> viewportTimer.restart();
+        viewport = view.getViewContainer().getScrollPane().getViewport();
+        viewport.addChangeListener(viewportListener);
+    }
+
+    /**
+     * Returns the filtered version of the given source image. If only
+     * the visible part was filtered, the rest of the returned image
+     * contains the unfiltered source pixels.
+     */
+    public BufferedImage transform(BufferedImage src) {
+        Rectangle visible = dr.getVisibleFilterSourceRegion();
+        if (visible != null) {
+            visible = visible.intersection(new Rectangle(0, 0, src.getWidth(), src.getHeight()));
+        }
+        double scaling = getReducedScaling();
+        if (visible == null || visible.isEmpty() || !isWorthBounding(src, visible, scaling)) {
+            releaseImages();
+            return filter.transformImage(src);
+        }
+
+        if (dest == null || src != this.src) {
+            this.src = src;
+            dest = ImageUtils.copyImage(src);
+        } else if (filteredRegion != null) {
+            // restore the pixels filtered by the previous preview
+            copyRegion(src.getRaster(), filteredRegion, dest);
+        }
+
+        int margin = filter.getPreviewScope() == PreviewScope.NEIGHBORHOOD
+            ? filter.getPreviewMargin() : 0;
+        Rectangle region = new Rectangle(visible);
+        region.grow(margin, margin);
+        region = region.intersection(new Rectangle(0, 0, src.getWidth(), src.getHeight()));
+
+        BufferedImage part = ImageUtils.copySubImage(src, region);
+        BufferedImage filtered = transformPart(part, scaling);
+
+        // only the visible part is copied, because the
+        // margin can be wrong near the edges of the region
+        Raster filteredVisible = filtered.getRaster().createChild(
+            visible.x - region.x, visible.y - region.y,
+            visible.width, visible.height, 0, 0, null);
+        dest.getRaster().setRect(visible.x, visible.y, filteredVisible);
+
+        filteredRegion = visible;
+        filteredScaling = scaling;
+        return dest;
+    }
+
+    /**
+     * Returns the scaling at which the preview can be calculated,
+     * which is less than 1 only for point filters in zoomed-out views
+     */
+    private double getReducedScaling() {
+        if (view == null || filter.getPreviewScope() != PreviewScope.POINT) {
+            return 1.0;
+        }
+        return Math.min(1.0, view.getScaling());
+    }
+
+    private static boolean isWorthBounding(BufferedImage src, Rectangle visible, double scaling) {
+        long srcPixels = (long) src.getWidth() * src.getHeight();
+        if (srcPixels < MIN_PIXELS) {
+            return false;
+        }
+        double previewPixels = (double) visible.width * visible.height * scaling * scaling;
+        return previewPixels < srcPixels * MAX_FRACTION;
+    }
+
+    private BufferedImage transformPart(BufferedImage part, double scaling) {
+        int width = part.getWidth();
+        int height = part.getHeight();
+        int reducedWidth = (int) (width * scaling);
+        int reducedHeight = (int) (height * scaling);
+        if (scaling >= 1.0 || reducedWidth < 1 || reducedHeight < 1) {
+            return filter.transformImage(part);
+        }
+
+        // filter at the effective resolution of the zoom level, then scale back
+        BufferedImage reduced = ImageUtils.getFasterScaledInstance(part,
+            reducedWidth, reducedHeight, VALUE_INTERPOLATION_BILINEAR, true);
+        BufferedImage filtered = filter.transformImage(reduced);
+
+        BufferedImage result = ImageUtils.createImageWithSameCM(part);
+        Graphics2D g = result.createGraphics();
+        g.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(filtered, 0, 0, width, height, null);
+        g.dispose();
+        return result;
+    }
+
+    private static void copyRegion(Raster from, Rectangle r, BufferedImage to) {
+        Raster child = from.createChild(r.x, r.y, r.width, r.height, 0, 0, null);
+        to.getRaster().setRect(r.x, r.y, child);
+    }
+
+    private void visiblePartChanged() {
+        if (filteredRegion == null) {
+            // the last preview was calculated for the whole image
+            return;
+        }
+        Rectangle visible = dr.getVisibleFilterSourceRegion();
+        if (visible == null || visible.isEmpty()) {
+            return;
+        }
+        if (filteredRegion.contains(visible) && filteredScaling == getReducedScaling()) {
+            return;
+        }
+        filter.run(dr, PREVIEWING, view);
+    }
+
+    /**
+     * Returns true if the last preview was calculated only for a part of the image
+     */
+    public boolean isPartial() {
+        return filteredRegion != null;
+    }
+
+    private void releaseImages() {
+        src = null;
+        dest = null;
+        filteredRegion = null;
+    }
+
+    public void dispose() {
+        if (viewport != null) {
+            viewport.removeChangeListener(viewportListener);
+            viewportTimer.stop();
+        }
+        releaseImages();
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.util;
+
+import pixelitor.ThreadPool;
+import pixelitor.utils.ProgressTracker;
+
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * Caches the noise fields calculated by the procedural filters, so that
+ * the noise doesn't have to be calculated again while the user changes
+ * only the parameters that don't affect the noise (colors, blending, etc).
+ *
+ * A noise field is a float value for each pixel, and it is
+ * calculated in parallel, one line at a time.
+ */
+public class NoiseFieldCache {
+    // a few fields are enough to switch back and forth between settings
+    private static final int MAX_ENTRIES = 4;
+
+    // the fields are softly referenced, because they can be recalculated
+    private static final Map<Key, SoftReference<float[]>> cache =
+        new LinkedHashMap<>(MAX_ENTRIES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, SoftReference<float[]>> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+
+    private NoiseFieldCache() {
+    }
+
+    /**
+     * Calculates the values of a single line of a noise field
+     */
+    public interface LineGenerator {
+        /**
+         * Writes the noise values of the line with the given y coordinate
+         * into the line array, which has the width of the field,
+         * and initially contains zeros.
+         */
+        void generateLine(int y, float[] line);
+    }
+
+    /**
+     * Returns the noise field for the given key, calculating it if
+     * it isn't cached. The returned array must not be modified.
+     * The given {@link ProgressTracker} is updated only if the
+     * field is calculated.
+     */
+    public static float[] get(Key key, LineGenerator generator, ProgressTracker pt) {
+        float[] field = getCached(key);
+        if (field != null) {
+            return field;
+        }
+
+        field = generate(key.width, key.height, generator, pt);
+        synchronized (cache) {
+            cache.put(key, new SoftReference<>(field));
+        }
+        return field;
+    }
+
+    private static float[] getCached(Key key) {
+        synchronized (cache) {
+            SoftReference<float[]> ref = cache.get(key);
+            return ref == null ? null : ref.get();
+        }
+    }
+
+    private static float[] generate(int width, int height,
+                                    LineGenerator generator, ProgressTracker pt) {
+        float[] field = new float[width * height];
+        Future<?>[] futures = new Future[height];
+        for (int y = 0; y < height; y++) {
+            int finalY = y;
+            Runnable lineTask = () -> {
+                float[] line = new float[width];
+                generator.generateLine(finalY, line);
+                System.arraycopy(line, 0, field, finalY * width, width);
+            };
+            futures[y] = ThreadPool.submit(lineTask);
+        }
+        ThreadPool.waitFor(futures, pt);
+        return field;
+    }
+
+    public static void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Identifies a noise field by its owner, size and by all
+     * the parameters (including the random seed) that affect the noise.
+     */
+    public static class Key {
+        private final String owner;
+        private final int width;
+        private final int height;
+        private final Object[] params;
+
+        public Key(String owner, int width, int height, Object... params) {
+            this.owner = owner;
+            this.width = width;
+            this.height = height;
+            this.params = params;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return width == key.width
+                && height == key.height
+                && owner.equals(key.owner)
+                && Arrays.equals(params, key.params);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = owner.hashCode();
+            result = 31 * result + width;
+            result = 31 * result + height;
+            result = 31 * result + Arrays.hashCode(params);
+            return result;
+        }
+    }
+}
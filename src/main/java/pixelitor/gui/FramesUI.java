@@ -46,7 +46,7 @@ public class FramesUI extends JDesktopPane implements ImageAreaUI {
     }
 
     @Override
-    public void addNewView(View view) {
+    public void addNewView(View view, boolean activate) {
         int locX = CASCADE_HORIZONTAL_SHIFT * cascadeIndex;
         int locY = CASCADE_VERTICAL_SHIFT * cascadeIndex;
 
@@ -60,7 +60,9 @@ public class FramesUI extends JDesktopPane implements ImageAreaUI {
         view.setViewContainer(frame);
 
         add(frame);
-        activateFrame(frame);
+        if (activate) {
+            activateFrame(frame);
+        }
 
         cascadeIndex++;
     }
@@ -145,7 +145,11 @@ public class ImageArea {
     }
 
     public static void addNewView(View view) {
-        ui.addNewView(view);
+        ui.addNewView(view, true);
+    }
+
+    public static void addNewView(View view, boolean activate) {
+        ui.addNewView(view, activate);
     }
 
     public static Dimension getSize() {
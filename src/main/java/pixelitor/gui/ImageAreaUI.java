@@ -26,7 +26,11 @@ import java.awt.Dimension;
 public interface ImageAreaUI {
     void activateView(View view);
 
-    void addNewView(View view);
+    /**
+     * Adds the given view, and activates it
+     * unless activate is false
+     */
+    void addNewView(View view, boolean activate);
 
     Dimension getSize();
 }
@@ -25,10 +25,12 @@ import pixelitor.gui.utils.*;
 import pixelitor.guides.GuideStrokeType;
 import pixelitor.guides.GuideStyle;
 import pixelitor.history.History;
+import pixelitor.io.AutoSave;
 import pixelitor.layers.LayerButtonLayout;
 import pixelitor.utils.AppPreferences;
 import pixelitor.utils.Cursors;
 import pixelitor.utils.Language;
+import pixelitor.utils.MemoryGovernor;
 
 import javax.swing.*;
 import javax.swing.border.Border;
@@ -50,6 +52,7 @@ public class PreferencesPanel extends JPanel {
         BorderFactory.createEmptyBorder(0, 10, 5, 0);
     private JTextField undoLevelsTF;
     private JComboBox<IntChoiceParam.Item> thumbSizeCB;
+    private JComboBox<IntChoiceParam.Item> memoryLimitCB;
     private JComboBox<MouseZoomMethod> zoomMethodCB;
     private JComboBox<PanMethod> panMethodCB;
     private JTextField magickDirTF;
@@ -87,6 +90,8 @@ public class PreferencesPanel extends JPanel {
         addUIChooser(gbh);
         addUndoLevelsChooser(gbh);
         addThumbSizeChooser(gbh);
+        addMemoryLimitChooser(gbh);
+        addAutoSaveChoosers(gbh);
         addMagickDirField(gbh);
 
         generalPanel.setBorder(EMPTY_BORDER);
@@ -170,6 +175,65 @@ public class PreferencesPanel extends JPanel {
         thumbSizeCB.addActionListener(e -> updateThumbSize());
     }
 
+    private void addMemoryLimitChooser(GridBagHelper gbh) {
+        IntChoiceParam.Item[] limits = {
+            new IntChoiceParam.Item("50% of the max heap", 50),
+            new IntChoiceParam.Item("60% of the max heap", 60),
+            new IntChoiceParam.Item("75% of the max heap", 75),
+            new IntChoiceParam.Item("90% of the max heap", 90),
+        };
+        memoryLimitCB = new JComboBox<>(limits);
+        memoryLimitCB.setName("memoryLimitCB");
+        memoryLimitCB.setSelectedIndex(limits.length - 2);
+
+        int currentLimit = MemoryGovernor.getLimitPercent();
+        for (int i = 0; i < limits.length; i++) {
+            if (limits[i].getValue() == currentLimit) {
+                memoryLimitCB.setSelectedIndex(i);
+            }
+        }
+
+        gbh.addLabelAndControl("Free Caches Above: ", memoryLimitCB);
+        memoryLimitCB.addActionListener(e -> MemoryGovernor.setLimitPercent(
+            ((IntChoiceParam.Item) memoryLimitCB.getSelectedItem()).getValue()));
+    }
+
+    private static void addAutoSaveChoosers(GridBagHelper gbh) {
+        IntChoiceParam.Item[] intervals = {
+            new IntChoiceParam.Item("Never", 0),
+            new IntChoiceParam.Item("Every 30 seconds", 30),
+            new IntChoiceParam.Item("Every minute", 60),
+            new IntChoiceParam.Item("Every 5 minutes", 300),
+        };
+        var intervalCB = createIntChooser(intervals, AutoSave.getIntervalSeconds());
+        intervalCB.setName("autoSaveIntervalCB");
+        gbh.addLabelAndControl("Autosave: ", intervalCB);
+        intervalCB.addActionListener(e -> AutoSave.setIntervalSeconds(
+            ((IntChoiceParam.Item) intervalCB.getSelectedItem()).getValue()));
+
+        IntChoiceParam.Item[] rates = {
+            new IntChoiceParam.Item("5 MB/s", 5),
+            new IntChoiceParam.Item("20 MB/s", 20),
+            new IntChoiceParam.Item("100 MB/s", 100),
+            new IntChoiceParam.Item("Unlimited", 0),
+        };
+        var rateCB = createIntChooser(rates, AutoSave.getMaxMBPerSecond());
+        rateCB.setName("autoSaveRateCB");
+        gbh.addLabelAndControl("Autosave Max Speed: ", rateCB);
+        rateCB.addActionListener(e -> AutoSave.setMaxMBPerSecond(
+            ((IntChoiceParam.Item) rateCB.getSelectedItem()).getValue()));
+    }
+
+    private static JComboBox<IntChoiceParam.Item> createIntChooser(IntChoiceParam.Item[] items, int currentValue) {
+        var chooser = new JComboBox<>(items);
+        for (int i = 0; i < items.length; i++) {
+            if (items[i].getValue() == currentValue) {
+                chooser.setSelectedIndex(i);
+            }
+        }
+        return chooser;
+    }
+
     private void addMagickDirField(GridBagHelper gbh) {
         magickDirTF = new JTextField(AppPreferences.magickDirName);
         // don't let the textfield grow too large
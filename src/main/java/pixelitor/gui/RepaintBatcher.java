@@ -0,0 +1,73 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.gui;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static pixelitor.utils.Threads.calledOnEDT;
+import static pixelitor.utils.Threads.threadInfo;
+
+/**
+ * Batches the partial repaints of the views (typically caused
+ * by the brush dabs of a stroke), so that each view is
+ * repainted at most once per frame (about 120 frames per second),
+ * no matter how many dabs were painted during that frame.
+ */
+final class RepaintBatcher {
+    static final int FRAME_MILLIS = 8;
+
+    // the views with a pending repaint, in the order of the requests
+    private static final Set<View> pending = new LinkedHashSet<>();
+
+    private static final Timer timer = createTimer();
+
+    private RepaintBatcher() {
+        // do not instantiate
+    }
+
+    private static Timer createTimer() {
+        var frameTimer = new Timer(FRAME_MILLIS, e -> flush());
+        frameTimer.setRepeats(false);
+        return frameTimer;
+    }
+
+    /**
+     * Makes sure that the pending area of the given
+     * view is repainted at the end of the current frame.
+     */
+    static void schedule(View view) {
+        assert calledOnEDT() : threadInfo();
+
+        pending.add(view);
+        if (!timer.isRunning()) {
+            timer.start();
+        }
+    }
+
+    private static void flush() {
+        List<View> views = new ArrayList<>(pending);
+        pending.clear();
+        for (View view : views) {
+            view.repaintPendingArea();
+        }
+    }
+}
@@ -19,6 +19,7 @@ package pixelitor.gui;
 
 import pixelitor.gui.utils.GUIUtils;
 import pixelitor.menus.view.ZoomControl;
+import pixelitor.utils.MemoryGovernor;
 import pixelitor.utils.ProgressHandler;
 
 import javax.swing.*;
@@ -28,7 +29,9 @@ import java.awt.FlowLayout;
 import static java.awt.BorderLayout.CENTER;
 import static java.awt.BorderLayout.EAST;
 import static java.awt.FlowLayout.LEFT;
+import static java.awt.FlowLayout.RIGHT;
 import static javax.swing.BorderFactory.createEtchedBorder;
+import static pixelitor.utils.MemoryInfo.ONE_MEGABYTE;
 import static pixelitor.utils.Threads.calledOnEDT;
 import static pixelitor.utils.Threads.threadInfo;
 
@@ -38,6 +41,10 @@ import static pixelitor.utils.Threads.threadInfo;
 public class StatusBar extends JPanel {
     private final JLabel statusBarLabel;
     private final JPanel leftPanel;
+    private final JLabel memoryLabel;
+
+    // how often the memory usage is checked and displayed
+    private static final int MEMORY_CHECK_MILLIS = 2000;
 
     private static final StatusBar INSTANCE = new StatusBar();
     private static int numProgressBars = 0;
@@ -49,10 +56,36 @@ public class StatusBar extends JPanel {
         statusBarLabel = new JLabel("Pixelitor started");
         leftPanel.add(statusBarLabel);
 
+        memoryLabel = new JLabel() {
+            @Override
+            public String getToolTipText() {
+                // measured only when the tooltip is actually shown
+                return MemoryGovernor.measure().toHTML();
+            }
+        };
+        ToolTipManager.sharedInstance().registerComponent(memoryLabel);
+        var rightPanel = new JPanel(new FlowLayout(RIGHT, 5, 0));
+        rightPanel.add(memoryLabel);
+        rightPanel.add(ZoomControl.get());
+
         add(leftPanel, CENTER);
-        add(ZoomControl.get(), EAST);
+        add(rightPanel, EAST);
 
         setBorder(createEtchedBorder());
+
+        new Timer(MEMORY_CHECK_MILLIS, e -> checkMemory()).start();
+    }
+
+    private void checkMemory() {
+        if (!isShown()) {
+            return;
+        }
+        MemoryGovernor.checkMemory();
+
+        Runtime runtime = Runtime.getRuntime();
+        long usedMB = (runtime.totalMemory() - runtime.freeMemory()) / ONE_MEGABYTE;
+        long maxMB = runtime.maxMemory() / ONE_MEGABYTE;
+        memoryLabel.setText(usedMB + "/" + maxMB + " MB");
     }
 
     public void setMessage(String msg) {
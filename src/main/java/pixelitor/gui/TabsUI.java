@@ -62,7 +62,7 @@ public class TabsUI extends JTabbedPane implements ImageAreaUI {
     }
 
     @Override
-    public void addNewView(View view) {
+    public void addNewView(View view, boolean activate) {
         TabViewContainer tab = new TabViewContainer(view, this);
         view.setViewContainer(tab);
 
@@ -76,8 +76,10 @@ public class TabsUI extends JTabbedPane implements ImageAreaUI {
         }
 
         setTabComponentAt(myIndex, new TabTitleRenderer(view.getName(), tab));
-        setSelectedIndex(myIndex);
-        tab.activated();
+        if (activate) {
+            setSelectedIndex(myIndex);
+            tab.activated();
+        }
     }
 
     public static void warnAndCloseTab(TabViewContainer tab) {
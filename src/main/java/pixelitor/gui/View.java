@@ -29,8 +29,6 @@ import pixelitor.menus.view.ZoomLevel;
 import pixelitor.selection.SelectionActions;
 import pixelitor.tools.Tool;
 import pixelitor.tools.Tools;
-import pixelitor.tools.util.PPoint;
-import pixelitor.tools.util.PRectangle;
 import pixelitor.utils.ImageUtils;
 import pixelitor.utils.Lazy;
 import pixelitor.utils.Messages;
@@ -78,6 +76,9 @@ public class View extends JComponent implements MouseListener, MouseMotionListen
     private final Lazy<AffineTransform> imToCo = Lazy.of(this::createImToCoTransform);
     private final Lazy<AffineTransform> coToIm = Lazy.of(this::createCoToImTransform);
 
+    // the image-space area that will be repainted at the end of the frame
+    private Rectangle pendingRepaintArea;
+
     private static boolean showPixelGrid = false;
 
     public View(Composition comp) {
@@ -437,48 +438,47 @@ public class View extends JComponent implements MouseListener, MouseMotionListen
     }
 
     /**
-     * Repaints only a region of the image
+     * Schedules the repainting of the given image-space area. The areas
+     * requested during a frame are merged, and they are repainted together,
+     * with a single repaint request (see {@link RepaintBatcher}).
      */
-    public void repaintRegion(PPoint start, PPoint end, double thickness) {
-        double startX = start.getCoX();
-        double startY = start.getCoY();
-        double endX = end.getCoX();
-        double endY = end.getCoY();
-
-        // make sure that the start coordinates are smaller
-        if (endX < startX) {
-            double tmp = startX;
-            startX = endX;
-            endX = tmp;
+    public void scheduleRepaint(Rectangle imArea) {
+        if (!calledOnEDT()) {
+            // the batching state is confined to the EDT
+            repaintImageArea(imArea);
+            repaintNavigator(false);
+            return;
         }
-        if (endY < startY) {
-            double tmp = startY;
-            startY = endY;
-            endY = tmp;
+        if (pendingRepaintArea == null) {
+            pendingRepaintArea = new Rectangle(imArea);
+            RepaintBatcher.schedule(this);
+        } else {
+            pendingRepaintArea.add(imArea);
         }
-
-        // the thickness is derived from the brush radius, therefore
-        // it still needs to be converted into component space
-        thickness = scaling * thickness;
-
-        startX = startX - thickness;
-        endX = endX + thickness;
-        startY = startY - thickness;
-        endY = endY + thickness;
-
-        // add 1 to the width and height because
-        // casting to int will round them downwards
-        double repWidth = endX - startX + 1;
-        double repHeight = endY - startY + 1;
-
-        repaint((int) startX, (int) startY, (int) repWidth, (int) repHeight);
     }
 
     /**
-     * Repaints only a region of the image
+     * Repaints the area merged from the repaint requests of the last frame.
      */
-    public void repaintRegion(PRectangle area) {
-        repaint(area.getCo());
+    void repaintPendingArea() {
+        Rectangle area = pendingRepaintArea;
+        pendingRepaintArea = null;
+        if (area == null || comp == null) {
+            return;
+        }
+        repaintImageArea(area);
+        repaintNavigator(false);
+    }
+
+    private void repaintImageArea(Rectangle imArea) {
+        // round outwards in component space, because
+        // at high zoom levels an image pixel is many component pixels
+        int x = (int) Math.floor(imageXToComponentSpace(imArea.x));
+        int y = (int) Math.floor(imageYToComponentSpace(imArea.y));
+        int maxX = (int) Math.ceil(imageXToComponentSpace(imArea.x + imArea.width));
+        int maxY = (int) Math.ceil(imageYToComponentSpace(imArea.y + imArea.height));
+
+        repaint(x, y, maxX - x + 1, maxY - y + 1);
     }
 
 //    /**
@@ -322,6 +322,7 @@ public class Dialogs {
         }
         String msg = "<html><b>Out of memory error.</b> You can try <ul>" +
             "<li>decreasing the undo levels" +
+            "<li>lowering the memory limit in the preferences" +
             "<li>decreasing the number of layers" +
             "<li>working with smaller images" +
             "<li>putting more RAM into your computer";
@@ -21,7 +21,6 @@ import pixelitor.io.FileUtils;
 import pixelitor.io.TrackedIO;
 import pixelitor.utils.JProgressBarTracker;
 import pixelitor.utils.ProgressPanel;
-import pixelitor.utils.ProgressTracker;
 
 import javax.swing.*;
 import java.awt.Color;
@@ -31,27 +30,35 @@ import java.awt.Graphics2D;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
-import java.lang.ref.SoftReference;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 
 /**
- * Image preview panel for the open file chooser
+ * Image preview panel for the open file chooser.
+ * The thumbs are created in the background by a {@link ThumbCache},
+ * which also prefetches the thumbs of the neighboring files.
  */
 public class ImagePreviewPanel extends JPanel implements PropertyChangeListener {
     private static final int SIZE = 200;
     public static final int EMPTY_SPACE_AT_LEFT = 5;
 
+    // the number of files prefetched on both sides of the selected file
+    private static final int NUM_PREFETCHED = 10;
+
     private final Color backgroundColor;
-    private final Map<String, SoftReference<ThumbInfo>> thumbsCache;
+    private final ThumbCache thumbCache;
     private ThumbInfo thumbInfo;
+    private File selectedFile;
     private final ProgressPanel progressPanel;
 
+    // incremented for each prefetch, so that the results
+    // of the outdated directory listings are ignored
+    private int prefetchGeneration = 0;
+
     public ImagePreviewPanel(ProgressPanel progressPanel) {
         this.progressPanel = progressPanel;
         setPreferredSize(new Dimension(SIZE, SIZE));
         backgroundColor = getBackground();
-        thumbsCache = new HashMap<>();
+        thumbCache = new ThumbCache();
 
         this.progressPanel.setVisible(true);
     }
@@ -59,57 +66,119 @@ public class ImagePreviewPanel extends JPanel implements PropertyChangeListener
     // the property change events form the JFileChooser
     @Override
     public void propertyChange(PropertyChangeEvent e) {
-        File file = getFileFromFileChooserEvent(e);
-        if (file == null) {
+        String propertyName = e.getPropertyName();
+        if (propertyName.equals(JFileChooser.DIRECTORY_CHANGED_PROPERTY)) {
+            File dir = (File) e.getNewValue();
+            if (dir != null) {
+                prefetch(dir, null);
+            }
+            return;
+        }
+        if (!propertyName.equals(JFileChooser.SELECTED_FILE_CHANGED_PROPERTY)) {
+            return;
+        }
+
+        File file = (File) e.getNewValue();
+        selectedFile = file;
+        if (file == null || !FileUtils.hasSupportedInputExt(file)) {
             thumbInfo = null;
+        } else if (FileUtils.hasMultiLayerExtension(file)) {
+            // Currently no thumb extraction is attempted for ora and pxc files.
+            thumbInfo = ThumbInfo.failure(ThumbInfo.NO_PREVIEW);
         } else {
-            if (FileUtils.hasSupportedInputExt(file)) {
-                String filePath = file.getAbsolutePath();
-                thumbInfo = getOrCreateThumb(file, filePath);
-            } else {
-                thumbInfo = null;
+            thumbInfo = getOrRequestThumb(file);
+            File dir = file.getParentFile();
+            if (dir != null) {
+                prefetch(dir, file);
             }
         }
         repaint();
     }
 
-    private ThumbInfo getOrCreateThumb(File file, String filePath) {
-        if (thumbsCache.containsKey(filePath)) {
-            SoftReference<ThumbInfo> thumbRef = thumbsCache.get(filePath);
-            ThumbInfo cachedInfo = thumbRef.get();
-            if (cachedInfo != null) {
-                return cachedInfo;
+    /**
+     * Returns the cached thumb, or a placeholder if the thumb has to
+     * be created, in which case the panel is repainted later.
+     * A cached thumb is also checked in the background, and replaced
+     * if the file was modified since the thumb was created.
+     */
+    private ThumbInfo getOrRequestThumb(File file) {
+        int availableWidth = getThumbMaxWidth();
+        int availableHeight = getThumbMaxHeight();
+        ThumbInfo cached = thumbCache.getIfInMemory(file, availableWidth, availableHeight);
+
+        thumbCache.request(file, availableWidth, availableHeight,
+            () -> new JProgressBarTracker(progressPanel),
+            newThumbInfo -> {
+                if (file.equals(selectedFile) && newThumbInfo != thumbInfo) {
+                    thumbInfo = newThumbInfo;
+                    repaint();
+                }
+            });
+        return cached != null ? cached : ThumbInfo.loading();
+    }
+
+    /**
+     * Prefetches the thumbs of the files around the given file, starting
+     * with the nearest ones. A null file means the start of the directory.
+     * The directory is listed on a worker thread, because it needs
+     * a file system access for each entry.
+     */
+    private void prefetch(File dir, File around) {
+        int generation = ++prefetchGeneration;
+        int maxWidth = getThumbMaxWidth();
+        int maxHeight = getThumbMaxHeight();
+        thumbCache.runInBackground(
+            () -> selectPrefetched(listImageFiles(dir), around),
+            toPrefetch -> {
+                if (generation == prefetchGeneration) {
+                    thumbCache.prefetch(toPrefetch, maxWidth, maxHeight);
+                }
+            });
+    }
+
+    private static List<File> selectPrefetched(List<File> files, File around) {
+        int index = around == null ? -1 : files.indexOf(around);
+        List<File> toPrefetch = new ArrayList<>(2 * NUM_PREFETCHED);
+        for (int dist = 1; dist <= NUM_PREFETCHED; dist++) {
+            if (index < 0) {
+                addIfExists(files, dist - 1, toPrefetch);
+                addIfExists(files, NUM_PREFETCHED + dist - 1, toPrefetch);
+            } else {
+                addIfExists(files, index + dist, toPrefetch);
+                addIfExists(files, index - dist, toPrefetch);
             }
         }
+        return toPrefetch;
+    }
 
-        // Currently no thumb extraction is attempted for ora and pxc files.
-        if (FileUtils.hasMultiLayerExtension(file)) {
-            ThumbInfo fakeThumbInfo = ThumbInfo.failure(ThumbInfo.NO_PREVIEW);
-            thumbsCache.put(filePath, new SoftReference<>(fakeThumbInfo));
-            return fakeThumbInfo;
+    private static void addIfExists(List<File> files, int index, List<File> to) {
+        if (index >= 0 && index < files.size()) {
+            to.add(files.get(index));
         }
+    }
 
-        int availableWidth = getWidth() - EMPTY_SPACE_AT_LEFT;
-        int availableHeight = getHeight();
-        try {
-            ProgressTracker pt = new JProgressBarTracker(progressPanel);
-            ThumbInfo newThumbInfo = TrackedIO.readSubsampledThumb(file, availableWidth, availableHeight, pt);
-            thumbsCache.put(filePath, new SoftReference<>(newThumbInfo));
-            return newThumbInfo;
-        } catch (Exception ex) {
-            ThumbInfo fakeThumbInfo = ThumbInfo.failure(ThumbInfo.PREVIEW_ERROR);
-            thumbsCache.put(filePath, new SoftReference<>(fakeThumbInfo));
-
-            ex.printStackTrace();
-            return fakeThumbInfo;
+    /**
+     * Returns the image files of the given directory, in the order of the chooser.
+     * The directory is listed again each time, so that it's never outdated.
+     */
+    private static List<File> listImageFiles(File dir) {
+        File[] files = dir.listFiles(f -> f.isFile()
+            && FileUtils.hasSupportedInputExt(f)
+            && !FileUtils.hasMultiLayerExtension(f));
+        if (files == null) {
+            return Collections.emptyList();
         }
+        Arrays.sort(files, Comparator.comparing(File::getName, String.CASE_INSENSITIVE_ORDER));
+        return Arrays.asList(files);
+    }
+
+    private int getThumbMaxWidth() {
+        int width = getWidth() > 0 ? getWidth() : SIZE;
+        return width - EMPTY_SPACE_AT_LEFT;
     }
 
-    private static File getFileFromFileChooserEvent(PropertyChangeEvent e) {
-        return switch (e.getPropertyName()) {
-            case JFileChooser.SELECTED_FILE_CHANGED_PROPERTY -> (File) e.getNewValue();
-            default -> null;
-        };
+    private int getThumbMaxHeight() {
+        return getHeight() > 0 ? getHeight() : SIZE;
     }
 
     @Override
@@ -0,0 +1,430 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.gui.utils;
+
+import pixelitor.io.TrackedIO;
+import pixelitor.utils.Messages;
+import pixelitor.utils.ProgressTracker;
+
+import javax.imageio.ImageIO;
+import java.awt.EventQueue;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Creates the thumbnails shown in the preview panel of the file chooser
+ * in background threads. The thumbnails are kept both in memory and in a
+ * size-bounded disk cache, so that they are available immediately
+ * when a directory is visited again, even after a restart.
+ *
+ * The in-memory thumbs are looked up by the file alone, so that the EDT
+ * never touches the file system. The workers check the modification time
+ * and size of the file before reusing a thumb, and the disk cache keys
+ * are derived from them, therefore modified files get new thumbnails.
+ */
+public class ThumbCache {
+    private static final File DEFAULT_DIR = new File(System.getProperty("user.home"),
+        ".pixelitor" + File.separator + "thumbs");
+    private static final long DEFAULT_MAX_DISK_BYTES = 100L * 1024 * 1024;
+    private static final int DEFAULT_MAX_MEMORY_THUMBS = 200;
+
+    private static final String FILE_EXT = ".thumb";
+    private static final int FILE_MAGIC = 0x50_58_54_48; // "PXTH"
+
+    private final File cacheDir;
+    private final long maxDiskBytes;
+
+    // the number of bytes in the cache dir, or -1 if it wasn't scanned yet
+    private long diskBytes = -1;
+
+    // an access-ordered map, which evicts the least recently used thumbs
+    private final Map<MemoryKey, MemoryEntry> memoryCache;
+
+    // the background tasks and the explicitly requested thumbs
+    // are at the front, the prefetched thumbs at the back
+    private final LinkedBlockingDeque<Runnable> queue = new LinkedBlockingDeque<>();
+
+    public ThumbCache() {
+        this(DEFAULT_DIR, DEFAULT_MAX_DISK_BYTES, DEFAULT_MAX_MEMORY_THUMBS, 2);
+    }
+
+    public ThumbCache(File cacheDir, long maxDiskBytes, int maxMemoryThumbs, int numThreads) {
+        this.cacheDir = cacheDir;
+        this.maxDiskBytes = maxDiskBytes;
+        memoryCache = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<MemoryKey, MemoryEntry> eldest) {
+                    return size() > maxMemoryThumbs;
+                }
+            });
+
+        for (int i = 0; i < numThreads; i++) {
+            Thread worker = new Thread(this::processRequests, "thumb-cache-" + i);
+            worker.setDaemon(true);
+            worker.setPriority(Thread.NORM_PRIORITY - 1);
+            worker.start();
+        }
+    }
+
+    /**
+     * Returns the thumb of the given file if it's already in memory, otherwise null.
+     * The returned thumb might be outdated if the file was modified since
+     * the thumb was created, but a {@link #request} call replaces it.
+     */
+    public ThumbInfo getIfInMemory(File file, int maxWidth, int maxHeight) {
+        MemoryEntry entry = memoryCache.get(new MemoryKey(file, maxWidth, maxHeight));
+        return entry == null ? null : entry.thumbInfo;
+    }
+
+    /**
+     * Creates (or loads from the disk) the thumb of the given file before any
+     * prefetched thumb, and passes it to the given callback on the EDT.
+     * The tracker supplier is also called on the EDT, and only if the thumb
+     * has to be created.
+     */
+    public void request(File file, int maxWidth, int maxHeight,
+                        Supplier<ProgressTracker> trackerSupplier,
+                        Consumer<ThumbInfo> callback) {
+        var key = new MemoryKey(file, maxWidth, maxHeight);
+        queue.removeIf(task -> task instanceof Request && ((Request) task).key.equals(key));
+        queue.offerFirst(new Request(key, trackerSupplier, callback));
+    }
+
+    /**
+     * Replaces the pending prefetch requests with the given files,
+     * which are processed in the given order.
+     */
+    public void prefetch(List<File> files, int maxWidth, int maxHeight) {
+        queue.removeIf(task -> task instanceof Request && ((Request) task).isPrefetch());
+        for (File file : files) {
+            var key = new MemoryKey(file, maxWidth, maxHeight);
+            if (!memoryCache.containsKey(key)) {
+                queue.offerLast(new Request(key, null, null));
+            }
+        }
+    }
+
+    /**
+     * Runs the given task on a worker thread before the thumb requests,
+     * and passes its result to the given callback on the EDT. This is
+     * meant for the file system access that would block the EDT.
+     */
+    public <T> void runInBackground(Supplier<T> task, Consumer<T> callback) {
+        queue.offerFirst(() -> {
+            T result = task.get();
+            EventQueue.invokeLater(() -> callback.accept(result));
+        });
+    }
+
+    private void processRequests() {
+        while (true) {
+            Runnable task;
+            try {
+                task = queue.takeFirst();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (Exception e) {
+                // the exceptions shouldn't stop the worker thread
+                Messages.showExceptionOnEDT(e);
+            }
+        }
+    }
+
+    private void process(Request request) {
+        File file = request.key.file;
+        long lastModified = file.lastModified();
+        long length = file.length();
+
+        ThumbInfo thumbInfo;
+        MemoryEntry entry = memoryCache.get(request.key);
+        if (entry != null && entry.isValid(lastModified, length)) {
+            thumbInfo = entry.thumbInfo;
+        } else {
+            String diskKey = createDiskKey(request.key, lastModified, length);
+            thumbInfo = readFromDisk(diskKey);
+            if (thumbInfo == null) {
+                thumbInfo = createThumb(request);
+                if (thumbInfo.isSuccess()) {
+                    writeToDisk(diskKey, thumbInfo);
+                }
+            }
+            memoryCache.put(request.key, new MemoryEntry(thumbInfo, lastModified, length));
+        }
+
+        if (request.callback != null) {
+            ThumbInfo result = thumbInfo;
+            EventQueue.invokeLater(() -> request.callback.accept(result));
+        }
+    }
+
+    private static ThumbInfo createThumb(Request request) {
+        ProgressTracker tracker = createTracker(request.trackerSupplier);
+        MemoryKey key = request.key;
+        try {
+            ThumbInfo thumbInfo = TrackedIO.readSubsampledThumb(key.file,
+                key.maxWidth, key.maxHeight, tracker);
+            if (thumbInfo == null) { // no reader found
+                return ThumbInfo.failure(ThumbInfo.NO_PREVIEW);
+            }
+            return thumbInfo;
+        } catch (IOException e) {
+            // an unreadable file, the preview shows the error
+            return ThumbInfo.failure(ThumbInfo.PREVIEW_ERROR);
+        } catch (Exception e) {
+            Messages.showExceptionOnEDT(e);
+            return ThumbInfo.failure(ThumbInfo.PREVIEW_ERROR);
+        }
+    }
+
+    private static ProgressTracker createTracker(Supplier<ProgressTracker> supplier) {
+        if (supplier == null) {
+            return ProgressTracker.NULL_TRACKER;
+        }
+        // the trackers can be Swing objects, which must be created on the EDT
+        ProgressTracker[] tracker = {ProgressTracker.NULL_TRACKER};
+        GUIUtils.invokeAndWait(() -> tracker[0] = supplier.get());
+        return tracker[0];
+    }
+
+    private ThumbInfo readFromDisk(String key) {
+        File file = new File(cacheDir, key + FILE_EXT);
+        if (!file.exists()) {
+            return null;
+        }
+        try (var in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC) {
+                throw new IOException("invalid thumb file " + file);
+            }
+            int origWidth = in.readInt();
+            int origHeight = in.readInt();
+            BufferedImage thumb = ImageIO.read(in);
+            if (thumb == null) {
+                throw new IOException("invalid thumb file " + file);
+            }
+
+            // the modification time is used for evicting the least recently used files
+            file.setLastModified(System.currentTimeMillis());
+            return ThumbInfo.success(thumb, origWidth, origHeight);
+        } catch (IOException e) {
+            file.delete();
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, ThumbInfo thumbInfo) {
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(bytes)) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(thumbInfo.getOrigWidth());
+            out.writeInt(thumbInfo.getOrigHeight());
+            if (!ImageIO.write(thumbInfo.getThumb(), "PNG", out)) {
+                return; // unusual image type, not worth caching
+            }
+        } catch (IOException e) {
+            return;
+        }
+
+        synchronized (this) {
+            if (diskBytes < 0) {
+                if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+                    return;
+                }
+                diskBytes = calcDiskBytes(listCacheFiles());
+            }
+        }
+
+        File file = new File(cacheDir, key + FILE_EXT);
+        try {
+            // written into a temporary file first, so that
+            // other threads never see partially written files
+            File tmp = File.createTempFile("thumb", ".tmp", cacheDir);
+            Files.write(tmp.toPath(), bytes.toByteArray());
+            try {
+                Files.move(tmp.toPath(), file.toPath(), ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), file.toPath(), REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            // the thumb is still cached in memory
+            String msg = "The thumbnail cache could not be written: " + e.getMessage();
+            EventQueue.invokeLater(() -> Messages.showPlainInStatusBar(msg));
+            return;
+        }
+
+        addDiskBytes(bytes.size());
+    }
+
+    private synchronized void addDiskBytes(long numBytes) {
+        diskBytes += numBytes;
+        if (diskBytes > maxDiskBytes) {
+            evictOldFiles();
+        }
+    }
+
+    /**
+     * Deletes the least recently used files until the cache
+     * size gets comfortably below the maximum size.
+     */
+    private void evictOldFiles() {
+        File[] files = listCacheFiles();
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+
+        long size = calcDiskBytes(files);
+        long targetSize = maxDiskBytes / 10 * 9;
+        for (File file : files) {
+            if (size <= targetSize) {
+                break;
+            }
+            long fileSize = file.length();
+            if (file.delete()) {
+                size -= fileSize;
+            }
+        }
+        diskBytes = size;
+    }
+
+    private File[] listCacheFiles() {
+        File[] files = cacheDir.listFiles((dir, name) -> name.endsWith(FILE_EXT));
+        return files == null ? new File[0] : files;
+    }
+
+    private static long calcDiskBytes(File[] files) {
+        long sum = 0;
+        for (File file : files) {
+            sum += file.length();
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the number of bytes used by the thumbs written to the disk
+     */
+    public synchronized long getDiskBytes() {
+        return Math.max(0, diskBytes);
+    }
+
+    /**
+     * Returns the name of the disk cache file. Not called on the EDT,
+     * because it depends on the file system attributes of the file.
+     */
+    private static String createDiskKey(MemoryKey key, long lastModified, long length) {
+        String id = key.file.getAbsolutePath() + '|' + lastModified
+            + '|' + length + '|' + key.maxWidth + 'x' + key.maxHeight;
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1")
+                .digest(id.getBytes(StandardCharsets.UTF_8));
+            var sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class MemoryKey {
+        private final File file;
+        private final int maxWidth;
+        private final int maxHeight;
+
+        private MemoryKey(File file, int maxWidth, int maxHeight) {
+            this.file = file;
+            this.maxWidth = maxWidth;
+            this.maxHeight = maxHeight;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof MemoryKey)) {
+                return false;
+            }
+            MemoryKey other = (MemoryKey) o;
+            return maxWidth == other.maxWidth
+                && maxHeight == other.maxHeight
+                && file.equals(other.file);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(file, maxWidth, maxHeight);
+        }
+    }
+
+    /**
+     * A thumb in memory, together with the file attributes
+     * that were current when it was created.
+     */
+    private static class MemoryEntry {
+        private final ThumbInfo thumbInfo;
+        private final long lastModified;
+        private final long length;
+
+        private MemoryEntry(ThumbInfo thumbInfo, long lastModified, long length) {
+            this.thumbInfo = thumbInfo;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+
+        private boolean isValid(long currentLastModified, long currentLength) {
+            return lastModified == currentLastModified && length == currentLength;
+        }
+    }
+
+    private class Request implements Runnable {
+        private final MemoryKey key;
+        private final Supplier<ProgressTracker> trackerSupplier;
+        private final Consumer<ThumbInfo> callback; // null for the prefetch requests
+
+        private Request(MemoryKey key,
+                        Supplier<ProgressTracker> trackerSupplier,
+                        Consumer<ThumbInfo> callback) {
+            this.key = key;
+            this.trackerSupplier = trackerSupplier;
+            this.callback = callback;
+        }
+
+        private boolean isPrefetch() {
+            return callback == null;
+        }
+
+        @Override
+        public void run() {
+            process(this);
+        }
+    }
+}
@@ -33,6 +33,7 @@ import static java.awt.Color.WHITE;
 public class ThumbInfo {
     public static final String PREVIEW_ERROR = "Preview Error";
     public static final String NO_PREVIEW = "No Preview";
+    public static final String LOADING = "Loading...";
 
     private static final int SIZE_POS_X = 20;
     private static final int SIZE_POS_Y = 10;
@@ -41,41 +42,63 @@ public class ThumbInfo {
 
     // not null if the thumb wasn't generated successfully
     private final String errMsg;
+    private final Color errMsgColor;
 
     // these sizes refer to the original image, not to the thumb!
     private final int origWidth;
     private final int origHeight;
 
-    private ThumbInfo(BufferedImage thumb, int origWidth, int origHeight, String errMsg) {
+    private ThumbInfo(BufferedImage thumb, int origWidth, int origHeight,
+                      String errMsg, Color errMsgColor) {
         this.thumb = thumb;
         this.origWidth = origWidth;
         this.origHeight = origHeight;
         this.errMsg = errMsg;
+        this.errMsgColor = errMsgColor;
     }
 
     public static ThumbInfo success(BufferedImage thumb, int origWidth, int origHeight) {
-        return new ThumbInfo(thumb, origWidth, origHeight, null);
+        return new ThumbInfo(thumb, origWidth, origHeight, null, null);
     }
 
     public static ThumbInfo failure(int origWidth, int origHeight, String errMsg) {
-        return new ThumbInfo(null, origWidth, origHeight, errMsg);
+        return new ThumbInfo(null, origWidth, origHeight, errMsg, Color.RED);
     }
 
     public static ThumbInfo failure(String errMsg) {
         return failure(-1, -1, errMsg);
     }
 
+    /**
+     * Shown while the real thumb is created in the background
+     */
+    public static ThumbInfo loading() {
+        return new ThumbInfo(null, -1, -1, LOADING, Color.GRAY);
+    }
+
     public BufferedImage getThumb() {
         return thumb;
     }
 
+    public boolean isSuccess() {
+        return errMsg == null;
+    }
+
+    public int getOrigWidth() {
+        return origWidth;
+    }
+
+    public int getOrigHeight() {
+        return origHeight;
+    }
+
     public void paint(Graphics2D g, JPanel panel) {
         int width = panel.getWidth();
         int height = panel.getHeight();
         if (errMsg != null) {
             g.setColor(WHITE);
             g.fillRect(0, 0, width, height);
-            new TextPainter(errMsg, panel.getFont(), Color.RED)
+            new TextPainter(errMsg, panel.getFont(), errMsgColor)
                 .paint(g, null, width, height);
             paintImageSize(g);
             return;
@@ -21,6 +21,7 @@ import pixelitor.Composition;
 import pixelitor.layers.ImageLayer;
 import pixelitor.layers.LayerMask;
 import pixelitor.layers.MaskViewMode;
+import pixelitor.utils.MemoryInfo;
 
 import javax.swing.undo.CannotRedoException;
 import javax.swing.undo.CannotUndoException;
@@ -77,4 +78,9 @@ public class ApplyLayerMaskEdit extends PixelitorEdit {
             oldImage = null;
         }
     }
+
+    @Override
+    public long getMemoryUsage() {
+        return MemoryInfo.getImageSize(oldImage);
+    }
 }
\ No newline at end of file
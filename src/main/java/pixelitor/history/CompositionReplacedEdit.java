@@ -21,12 +21,18 @@ import pixelitor.Composition;
 import pixelitor.gui.View;
 import pixelitor.layers.MaskViewMode;
 import pixelitor.tools.Tools;
+import pixelitor.utils.MemoryInfo;
 
 import javax.swing.undo.CannotRedoException;
 import javax.swing.undo.CannotUndoException;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.NoninvertibleTransformException;
+import java.awt.image.BufferedImage;
 import java.lang.ref.SoftReference;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import static java.util.Collections.newSetFromMap;
 
 /**
  * Used when a composition is replaced either because
@@ -154,6 +160,31 @@ public class CompositionReplacedEdit extends PixelitorEdit {
         return !reload;
     }
 
+    /**
+     * Returns the size of the images of the backup composition, except
+     * for the images that it still shares with the current composition
+     */
+    @Override
+    public long getMemoryUsage() {
+        Composition backupComp = backupCompRef == null ? null : backupCompRef.get();
+        if (backupComp == null) {
+            return 0;
+        }
+
+        Set<BufferedImage> currentImages = newSetFromMap(new IdentityHashMap<>());
+        comp.forEachDrawable(dr -> currentImages.add(dr.getImage()));
+
+        long[] sum = {0};
+        Set<BufferedImage> countedImages = newSetFromMap(new IdentityHashMap<>());
+        backupComp.forEachDrawable(dr -> {
+            BufferedImage image = dr.getImage();
+            if (!currentImages.contains(image) && countedImages.add(image)) {
+                sum[0] += MemoryInfo.getImageSize(image);
+            }
+        });
+        return sum[0];
+    }
+
     @Override
     public void die() {
         super.die();
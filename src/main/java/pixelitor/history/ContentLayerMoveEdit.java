@@ -90,6 +90,22 @@ public class ContentLayerMoveEdit extends PixelitorEdit {
         layer = null;
     }
 
+    @Override
+    public long getMemoryUsage() {
+        if (imageEdit == null) {
+            return 0;
+        }
+        return imageEdit.getMemoryUsage();
+    }
+
+    @Override
+    public long moveBackupsOffHeap() {
+        if (imageEdit == null) {
+            return 0;
+        }
+        return imageEdit.moveBackupsOffHeap();
+    }
+
     @Override
     public DebugNode getDebugNode() {
         var node = super.getDebugNode();
@@ -19,6 +19,7 @@ package pixelitor.history;
 import pixelitor.Composition;
 import pixelitor.layers.Drawable;
 
+import java.awt.Dimension;
 import java.awt.image.BufferedImage;
 
 /**
@@ -38,6 +39,17 @@ public abstract class FadeableEdit extends PixelitorEdit {
 
     public abstract BufferedImage getBackupImage();
 
+    /**
+     * Returns the size of the backup image, or null if it's not available.
+     */
+    public Dimension getBackupSize() {
+        BufferedImage backupImage = getBackupImage();
+        if (backupImage == null) {
+            return null;
+        }
+        return new Dimension(backupImage.getWidth(), backupImage.getHeight());
+    }
+
     @Override
     public void die() {
         super.die();
@@ -20,10 +20,12 @@ package pixelitor.history;
 import pixelitor.ConsistencyChecks;
 import pixelitor.OpenImages;
 import pixelitor.RunContext;
+import pixelitor.io.AutoSave;
 import pixelitor.layers.Drawable;
 import pixelitor.menus.MenuAction;
 import pixelitor.utils.AppPreferences;
 import pixelitor.utils.Icons;
+import pixelitor.utils.MemoryGovernor;
 import pixelitor.utils.Messages;
 import pixelitor.utils.VisibleForTesting;
 import pixelitor.utils.debug.DebugNode;
@@ -101,12 +103,18 @@ public class History {
         // reset BEFORE posting, so that the fade menu item can become enabled
         numUndoneEdits = 0;
         undoableEditSupport.postEdit(edit);
+        AutoSave.historyChanged(edit);
 
         if (RunContext.isDevelopment()) {
             Events.postAddToHistoryEvent(edit);
 
             ConsistencyChecks.checkAll(comp, false);
         }
+
+        if (!RunContext.isUnitTesting()) {
+            // the new backup might have pushed the heap over the limit
+            MemoryGovernor.checkMemory();
+        }
     }
 
     public static PartialImageEdit createPartialImageEdit(Rectangle rect,
@@ -153,8 +161,8 @@ public class History {
     }
 
     public static void undo() {
+        PixelitorEdit edit = undoManager.getEditToBeUndone();
         if (RunContext.isDevelopment()) {
-            PixelitorEdit edit = undoManager.getEditToBeUndone();
             Events.postUndoEvent(edit);
 //            Debug.call(edit.getDebugName());
         }
@@ -164,6 +172,7 @@ public class History {
             // so that the result of undo is not fadeable
             numUndoneEdits++;
             undoManager.undo();
+            AutoSave.historyChanged(edit);
         } catch (CannotUndoException e) {
             if (RandomGUITest.isRunning()) {
                 throw new RuntimeException("No undo available", e);
@@ -175,8 +184,8 @@ public class History {
     }
 
     public static void redo() {
+        PixelitorEdit edit = undoManager.getEditToBeRedone();
         if (RunContext.isDevelopment()) {
-            PixelitorEdit edit = undoManager.getEditToBeRedone();
             Events.postRedoEvent(edit);
 //            Debug.call(edit.getDebugName());
         }
@@ -184,6 +193,7 @@ public class History {
         try {
             numUndoneEdits--; // after redo we should be fadeable again
             undoManager.redo();
+            AutoSave.historyChanged(edit);
         } catch (CannotRedoException e) {
             Messages.showException(e);
         }
@@ -356,6 +366,30 @@ public class History {
         History.ignoreEdits = ignoreEdits;
     }
 
+    /**
+     * Returns the number of heap bytes held by the history
+     */
+    public static long getMemoryUsage() {
+        return undoManager.getMemoryUsage();
+    }
+
+    public static long moveBackupsOffHeap() {
+        return undoManager.moveBackupsOffHeap();
+    }
+
+    /**
+     * Discards the oldest edits in order to release the given
+     * number of heap bytes. Returns the number of discarded edits.
+     */
+    public static int discardOldestEdits(long bytesToRelease) {
+        int numDiscarded = undoManager.discardOldestEdits(bytesToRelease);
+        if (numDiscarded > 0) {
+            // the undo/redo menu items might have to be updated
+            undoableEditSupport.postEdit(undoManager.getLastEdit());
+        }
+        return numDiscarded;
+    }
+
     public static DebugNode getDebugNode() {
         var node = new DebugNode("history", undoManager);
 
@@ -76,6 +76,16 @@ public class ImageAndMaskEdit extends ImageEdit {
         maskImageEdit.die();
     }
 
+    @Override
+    public long getMemoryUsage() {
+        return super.getMemoryUsage() + maskImageEdit.getMemoryUsage();
+    }
+
+    @Override
+    public long moveBackupsOffHeap() {
+        return super.moveBackupsOffHeap() + maskImageEdit.moveBackupsOffHeap();
+    }
+
     private void updateGUI() {
         // the two edits are set to embedded, so we update - except
         // if this edit is also embedded
@@ -19,19 +19,38 @@ package pixelitor.history;
 
 import pixelitor.Composition;
 import pixelitor.layers.Drawable;
+import pixelitor.utils.MemoryInfo;
+import pixelitor.utils.Messages;
+import pixelitor.utils.OffHeapImage;
 import pixelitor.utils.debug.DebugNode;
 
 import javax.swing.undo.CannotRedoException;
 import javax.swing.undo.CannotUndoException;
+import java.awt.Dimension;
 import java.awt.image.BufferedImage;
 import java.lang.ref.SoftReference;
+import java.util.concurrent.CompletableFuture;
+
+import static pixelitor.utils.Threads.onEDT;
+import static pixelitor.utils.Threads.onPool;
 
 /**
  * A PixelitorEdit that represents the changes made to an image.
  */
 public class ImageEdit extends FadeableEdit {
+    // backups with more pixels than this are stored off-heap
+    private static final long OFF_HEAP_MIN_PIXELS = 4_000_000;
+
     private final boolean ignoreSelection;
     private SoftReference<BufferedImage> imgRef;
+    private OffHeapImage offHeapBackup;
+
+    // the heap copy of the off-heap backup, created at most once
+    // for the repeated fade previews, and released after swapping
+    private SoftReference<BufferedImage> materializedRef;
+
+    // the heap backup that is being copied off-heap in the background
+    private BufferedImage movingOffHeap;
     protected Drawable dr;
 
     private final boolean canRepeat;
@@ -47,12 +66,11 @@ public class ImageEdit extends FadeableEdit {
 
 //        Utils.debugImage(backupImage, "Backup for " + name);
         
-        // the backup image is stored in an SoftReference
-        imgRef = new SoftReference<>(backupImage);
         this.dr = dr;
         this.canRepeat = canRepeat;
 
-        checkBackupDifferentFromActive();
+        checkBackupDifferentFromActive(backupImage);
+        setBackup(backupImage);
     }
 
     public static ImageEdit createEmbedded(Drawable dr) {
@@ -70,13 +88,50 @@ public class ImageEdit extends FadeableEdit {
 
     // the backup should never be identical to the active image
     // otherwise the backup might be also edited
-    private void checkBackupDifferentFromActive() {
+    private void checkBackupDifferentFromActive(BufferedImage backupImage) {
         BufferedImage layerImage = dr.getImage();
-        if (layerImage == imgRef.get()) {
+        if (layerImage == backupImage) {
             throw new IllegalStateException("backup image is identical to the active one");
         }
     }
 
+    private void setBackup(BufferedImage backupImage) {
+        materializedRef = null;
+        if (isLarge(backupImage)) {
+            storeOffHeap(backupImage);
+        } else {
+            // the backup image is stored in an SoftReference
+            imgRef = new SoftReference<>(backupImage);
+            offHeapBackup = null;
+        }
+    }
+
+    private void storeOffHeap(BufferedImage backupImage) {
+        if (OffHeapImage.canStore(backupImage)) {
+            // large backups are copied off-heap, where they
+            // don't put pressure on the heap, and the
+            // unused parts can be swapped out to the disk
+            useOffHeapBackup(OffHeapImage.store(backupImage));
+            return;
+        }
+        imgRef = new SoftReference<>(backupImage);
+        offHeapBackup = null;
+    }
+
+    private void useOffHeapBackup(OffHeapImage stored) {
+        offHeapBackup = stored;
+
+        // like the soft reference, the off-heap backup can be
+        // given up if the off-heap images need too much memory
+        offHeapBackup.makeReclaimable();
+        imgRef = null;
+        materializedRef = null;
+    }
+
+    private static boolean isLarge(BufferedImage img) {
+        return (long) img.getWidth() * img.getHeight() > OFF_HEAP_MIN_PIXELS;
+    }
+
     @Override
     public void undo() throws CannotUndoException {
         super.undo();
@@ -99,10 +154,13 @@ public class ImageEdit extends FadeableEdit {
      * Returns true if successful
      */
     private boolean swapImages()  {
-        BufferedImage backupImage = imgRef.get();
+        BufferedImage backupImage = getBackupImage();
         if(backupImage == null) {
             return false;
         }
+        // the backup becomes the layer image, so the
+        // materialized copy can't be shared any longer
+        releaseOffHeapBackup();
 
         BufferedImage tmp;
         if (ignoreSelection) {
@@ -112,15 +170,15 @@ public class ImageEdit extends FadeableEdit {
         }
         dr.changeImageForUndoRedo(backupImage, ignoreSelection);
 
-        // create new backup image from tmp
-        imgRef = new SoftReference<>(tmp);
-
         if(!embedded) {
             comp.imageChanged();
             dr.updateIconImage();
         }
 
-        checkBackupDifferentFromActive();
+        checkBackupDifferentFromActive(tmp);
+
+        // create new backup image from tmp
+        setBackup(tmp);
         return true;
     }
 
@@ -128,17 +186,37 @@ public class ImageEdit extends FadeableEdit {
     public void die() {
         super.die();
 
-        BufferedImage backupImage = imgRef.get();
-        if(backupImage != null) {
-            backupImage.flush();
+        if (imgRef != null) {
+            BufferedImage backupImage = imgRef.get();
+            if (backupImage != null) {
+                backupImage.flush();
+            }
         }
+        releaseOffHeapBackup();
 
         imgRef = null;
         dr = null;
     }
 
+    private void releaseOffHeapBackup() {
+        if (offHeapBackup != null) {
+            offHeapBackup.dispose();
+            offHeapBackup = null;
+        }
+        materializedRef = null;
+    }
+
     @Override
     public BufferedImage getBackupImage() {
+        if (offHeapBackup != null) {
+            BufferedImage materialized = materializedRef == null ? null : materializedRef.get();
+            if (materialized == null) {
+                // null if the off-heap backup was reclaimed
+                materialized = offHeapBackup.toBufferedImage();
+                materializedRef = materialized == null ? null : new SoftReference<>(materialized);
+            }
+            return materialized;
+        }
         if(imgRef != null) {
             // this still could be null
             return imgRef.get();
@@ -146,19 +224,83 @@ public class ImageEdit extends FadeableEdit {
         return null;
     }
 
+    @Override
+    public Dimension getBackupSize() {
+        if (offHeapBackup != null) {
+            // no need to copy the pixels back to the heap
+            return new Dimension(offHeapBackup.getWidth(), offHeapBackup.getHeight());
+        }
+        return super.getBackupSize();
+    }
+
     @Override
     public boolean canRepeat() {
         return canRepeat;
     }
 
+    @Override
+    public long getMemoryUsage() {
+        if (imgRef == null) {
+            return 0;
+        }
+        return MemoryInfo.getImageSize(imgRef.get());
+    }
+
+    /**
+     * Starts copying the heap backup off-heap in the background,
+     * and returns the number of heap bytes that will be released.
+     */
+    @Override
+    public long moveBackupsOffHeap() {
+        if (imgRef == null) {
+            return 0;
+        }
+        BufferedImage backupImage = imgRef.get();
+        if (backupImage == null || !OffHeapImage.canStore(backupImage)) {
+            return 0;
+        }
+        long size = MemoryInfo.getImageSize(backupImage);
+        if (movingOffHeap == backupImage) {
+            return size; // already started
+        }
+        movingOffHeap = backupImage;
+
+        // the backup image is never modified, so it can be copied outside the EDT
+        CompletableFuture
+            .supplyAsync(() -> OffHeapImage.store(backupImage), onPool)
+            .thenAcceptAsync(stored -> offHeapCopyFinished(backupImage, stored), onEDT)
+            .exceptionally(Messages::showExceptionOnEDT);
+        return size;
+    }
+
+    private void offHeapCopyFinished(BufferedImage backupImage, OffHeapImage stored) {
+        if (movingOffHeap == backupImage) {
+            movingOffHeap = null;
+        }
+        if (dr == null || imgRef == null || imgRef.get() != backupImage) {
+            // the edit died, or the backup was swapped in the meantime
+            stored.dispose();
+            return;
+        }
+        useOffHeapBackup(stored);
+    }
+
     @Override
     public DebugNode getDebugNode() {
         var node = super.getDebugNode();
 
-        BufferedImage img = imgRef.get();
-        if (img != null) {
-            node.addInt("backup image width", img.getWidth());
-            node.addInt("backup image height", img.getHeight());
+        if (offHeapBackup != null) {
+            node.addInt("backup image width", offHeapBackup.getWidth());
+            node.addInt("backup image height", offHeapBackup.getHeight());
+            node.addString("off-heap backup size",
+                MemoryInfo.bytesToString(offHeapBackup.getSizeInBytes()));
+            node.addBoolean("off-heap backup reclaimed", offHeapBackup.isReclaimed());
+        } else if (imgRef != null) {
+            BufferedImage img = imgRef.get();
+            if (img != null) {
+                node.addInt("backup image width", img.getWidth());
+                node.addInt("backup image height", img.getHeight());
+            }
         }
 
         return node;
@@ -87,4 +87,14 @@ public class MergeDownEdit extends PixelitorEdit {
         imageEdit.die();
         deleteLayerEdit.die();
     }
+
+    @Override
+    public long getMemoryUsage() {
+        return imageEdit.getMemoryUsage();
+    }
+
+    @Override
+    public long moveBackupsOffHeap() {
+        return imageEdit.moveBackupsOffHeap();
+    }
 }
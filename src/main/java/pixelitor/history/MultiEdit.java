@@ -95,6 +95,24 @@ public class MultiEdit extends PixelitorEdit {
         }
     }
 
+    @Override
+    public long getMemoryUsage() {
+        long sum = 0;
+        for (PixelitorEdit edit : edits) {
+            sum += edit.getMemoryUsage();
+        }
+        return sum;
+    }
+
+    @Override
+    public long moveBackupsOffHeap() {
+        long sum = 0;
+        for (PixelitorEdit edit : edits) {
+            sum += edit.moveBackupsOffHeap();
+        }
+        return sum;
+    }
+
     @Override
     public DebugNode getDebugNode() {
         var node = super.getDebugNode();
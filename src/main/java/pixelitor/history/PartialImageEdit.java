@@ -20,6 +20,7 @@ package pixelitor.history;
 import pixelitor.Composition;
 import pixelitor.layers.Drawable;
 import pixelitor.utils.ImageUtils;
+import pixelitor.utils.MemoryInfo;
 import pixelitor.utils.debug.Debug;
 import pixelitor.utils.debug.DebugNode;
 
@@ -54,6 +55,9 @@ public class PartialImageEdit extends FadeableEdit {
 
         Raster backupRaster = image.getData(this.saveRect);
         backupRasterRef = new SoftReference<>(backupRaster);
+
+        // the pixels in the saved area are modified (or were already modified)
+        dr.pixelsChanged(saveRect);
     }
 
     @Override
@@ -83,6 +87,7 @@ public class PartialImageEdit extends FadeableEdit {
             return false;
         }
 
+        dr.copyImageIfShared();
         BufferedImage image = dr.getImage();
 
         Raster tmpRaster = null;
@@ -102,6 +107,7 @@ public class PartialImageEdit extends FadeableEdit {
         }
 
         backupRasterRef = new SoftReference<>(tmpRaster);
+        dr.pixelsChanged(saveRect);
 
         comp.imageChanged();
         dr.updateIconImage();
@@ -143,6 +149,14 @@ public class PartialImageEdit extends FadeableEdit {
         return canRepeat;
     }
 
+    @Override
+    public long getMemoryUsage() {
+        if (backupRasterRef == null) {
+            return 0;
+        }
+        return MemoryInfo.getRasterSize(backupRasterRef.get());
+    }
+
     @Override
     public BufferedImage getBackupImage() {
         if (backupRasterRef == null) { // died
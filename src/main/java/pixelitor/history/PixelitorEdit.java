@@ -121,6 +121,21 @@ public abstract class PixelitorEdit extends AbstractUndoableEdit {
         return false;
     }
 
+    /**
+     * Returns the number of heap bytes held by this edit for undo/redo
+     */
+    public long getMemoryUsage() {
+        return 0;
+    }
+
+    /**
+     * Moves the backup images held by this edit out of the heap,
+     * and returns the number of heap bytes released
+     */
+    public long moveBackupsOffHeap() {
+        return 0;
+    }
+
     @Override
     public String toString() {
         return name;
@@ -284,6 +284,60 @@ public class PixelitorUndoManager extends UndoManager implements ListModel<Pixel
         userChangedSelection = true;
     }
 
+    /**
+     * Returns the number of heap bytes held by all the edits
+     */
+    public synchronized long getMemoryUsage() {
+        long sum = 0;
+        for (int i = 0; i < getSize(); i++) {
+            sum += getElementAt(i).getMemoryUsage();
+        }
+        return sum;
+    }
+
+    /**
+     * Moves the backup images of all the edits out of the heap,
+     * and returns the number of heap bytes released
+     */
+    public synchronized long moveBackupsOffHeap() {
+        long released = 0;
+        for (int i = 0; i < getSize(); i++) {
+            released += getElementAt(i).moveBackupsOffHeap();
+        }
+        return released;
+    }
+
+    /**
+     * Discards the oldest edits until at least the given number of heap
+     * bytes are released. Only the edits before the current (selected)
+     * edit are discarded: the current edit can still be undone, and the
+     * edits after it can still be redone.
+     * Returns the number of discarded edits.
+     */
+    public synchronized int discardOldestEdits(long bytesToRelease) {
+        int selectedIndex = getSelectedIndex();
+        int numToDiscard = 0;
+        long released = 0;
+        while (released < bytesToRelease && numToDiscard < selectedIndex) {
+            released += getElementAt(numToDiscard).getMemoryUsage();
+            numToDiscard++;
+        }
+        if (numToDiscard == 0) {
+            return 0;
+        }
+
+        // discard form the history
+        trimEdits(0, numToDiscard - 1);
+
+        // discard from the GUI
+        userChangedSelection = false;
+        fireIntervalRemoved(this, 0, numToDiscard - 1);
+        selectionModel.setSelectedIndex(selectedIndex - numToDiscard);
+        userChangedSelection = true;
+
+        return numToDiscard;
+    }
+
     public DebugNode getDebugNode() {
         var node = new DebugNode("edits", this);
 
@@ -0,0 +1,472 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io;
+
+import pixelitor.Composition;
+import pixelitor.OpenImages;
+import pixelitor.gui.View;
+import pixelitor.gui.utils.Dialogs;
+import pixelitor.history.FadeableEdit;
+import pixelitor.history.ImageAndMaskEdit;
+import pixelitor.history.PixelitorEdit;
+import pixelitor.layers.Drawable;
+import pixelitor.utils.AppPreferences;
+import pixelitor.utils.Messages;
+
+import javax.swing.Timer;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.text.DateFormat;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static pixelitor.utils.Threads.*;
+
+/**
+ * Periodically writes the state of the unsaved compositions into
+ * {@link RecoveryJournal} files in the background, and offers their
+ * recovery at the next startup if Pixelitor wasn't closed normally.
+ *
+ * The history edits determine which compositions need a new
+ * snapshot and which of their images changed in place. The snapshot
+ * itself is captured on the EDT without copying the pixels: only the
+ * references to the images are taken, and the pixels are read in the
+ * autosave thread, one chunk at a time.
+ */
+public class AutoSave {
+    public static final int DEFAULT_INTERVAL_SECONDS = 60;
+    public static final int DEFAULT_MAX_MB_PER_SECOND = 20;
+
+    private static final File DEFAULT_DIR = new File(System.getProperty("user.home"),
+        ".pixelitor" + File.separator + "autosave");
+
+    // a journal is rewritten if it's much larger than what its last snapshot needs
+    private static final long MIN_COMPACTION_BYTES = 16L * 1024 * 1024;
+
+    private static int intervalSeconds = AppPreferences.loadAutoSaveInterval();
+    private static int maxMBPerSecond = AppPreferences.loadAutoSaveRate();
+
+    private static File dir = DEFAULT_DIR;
+    private static Timer timer;
+
+    // the autosave state of the compositions, accessed only on the EDT
+    private static final Map<Composition, CompState> states = new IdentityHashMap<>();
+
+    // all the journal files are written on this low-priority thread, so
+    // that the autosaving doesn't delay the other IO operations
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "autosave");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private AutoSave() {
+    }
+
+    /**
+     * Starts the periodic autosaving (if it's enabled), and offers
+     * the recovery of the journals left behind by a crash.
+     */
+    public static void start() {
+        assert calledOnEDT() : threadInfo();
+
+        restartTimer();
+        offerRecoveryAsync();
+    }
+
+    private static void restartTimer() {
+        if (timer != null) {
+            timer.stop();
+            timer = null;
+        }
+        if (intervalSeconds > 0) {
+            timer = new Timer(intervalSeconds * 1000, e -> autoSave());
+            timer.start();
+        }
+    }
+
+    /**
+     * Called when an edit was added to the history, undone or redone
+     */
+    public static void historyChanged(PixelitorEdit edit) {
+        if (timer == null) {
+            return;
+        }
+        Composition comp = edit.getComp();
+        if (comp == null) { // the edit already died
+            return;
+        }
+        CompState state = states.computeIfAbsent(comp, c -> new CompState());
+        state.needsSnapshot = true;
+
+        if (edit instanceof FadeableEdit && !(edit instanceof ImageAndMaskEdit)) {
+            // the pixels of a single image might have changed in place
+            Drawable dr = ((FadeableEdit) edit).getFadingLayer();
+            if (dr != null) {
+                state.changedDrawables.add(dr);
+                return;
+            }
+        }
+        // for other edits it's not known which images changed
+        state.allImagesChanged = true;
+    }
+
+    /**
+     * Takes snapshots of the changed compositions, and schedules their writing
+     */
+    private static void autoSave() {
+        assert calledOnEDT() : threadInfo();
+
+        Set<Composition> openComps = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (View view : OpenImages.getViews()) {
+            Composition comp = view.getComp();
+            openComps.add(comp);
+
+            CompState state = states.get(comp);
+            if (!comp.isDirty()) {
+                // saved, or all the changes were undone
+                if (state != null) {
+                    state.discardJournal();
+                    states.remove(comp);
+                }
+                continue;
+            }
+            if (state == null) {
+                // dirty, but not changed through the history since autosave started
+                state = new CompState();
+                state.needsSnapshot = true;
+                state.allImagesChanged = true;
+                states.put(comp, state);
+            }
+            if (state.needsSnapshot && !state.writing) {
+                writeSnapshot(comp, state);
+            }
+        }
+
+        // the closed compositions don't need their journals anymore
+        for (var it = states.entrySet().iterator(); it.hasNext(); ) {
+            var entry = it.next();
+            if (!openComps.contains(entry.getKey())) {
+                entry.getValue().discardJournal();
+                it.remove();
+            }
+        }
+    }
+
+    private static void writeSnapshot(Composition comp, CompState state) {
+        RecoveryJournal.Snapshot snapshot;
+        try {
+            snapshot = RecoveryJournal.Snapshot.capture(comp, state.getChangedImages());
+        } catch (IOException e) {
+            showFailure(comp, e);
+            return;
+        }
+        state.needsSnapshot = false;
+        state.allImagesChanged = false;
+        state.changedDrawables.clear();
+        state.writing = true;
+
+        long bytesPerSecond = maxMBPerSecond * 1024L * 1024L;
+        CompletableFuture
+            .runAsync(() -> state.append(snapshot, bytesPerSecond), writer)
+            .handleAsync((v, e) -> {
+                state.writing = false;
+                if (e != null) {
+                    showFailure(comp, e);
+                    // try again next time with all the pixels
+                    state.needsSnapshot = true;
+                    state.allImagesChanged = true;
+                }
+                return null;
+            }, onEDT);
+    }
+
+    /**
+     * The autosaving runs in the background, and it is retried periodically,
+     * therefore its failures are shown in the status bar instead of a dialog.
+     */
+    private static void showFailure(Composition comp, Throwable e) {
+        assert calledOnEDT() : threadInfo();
+
+        while ((e instanceof CompletionException || e instanceof UncheckedIOException)
+            && e.getCause() != null) {
+            e = e.getCause();
+        }
+        Messages.showInStatusBar("Autosaving <b>" + comp.getName()
+            + "</b> failed: " + e.getMessage());
+    }
+
+    /**
+     * Called when the view of a composition is closed
+     */
+    public static void compClosed(Composition comp) {
+        CompState state = states.remove(comp);
+        if (state != null) {
+            state.discardJournal();
+        }
+    }
+
+    /**
+     * Deletes all the journals before a normal exit, because
+     * the user has already decided about the unsaved changes.
+     */
+    public static void discardAllBeforeExit() {
+        assert calledOnEDT() : threadInfo();
+
+        if (timer != null) {
+            timer.stop();
+        }
+        // an ongoing (throttled) write is interrupted
+        writer.shutdownNow();
+        try {
+            writer.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (CompState state : states.values()) {
+            state.deleteJournalFiles();
+        }
+        states.clear();
+    }
+
+    private static void offerRecoveryAsync() {
+        CompletableFuture
+            .supplyAsync(AutoSave::findRecoverables, onIOThread)
+            .thenAcceptAsync(AutoSave::offerRecovery, onEDT)
+            .exceptionally(Messages::showExceptionOnEDT);
+    }
+
+    /**
+     * Finds the last complete snapshots in the journal files that
+     * are not used by a running Pixelitor. Can be called on any thread.
+     */
+    static List<RecoveryJournal.Recoverable> findRecoverables() {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(RecoveryJournal.FILE_EXT));
+        if (files == null) {
+            return List.of();
+        }
+
+        // there could be an older and a newer journal
+        // for a composition if the app crashed while compacting
+        Arrays.sort(files, Comparator.comparing(AutoSave::getCompId)
+            .thenComparing(AutoSave::getGeneration, Comparator.reverseOrder()));
+
+        List<RecoveryJournal.Recoverable> recoverables = new ArrayList<>();
+        Set<String> foundIds = new HashSet<>();
+        for (File file : files) {
+            if (!RecoveryJournal.isOrphaned(file)) {
+                continue;
+            }
+            String compId = getCompId(file);
+            if (foundIds.contains(compId)) {
+                file.delete(); // an older journal of a recoverable composition
+                continue;
+            }
+            try {
+                var recoverable = RecoveryJournal.scan(file);
+                if (recoverable != null) {
+                    recoverables.add(recoverable);
+                    foundIds.add(compId);
+                    continue;
+                }
+            } catch (IOException e) {
+                // the user should know why the changes can't be recovered
+                Messages.showExceptionOnEDT(e);
+            }
+            file.delete(); // nothing could be recovered from it
+        }
+        return recoverables;
+    }
+
+    private static void offerRecovery(List<RecoveryJournal.Recoverable> recoverables) {
+        if (recoverables.isEmpty()) {
+            return;
+        }
+
+        DateFormat timeFormat = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
+        var msg = new StringBuilder("<html>Pixelitor wasn't closed normally. " +
+            "Recover the unsaved changes of the following images?<ul>");
+        for (var recoverable : recoverables) {
+            msg.append("<li><b>").append(recoverable.getCompName()).append("</b> (")
+                .append(timeFormat.format(new Date(recoverable.getTimeMillis())))
+                .append(")");
+        }
+        msg.append("</ul>");
+
+        boolean recover = Dialogs.showYesNoQuestionDialog("Recover Images", msg.toString());
+        for (var recoverable : recoverables) {
+            File journalFile = recoverable.getJournalFile();
+            if (!recover) {
+                journalFile.delete();
+                continue;
+            }
+            CompletableFuture
+                .supplyAsync(() -> restore(recoverable), onIOThread)
+                .thenAcceptAsync(OpenImages::addAsNewComp, onEDT)
+                .whenComplete((v, e) -> journalFile.delete())
+                .exceptionally(Messages::showExceptionOnEDT);
+        }
+    }
+
+    private static Composition restore(RecoveryJournal.Recoverable recoverable) {
+        try {
+            return recoverable.restore();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String getCompId(File journalFile) {
+        String name = journalFile.getName();
+        int index = name.lastIndexOf('-');
+        return index == -1 ? name : name.substring(0, index);
+    }
+
+    private static int getGeneration(File journalFile) {
+        String name = journalFile.getName();
+        int start = name.lastIndexOf('-') + 1;
+        int end = name.length() - RecoveryJournal.FILE_EXT.length();
+        try {
+            return Integer.parseInt(name.substring(start, end));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return 0;
+        }
+    }
+
+    public static int getIntervalSeconds() {
+        return intervalSeconds;
+    }
+
+    /**
+     * Sets the time between the autosaves, zero disables autosaving
+     */
+    public static void setIntervalSeconds(int intervalSeconds) {
+        assert intervalSeconds >= 0;
+        AutoSave.intervalSeconds = intervalSeconds;
+        if (timer != null || intervalSeconds > 0) {
+            restartTimer();
+        }
+    }
+
+    public static int getMaxMBPerSecond() {
+        return maxMBPerSecond;
+    }
+
+    /**
+     * Sets the maximum writing speed, zero means unlimited
+     */
+    public static void setMaxMBPerSecond(int maxMBPerSecond) {
+        assert maxMBPerSecond >= 0;
+        AutoSave.maxMBPerSecond = maxMBPerSecond;
+    }
+
+    static void setDir(File dir) {
+        AutoSave.dir = dir;
+    }
+
+    /**
+     * The autosave state of a composition. The journal is
+     * accessed only on the autosave thread, everything else on the EDT.
+     */
+    private static class CompState {
+        private final String id = UUID.randomUUID().toString();
+        private int generation = 0;
+        private RecoveryJournal journal;
+
+        private boolean needsSnapshot;
+        private boolean writing;
+
+        // the changes since the last snapshot
+        private boolean allImagesChanged;
+        private final Set<Drawable> changedDrawables =
+            Collections.newSetFromMap(new IdentityHashMap<>());
+
+        private Set<BufferedImage> getChangedImages() {
+            if (allImagesChanged) {
+                return null;
+            }
+            Set<BufferedImage> images = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Drawable dr : changedDrawables) {
+                images.add(dr.getImage());
+            }
+            return images;
+        }
+
+        private void append(RecoveryJournal.Snapshot snapshot, long bytesPerSecond) {
+            try {
+                if (journal == null || needsCompaction()) {
+                    // start a new journal, and delete the old one only after
+                    // the new one contains a complete snapshot
+                    RecoveryJournal oldJournal = journal;
+                    journal = null;
+                    if (!dir.exists() && !dir.mkdirs()) {
+                        throw new IOException("could not create " + dir);
+                    }
+                    generation++;
+                    journal = new RecoveryJournal(getJournalFile(generation), bytesPerSecond);
+                    journal.append(snapshot);
+                    if (oldJournal != null) {
+                        oldJournal.delete();
+                    }
+                } else {
+                    journal.append(snapshot);
+                }
+            } catch (IOException e) {
+                if (journal != null) {
+                    journal.delete();
+                    journal = null;
+                }
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private boolean needsCompaction() {
+            return journal.getNumBytes() > 2 * journal.getLiveBytes() + MIN_COMPACTION_BYTES;
+        }
+
+        private File getJournalFile(int generation) {
+            return new File(dir, id + "-" + generation + RecoveryJournal.FILE_EXT);
+        }
+
+        private void discardJournal() {
+            if (writer.isShutdown()) {
+                return;
+            }
+            writer.execute(() -> {
+                if (journal != null) {
+                    journal.delete();
+                    journal = null;
+                }
+            });
+        }
+
+        // called after the autosave thread was stopped
+        private void deleteJournalFiles() {
+            for (int i = 1; i <= generation; i++) {
+                getJournalFile(i).delete();
+            }
+        }
+    }
+}
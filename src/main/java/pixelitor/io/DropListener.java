@@ -30,6 +30,7 @@ import java.awt.dnd.DropTargetDragEvent;
 import java.awt.dnd.DropTargetDropEvent;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import static java.lang.String.format;
@@ -50,6 +51,7 @@ public class DropListener extends DropTargetAdapter {
         NEW_IMAGES {
             @Override
             public void handleDrop(List<File> list) {
+                List<File> files = new ArrayList<>();
                 for (File file : list) {
                     if (file.isDirectory()) {
                         String question = format("<html>You have dropped the folder <b>\"%s\"</b>." +
@@ -59,9 +61,14 @@ public class DropListener extends DropTargetAdapter {
                             IO.openAllImagesInDir(file);
                         }
                     } else if (file.isFile()) {
-                        IO.openFileAsync(file);
+                        files.add(file);
                     }
                 }
+                if (files.size() == 1) {
+                    IO.openFileAsync(files.get(0));
+                } else if (!files.isEmpty()) {
+                    IO.openFilesAsync(files);
+                }
             }
         },
         /**
@@ -78,6 +85,7 @@ public class DropListener extends DropTargetAdapter {
                     return;
                 }
 
+                List<File> files = new ArrayList<>();
                 for (File file : list) {
                     if (file.isDirectory()) {
                         String question = format("You have dropped the folder \"%s\".\n" +
@@ -88,9 +96,14 @@ public class DropListener extends DropTargetAdapter {
                             IO.addAllImagesInDirAsLayers(file, comp);
                         }
                     } else if (file.isFile()) {
-                        IO.loadToNewImageLayerAsync(file, comp);
+                        files.add(file);
                     }
                 }
+                if (files.size() == 1) {
+                    IO.loadToNewImageLayerAsync(files.get(0), comp);
+                } else if (!files.isEmpty()) {
+                    IO.loadToNewImageLayersAsync(files, comp);
+                }
             }
         };
 
@@ -103,6 +103,10 @@ public enum FileFormat {
         IO.saveImageToFile(img, settings);
     }
 
+    public boolean hasLayers() {
+        return hasLayers;
+    }
+
     public FileFilter getFileFilter() {
         return fileFilter;
     }
@@ -24,6 +24,7 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Stream;
 
+import static java.util.Comparator.comparing;
 import static java.util.stream.Collectors.toList;
 
 /**
@@ -119,9 +120,11 @@ public class FileUtils {
             return Collections.emptyList();
         }
 
-        // filter out crazily named directories with image file extensions
+        // filter out crazily named directories with image file extensions,
+        // and return the files in a predictable order
         return Stream.of(files)
             .filter(File::isFile)
+            .sorted(comparing(File::getName, String.CASE_INSENSITIVE_ORDER))
             .collect(toList());
     }
 }
\ No newline at end of file
@@ -19,6 +19,7 @@ package pixelitor.io;
 
 import pixelitor.Composition;
 import pixelitor.OpenImages;
+import pixelitor.ThreadPool;
 import pixelitor.automate.SingleDirChooser;
 import pixelitor.gui.utils.Dialogs;
 import pixelitor.io.magick.ImageMagick;
@@ -27,6 +28,8 @@ import pixelitor.layers.Layer;
 import pixelitor.layers.LayerMask;
 import pixelitor.layers.TextLayer;
 import pixelitor.utils.Messages;
+import pixelitor.utils.ProgressTracker;
+import pixelitor.utils.StatusBarProgressTracker;
 import pixelitor.utils.Utils;
 
 import javax.imageio.ImageWriteParam;
@@ -36,11 +39,15 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
 
 import static java.lang.String.format;
@@ -153,6 +160,14 @@ public class IO {
 
     public static void saveImageToFile(BufferedImage image,
                                        SaveSettings saveSettings) {
+        File file = saveSettings.getFile();
+        var tracker = new StatusBarProgressTracker("Writing " + file.getName(), 100);
+        saveImageToFile(image, saveSettings, tracker);
+    }
+
+    public static void saveImageToFile(BufferedImage image,
+                                       SaveSettings saveSettings,
+                                       ProgressTracker tracker) {
         FileFormat format = saveSettings.getFormat();
         File selectedFile = saveSettings.getFile();
 
@@ -164,10 +179,14 @@ public class IO {
         try {
             if (format == FileFormat.JPG) {
                 JpegSettings settings = JpegSettings.from(saveSettings);
-                Consumer<ImageWriteParam> customizer = settings.getJpegInfo().toCustomizer();
-                TrackedIO.write(image, "jpg", selectedFile, customizer);
+                Consumer<ImageWriteParam> customizer = settings.getJpegInfoFor(image).toCustomizer();
+                TrackedIO.write(image, "jpg", selectedFile, customizer, tracker);
+            } else if (format == FileFormat.PNG) {
+                PngSettings settings = PngSettings.from(saveSettings);
+                Consumer<ImageWriteParam> customizer = settings.getCompression().toCustomizer();
+                TrackedIO.write(image, "png", selectedFile, customizer, tracker);
             } else {
-                TrackedIO.write(image, format.toString(), selectedFile, null);
+                TrackedIO.write(image, format.toString(), selectedFile, null, tracker);
             }
         } catch (IOException e) {
             if (e.getMessage().contains("another process")) {
@@ -189,82 +208,187 @@ public class IO {
 
     public static void openAllImagesInDir(File dir) {
         List<File> files = FileUtils.listSupportedInputFilesIn(dir);
-        boolean found = false;
-        for (File file : files) {
-            found = true;
-            openFileAsync(file);
+        if (files.isEmpty()) {
+            showNoFilesFoundMsg(dir);
+            return;
         }
-        if (!found) {
-            String msg = format("<html>No supported image files found in <b>%s</b>.", dir.getName());
-            Messages.showInfo("No files found", msg);
+        openFilesAsync(files);
+    }
+
+    /**
+     * Opens the given files. The single-layered images are decoded
+     * in parallel, and the views are added in the order of the list.
+     */
+    public static void openFilesAsync(List<File> files) {
+        List<CompletableFuture<Composition>> comps = new ArrayList<>(files.size());
+        for (File file : files) {
+            FileFormat format = FileFormat.fromFile(file).orElse(FileFormat.JPG);
+            if (format.hasLayers()) {
+                // the layered formats are read on the IO thread
+                comps.add(format.readFrom(file));
+            } else {
+                comps.add(MultiImageLoader.load(file,
+                    (f, img) -> Composition.fromImage(img, f, null)));
+            }
         }
+
+        // only the first view is activated, the activation of the
+        // others is done when the user selects them for the first time
+        boolean[] activate = {true};
+        var tracker = new StatusBarProgressTracker("Opening Images", files.size());
+        MultiImageLoader.consumeInOrder(comps, comp -> {
+            OpenImages.addJustLoadedComp(comp, activate[0]);
+            activate[0] = false;
+        }, tracker).whenComplete((v, e) -> {
+            tracker.finished();
+            if (e != null) {
+                Messages.showExceptionOnEDT(e);
+            }
+        });
     }
 
     public static void addAllImagesInDirAsLayers(File dir, Composition comp) {
         List<File> files = FileUtils.listSupportedInputFilesIn(dir);
+        if (files.isEmpty()) {
+            showNoFilesFoundMsg(dir);
+            return;
+        }
+        loadToNewImageLayersAsync(files, comp);
+    }
+
+    /**
+     * Adds the given image files as new image layers. The images are
+     * decoded in parallel, and the layers are added in the order of the list.
+     */
+    public static void loadToNewImageLayersAsync(List<File> files, Composition comp) {
+        List<CompletableFuture<ImageAndFile>> images = new ArrayList<>(files.size());
         for (File file : files) {
-            loadToNewImageLayerAsync(file, comp);
+            images.add(MultiImageLoader.load(file, ImageAndFile::new));
+        }
+
+        var tracker = new StatusBarProgressTracker("Adding Layers", files.size());
+        MultiImageLoader.consumeInOrder(images, loaded -> comp.addExternalImageAsNewLayer(
+            loaded.image, loaded.file.getName(), "Dropped Layer"), tracker)
+            .whenComplete((v, e) -> {
+                tracker.finished();
+                if (e != null) {
+                    Messages.showExceptionOnEDT(e);
+                }
+            });
+    }
+
+    private static void showNoFilesFoundMsg(File dir) {
+        String msg = format("<html>No supported image files found in <b>%s</b>.", dir.getName());
+        Messages.showInfo("No files found", msg);
+    }
+
+    private static class ImageAndFile {
+        private final File file;
+        private final BufferedImage image;
+
+        private ImageAndFile(File file, BufferedImage image) {
+            this.file = file;
+            this.image = image;
         }
     }
 
     public static void exportLayersToPNGAsync() {
         assert calledOnEDT() : threadInfo();
 
-        boolean okPressed = SingleDirChooser.selectOutputDir();
+        boolean okPressed = SingleDirChooser.selectOutputDirForPNG();
         if (!okPressed) {
             return;
         }
 
         var comp = OpenImages.getActiveComp();
+        PngCompression compression = PngCompression.getLastUsed();
 
         CompletableFuture
-            .supplyAsync(() -> exportLayersToPNG(comp), onIOThread)
+            .supplyAsync(() -> exportLayersToPNG(comp, compression), onIOThread)
             .thenAcceptAsync(numImg -> Messages.showInStatusBar(
                 "Saved " + numImg + " images to <b>" + Dirs.getLastSave() + "</b>")
                 , onEDT)
             .exceptionally(Messages::showExceptionOnEDT);
     }
 
-    private static int exportLayersToPNG(Composition comp) {
+    private static int exportLayersToPNG(Composition comp, PngCompression compression) {
         assert calledOutsideEDT() : "on EDT";
 
-        int numSavedImages = 0;
+        List<Runnable> exportTasks = new ArrayList<>();
         for (int layerIndex = 0; layerIndex < comp.getNumLayers(); layerIndex++) {
             Layer layer = comp.getLayer(layerIndex);
+            int index = layerIndex;
             if (layer instanceof ImageLayer) {
                 ImageLayer imageLayer = (ImageLayer) layer;
                 BufferedImage image = imageLayer.getImage();
 
-                saveLayerImage(image, layer.getName(), layerIndex);
-                numSavedImages++;
+                exportTasks.add(() -> saveLayerImage(image,
+                    layer.getName(), index, compression));
             } else if (layer instanceof TextLayer) {
+                // rasterized only when the task runs, so that
+                // not all the rasterized images are in memory
                 TextLayer textLayer = (TextLayer) layer;
-                BufferedImage image = textLayer.createRasterizedImage(true);
-
-                saveLayerImage(image, layer.getName(), layerIndex);
-                numSavedImages++;
+                exportTasks.add(() -> saveLayerImage(textLayer.createRasterizedImage(true),
+                    layer.getName(), index, compression));
             }
             if (layer.hasMask()) {
                 LayerMask mask = layer.getMask();
                 BufferedImage image = mask.getImage();
 
-                saveLayerImage(image, layer.getName() + "_mask", layerIndex);
-                numSavedImages++;
+                exportTasks.add(() -> saveLayerImage(image,
+                    layer.getName() + "_mask", index, compression));
             }
         }
-        return numSavedImages;
+
+        var tracker = new StatusBarProgressTracker("Exporting Layers", exportTasks.size());
+        writeInParallel(exportTasks, tracker);
+        tracker.finished();
+
+        return exportTasks.size();
     }
 
     private static void saveLayerImage(BufferedImage image,
                                        String layerName,
-                                       int layerIndex) {
+                                       int layerIndex,
+                                       PngCompression compression) {
         assert calledOutsideEDT() : "on EDT";
 
         File outputDir = Dirs.getLastSave();
         String fileName = format("%03d_%s.png", layerIndex, Utils.toFileName(layerName));
         File file = new File(outputDir, fileName);
 
-        saveImageToFile(image, new SaveSettings(FileFormat.PNG, file));
+        // the overall progress is tracked by the caller
+        saveImageToFile(image, new PngSettings(compression, file),
+            ProgressTracker.NULL_TRACKER);
+    }
+
+    /**
+     * Runs the given writing tasks in parallel, but with only a few
+     * of them in flight at a time, so that they don't hold too much
+     * memory and don't flood the thread pool shared with the filters.
+     * Must be called on the IO thread. The first failure is rethrown
+     * after canceling the tasks that haven't started yet.
+     */
+    private static void writeInParallel(List<Runnable> writeTasks, ProgressTracker tracker) {
+        assert calledOutsideEDT() : "on EDT";
+
+        int maxInFlight = ThreadPool.getNumCores();
+        Deque<Future<?>> inFlight = new ArrayDeque<>();
+        try {
+            for (Runnable task : writeTasks) {
+                if (inFlight.size() == maxInFlight) {
+                    ThreadPool.getResult(inFlight.removeFirst());
+                    tracker.unitDone();
+                }
+                inFlight.addLast(ThreadPool.submit(task));
+            }
+            while (!inFlight.isEmpty()) {
+                ThreadPool.getResult(inFlight.removeFirst());
+                tracker.unitDone();
+            }
+        } finally {
+            inFlight.forEach(future -> future.cancel(false));
+        }
     }
 
     public static void saveCurrentImageInAllFormats() {
@@ -275,12 +399,26 @@ public class IO {
         File saveDir = Dirs.getLastSave();
         if (saveDir != null) {
             var comp = OpenImages.getActiveComp();
+            // calculate the cached composite image before
+            // the single-layered formats need it in parallel
+            comp.getCompositeImage();
+
             FileFormat[] fileFormats = FileFormat.values();
+            List<Runnable> saveTasks = new ArrayList<>(fileFormats.length);
             for (FileFormat format : fileFormats) {
                 File f = new File(saveDir, "all_formats." + format);
-                var saveSettings = new SaveSettings(format, f);
-                comp.saveAsync(saveSettings, false).join();
+                saveTasks.add(format.getSaveTask(comp, new SaveSettings(format, f)));
             }
+
+            CompletableFuture
+                .runAsync(() -> {
+                    var tracker = new StatusBarProgressTracker("Saving in All Formats", saveTasks.size());
+                    writeInParallel(saveTasks, tracker);
+                    tracker.finished();
+                }, onIOThread)
+                .thenRunAsync(() -> Messages.showInStatusBar("Saved " + saveTasks.size()
+                    + " images to <b>" + saveDir + "</b>"), onEDT)
+                .exceptionally(Messages::showExceptionOnEDT);
         }
     }
 
@@ -37,6 +37,10 @@ public class JpegInfo {
         this.progressive = progressive;
     }
 
+    public boolean isProgressive() {
+        return progressive;
+    }
+
     public Consumer<ImageWriteParam> toCustomizer() {
         return imageWriteParam -> {
             if (progressive) {
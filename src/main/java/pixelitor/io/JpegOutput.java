@@ -17,6 +17,7 @@
 
 package pixelitor.io;
 
+import pixelitor.ThreadPool;
 import pixelitor.utils.Messages;
 import pixelitor.utils.ProgressTracker;
 import pixelitor.utils.SubtaskProgressTracker;
@@ -24,10 +25,13 @@ import pixelitor.utils.SubtaskProgressTracker;
 import javax.imageio.ImageIO;
 import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
 
 /**
  * Utility class with static methods related to writing JPEG images
@@ -43,7 +47,8 @@ public final class JpegOutput {
         try {
             // writes the JPEG format with the given settings to memory...
             // approximately 70% of the total time is spent here
-            ImageOutputStream ios = ImageIO.createImageOutputStream(bos);
+            // a memory cache is used instead of the default temporary file
+            ImageOutputStream ios = new MemoryCacheImageOutputStream(bos);
             var pt1 = new SubtaskProgressTracker(0.7, pt);
             TrackedIO.writeToIOS(image, ios, "jpg", pt1, config.toCustomizer());
 
@@ -66,6 +71,93 @@ public final class JpegOutput {
         return new ImageWithSize(previewImage, sizeInBytes);
     }
 
+    /**
+     * Returns the number of bytes in the JPEG encoding of the given image,
+     * without keeping the encoded bytes in memory.
+     */
+    public static int calcEncodedSize(BufferedImage image, JpegInfo config) throws IOException {
+        var counter = new ByteCountingOutputStream();
+        try (ImageOutputStream ios = new MemoryCacheImageOutputStream(counter)) {
+            TrackedIO.writeToIOS(image, ios, "jpg", ProgressTracker.NULL_TRACKER, config.toCustomizer());
+        }
+        return counter.count;
+    }
+
+    /**
+     * Finds the highest quality (in percents) for which the encoded image
+     * is not larger than the given number of bytes. Instead of a binary search,
+     * the image is encoded with several qualities in parallel in each step,
+     * and the search continues between the highest quality that fits and the
+     * lowest one that doesn't. If even the lowest quality doesn't fit, 1 is returned.
+     */
+    public static int findQualityForSize(BufferedImage image, long maxBytes,
+                                         boolean progressive) throws IOException {
+        return findQualityForSize(image, maxBytes, progressive, () -> false);
+    }
+
+    /**
+     * Like {@link #findQualityForSize(BufferedImage, long, boolean)}, but
+     * the search stops early and returns -1 if the given condition becomes true.
+     */
+    public static int findQualityForSize(BufferedImage image, long maxBytes,
+                                         boolean progressive,
+                                         BooleanSupplier isCancelled) throws IOException {
+        int numParallel = Math.max(2, ThreadPool.getNumCores());
+
+        int bestFitting = 0; // 0 means that no fitting quality was found
+        int lowestTooLarge = 101;
+        while (lowestTooLarge - bestFitting > 1) {
+            if (isCancelled.getAsBoolean()) {
+                return -1;
+            }
+            // evenly distributed qualities strictly between the known bounds
+            int numCandidates = Math.min(numParallel, lowestTooLarge - bestFitting - 1);
+            int[] qualities = new int[numCandidates];
+            List<Future<Integer>> sizes = new ArrayList<>(numCandidates);
+            for (int i = 0; i < numCandidates; i++) {
+                int quality = bestFitting + (int) Math.round(
+                    (i + 1) * (lowestTooLarge - bestFitting) / (double) (numCandidates + 1));
+                qualities[i] = quality;
+                var config = new JpegInfo(quality / 100.0f, progressive);
+                sizes.add(ThreadPool.submit2(() ->
+                    isCancelled.getAsBoolean() ? -1 : calcEncodedSize(image, config)));
+            }
+
+            // the size grows with the quality, so the first
+            // candidate that doesn't fit is the new upper bound
+            int newLowestTooLarge = lowestTooLarge;
+            for (int i = 0; i < numCandidates; i++) {
+                int size = ThreadPool.getIOResult(sizes.get(i));
+                if (size < 0) { // cancelled
+                    sizes.forEach(future -> future.cancel(false));
+                    return -1;
+                }
+                if (size > maxBytes) {
+                    newLowestTooLarge = qualities[i];
+                    break;
+                }
+                bestFitting = qualities[i];
+            }
+            lowestTooLarge = newLowestTooLarge;
+            sizes.forEach(future -> future.cancel(false));
+        }
+        return Math.max(1, bestFitting);
+    }
+
+    private static class ByteCountingOutputStream extends OutputStream {
+        private int count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
     static class ImageWithSize {
         final BufferedImage image;
         final int size;
@@ -17,7 +17,9 @@
 
 package pixelitor.io;
 
+import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
 
 /**
  * Settings for writing JPEG images
@@ -25,9 +27,28 @@ import java.io.File;
 public class JpegSettings extends SaveSettings {
     private final JpegInfo jpegInfo;
 
+    // if positive, the quality is chosen so that
+    // the file is not larger than this number of bytes
+    private final long maxBytes;
+
     public JpegSettings(JpegInfo jpegInfo, File outputFile) {
+        this(jpegInfo, 0, outputFile);
+    }
+
+    private JpegSettings(JpegInfo jpegInfo, long maxBytes, File outputFile) {
         super(FileFormat.JPG, outputFile);
         this.jpegInfo = jpegInfo;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns settings which use the highest quality
+     * that keeps the file within the given size.
+     */
+    public static JpegSettings withMaxSize(long maxBytes, boolean progressive, File outputFile) {
+        assert maxBytes > 0;
+        // the quality is replaced by the searched one
+        return new JpegSettings(new JpegInfo(1.0f, progressive), maxBytes, outputFile);
     }
 
     public static JpegSettings from(SaveSettings settings) {
@@ -39,7 +60,17 @@ public class JpegSettings extends SaveSettings {
                 settings.getFile());
     }
 
-    public JpegInfo getJpegInfo() {
-        return jpegInfo;
+    /**
+     * Returns the configuration for writing the given image. If a maximal
+     * size was given, the quality is searched with several encodings,
+     * therefore this shouldn't be called on the EDT.
+     */
+    public JpegInfo getJpegInfoFor(BufferedImage image) throws IOException {
+        if (maxBytes <= 0) {
+            return jpegInfo;
+        }
+        boolean progressive = jpegInfo.isProgressive();
+        int quality = JpegOutput.findQualityForSize(image, maxBytes, progressive);
+        return new JpegInfo(quality / 100.0f, progressive);
     }
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io;
+
+import pixelitor.ThreadPool;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Runs IO tasks in parallel on the thread pool, and passes their results
+ * to a consumer in the submission order. The memory needed by a task is
+ * reserved from a budget when it's submitted, and it's given back only
+ * after the consumer is done with the result. If the budget is exhausted,
+ * the submitting thread consumes the oldest results first.
+ *
+ * Not thread-safe: the tasks must be submitted and consumed by the same thread.
+ */
+class MemoryBoundedTasks<T> {
+    /**
+     * Receives the results of the tasks
+     */
+    interface Consumer<T> {
+        void accept(String name, T result) throws IOException;
+    }
+
+    private final long budgetKB;
+    private final Consumer<T> consumer;
+    private final Deque<Task<T>> pending = new ArrayDeque<>();
+    private long reservedKB = 0;
+
+    MemoryBoundedTasks(long budgetKB, Consumer<T> consumer) {
+        this.budgetKB = budgetKB;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Submits the given task, after waiting for enough memory.
+     * A task that needs more memory than the whole budget
+     * is started when no other task holds memory.
+     */
+    void submit(String name, long memoryKB, Callable<T> task) throws IOException {
+        while (reservedKB + memoryKB > budgetKB && !pending.isEmpty()) {
+            consumeOldest();
+        }
+        reservedKB += memoryKB;
+        pending.addLast(new Task<>(name, memoryKB, ThreadPool.submit2(task)));
+    }
+
+    /**
+     * Waits for all the submitted tasks, and consumes their results.
+     */
+    void finish() throws IOException {
+        while (!pending.isEmpty()) {
+            consumeOldest();
+        }
+    }
+
+    /**
+     * Cancels the tasks that were not consumed yet, so that they don't
+     * access resources (like a zip file) that are closed after an error.
+     */
+    void cancelPending() {
+        for (Task<T> task : pending) {
+            task.future.cancel(false);
+        }
+        pending.clear();
+        reservedKB = 0;
+    }
+
+    long getReservedKB() {
+        return reservedKB;
+    }
+
+    private void consumeOldest() throws IOException {
+        Task<T> task = pending.removeFirst();
+        try {
+            consumer.accept(task.name, ThreadPool.getIOResult(task.future));
+        } finally {
+            reservedKB -= task.memoryKB;
+        }
+    }
+
+    private static class Task<T> {
+        private final String name;
+        private final long memoryKB;
+        private final Future<T> future;
+
+        private Task(String name, long memoryKB, Future<T> future) {
+            this.name = name;
+            this.memoryKB = memoryKB;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io;
+
+import pixelitor.utils.ProgressTracker;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+import static pixelitor.utils.Threads.onEDT;
+import static pixelitor.utils.Threads.onPool;
+
+/**
+ * Loads multiple single-layered image files in parallel on the thread pool,
+ * instead of one after the other on the IO thread. The memory needed by
+ * the decodings that run at the same time is limited based on the image
+ * sizes found in the file headers, and the results are handed over
+ * on the EDT in the original order of the files.
+ */
+class MultiImageLoader {
+    // limits the temporary memory used by the images that are decoded in parallel
+    private static final int DECODING_BUDGET_KB = (int) Math.min(
+        Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 4 / 1024);
+
+    private static final Semaphore decodingBudget = new Semaphore(DECODING_BUDGET_KB);
+
+    private MultiImageLoader() {
+    }
+
+    /**
+     * Starts decoding the given file on the thread pool. The converter also
+     * runs on the pool, and its memory usage is counted with the decoding.
+     */
+    static <T> CompletableFuture<T> load(File file,
+                                         BiFunction<File, BufferedImage, T> converter) {
+        return CompletableFuture.supplyAsync(() -> {
+            int kb = estimateDecodingMemoryKB(file);
+            decodingBudget.acquireUninterruptibly(kb);
+            try {
+                BufferedImage img = TrackedIO.uncheckedRead(file, ProgressTracker.NULL_TRACKER);
+                return converter.apply(file, img);
+            } finally {
+                decodingBudget.release(kb);
+            }
+        }, onPool);
+    }
+
+    /**
+     * Passes the results of the given futures to the consumer on the EDT,
+     * in the order of the list: a result is passed only after all the
+     * previous ones. A failed loading or a failure of the consumer
+     * is reported, but it doesn't stop the others. The tracker is updated on the EDT for every future.
+     */
+    static <T> CompletableFuture<Void> consumeInOrder(List<CompletableFuture<T>> futures,
+                                                      Consumer<T> consumer,
+                                                      ProgressTracker tracker) {
+        CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+        for (var future : futures) {
+            CompletableFuture<T> recovered = future.handle((result, e) -> {
+                if (e != null) {
+                    IO.checkForReadingProblems(e);
+                    return null;
+                }
+                return result;
+            });
+            chain = chain.thenCombineAsync(recovered, (v, result) -> {
+                if (result != null) {
+                    try {
+                        consumer.accept(result);
+                    } catch (RuntimeException e) {
+                        // otherwise the rest of the chain would fail
+                        IO.checkForReadingProblems(e);
+                    }
+                }
+                tracker.unitDone();
+                return null;
+            }, onEDT);
+        }
+        return chain;
+    }
+
+    /**
+     * Estimates the temporary memory needed for decoding the given
+     * file, based on the image size found in its header.
+     */
+    private static int estimateDecodingMemoryKB(File file) {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (readers.hasNext()) {
+                ImageReader reader = readers.next();
+                try {
+                    reader.setInput(iis, true, true);
+                    long numPixels = (long) reader.getWidth(0) * reader.getHeight(0);
+
+                    // the decoded image and its system-compatible
+                    // copy can be in memory at the same time
+                    long kb = numPixels * 4 * 2 / 1024 + 1;
+                    return (int) Math.min(kb, DECODING_BUDGET_KB);
+                } finally {
+                    reader.dispose();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // let the decoder report the problem
+        }
+        return 1;
+    }
+}
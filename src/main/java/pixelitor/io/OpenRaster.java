@@ -29,11 +29,16 @@ import pixelitor.layers.ImageLayer;
 import pixelitor.layers.Layer;
 import pixelitor.utils.*;
 
+import javax.imageio.stream.MemoryCacheImageOutputStream;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
@@ -49,6 +54,10 @@ import static java.nio.charset.StandardCharsets.UTF_8;
  */
 public class OpenRaster {
     private static final String MERGED_IMAGE_NAME = "mergedimage.png";
+    private static final int PNG_HEADER_SIZE = 24;
+
+    // limits the memory used by the images that are encoded or decoded in parallel
+    private static final long MEMORY_BUDGET_KB = Runtime.getRuntime().maxMemory() / 4 / 1024;
 
     private OpenRaster() {
     }
@@ -62,10 +71,8 @@ public class OpenRaster {
     }
 
     public static void write(Composition comp, File outFile) throws IOException {
-        var mainTracker = new StatusBarProgressTracker("Writing " + outFile.getName(), 100);
-
-        var fos = new FileOutputStream(outFile);
-        var zos = new ZipOutputStream(fos);
+        int numImages = comp.getNumImageLayers() + 1; // +1 for the merged image
+        var mainTracker = new StatusBarProgressTracker("Writing " + outFile.getName(), numImages);
 
         String stackXML = format("""
             <?xml version='1.0' encoding='UTF-8'?>
@@ -73,48 +80,74 @@ public class OpenRaster {
             <stack>
             """, comp.getCanvasWidth(), comp.getCanvasHeight());
 
-        int numLayers = comp.getNumLayers();
-        int numImageLayers = comp.getNumImageLayers() + 1; // +1 for the merged image
-        double workRatio = 1.0 / numImageLayers;
-
         // Reverse iteration: in stack.xml the first element in a stack is the uppermost.
+        List<ImageLayer> imageLayers = new ArrayList<>();
+        List<Integer> layerIndices = new ArrayList<>();
+        List<BufferedImage> layerImages = new ArrayList<>();
+        int numLayers = comp.getNumLayers();
         for (int i = numLayers - 1; i >= 0; i--) {
             Layer layer = comp.getLayer(i);
             if (layer instanceof ImageLayer) {
                 ImageLayer imageLayer = (ImageLayer) layer;
-                var subTracker = new SubtaskProgressTracker(workRatio, mainTracker);
-                stackXML += writeLayer(imageLayer, i, zos, subTracker);
+                imageLayers.add(imageLayer);
+                layerIndices.add(i);
+                layerImages.add(imageLayer.getImage());
             }
         }
 
-        // add merged image
-        zos.putNextEntry(new ZipEntry(MERGED_IMAGE_NAME));
-        var subTaskTracker = new SubtaskProgressTracker(workRatio, mainTracker);
-        var img = comp.getCompositeImage();
-        TrackedIO.writeToStream(img, zos, "PNG", subTaskTracker);
-        zos.closeEntry();
+        // the layer images are saved without their transparent borders,
+        // and the offsets of the trimmed images are saved in stack.xml
+        List<Rectangle> trimRects = ImageTrimUtil.getTrimRects(layerImages);
+
+        try (var zos = new ZipOutputStream(new FileOutputStream(outFile))) {
+            // The PNG encoding of the images runs in parallel, and
+            // the encoded images are appended to the zip in order.
+            var encoder = new MemoryBoundedTasks<byte[]>(MEMORY_BUDGET_KB, (name, png) -> {
+                putStoredEntry(zos, name, png);
+                mainTracker.unitDone();
+            });
+            try {
+                for (int j = 0; j < imageLayers.size(); j++) {
+                    Rectangle trimRect = trimRects.get(j);
+                    if (trimRect.isEmpty()) {
+                        // a transparent layer is saved as a single transparent pixel
+                        trimRect = new Rectangle(1, 1);
+                    }
+                    int layerIndex = layerIndices.get(j);
+                    stackXML += createLayerXML(imageLayers.get(j), layerIndex, trimRect);
+                    BufferedImage image = layerImages.get(j).getSubimage(
+                        trimRect.x, trimRect.y, trimRect.width, trimRect.height);
+                    encoder.submit(format("data/%d.png", layerIndex),
+                        estimateMemoryKB(image.getWidth(), image.getHeight()),
+                        () -> encodePNG(image));
+                }
+                var mergedImage = comp.getCompositeImage();
+                encoder.submit(MERGED_IMAGE_NAME,
+                    estimateMemoryKB(mergedImage.getWidth(), mergedImage.getHeight()),
+                    () -> encodePNG(mergedImage));
+                encoder.finish();
+            } finally {
+                encoder.cancelPending();
+            }
 
-        stackXML += "</stack>\n</image>";
+            stackXML += "</stack>\n</image>";
 
-        // write the stack.xml file
-        zos.putNextEntry(new ZipEntry("stack.xml"));
-        zos.write(stackXML.getBytes(UTF_8));
-        zos.closeEntry();
+            // write the stack.xml file
+            zos.putNextEntry(new ZipEntry("stack.xml"));
+            zos.write(stackXML.getBytes(UTF_8));
+            zos.closeEntry();
 
-        // write the mimetype
-        zos.putNextEntry(new ZipEntry("mimetype"));
-        zos.write("image/openraster".getBytes(UTF_8));
-        zos.closeEntry();
-        zos.close();
+            // write the mimetype
+            zos.putNextEntry(new ZipEntry("mimetype"));
+            zos.write("image/openraster".getBytes(UTF_8));
+            zos.closeEntry();
+        }
 
         mainTracker.finished();
     }
 
-    private static String writeLayer(ImageLayer layer,
-                                     int layerIndex,
-                                     ZipOutputStream zos,
-                                     ProgressTracker pt) throws IOException {
-        String stackXML = format(Locale.ENGLISH,
+    private static String createLayerXML(ImageLayer layer, int layerIndex, Rectangle trimRect) {
+        return format(Locale.ENGLISH,
             "<layer name=\"%s\" visibility=\"%s\" composite-op=\"%s\" " +
                 "opacity=\"%f\" src=\"data/%d.png\" x=\"%d\" y=\"%d\"/>\n",
             layer.getName(),
@@ -122,45 +155,75 @@ public class OpenRaster {
             layer.getBlendingMode().toSVGName(),
             layer.getOpacity(),
             layerIndex,
-            layer.getTx(),
-            layer.getTy());
+            layer.getTx() + trimRect.x,
+            layer.getTy() + trimRect.y);
+    }
 
-        var entry = new ZipEntry(format("data/%d.png", layerIndex));
-        zos.putNextEntry(entry);
-        BufferedImage image = layer.getImage();
+    private static byte[] encodePNG(BufferedImage image) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        // ImageIO.createImageOutputStream would use a
+        // temporary file as a cache, which is much slower
+        try (var ios = new MemoryCacheImageOutputStream(bytes)) {
+            TrackedIO.writeToIOS(image, ios, "PNG", ProgressTracker.NULL_TRACKER, null);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes already compressed data without deflating it again,
+     * because that would only waste time on the writing thread.
+     */
+    private static void putStoredEntry(ZipOutputStream zos, String name, byte[] data) throws IOException {
+        var crc = new CRC32();
+        crc.update(data);
 
-        TrackedIO.writeToStream(image, zos, "PNG", pt);
+        var entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        entry.setCompressedSize(data.length);
+        entry.setCrc(crc.getValue());
 
+        zos.putNextEntry(entry);
+        zos.write(data);
         zos.closeEntry();
-        return stackXML;
     }
 
     public static Composition read(File file) throws IOException, ParserConfigurationException, SAXException {
         String stackXML = null;
-        var mainTracker = new StatusBarProgressTracker("Reading " + file.getName(), 100);
         Map<String, BufferedImage> images = new HashMap<>();
         try (ZipFile zipFile = new ZipFile(file)) {
             // first iterate to count the image files...
             int numImageFiles = countNumImageFiles(zipFile);
-            double workRatio = 1.0 / numImageFiles;
-
-            // ...then iterate again to actually read the files
-            var fileEntries = zipFile.entries();
-            while (fileEntries.hasMoreElements()) {
-                ZipEntry entry = fileEntries.nextElement();
-                String name = entry.getName();
-
-                if (name.equalsIgnoreCase("stack.xml")) {
-                    stackXML = extractString(zipFile.getInputStream(entry));
-                } else if (name.equalsIgnoreCase(MERGED_IMAGE_NAME)) {
-                    // no need for that
-                } else if (FileUtils.hasPNGExtension(name)) {
-                    var subTracker = new SubtaskProgressTracker(workRatio, mainTracker);
-                    var stream = zipFile.getInputStream(entry);
-                    var image = TrackedIO.readFromStream(stream, subTracker);
-                    images.put(name, image);
+            var mainTracker = new StatusBarProgressTracker("Reading " + file.getName(), numImageFiles);
+
+            // ...then iterate again to start decoding the images in parallel
+            var decoder = new MemoryBoundedTasks<BufferedImage>(MEMORY_BUDGET_KB, (name, image) -> {
+                images.put(name, image);
+                mainTracker.unitDone();
+            });
+            try {
+                var fileEntries = zipFile.entries();
+                while (fileEntries.hasMoreElements()) {
+                    ZipEntry entry = fileEntries.nextElement();
+                    String name = entry.getName();
+
+                    if (name.equalsIgnoreCase("stack.xml")) {
+                        stackXML = extractString(zipFile.getInputStream(entry));
+                    } else if (name.equalsIgnoreCase(MERGED_IMAGE_NAME)) {
+                        // no need for that
+                    } else if (FileUtils.hasPNGExtension(name)) {
+                        // waits until there is enough memory for decoding this image
+                        decoder.submit(name, estimateDecodingMemoryKB(zipFile, entry),
+                            () -> decodePNG(zipFile, entry));
+                    }
                 }
+                decoder.finish();
+            } finally {
+                // if something went wrong, don't let the
+                // remaining tasks read from the closed zip file
+                decoder.cancelPending();
             }
+            mainTracker.finished();
         }
 
         if (stackXML == null) {
@@ -197,7 +260,6 @@ public class OpenRaster {
             String layerY = element.getAttribute("y");
 
             BufferedImage image = images.get(layerImageSource);
-            image = ImageUtils.toSysCompatibleImage(image);
 
             if (layerVisibility == null || layerVisibility.isEmpty()) {
                 //workaround: paint.net exported files use "visible" attribute instead of "visibility"
@@ -207,6 +269,24 @@ public class OpenRaster {
 
             int tx = Utils.parseInt(layerX, 0);
             int ty = Utils.parseInt(layerY, 0);
+
+            // The layer images can be trimmed (Pixelitor also saves
+            // them like that), but the image of an image layer must
+            // cover the canvas, therefore the missing parts are added.
+            var imageBounds = new Rectangle(tx, ty, image.getWidth(), image.getHeight());
+            var canvasBounds = new Rectangle(compWidth, compHeight);
+            if (!imageBounds.contains(canvasBounds)) {
+                Rectangle covering = imageBounds.union(canvasBounds);
+                BufferedImage coveringImage = ImageUtils.createSysCompatibleImage(
+                    covering.width, covering.height);
+                Graphics2D g = coveringImage.createGraphics();
+                g.drawImage(image, tx - covering.x, ty - covering.y, null);
+                g.dispose();
+
+                image = coveringImage;
+                tx = covering.x;
+                ty = covering.y;
+            }
             ImageLayer layer = new ImageLayer(comp, image, layerName,
                 null, tx, ty);
 
@@ -220,11 +300,50 @@ public class OpenRaster {
             comp.addLayerInInitMode(layer);
         }
 
-        mainTracker.finished();
-
         return comp;
     }
 
+    private static BufferedImage decodePNG(ZipFile zipFile, ZipEntry entry) throws IOException {
+        try (var stream = zipFile.getInputStream(entry)) {
+            var image = TrackedIO.readFromStream(stream, ProgressTracker.NULL_TRACKER);
+            if (image == null) {
+                throw new IOException("Could not decode " + entry.getName());
+            }
+            // also converted here, in parallel
+            return ImageUtils.toSysCompatibleImage(image);
+        }
+    }
+
+    /**
+     * Estimates the temporary memory needed for decoding the given PNG
+     * entry, based on the image size found in its header.
+     */
+    private static long estimateDecodingMemoryKB(ZipFile zipFile, ZipEntry entry) throws IOException {
+        byte[] header;
+        try (var stream = zipFile.getInputStream(entry)) {
+            // the 8-byte signature is followed by the IHDR chunk,
+            // which starts with the width and the height
+            header = stream.readNBytes(PNG_HEADER_SIZE);
+        }
+        if (header.length < PNG_HEADER_SIZE) {
+            return 1; // let the decoder report the error
+        }
+        var buffer = ByteBuffer.wrap(header);
+        return estimateMemoryKB(Integer.toUnsignedLong(buffer.getInt(16)),
+            Integer.toUnsignedLong(buffer.getInt(20)));
+    }
+
+    /**
+     * Estimates the memory needed while an image is encoded or decoded.
+     * When decoding, the decoded image and its system-compatible copy
+     * can be in memory at the same time. When encoding, the encoded
+     * bytes are buffered and copied, and in the worst case they are
+     * as large as the raw pixels.
+     */
+    private static long estimateMemoryKB(long width, long height) {
+        return width * height * 4 * 2 / 1024 + 1;
+    }
+
     private static int countNumImageFiles(ZipFile zipFile) {
         Enumeration<? extends ZipEntry> fileEntries = zipFile.entries();
         int numImageFiles = 0;
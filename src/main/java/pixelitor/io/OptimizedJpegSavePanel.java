@@ -17,12 +17,12 @@
 
 package pixelitor.io;
 
+import pixelitor.filters.gui.FilterSetting.EnabledReason;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.gui.utils.DialogBuilder;
 import pixelitor.gui.utils.GUIUtils;
 import pixelitor.gui.utils.ImagePanel;
 import pixelitor.gui.utils.SliderSpinner;
-import pixelitor.io.JpegOutput.ImageWithSize;
 import pixelitor.tools.HandToolSupport;
 import pixelitor.utils.*;
 
@@ -30,8 +30,12 @@ import javax.swing.*;
 import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
+import java.awt.Graphics2D;
 import java.awt.GridLayout;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.concurrent.CompletableFuture;
 
 import static java.awt.BorderLayout.CENTER;
@@ -48,16 +52,47 @@ import static pixelitor.utils.Threads.onPool;
 public class OptimizedJpegSavePanel extends JPanel {
     private static final int GRID_HOR_GAP = 10;
     private static final int GRID_VER_GAP = 10;
+
+    // the preview is recalculated only after the user stopped adjusting
+    private static final int PREVIEW_DELAY_MILLIS = 150;
+
+    // the crop is aligned to the JPEG blocks (16x16 with chroma subsampling)
+    // so that the preview has the same artifacts as the full image
+    private static final int BLOCK_SIZE = 16;
+
+    private static final int DEFAULT_TARGET_KB = 500;
+
     private final BufferedImage image;
     private ImagePanel optimized;
+    private BufferedImage previewImage;
     private RangeParam qualityParam;
     private JLabel sizeLabel;
     private ImagePanel original;
     private JCheckBox progressiveCB;
+    private JCheckBox targetSizeCB;
+    private JSpinner targetSizeSpinner;
     private ProgressPanel progressPanel;
+    private JViewport optimizedViewport;
+    private JButton saveButton;
+
+    private final Timer previewTimer;
+
+    // incremented for each new preview request, the results
+    // and the tasks of the older requests are discarded
+    private volatile int previewGeneration = 0;
+    private CompletableFuture<?> previewFuture;
+    private CompletableFuture<?> sizeFuture;
+
+    // incremented for each new target size search, the older
+    // searches notice it and stop without finishing
+    private volatile int searchGeneration = 0;
 
     private OptimizedJpegSavePanel(BufferedImage image) {
         this.image = image;
+        previewImage = ImageUtils.copyImage(image);
+
+        previewTimer = new Timer(PREVIEW_DELAY_MILLIS, e -> updatePreviewAsync());
+        previewTimer.setRepeats(false);
 
         JPanel controlsPanel = createControlsPanel();
         JPanel comparePanel = createComparePanel(image);
@@ -66,7 +101,8 @@ public class OptimizedJpegSavePanel extends JPanel {
         add(comparePanel, CENTER);
         add(controlsPanel, SOUTH);
 
-        updatePreviewAsync();
+        // the first preview is calculated after the dialog is laid out
+        previewTimer.start();
     }
 
     private JPanel createComparePanel(BufferedImage image) {
@@ -78,6 +114,7 @@ public class OptimizedJpegSavePanel extends JPanel {
         original.setImage(image);
 
         optimized = createViewPanel(imageSize);
+        optimized.setImage(previewImage);
 
         setupScrollPanes(comparePanel);
 
@@ -92,6 +129,11 @@ public class OptimizedJpegSavePanel extends JPanel {
         comparePanel.add(optimizedSP);
 
         GUIUtils.shareScrollModels(originalSP, optimizedSP);
+
+        // only the visible part is previewed, therefore
+        // scrolling requires a new preview
+        optimizedViewport = optimizedSP.getViewport();
+        optimizedViewport.addChangeListener(e -> schedulePreview());
     }
 
     private static JScrollPane createScrollPane(ImagePanel original, String borderTitle) {
@@ -116,13 +158,23 @@ public class OptimizedJpegSavePanel extends JPanel {
 
         p.add(new JLabel("Progressive:"));
         progressiveCB = new JCheckBox("", false);
-        progressiveCB.addActionListener(e -> updatePreviewAsync());
+        progressiveCB.addActionListener(e -> settingsChanged());
         p.add(progressiveCB);
 
         qualityParam = new RangeParam("  JPEG Quality", 1, 60, 100);
-        qualityParam.setAdjustmentListener(this::updatePreviewAsync);
+        qualityParam.setAdjustmentListener(this::schedulePreview);
         p.add(new SliderSpinner(qualityParam, WEST, false));
 
+        p.add(new JLabel("  Target Size (KB):"));
+        targetSizeCB = new JCheckBox("", false);
+        targetSizeCB.addActionListener(e -> settingsChanged());
+        p.add(targetSizeCB);
+        targetSizeSpinner = new JSpinner(new SpinnerNumberModel(
+            DEFAULT_TARGET_KB, 1, Integer.MAX_VALUE, 10));
+        targetSizeSpinner.setEnabled(false);
+        targetSizeSpinner.addChangeListener(e -> settingsChanged());
+        p.add(targetSizeSpinner);
+
         sizeLabel = new JLabel();
         p.add(sizeLabel);
 
@@ -134,23 +186,151 @@ public class OptimizedJpegSavePanel extends JPanel {
         return p;
     }
 
-    private void updatePreviewAsync() {
+    private void settingsChanged() {
+        boolean targetMode = targetSizeCB.isSelected();
+        targetSizeSpinner.setEnabled(targetMode);
+        qualityParam.setEnabled(!targetMode, EnabledReason.APP_LOGIC);
+        if (targetMode) {
+            findQualityAsync();
+        } else {
+            cancelSearch();
+            schedulePreview();
+        }
+    }
+
+    private void cancelSearch() {
+        searchGeneration++;
+        setSearching(false);
+    }
+
+    // the quality is not final while a search is running,
+    // therefore saving is not allowed
+    private void setSearching(boolean searching) {
+        if (saveButton != null) {
+            saveButton.setEnabled(!searching);
+        }
+    }
+
+    /**
+     * Sets the quality to the highest value that meets the target size.
+     * The preview is then updated by the quality change.
+     */
+    private void findQualityAsync() {
+        // the previous search, if still running, stops at its next step
+        int generation = ++searchGeneration;
+        long maxBytes = 1024L * (int) targetSizeSpinner.getValue();
+        boolean progressive = progressiveCB.isSelected();
+        sizeLabel.setText("  Searching...");
+        setSearching(true);
+
+        // the search is CPU-bound (only in-memory encodings)
         CompletableFuture
-            .supplyAsync(() -> createPreview(getSettings()), onPool)
-            .thenAcceptAsync(this::setPreview, onEDT)
+            .supplyAsync(() -> findQuality(maxBytes, progressive, generation), onPool)
+            .whenCompleteAsync((quality, e) -> {
+                if (generation != searchGeneration) {
+                    return; // a newer search or a cancellation
+                }
+                setSearching(false);
+                if (e != null) {
+                    Messages.showExceptionOnEDT(e);
+                } else if (quality > 0) {
+                    qualityParam.setValueNoTrigger(quality);
+                    updatePreviewAsync();
+                }
+            }, onEDT);
+    }
+
+    private int findQuality(long maxBytes, boolean progressive, int generation) {
+        try {
+            return JpegOutput.findQualityForSize(image, maxBytes, progressive,
+                () -> generation != searchGeneration);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void schedulePreview() {
+        previewTimer.restart();
+    }
+
+    private void updatePreviewAsync() {
+        int generation = ++previewGeneration;
+        cancel(previewFuture);
+        cancel(sizeFuture);
+
+        JpegInfo settings = getSettings();
+        Rectangle crop = calcVisibleCrop();
+
+        previewFuture = CompletableFuture
+            .supplyAsync(() -> createPreview(settings, crop, generation), onPool)
+            .thenAcceptAsync(preview -> setPreview(preview, crop, generation), onEDT)
+            .exceptionally(Messages::showExceptionOnEDT);
+
+        // the size must be calculated for the whole image,
+        // but it doesn't have to be decoded
+        sizeFuture = CompletableFuture
+            .supplyAsync(() -> calcSize(settings, generation), onPool)
+            .thenAcceptAsync(size -> showSize(size, generation), onEDT)
             .exceptionally(Messages::showExceptionOnEDT);
     }
 
-    private ImageWithSize createPreview(JpegInfo config) {
+    private static void cancel(CompletableFuture<?> future) {
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * Returns the visible part of the image, aligned to the JPEG blocks
+     */
+    private Rectangle calcVisibleCrop() {
+        Rectangle imageBounds = new Rectangle(0, 0, image.getWidth(), image.getHeight());
+        Rectangle visible = optimizedViewport.getViewRect();
+        if (visible.isEmpty()) {
+            return imageBounds;
+        }
+        int x = visible.x / BLOCK_SIZE * BLOCK_SIZE;
+        int y = visible.y / BLOCK_SIZE * BLOCK_SIZE;
+        var crop = new Rectangle(x, y,
+            visible.x + visible.width - x, visible.y + visible.height - y);
+        crop = crop.intersection(imageBounds);
+        return crop.isEmpty() ? imageBounds : crop;
+    }
+
+    private BufferedImage createPreview(JpegInfo config, Rectangle crop, int generation) {
+        if (generation != previewGeneration) {
+            return null; // a newer preview was already requested
+        }
         var tracker = new JProgressBarTracker(progressPanel);
-        return JpegOutput.writeJPGtoPreviewImage(image, config, tracker);
+        BufferedImage visiblePart = image.getSubimage(crop.x, crop.y, crop.width, crop.height);
+        return JpegOutput.writeJPGtoPreviewImage(visiblePart, config, tracker).getImage();
     }
 
-    private void setPreview(ImageWithSize imageWithSize) {
-        BufferedImage newPreview = imageWithSize.getImage();
-        optimized.changeImage(newPreview);
+    private int calcSize(JpegInfo config, int generation) {
+        if (generation != previewGeneration) {
+            return -1;
+        }
+        try {
+            return JpegOutput.calcEncodedSize(image, config);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void setPreview(BufferedImage preview, Rectangle crop, int generation) {
+        if (preview == null || generation != previewGeneration) {
+            return;
+        }
+        Graphics2D g = previewImage.createGraphics();
+        g.drawImage(preview, crop.x, crop.y, null);
+        g.dispose();
+        optimized.repaint();
+    }
 
-        int numBytes = imageWithSize.getSize();
+    private void showSize(int numBytes, int generation) {
+        if (numBytes < 0 || generation != previewGeneration) {
+            return;
+        }
         sizeLabel.setText("  Size: " + Utils.bytesToString(numBytes));
     }
 
@@ -163,12 +343,24 @@ public class OptimizedJpegSavePanel extends JPanel {
         var rgbImage = ImageUtils.convertToRGB(image, false);
         var savePanel = new OptimizedJpegSavePanel(rgbImage);
 
-        new DialogBuilder()
+        DialogBuilder builder = new DialogBuilder()
             .content(savePanel)
             .title("Save Optimized JPEG")
             .okText("Save")
-            .okAction(() -> IO.saveJpegWithQuality(savePanel.getSettings()))
-            .show();
+            .okAction(() -> {
+                // saving is disabled while a target size search is running
+                savePanel.previewTimer.stop();
+                IO.saveJpegWithQuality(savePanel.getSettings());
+            })
+            .cancelAction(() -> {
+                savePanel.previewTimer.stop();
+                savePanel.cancelSearch();
+            });
+        JDialog dialog = builder.build();
+
+        // this must be done after building, but before showing
+        savePanel.saveButton = builder.getOkButton();
+
+        GUIUtils.showDialog(dialog);
     }
 }
-
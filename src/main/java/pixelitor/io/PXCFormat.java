@@ -52,9 +52,55 @@ public class PXCFormat {
 
     private static double workRatioForOneImage;
 
+    // if set, the pixels of the images are not written into the
+    // serialized data, only references to the separately stored pixels
+    private static final ThreadLocal<ImageRefWriter> imageRefWriter = new ThreadLocal<>();
+    private static final ThreadLocal<ImageRefReader> imageRefReader = new ThreadLocal<>();
+
     private PXCFormat() {
     }
 
+    /**
+     * Stores the pixels of the images outside the serialized data,
+     * as done by the {@link RecoveryJournal}, and returns a reference
+     * that is serialized instead of the pixels.
+     */
+    public interface ImageRefWriter {
+        int toRef(BufferedImage img);
+    }
+
+    /**
+     * Returns the image stored outside the serialized data
+     * for a reference created by an {@link ImageRefWriter}.
+     */
+    public interface ImageRefReader {
+        BufferedImage fromRef(int ref, int width, int height, int type) throws IOException;
+    }
+
+    /**
+     * Sets the image reference writer used by the current
+     * thread for serializing, or clears it if null
+     */
+    public static void setImageRefWriter(ImageRefWriter writer) {
+        setOrRemove(imageRefWriter, writer);
+    }
+
+    /**
+     * Sets the image reference reader used by the current
+     * thread for deserializing, or clears it if null
+     */
+    public static void setImageRefReader(ImageRefReader reader) {
+        setOrRemove(imageRefReader, reader);
+    }
+
+    private static <T> void setOrRemove(ThreadLocal<T> threadLocal, T value) {
+        if (value == null) {
+            threadLocal.remove();
+        } else {
+            threadLocal.set(value);
+        }
+    }
+
     public static Composition read(File file) throws NotPxcFormatException {
         long fileSize = file.length();
         mainPT = new StatusBarProgressTracker(
@@ -142,6 +188,12 @@ public class PXCFormat {
         out.writeInt(imgHeight);
         out.writeInt(imgType);
 
+        ImageRefWriter refWriter = imageRefWriter.get();
+        if (refWriter != null) {
+            out.writeInt(refWriter.toRef(img));
+            return;
+        }
+
         ProgressTracker pt = getImageTracker();
 
         if (imgType == TYPE_BYTE_GRAY) {
@@ -169,6 +221,11 @@ public class PXCFormat {
         int height = in.readInt();
         int type = in.readInt();
 
+        ImageRefReader refReader = imageRefReader.get();
+        if (refReader != null) {
+            return refReader.fromRef(in.readInt(), width, height, type);
+        }
+
         if (type == TYPE_BYTE_GRAY) {
             return ImageIO.read(in);
         } else {
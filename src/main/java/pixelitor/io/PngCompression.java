@@ -0,0 +1,70 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io;
+
+import javax.imageio.ImageWriteParam;
+import java.util.function.Consumer;
+
+import static javax.imageio.ImageWriteParam.MODE_EXPLICIT;
+
+/**
+ * The deflate compression levels offered for writing PNG images.
+ * Lower levels are much faster, but result in larger files.
+ */
+public enum PngCompression {
+    NONE("None (Fastest, Largest Files)", 0),
+    FAST("Fast", 1),
+    DEFAULT("Default", 4),
+    BEST("Best (Slowest)", 9);
+
+    private final String displayName;
+    private final int level;
+
+    private static volatile PngCompression lastUsed = DEFAULT;
+
+    PngCompression(String displayName, int level) {
+        this.displayName = displayName;
+        this.level = level;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public Consumer<ImageWriteParam> toCustomizer() {
+        return imageWriteParam -> {
+            // the JDK's PNG writer maps the quality to
+            // the deflate level as 9 - round(9 * quality)
+            imageWriteParam.setCompressionMode(MODE_EXPLICIT);
+            imageWriteParam.setCompressionQuality((9 - level) / 9.0f);
+        };
+    }
+
+    public static PngCompression getLastUsed() {
+        return lastUsed;
+    }
+
+    public static void setLastUsed(PngCompression compression) {
+        lastUsed = compression;
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
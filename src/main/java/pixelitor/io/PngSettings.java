@@ -0,0 +1,45 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io;
+
+import java.io.File;
+
+/**
+ * Settings for writing PNG images
+ */
+public class PngSettings extends SaveSettings {
+    private final PngCompression compression;
+
+    public PngSettings(PngCompression compression, File outputFile) {
+        super(FileFormat.PNG, outputFile);
+        this.compression = compression;
+    }
+
+    public static PngSettings from(SaveSettings settings) {
+        if (settings instanceof PngSettings) {
+            return (PngSettings) settings;
+        }
+        assert settings.getFormat() == FileFormat.PNG;
+        return new PngSettings(PngCompression.DEFAULT,
+            settings.getFile());
+    }
+
+    public PngCompression getCompression() {
+        return compression;
+    }
+}
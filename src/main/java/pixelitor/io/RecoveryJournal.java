@@ -0,0 +1,624 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io;
+
+import pixelitor.Composition;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * An append-only file with the autosaved states of a composition,
+ * used for recovering the unsaved work after a crash.
+ *
+ * The pixels of the images are split into chunks of rows, and each chunk
+ * is stored only once, identified by the hash of its contents. A snapshot
+ * record contains the serialized composition without the pixels and the
+ * chunk hashes of its images, therefore an autosave writes only the
+ * chunks that changed since the previous snapshots.
+ *
+ * Every record has a checksum, and only the last complete
+ * snapshot is used, so a crash while writing is harmless.
+ */
+public class RecoveryJournal implements Closeable {
+    public static final String FILE_EXT = ".pxj";
+
+    private static final int MAGIC = 0x50_58_4A_31; // "PXJ1"
+    private static final int VERSION = 1;
+
+    private static final byte CHUNK_RECORD = 1;
+    private static final byte SNAPSHOT_RECORD = 2;
+
+    // the number of image rows in a pixel chunk
+    static final int CHUNK_ROWS = 64;
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(
+        long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final File file;
+    private final FileOutputStream fileOut;
+    private final FileLock lock;
+    private final DataOutputStream out;
+    private long numBytes;
+
+    // the hashes of the stored chunks and their sizes in the file
+    private final Map<Long, Integer> storedChunks = new HashMap<>();
+
+    // the chunk hashes of the images that didn't change since their last snapshot
+    private final Map<BufferedImage, long[]> hashCache = new WeakHashMap<>();
+
+    // the number of file bytes needed by the last snapshot
+    private long liveBytes;
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    private final byte[] deflateBuffer = new byte[16 * 1024];
+    private byte[] chunkBuffer = new byte[0];
+
+    /**
+     * Creates a new journal file, which is locked while it's
+     * open, so that other Pixelitor instances don't recover it.
+     * Its writing speed is limited to the given rate,
+     * unless the rate is zero or negative.
+     */
+    public RecoveryJournal(File file, long bytesPerSecond) throws IOException {
+        this.file = file;
+        fileOut = new FileOutputStream(file);
+        try {
+            lock = fileOut.getChannel().tryLock();
+        } catch (IOException e) {
+            fileOut.close();
+            throw e;
+        }
+        out = new DataOutputStream(new BufferedOutputStream(
+            new ThrottledOutputStream(fileOut, bytesPerSecond), 64 * 1024));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        numBytes = 8;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the size of the file
+     */
+    public long getNumBytes() {
+        return numBytes;
+    }
+
+    /**
+     * Returns the number of file bytes needed for recovering the last snapshot
+     */
+    public long getLiveBytes() {
+        return liveBytes;
+    }
+
+    /**
+     * Appends the given snapshot and the new pixel chunks of its
+     * images. When this method returns, the data is on the disk.
+     */
+    public void append(Snapshot snapshot) throws IOException {
+        List<BufferedImage> images = snapshot.images;
+        int numImages = images.size();
+
+        long newLiveBytes = 0;
+        long[][] imageHashes = new long[numImages][];
+        Set<Long> referencedChunks = new HashSet<>();
+        for (int i = 0; i < numImages; i++) {
+            BufferedImage img = images.get(i);
+            imageHashes[i] = storeImage(img, snapshot.isChanged(img));
+            for (long hash : imageHashes[i]) {
+                if (referencedChunks.add(hash)) {
+                    newLiveBytes += storedChunks.get(hash);
+                }
+            }
+        }
+
+        var payload = new ByteArrayOutputStream();
+        try (var data = new DataOutputStream(payload)) {
+            data.writeLong(snapshot.timeMillis);
+            data.writeUTF(snapshot.compName);
+            data.writeUTF(snapshot.compFile == null ? "" : snapshot.compFile.getAbsolutePath());
+            data.writeInt(numImages);
+            for (int i = 0; i < numImages; i++) {
+                BufferedImage img = images.get(i);
+                data.writeInt(img.getWidth());
+                data.writeInt(img.getHeight());
+                data.writeInt(img.getType());
+                data.writeInt(imageHashes[i].length);
+                for (long hash : imageHashes[i]) {
+                    data.writeLong(hash);
+                }
+            }
+            data.writeInt(snapshot.structure.length);
+            data.write(snapshot.structure);
+        }
+        int snapshotBytes = writeRecord(SNAPSHOT_RECORD, payload.toByteArray(), payload.size());
+
+        out.flush();
+        fileOut.getChannel().force(false);
+
+        liveBytes = newLiveBytes + snapshotBytes;
+    }
+
+    /**
+     * Writes the chunks of the given image that are not in
+     * the journal yet, and returns the hashes of all its chunks
+     */
+    private long[] storeImage(BufferedImage img, boolean changed) throws IOException {
+        if (!changed) {
+            long[] hashes = hashCache.get(img);
+            if (hashes != null && allStored(hashes)) {
+                return hashes;
+            }
+        }
+
+        int numChunks = calcNumChunks(img.getHeight());
+        long[] hashes = new long[numChunks];
+        for (int i = 0; i < numChunks; i++) {
+            // the chunk is copied before hashing, so that the hash always
+            // matches the stored bytes, even if the image is changing
+            int length = copyChunk(img, i);
+            long hash = hash(chunkBuffer, length);
+            hashes[i] = hash;
+            if (!storedChunks.containsKey(hash)) {
+                storedChunks.put(hash, writeChunk(hash, length));
+            }
+        }
+        hashCache.put(img, hashes);
+        return hashes;
+    }
+
+    private boolean allStored(long[] hashes) {
+        for (long hash : hashes) {
+            if (!storedChunks.containsKey(hash)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the bytes of the given chunk into the chunk
+     * buffer, and returns the number of copied bytes
+     */
+    private int copyChunk(BufferedImage img, int chunkIndex) throws IOException {
+        int width = img.getWidth();
+        int startRow = chunkIndex * CHUNK_ROWS;
+        int numRows = Math.min(CHUNK_ROWS, img.getHeight() - startRow);
+        int numSamples = width * numRows;
+        int start = startRow * width;
+
+        DataBuffer dataBuffer = getDataBuffer(img);
+        if (dataBuffer instanceof DataBufferInt) {
+            int[] pixels = ((DataBufferInt) dataBuffer).getData();
+            int length = numSamples * 4;
+            ensureChunkBufferSize(length);
+            ByteBuffer.wrap(chunkBuffer).asIntBuffer().put(pixels, start, numSamples);
+            return length;
+        } else {
+            byte[] pixels = ((DataBufferByte) dataBuffer).getData();
+            ensureChunkBufferSize(numSamples);
+            System.arraycopy(pixels, start, chunkBuffer, 0, numSamples);
+            return numSamples;
+        }
+    }
+
+    private void ensureChunkBufferSize(int length) {
+        if (chunkBuffer.length < length) {
+            chunkBuffer = new byte[length];
+        }
+    }
+
+    private int writeChunk(long hash, int length) throws IOException {
+        deflater.reset();
+        deflater.setInput(chunkBuffer, 0, length);
+        deflater.finish();
+
+        compressed.reset();
+        var data = new DataOutputStream(compressed);
+        data.writeLong(hash);
+        data.writeInt(length);
+        while (!deflater.finished()) {
+            int n = deflater.deflate(deflateBuffer);
+            compressed.write(deflateBuffer, 0, n);
+        }
+        return writeRecord(CHUNK_RECORD, compressed.toByteArray(), compressed.size());
+    }
+
+    /**
+     * Writes a record, and returns its size in the file
+     */
+    private int writeRecord(byte type, byte[] payload, int length) throws IOException {
+        var crc = new CRC32();
+        crc.update(payload, 0, length);
+
+        out.writeByte(type);
+        out.writeInt(length);
+        out.write(payload, 0, length);
+        out.writeInt((int) crc.getValue());
+
+        int recordBytes = 1 + 4 + length + 4;
+        numBytes += recordBytes;
+        return recordBytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        deflater.end();
+        try {
+            if (lock != null) {
+                lock.release();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Closes and deletes the journal file
+     */
+    public void delete() {
+        try {
+            close();
+        } catch (IOException e) {
+            // the file is deleted anyway
+        }
+        file.delete();
+    }
+
+    private static int calcNumChunks(int height) {
+        return (height + CHUNK_ROWS - 1) / CHUNK_ROWS;
+    }
+
+    private static DataBuffer getDataBuffer(BufferedImage img) throws IOException {
+        DataBuffer dataBuffer = img.getRaster().getDataBuffer();
+        boolean simpleLayout = dataBuffer.getNumBanks() == 1
+            && dataBuffer.getOffset() == 0
+            && dataBuffer.getSize() == img.getWidth() * img.getHeight();
+        boolean supported = dataBuffer instanceof DataBufferInt
+            || dataBuffer instanceof DataBufferByte;
+        if (!simpleLayout || !supported) {
+            throw new IOException("unsupported image type " + img.getType());
+        }
+        return dataBuffer;
+    }
+
+    /**
+     * A 64-bit hash of the first length bytes of the given data,
+     * based on the mixing steps of xxHash64
+     */
+    static long hash(byte[] data, int length) {
+        final long p1 = 0x9E3779B185EBCA87L;
+        final long p2 = 0xC2B2AE3D27D4EB4FL;
+        final long p3 = 0x165667B19E3779F9L;
+        final long p4 = 0x85EBCA77C2B2AE63L;
+        final long p5 = 0x27D4EB2F165667C5L;
+
+        long h = p5 + length;
+        int i = 0;
+        for (; i + 8 <= length; i += 8) {
+            long k = (long) LONGS.get(data, i);
+            h ^= Long.rotateLeft(k * p2, 31) * p1;
+            h = Long.rotateLeft(h, 27) * p1 + p4;
+        }
+        for (; i < length; i++) {
+            h ^= (data[i] & 0xFFL) * p5;
+            h = Long.rotateLeft(h, 11) * p1;
+        }
+
+        h ^= h >>> 33;
+        h *= p2;
+        h ^= h >>> 29;
+        h *= p3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    /**
+     * The state of a composition captured on the EDT for autosaving:
+     * the structure is serialized, but the images are only referenced,
+     * their pixels are read later in the background.
+     */
+    public static class Snapshot {
+        private final long timeMillis;
+        private final String compName;
+        private final File compFile;
+        private final byte[] structure;
+        private final List<BufferedImage> images;
+        private final Set<BufferedImage> changedImages; // null if not known
+
+        private Snapshot(Composition comp, byte[] structure,
+                         List<BufferedImage> images, Set<BufferedImage> changedImages) {
+            timeMillis = System.currentTimeMillis();
+            compName = comp.getName();
+            compFile = comp.getFile();
+            this.structure = structure;
+            this.images = images;
+            this.changedImages = changedImages;
+        }
+
+        private boolean isChanged(BufferedImage img) {
+            return changedImages == null || changedImages.contains(img);
+        }
+
+        /**
+         * Captures the current state of the given composition. The given images
+         * were possibly changed in place since the last snapshot, so their
+         * pixels are checked again even if they were already stored.
+         * If the changed images are not known, then the set should be null.
+         */
+        public static Snapshot capture(Composition comp,
+                                       Set<BufferedImage> changedImages) throws IOException {
+            List<BufferedImage> images = new ArrayList<>();
+            Map<BufferedImage, Integer> refs = new IdentityHashMap<>();
+
+            var bytes = new ByteArrayOutputStream();
+            PXCFormat.setImageRefWriter(img -> refs.computeIfAbsent(img, k -> {
+                images.add(img);
+                return images.size() - 1;
+            }));
+            try (var oos = new ObjectOutputStream(bytes)) {
+                oos.writeObject(comp);
+            } finally {
+                PXCFormat.setImageRefWriter(null);
+            }
+            return new Snapshot(comp, bytes.toByteArray(), images, changedImages);
+        }
+    }
+
+    /**
+     * Finds the last complete snapshot in the given journal file.
+     * Returns null if the file contains no complete snapshot.
+     */
+    public static Recoverable scan(File file) throws IOException {
+        Map<Long, Long> chunkOffsets = new HashMap<>();
+        Recoverable found = null;
+
+        try (var in = new DataInputStream(new BufferedInputStream(
+            new FileInputStream(file), 64 * 1024))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not a recovery journal");
+            }
+            long offset = 8;
+            while (true) {
+                int type = in.read();
+                if (type == -1) {
+                    break;
+                }
+                byte[] payload;
+                try {
+                    int length = in.readInt();
+                    if (length < 0 || length > file.length()) {
+                        break;
+                    }
+                    payload = in.readNBytes(length);
+                    int expectedCRC = in.readInt();
+                    if (payload.length != length || !checkCRC(payload, expectedCRC)) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    // the crash happened while writing this record
+                    break;
+                }
+
+                long payloadOffset = offset + 5;
+                if (type == CHUNK_RECORD) {
+                    long hash = ByteBuffer.wrap(payload).getLong();
+                    chunkOffsets.put(hash, payloadOffset);
+                } else if (type == SNAPSHOT_RECORD) {
+                    // only the snapshots with all the chunks are used
+                    found = Recoverable.fromPayload(file, payload, new HashMap<>(chunkOffsets));
+                } else {
+                    break;
+                }
+                offset += 1 + 4 + payload.length + 4;
+            }
+        }
+        return found;
+    }
+
+    private static boolean checkCRC(byte[] payload, int expectedCRC) {
+        var crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue() == expectedCRC;
+    }
+
+    /**
+     * Returns true if the given journal file is not used by a running Pixelitor
+     */
+    public static boolean isOrphaned(File file) {
+        try (var channel = new RandomAccessFile(file, "rw").getChannel()) {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                return false;
+            }
+            lock.release();
+            return true;
+        } catch (OverlappingFileLockException e) {
+            // locked in this JVM
+            return false;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * A composition that can be restored from a journal file
+     */
+    public static class Recoverable {
+        private final File journalFile;
+        private final long timeMillis;
+        private final String compName;
+        private final File compFile;
+        private final int[][] imageInfo; // width, height, type
+        private final long[][] imageHashes;
+        private final byte[] structure;
+        private final Map<Long, Long> chunkOffsets;
+
+        private Recoverable(File journalFile, long timeMillis, String compName,
+                            File compFile, int[][] imageInfo, long[][] imageHashes,
+                            byte[] structure, Map<Long, Long> chunkOffsets) {
+            this.journalFile = journalFile;
+            this.timeMillis = timeMillis;
+            this.compName = compName;
+            this.compFile = compFile;
+            this.imageInfo = imageInfo;
+            this.imageHashes = imageHashes;
+            this.structure = structure;
+            this.chunkOffsets = chunkOffsets;
+        }
+
+        private static Recoverable fromPayload(File journalFile, byte[] payload,
+                                               Map<Long, Long> chunkOffsets) throws IOException {
+            var data = new DataInputStream(new ByteArrayInputStream(payload));
+            long timeMillis = data.readLong();
+            String compName = data.readUTF();
+            String path = data.readUTF();
+            int numImages = data.readInt();
+            int[][] imageInfo = new int[numImages][];
+            long[][] imageHashes = new long[numImages][];
+            for (int i = 0; i < numImages; i++) {
+                imageInfo[i] = new int[]{data.readInt(), data.readInt(), data.readInt()};
+                long[] hashes = new long[data.readInt()];
+                for (int j = 0; j < hashes.length; j++) {
+                    hashes[j] = data.readLong();
+                }
+                imageHashes[i] = hashes;
+            }
+            byte[] structure = new byte[data.readInt()];
+            data.readFully(structure);
+
+            return new Recoverable(journalFile, timeMillis, compName,
+                path.isEmpty() ? null : new File(path),
+                imageInfo, imageHashes, structure, chunkOffsets);
+        }
+
+        public File getJournalFile() {
+            return journalFile;
+        }
+
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        public String getCompName() {
+            return compName;
+        }
+
+        /**
+         * Recreates the composition. The returned composition
+         * is dirty, because its state was never saved.
+         */
+        public Composition restore() throws IOException {
+            try (var raf = new RandomAccessFile(journalFile, "r")) {
+                PXCFormat.setImageRefReader((ref, width, height, type) -> restoreImage(raf, ref));
+                Composition comp;
+                try (var ois = new ObjectInputStream(new ByteArrayInputStream(structure))) {
+                    comp = (Composition) ois.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException(e);
+                } finally {
+                    PXCFormat.setImageRefReader(null);
+                }
+
+                if (compFile != null) {
+                    comp.setFile(compFile);
+                } else {
+                    comp.setName(compName);
+                }
+                comp.setDirty(true);
+                return comp;
+            }
+        }
+
+        private BufferedImage restoreImage(RandomAccessFile raf, int ref) throws IOException {
+            int[] info = imageInfo[ref];
+            var img = new BufferedImage(info[0], info[1], info[2]);
+            DataBuffer dataBuffer = getDataBuffer(img);
+            int width = img.getWidth();
+
+            var inflater = new Inflater();
+            try {
+                long[] hashes = imageHashes[ref];
+                for (int i = 0; i < hashes.length; i++) {
+                    byte[] raw = readChunk(raf, hashes[i], inflater);
+                    int start = i * CHUNK_ROWS * width;
+                    if (dataBuffer instanceof DataBufferInt) {
+                        int[] pixels = ((DataBufferInt) dataBuffer).getData();
+                        ByteBuffer.wrap(raw).asIntBuffer().get(pixels, start, raw.length / 4);
+                    } else {
+                        byte[] pixels = ((DataBufferByte) dataBuffer).getData();
+                        System.arraycopy(raw, 0, pixels, start, raw.length);
+                    }
+                }
+            } finally {
+                inflater.end();
+            }
+            return img;
+        }
+
+        private byte[] readChunk(RandomAccessFile raf, long hash, Inflater inflater) throws IOException {
+            Long offset = chunkOffsets.get(hash);
+            if (offset == null) {
+                throw new IOException("missing chunk in " + journalFile);
+            }
+            raf.seek(offset - 4);
+            byte[] payload = new byte[raf.readInt()];
+            raf.readFully(payload);
+
+            var data = ByteBuffer.wrap(payload);
+            data.getLong(); // the hash
+            byte[] raw = new byte[data.getInt()];
+            inflater.reset();
+            inflater.setInput(payload, 12, payload.length - 12);
+            try {
+                int numInflated = inflater.inflate(raw);
+                if (numInflated != raw.length) {
+                    throw new IOException("corrupt chunk in " + journalFile);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException(e);
+            }
+            return raw;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate of writing to an OutputStream by sleeping
+ * in the writing thread, so that background writes don't
+ * compete with the other IO operations of the system.
+ */
+public class ThrottledOutputStream extends FilterOutputStream {
+    // a larger burst is allowed after pauses, but only up to this time
+    private static final long MAX_BURST_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private final long bytesPerSecond;
+
+    // the time until which the already written bytes "use up" the allowed rate
+    private long budgetEndNanos;
+
+    /**
+     * A zero or negative bytesPerSecond means unlimited writing
+     */
+    public ThrottledOutputStream(OutputStream out, long bytesPerSecond) {
+        super(out);
+        this.bytesPerSecond = bytesPerSecond;
+        budgetEndNanos = System.nanoTime();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        throttle(1);
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        throttle(len);
+        out.write(b, off, len);
+    }
+
+    private void throttle(int numBytes) throws IOException {
+        if (bytesPerSecond <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        budgetEndNanos = Math.max(budgetEndNanos, now - MAX_BURST_NANOS);
+        budgetEndNanos += numBytes * 1_000_000_000L / bytesPerSecond;
+
+        long waitNanos = budgetEndNanos - now;
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+}
@@ -45,11 +45,19 @@ public class TrackedIO {
                              String formatName,
                              File file,
                              Consumer<ImageWriteParam> customizer) throws IOException {
+        var tracker = new StatusBarProgressTracker(
+            "Writing " + file.getName(), 100);
+        write(img, formatName, file, customizer, tracker);
+    }
+
+    public static void write(BufferedImage img,
+                             String formatName,
+                             File file,
+                             Consumer<ImageWriteParam> customizer,
+                             ProgressTracker tracker) throws IOException {
         System.out.printf("TrackedIO::write: writing %dx%d %s image to %s%n",
             img.getWidth(), img.getHeight(), formatName, file.getAbsolutePath());
 
-        var tracker = new StatusBarProgressTracker(
-            "Writing " + file.getName(), 100);
         // the creation of FileOutputStream is necessary, because if the
         // ImageOutputStream is created directly from the File, then existing files
         // are not truncated, and small files don't completely overwrite bigger files.
@@ -98,14 +106,15 @@ public class TrackedIO {
         }
         ImageWriter writer = writers.next();
 
+        ImageWriteParam param = writer.getDefaultWriteParam();
         if (customizer != null) {
-            customizer.accept(writer.getDefaultWriteParam());
+            customizer.accept(param);
         }
 
         try {
             writer.setOutput(ios);
             writer.addIIOWriteProgressListener(new TrackerWriteProgressListener(tracker));
-            writer.write(img);
+            writer.write(null, new IIOImage(img, null, null), param);
         } finally {
             writer.dispose();
             ios.flush();
@@ -139,8 +148,14 @@ public class TrackedIO {
      * Reads an image from a file, and throws only runtime exceptions
      */
     public static BufferedImage uncheckedRead(File file) {
+        var tracker = new StatusBarProgressTracker(
+            "Reading " + file.getName(), 100);
+        return uncheckedRead(file, tracker);
+    }
+
+    public static BufferedImage uncheckedRead(File file, ProgressTracker tracker) {
         try {
-            BufferedImage image = read(file);
+            BufferedImage image = read(file, tracker);
             // For some decoding problems (ImageIO bugs?) we get an
             // exception here, for others we get a null image.
             // In both cases, throw a runtime exception
@@ -181,7 +196,10 @@ public class TrackedIO {
     public static BufferedImage read(File file) throws IOException {
         var tracker = new StatusBarProgressTracker(
             "Reading " + file.getName(), 100);
+        return read(file, tracker);
+    }
 
+    public static BufferedImage read(File file, ProgressTracker tracker) throws IOException {
         BufferedImage image;
         try (ImageInputStream iis = ImageIO.createImageInputStream(file)) {
             image = readFromIIS(iis, tracker);
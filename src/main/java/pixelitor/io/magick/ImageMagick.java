@@ -28,15 +28,21 @@ import pixelitor.io.IO;
 import pixelitor.utils.Messages;
 import pixelitor.utils.VisibleForTesting;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
+import java.awt.Dimension;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
 import static pixelitor.OpenImages.getActiveComp;
 import static pixelitor.utils.AppPreferences.magickDirName;
 import static pixelitor.utils.Threads.onEDT;
@@ -52,6 +58,9 @@ public class ImageMagick {
         // only static utility methods
     }
 
+    // the raw pixels are sent and received in chunks of this many rows
+    private static final int ROWS_PER_CHUNK = 64;
+
     // check only once, when this class is first used
     private static final boolean installed = checkInstalled();
     private static File magickCommand;
@@ -144,34 +153,45 @@ public class ImageMagick {
     @VisibleForTesting
     public static void exportImage(BufferedImage img, File outFile,
                                    ExportSettings settings) {
+        exportImage(magickCommand, img, outFile, settings);
+    }
+
+    @VisibleForTesting
+    static void exportImage(File magick, BufferedImage img, File outFile,
+                            ExportSettings settings) {
         List<String> command = new ArrayList<>();
-        command.add(magickCommand.getAbsolutePath());
+        command.add(magick.getAbsolutePath());
         command.add("convert");
 
-// this setting doesn't seem to have an effect on the speed
-//        command.add("-define");
-//        command.add("stream:buffer-size=0");
-
-        command.add("png:-"); // read png from stdin
+        // read raw 8-bit RGBA pixels from stdin
+        command.add("-size");
+        command.add(img.getWidth() + "x" + img.getHeight());
+        command.add("-depth");
+        command.add("8");
+        command.add("rgba:-");
 
         settings.addMagickOptions(command);
         command.add(settings.getFormatSpecifier() + outFile.getAbsolutePath());
 
         System.out.println("ImageMagick::exportImage: command = " + command);
 
-        // a process that reads a png file from the standard input,
-        // and converts it to the given file
+        // a process that reads the raw pixels from the
+        // standard input, and converts them to the given file
         ProcessBuilder pb = new ProcessBuilder(command.toArray(String[]::new));
         pb.redirectInput(ProcessBuilder.Redirect.PIPE);
+        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
         try {
             long startTime = System.nanoTime();
 
             Process p = pb.start();
             try (OutputStream magickInput = p.getOutputStream()) {
-                writeToOutStream(img, magickInput);
+                writeRawPixels(img, magickInput);
                 magickInput.flush();
             }
-            p.waitFor();
+            int exitValue = p.waitFor();
+            if (exitValue != 0) {
+                throw new IOException("ImageMagick exited with the code " + exitValue);
+            }
 
             System.out.println(String.format("ImageMagick::exportImage: estimatedSeconds = '%.2f'",
                 (System.nanoTime() - startTime) / 1_000_000_000.0));
@@ -183,52 +203,173 @@ public class ImageMagick {
         }
     }
 
-    private static void writeToOutStream(BufferedImage img, OutputStream magickInput) throws IOException {
-        // Write as png to ImageMagick and let it do
-        // the conversion to the final format.
-        // Explicitly setting a low compression level doesn't seem
-        // to make it faster (why?), so use the simple approach.
-        ImageIO.write(img, "png", magickInput);
-
-//        try (ImageOutputStream ios = ImageIO.createImageOutputStream(magickInput)) {
-//            Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("png");
-//            ImageWriter writer = writers.next();
-//            ImageWriteParam writeParam = writer.getDefaultWriteParam();
-//            writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-//            writeParam.setCompressionQuality(1.0f); // 1 is no compression
-//            try {
-//                writer.setOutput(ios);
-//                writer.write(img);
-//            } finally {
-//                writer.dispose();
-//                ios.flush();
-//            }
-//        }
+    /**
+     * Writes the pixels as packed, non-premultiplied 8-bit RGBA
+     * in chunks of rows, without encoding them in an image format.
+     * The int pixels of the common image types are read directly
+     * from the data buffer, the other types are converted by getRGB.
+     */
+    private static void writeRawPixels(BufferedImage img, OutputStream out) throws IOException {
+        int width = img.getWidth();
+        int height = img.getHeight();
+        int type = img.getType();
+
+        int[] pixels = getPackedPixels(img);
+        int[] converted = pixels == null ? new int[width * ROWS_PER_CHUNK] : null;
+        boolean premultiplied = type == TYPE_INT_ARGB_PRE;
+        boolean opaque = type == TYPE_INT_RGB;
+
+        byte[] chunk = new byte[width * ROWS_PER_CHUNK * 4];
+        for (int y = 0; y < height; y += ROWS_PER_CHUNK) {
+            int numRows = Math.min(ROWS_PER_CHUNK, height - y);
+            int numPixels = width * numRows;
+
+            int[] src;
+            int offset;
+            if (pixels != null) {
+                src = pixels;
+                offset = y * width;
+            } else {
+                img.getRGB(0, y, width, numRows, converted, 0, width);
+                src = converted;
+                offset = 0;
+            }
+
+            for (int i = 0, j = 0; i < numPixels; i++, j += 4) {
+                int argb = src[offset + i];
+                int a = opaque ? 0xFF : argb >>> 24;
+                int r = (argb >>> 16) & 0xFF;
+                int g = (argb >>> 8) & 0xFF;
+                int b = argb & 0xFF;
+                if (premultiplied && a != 0xFF) {
+                    if (a == 0) {
+                        r = g = b = 0;
+                    } else {
+                        r = Math.min(255, (r * 255 + a / 2) / a);
+                        g = Math.min(255, (g * 255 + a / 2) / a);
+                        b = Math.min(255, (b * 255 + a / 2) / a);
+                    }
+                }
+                chunk[j] = (byte) r;
+                chunk[j + 1] = (byte) g;
+                chunk[j + 2] = (byte) b;
+                chunk[j + 3] = (byte) a;
+            }
+            out.write(chunk, 0, numPixels * 4);
+        }
+    }
+
+    /**
+     * Returns the data buffer array if the image has packed int
+     * pixels without any padding, otherwise returns null.
+     */
+    private static int[] getPackedPixels(BufferedImage img) {
+        int type = img.getType();
+        if (type != TYPE_INT_ARGB && type != TYPE_INT_ARGB_PRE && type != TYPE_INT_RGB) {
+            return null;
+        }
+        WritableRaster raster = img.getRaster();
+        if (raster.getSampleModelTranslateX() != 0
+            || raster.getSampleModelTranslateY() != 0
+            || !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)
+            || ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride() != img.getWidth()) {
+            return null;
+        }
+        DataBufferInt dataBuffer = (DataBufferInt) raster.getDataBuffer();
+        if (dataBuffer.getNumBanks() != 1 || dataBuffer.getOffset() != 0) {
+            return null;
+        }
+        return dataBuffer.getData();
     }
 
     private static BufferedImage importImage(File file) {
-        // a process that reads the given file,
-        // and writes it as png (depth=8 bit) to the standard output
-        ProcessBuilder pb = new ProcessBuilder(
-            magickCommand.getAbsolutePath(), "convert", file.getAbsolutePath(),
-            "-depth", "8", // don't send 16-bit data
-            "-quality", "1", // importing is faster with minimal compression
-            "png:-");
+        return importImage(magickCommand, file);
+    }
+
+    @VisibleForTesting
+    static BufferedImage importImage(File magick, File file) {
         BufferedImage img;
         try {
+            Dimension size = readImageSize(magick, file);
+
+            // a process that reads only the first frame of the given
+            // file, and writes it as raw 8-bit RGBA pixels to the standard output
+            ProcessBuilder pb = new ProcessBuilder(
+                magick.getAbsolutePath(), "convert", firstFrameOf(file),
+                "-depth", "8", // don't send 16-bit data
+                "rgba:-");
+            pb.redirectError(ProcessBuilder.Redirect.INHERIT);
             Process p = pb.start();
 
-            // read the image as png after ImageMagick did the conversion
             try (InputStream magickOutput = p.getInputStream()) {
-                img = ImageIO.read(magickOutput);
+                img = readRawPixels(magickOutput, size.width, size.height);
+            } finally {
+                // don't leave the process running if the reading failed
+                p.destroy();
             }
         } catch (IOException e) {
             throw DecodingException.magick(file, e);
         }
-        if (img == null) {
-            throw DecodingException.magick(file, null);
+
+        return img;
+    }
+
+    private static Dimension readImageSize(File magick, File file) throws IOException {
+        // -ping reads only the header
+        ProcessBuilder pb = new ProcessBuilder(
+            magick.getAbsolutePath(), "identify", "-ping",
+            "-format", "%w %h\\n", firstFrameOf(file));
+        Process p = pb.start();
+        String firstLine;
+        try (BufferedReader reader = new BufferedReader(
+            new InputStreamReader(p.getInputStream()))) {
+            firstLine = reader.readLine();
+        } finally {
+            p.destroy();
+        }
+        if (firstLine == null) {
+            throw new IOException("ImageMagick could not identify the file");
+        }
+        String[] parts = firstLine.trim().split(" ");
+        try {
+            int width = Integer.parseInt(parts[0]);
+            int height = Integer.parseInt(parts[1]);
+            if (width <= 0 || height <= 0) {
+                throw new IOException("invalid image size: " + firstLine);
+            }
+            return new Dimension(width, height);
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IOException("unexpected identify output: " + firstLine, e);
         }
+    }
+
+    /**
+     * Returns the file argument that makes ImageMagick decode only the first
+     * frame (or layer, or page) of the file, even for multi-frame formats.
+     */
+    private static String firstFrameOf(File file) {
+        return file.getAbsolutePath() + "[0]";
+    }
 
+    private static BufferedImage readRawPixels(InputStream in, int width, int height) throws IOException {
+        BufferedImage img = new BufferedImage(width, height, TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+
+        byte[] chunk = new byte[width * ROWS_PER_CHUNK * 4];
+        for (int y = 0; y < height; y += ROWS_PER_CHUNK) {
+            int numRows = Math.min(ROWS_PER_CHUNK, height - y);
+            int numBytes = width * numRows * 4;
+            if (in.readNBytes(chunk, 0, numBytes) != numBytes) {
+                throw new EOFException("unexpected end of the ImageMagick output");
+            }
+            int offset = y * width;
+            for (int i = 0, j = 0; j < numBytes; i++, j += 4) {
+                pixels[offset + i] = (chunk[j + 3] & 0xFF) << 24
+                    | (chunk[j] & 0xFF) << 16
+                    | (chunk[j + 1] & 0xFF) << 8
+                    | (chunk[j + 2] & 0xFF);
+            }
+        }
         return img;
     }
 
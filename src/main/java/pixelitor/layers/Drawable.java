@@ -21,6 +21,7 @@ import pixelitor.ChangeReason;
 import pixelitor.Composition;
 
 import java.awt.Composite;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 
 /**
@@ -33,6 +34,20 @@ public interface Drawable {
 
     void setImage(BufferedImage newImage);
 
+    /**
+     * Must be called before the pixels of the image are modified in place,
+     * because the image could be shared with a duplicated layer.
+     * The image reference can change, so it should be queried only after this.
+     */
+    void copyImageIfShared();
+
+    /**
+     * Must be called after the pixels in the given area (relative to
+     * the image) were modified in place, so that the information
+     * derived from the pixels can be updated.
+     */
+    void pixelsChanged(Rectangle area);
+
     void startPreviewing();
 
     void onFilterDialogAccepted(String filterName);
@@ -61,6 +76,8 @@ public interface Drawable {
 
     BufferedImage getFilterSourceImage();
 
+    Rectangle getVisibleFilterSourceRegion();
+
     BufferedImage getSelectedSubImage(boolean copyIfNoSelection);
 
     void setShowOriginal(boolean b);
@@ -17,12 +17,12 @@
 
 package pixelitor.layers;
 
-import pixelitor.Canvas;
 import pixelitor.ChangeReason;
 import pixelitor.Composition;
 import pixelitor.ConsistencyChecks;
 import pixelitor.compactions.Flip;
 import pixelitor.compactions.Rotate;
+import pixelitor.gui.View;
 import pixelitor.gui.utils.Dialogs;
 import pixelitor.history.*;
 import pixelitor.io.PXCFormat;
@@ -31,6 +31,7 @@ import pixelitor.utils.*;
 import pixelitor.utils.debug.Debug;
 import pixelitor.utils.test.Assertions;
 
+import javax.swing.SwingUtilities;
 import java.awt.*;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
@@ -81,6 +82,12 @@ public class ImageLayer extends ContentLayer implements Drawable {
      */
     protected transient BufferedImage image = null;
 
+    /**
+     * Not null if the image could be shared with other
+     * layers after a copy-on-write duplication.
+     */
+    private transient ImageShare imageShare;
+
     /**
      * The image shown during filter previews.
      */
@@ -93,9 +100,10 @@ public class ImageLayer extends ContentLayer implements Drawable {
     private transient BufferedImage filterSourceImage;
 
     /**
-     * The image bounding box trimmed from transparent pixels
+     * The lazily created index of the image's alpha channel,
+     * used for the trimmed bounding box and for hit-testing.
      */
-    private transient Rectangle trimmedBoundingBox;
+    private transient AlphaPyramid alphaIndex;
 
     /**
      * Whether the preview image is different from the normal image
@@ -165,14 +173,24 @@ public class ImageLayer extends ContentLayer implements Drawable {
     }
 
     private BufferedImage calcNewImageFromPasted(BufferedImage pastedImage) {
-        Canvas canvas = comp.getCanvas();
-        int canvasWidth = canvas.getWidth();
-        int canvasHeight = canvas.getHeight();
+        // usually it was already done outside the EDT, and then
+        // the pasted image is returned without any conversion
+        return prepareExternalImage(pastedImage,
+            comp.getCanvasWidth(), comp.getCanvasHeight());
+    }
 
+    /**
+     * Returns an image for {@link #fromExternalImage(BufferedImage, Composition, String)}
+     * that covers a canvas with the given size. If the external image is compatible
+     * and large enough, then it's returned without copying. This can be called
+     * outside the EDT, so that the new layer is created without copying on the EDT.
+     */
+    public static BufferedImage prepareExternalImage(BufferedImage pastedImage,
+                                                     int canvasWidth, int canvasHeight) {
         int pastedWidth = pastedImage.getWidth();
         int pastedHeight = pastedImage.getHeight();
 
-        if (canvas.isFullyCoveredBy(pastedImage)) {
+        if (pastedWidth >= canvasWidth && pastedHeight >= canvasHeight) {
             return ImageUtils.toSysCompatibleImage(pastedImage);
         }
 
@@ -180,7 +198,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
         // and the pasted image is centered within it
         int newWidth = Math.max(canvasWidth, pastedWidth);
         int newHeight = Math.max(canvasHeight, pastedHeight);
-        BufferedImage newImage = createEmptyImageForLayer(newWidth, newHeight);
+        BufferedImage newImage = ImageUtils.createSysCompatibleImage(newWidth, newHeight);
         Graphics2D g = newImage.createGraphics();
 
         // center the pasted image within the new image
@@ -236,7 +254,8 @@ public class ImageLayer extends ContentLayer implements Drawable {
         previewImage = null;
         filterSourceImage = null;
         image = null;
-        trimmedBoundingBox = null;
+        imageShare = null;
+        alphaIndex = null;
 
         in.defaultReadObject();
         setImage(PXCFormat.deserializeImage(in));
@@ -272,17 +291,17 @@ public class ImageLayer extends ContentLayer implements Drawable {
         comp.imageChanged(REPAINT);
     }
 
+    /**
+     * Duplicates this layer. The image (and the mask image) is shared
+     * copy-on-write, see {@link #copyImageIfShared()}.
+     */
     @Override
     public ImageLayer duplicate(boolean compCopy) {
-        BufferedImage imageCopy = copyImage(image);
-        if (imageCopy == null) {
-            // there was an out of memory error
-            return null;
-        }
         String duplicateName = compCopy ? name : Utils.createCopyName(name);
 
-        ImageLayer d = new ImageLayer(comp, imageCopy, duplicateName,
+        ImageLayer d = new ImageLayer(comp, image, duplicateName,
             null, translationX, translationY);
+        shareImageWith(d);
         d.setOpacity(getOpacity(), false);
         d.setBlendingMode(getBlendingMode(), false);
 
@@ -291,6 +310,78 @@ public class ImageLayer extends ContentLayer implements Drawable {
         return d;
     }
 
+    /**
+     * Lets the given duplicate use the image of this layer
+     * until one of them wants to modify the pixels
+     */
+    protected void shareImageWith(ImageLayer duplicate) {
+        assert duplicate.image == image;
+
+        if (imageShare == null) {
+            imageShare = ImageShare.create(image);
+        }
+        imageShare.join();
+        duplicate.imageShare = imageShare;
+    }
+
+    @Override
+    public void copyImageIfShared() {
+        if (imageShare == null) {
+            return;
+        }
+        if (imageShare.leave()) {
+            // the other layers (or the history) keep the original
+            BufferedImage copy = copyImage(image);
+            if (copy == null) { // the out of memory error was already shown
+                throw new IllegalStateException("could not copy the shared image of " + name);
+            }
+            image = copy;
+            // the content didn't change, only the reference
+            imageRefChanged();
+        }
+        imageShare = null;
+    }
+
+    /**
+     * Updates the share after the image was replaced. The old share isn't
+     * left, because the old image could be kept in the history. If the new
+     * image is shared (for example because an undo brought it back from
+     * the history), then it must be copied before it's modified.
+     */
+    private void imageReplaced() {
+        imageShare = ImageShare.rejoin(image);
+    }
+
+    /**
+     * Lets a reader outside the layers (for example the clipboard) use the
+     * current image without copying it on the EDT. Until the returned task
+     * is run, the layer copies the image before modifying it.
+     */
+    public Runnable shareImageWithReader() {
+        if (imageShare == null) {
+            imageShare = ImageShare.create(image);
+        }
+        ImageShare share = imageShare;
+        share.join();
+        return share::leave;
+    }
+
+    /**
+     * Lets the layers use the given image without copying it, even though
+     * a reader outside the layers (for example the clipboard) keeps using it.
+     * The layers copy the image before modifying it.
+     */
+    public static void addPermanentReader(BufferedImage image) {
+        ImageShare.addPermanentReader(image);
+    }
+
+    /**
+     * Returns true if the image could be shared with other layers
+     */
+    public boolean isImageShared() {
+        return imageShare != null && imageShare.isShared();
+    }
+
     @Override
     public BufferedImage getImage() {
         return image;
@@ -304,6 +395,37 @@ public class ImageLayer extends ContentLayer implements Drawable {
         return filterSourceImage;
     }
 
+    /**
+     * Returns the part of the filter source image that is visible
+     * in the view, relative to the filter source image,
+     * or null if it can't be determined.
+     */
+    @Override
+    public Rectangle getVisibleFilterSourceRegion() {
+        View view = comp.getView();
+        if (view == null || view.isMock()) {
+            return null;
+        }
+
+        // the visible part of the canvas, rounded outwards
+        Rectangle region = view.componentToImageSpace(view.getVisiblePart()).getBounds();
+
+        // relative to the image
+        region.translate(-getTx(), -getTy());
+
+        var selection = comp.getSelection();
+        if (selection != null) {
+            // the filter source is the selection-sized part of the image
+            Rectangle selBounds = selection.getShapeBounds();
+            selBounds.translate(-getTx(), -getTy());
+            selBounds = SwingUtilities.computeIntersection(
+                0, 0, image.getWidth(), image.getHeight(), selBounds);
+            region = region.intersection(selBounds);
+            region.translate(-selBounds.x, -selBounds.y);
+        }
+        return region;
+    }
+
     /**
      * Returns the subimage determined by the selection bounds,
      * or the image if there is no selection.
@@ -431,8 +553,16 @@ public class ImageLayer extends ContentLayer implements Drawable {
     }
 
     private void setImageWithSelection(BufferedImage newImage, boolean isUndoRedo) {
-        image = replaceSelectedRegion(image, newImage, isUndoRedo);
+        if (comp.hasSelection()) {
+            // the new image will be drawn into the current one
+            copyImageIfShared();
+            image = replaceSelectedRegion(image, newImage, isUndoRedo);
+        } else {
+            image = replaceSelectedRegion(image, newImage, isUndoRedo);
+            imageReplaced();
+        }
         imageRefChanged();
+        invalidateAlphaIndex();
 
         comp.imageChanged(INVALIDATE_CACHE);
     }
@@ -476,6 +606,16 @@ public class ImageLayer extends ContentLayer implements Drawable {
             return src;
         } else {
             Rectangle bounds = selection.getShapeBounds();
+
+            // blend through the cached coverage mask of the selection,
+            // so that the shape is not rasterized again for every change
+            boolean blended = selection.getMask().blend(
+                newImg, bounds.x, bounds.y, src, getTx(), getTy());
+            if (blended) {
+                return src;
+            }
+
+            // unusual image types: use Java2D soft clipping
             BufferedImage tmpImg = ImageUtils.createSysCompatibleImage(bounds.width, bounds.height);
             Graphics2D g2 = ImageUtils.setupForSoftSelection(tmpImg, selection.getShape(), bounds.x, bounds.y);
 
@@ -497,12 +637,15 @@ public class ImageLayer extends ContentLayer implements Drawable {
     public void setImage(BufferedImage newImage) {
         BufferedImage oldRef = image;
         image = requireNonNull(newImage);
+        if (image != oldRef) {
+            imageReplaced();
+        }
         imageRefChanged();
 
         assert Assertions.checkRasterMinimum(newImage);
 
         comp.imageChanged(INVALIDATE_CACHE);
-        invalidateTrimCache();
+        invalidateAlphaIndex();
 
         if (oldRef != null && oldRef != image) {
             oldRef.flush();
@@ -569,12 +712,15 @@ public class ImageLayer extends ContentLayer implements Drawable {
             History.add(edit);
         }
 
-        image = previewImage;
+        if (previewImage != image) {
+            image = previewImage;
+            imageReplaced();
+        }
         imageRefChanged();
 
         if (imageContentChanged) {
             updateIconImage();
-            invalidateTrimCache();
+            invalidateAlphaIndex();
         }
 
         previewImage = null;
@@ -686,7 +832,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
         filterSourceImage = null;
         updateIconImage();
         comp.imageChanged();
-        invalidateTrimCache();
+        invalidateAlphaIndex();
         Tools.editedObjectChanged(this);
     }
 
@@ -703,23 +849,29 @@ public class ImageLayer extends ContentLayer implements Drawable {
         }
     }
 
-    private void invalidateTrimCache() {
-        trimmedBoundingBox = null;
+    @Override
+    public void pixelsChanged(Rectangle area) {
+        if (alphaIndex != null) {
+            alphaIndex.markDirty(area);
+        }
     }
 
-    @Override
-    public Rectangle getEffectiveBoundingBox() {
-        // cache trimmed rect until better solution is found
-        if (trimmedBoundingBox == null) {
-            trimmedBoundingBox = ImageTrimUtil.getTrimRect(getImage());
+    private void invalidateAlphaIndex() {
+        alphaIndex = null;
+    }
+
+    private AlphaPyramid getAlphaIndex() {
+        if (alphaIndex == null || !alphaIndex.hasSameSize(image)) {
+            alphaIndex = new AlphaPyramid(image);
         }
+        return alphaIndex;
+    }
 
-        return new Rectangle(
-            translationX + trimmedBoundingBox.x,
-            translationY + trimmedBoundingBox.y,
-            trimmedBoundingBox.width,
-            trimmedBoundingBox.height
-        );
+    @Override
+    public Rectangle getEffectiveBoundingBox() {
+        Rectangle trimRect = getAlphaIndex().getTrimRect(image);
+        trimRect.translate(translationX, translationY);
+        return trimRect;
     }
 
     @Override
@@ -742,6 +894,12 @@ public class ImageLayer extends ContentLayer implements Drawable {
         int x = p.x - translationX;
         int y = p.y - translationY;
         if (x >= 0 && y >= 0 && x < image.getWidth() && y < image.getHeight()) {
+            // if the index already exists, then it can
+            // tell whether the pixel is transparent
+            if (alphaIndex != null && alphaIndex.hasSameSize(image)
+                && alphaIndex.getMaxAlpha(image, x, y) == 0) {
+                return 0x00000000;
+            }
             if (hasMask() && isMaskEnabled()) {
                 int maskPixel = getMask().getMouseHitPixelAtPoint(p);
                 if (maskPixel != 0) {
@@ -1028,11 +1186,16 @@ public class ImageLayer extends ContentLayer implements Drawable {
         if (tmpDrawingLayer == null) {
             return;
         }
+        copyImageIfShared();
         Graphics2D g = image.createGraphics();
 
         tmpDrawingLayer.paintOn(g, -getTx(), -getTy());
         g.dispose();
 
+        Rectangle changedArea = tmpDrawingLayer.getBounds();
+        changedArea.translate(-getTx(), -getTy());
+        pixelsChanged(changedArea);
+
         tmpDrawingLayer.dispose();
         tmpDrawingLayer = null;
     }
@@ -1214,12 +1377,14 @@ public class ImageLayer extends ContentLayer implements Drawable {
      */
     public BufferedImage applyLayerMask(boolean addToHistory) {
         // the image reference will not be replaced
+        copyImageIfShared();
         BufferedImage oldImage = copyImage(image);
 
         LayerMask oldMask = mask;
         MaskViewMode oldMode = comp.getView().getMaskViewMode();
 
         mask.applyToImage(image);
+        invalidateAlphaIndex();
         deleteMask(false);
 
         if (addToHistory) {
@@ -1236,6 +1401,17 @@ public class ImageLayer extends ContentLayer implements Drawable {
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * Returns the number of bytes used by the preview image,
+     * if it is not the same as the real image
+     */
+    public long getPreviewMemoryUsage() {
+        if (previewImage == null || previewImage == image) {
+            return 0;
+        }
+        return MemoryInfo.getImageSize(previewImage);
+    }
+
     @VisibleForTesting
     public BufferedImage getPreviewImage() {
         return previewImage;
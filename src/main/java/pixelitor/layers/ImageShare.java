@@ -0,0 +1,110 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.layers;
+
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Collections.synchronizedMap;
+
+/**
+ * Counts the image layers (or layer masks) and the outside
+ * readers (such as the clipboard) that share the same image
+ * after a copy-on-write duplication. The shared image is not modified
+ * in place: a layer that wants to change the pixels first makes its
+ * own copy, unless all the other layers already did so.
+ *
+ * A layer that simply replaces its image (for example because of a
+ * filter) doesn't leave the share, because its previous image could
+ * be kept in the history, and then it must not be modified either.
+ * When such an image comes back from the history, the layer
+ * joins its share again, see {@link #rejoin(BufferedImage)}.
+ */
+class ImageShare {
+    // the shares of the images, the images are compared by identity,
+    // and they are not kept alive by this map
+    private static final Map<BufferedImage, ImageShare> shares
+        = synchronizedMap(new WeakHashMap<>());
+
+    private final AtomicInteger numLayers = new AtomicInteger(1);
+
+    private ImageShare() {
+    }
+
+    /**
+     * Returns a new share for the given image, used by one layer
+     */
+    static ImageShare create(BufferedImage image) {
+        var share = new ImageShare();
+        shares.put(image, share);
+        return share;
+    }
+
+    /**
+     * Registers an outside reader (such as the clipboard) which uses the
+     * given image until it's garbage collected. The layers that start
+     * to use the same image later (see {@link #rejoin(BufferedImage)})
+     * copy it before modifying the pixels.
+     */
+    static void addPermanentReader(BufferedImage image) {
+        shares.compute(image, (img, share) -> {
+            if (share == null) {
+                return new ImageShare();
+            }
+            share.join();
+            return share;
+        });
+    }
+
+    /**
+     * Returns the share of the given image after a layer started to use it
+     * (typically an image that comes back from the history, or a pasted
+     * image that is still on the clipboard), or null
+     * if the image was never shared. The layer is counted again, even if
+     * it never left the share, because counting a user too many only
+     * costs an unnecessary copy, but counting one too few would allow
+     * an in-place modification of an image that is still in use.
+     */
+    static ImageShare rejoin(BufferedImage image) {
+        ImageShare share = shares.get(image);
+        if (share != null) {
+            share.join();
+        }
+        return share;
+    }
+
+    void join() {
+        numLayers.incrementAndGet();
+    }
+
+    /**
+     * Called when a layer stops using the shared image, because it
+     * wants to modify the pixels, or when an outside reader doesn't
+     * need it anymore. Returns true if the image could still be
+     * used by others, and therefore the layer must copy it.
+     */
+    boolean leave() {
+        return numLayers.getAndDecrement() > 1;
+    }
+
+    boolean isShared() {
+        return numLayers.get() > 1;
+    }
+}
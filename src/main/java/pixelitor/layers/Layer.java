@@ -162,6 +162,15 @@ public abstract class Layer implements Serializable {
         return visible;
     }
 
+    /**
+     * Returns true for the layers that change the image
+     * composited so far instead of painting over it
+     * (adjustment layers and watermarked text layers).
+     */
+    public boolean isAdjustment() {
+        return isAdjustment;
+    }
+
     public void setVisible(boolean newVisibility, boolean addToHistory) {
         if (visible == newVisibility) {
             return;
@@ -423,6 +432,7 @@ public abstract class Layer implements Serializable {
     }
 
     private PixelitorEdit modifyMaskToHide(Shape shape, boolean createEdit) {
+        mask.copyImageIfShared();
         BufferedImage maskImage = mask.getImage();
         BufferedImage maskImageBackup = null;
         if (createEdit) {
@@ -436,6 +446,7 @@ public abstract class Layer implements Serializable {
         g.setColor(Color.BLACK);
         g.fill(unselectedPart);
         g.dispose();
+        mask.pixelsChanged(new Rectangle(maskImage.getWidth(), maskImage.getHeight()));
 
         mask.updateFromBWImage();
 
@@ -22,7 +22,6 @@ import pixelitor.colors.Colors;
 import pixelitor.history.History;
 import pixelitor.history.LinkLayerMaskEdit;
 import pixelitor.tools.Tools;
-import pixelitor.utils.ImageUtils;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
@@ -131,11 +130,12 @@ public class LayerMask extends ImageLayer {
 
     /**
      * Duplicates this layer mask, and attaches the duplicated mask
-     * to the given layer
+     * to the given layer. The mask image is shared copy-on-write.
      */
     public LayerMask duplicate(Layer owner) {
-        BufferedImage maskImageCopy = ImageUtils.copyImage(image);
-        return new LayerMask(comp, maskImageCopy, owner, getTx(), getTy());
+        var d = new LayerMask(comp, image, owner, getTx(), getTy());
+        shareImageWith(d);
+        return d;
     }
 
     public boolean isLinked() {
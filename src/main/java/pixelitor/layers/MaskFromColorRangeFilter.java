@@ -19,8 +19,18 @@ package pixelitor.layers;
 
 import com.jhlabs.image.PointFilter;
 import net.jafama.FastMath;
+import pixelitor.ThreadPool;
+import pixelitor.utils.ImageUtils;
 
 import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.concurrent.Future;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
 
 /**
  * A filter used internally by the "Mask from Color Range".
@@ -33,8 +43,8 @@ class MaskFromColorRangeFilter extends PointFilter {
     public static final int SAT = 4;
     private int distType = HSB;
 
-    private static final int WHITE_PIXEL = 0xFF_FF_FF_FF;
-    private static final int BLACK_PIXEL = 0xFF_00_00_00;
+    // the number of lines processed by one task in createGrayMask
+    private static final int BAND_HEIGHT = 64;
 
     private double maxTolerance;
     private double minTolerance;
@@ -54,10 +64,9 @@ class MaskFromColorRangeFilter extends PointFilter {
         refB = c.getBlue();
 
         if (distType != RGB) {
-            float[] hsb = Color.RGBtoHSB(refR, refG, refB, null);
-            refHue = hsb[0];
-            refSat = hsb[1];
-            refBri = hsb[2];
+            refHue = hue(refR, refG, refB);
+            refSat = saturation(refR, refG, refB);
+            refBri = brightness(refR, refG, refB);
         }
     }
 
@@ -79,28 +88,91 @@ class MaskFromColorRangeFilter extends PointFilter {
 
     @Override
     public int filterRGB(int x, int y, int rgb) {
+        int v = calcMaskValue(rgb);
+        return 0xFF_00_00_00 | v << 16 | v << 8 | v;
+    }
+
+    /**
+     * Creates the mask directly as a grayscale image, without
+     * an intermediate RGB image. The work is split into
+     * horizontal bands, which are processed in parallel.
+     */
+    public BufferedImage createGrayMask(BufferedImage src) {
+        int width = src.getWidth();
+        int height = src.getHeight();
+        BufferedImage dst = new BufferedImage(width, height, TYPE_BYTE_GRAY);
+        byte[] outPixels = ImageUtils.getGrayPixelsAsByteArray(dst);
+        int[] inPixels = getDirectPixels(src);
+
+        int numBands = (height + BAND_HEIGHT - 1) / BAND_HEIGHT;
+        pt = createProgressTracker(numBands);
+        Future<?>[] futures = new Future<?>[numBands];
+        for (int band = 0; band < numBands; band++) {
+            int startY = band * BAND_HEIGHT;
+            int endY = Math.min(height, startY + BAND_HEIGHT);
+            futures[band] = ThreadPool.submit(() -> {
+                int[] line = inPixels == null ? new int[width] : null;
+                for (int y = startY; y < endY; y++) {
+                    int offset = y * width;
+                    if (inPixels == null) {
+                        src.getRGB(0, y, width, 1, line, 0, width);
+                    }
+                    for (int x = 0; x < width; x++) {
+                        int rgb = inPixels == null ? line[x] : inPixels[offset + x];
+                        outPixels[offset + x] = (byte) calcMaskValue(rgb);
+                    }
+                }
+            });
+        }
+        ThreadPool.waitFor(futures, pt);
+        finishProgressTracker();
+
+        return dst;
+    }
+
+    /**
+     * Returns the pixel array of the given image if it can be indexed
+     * as y * width + x, and the values are not premultiplied, or null
+     * if the pixels must be read with getRGB. Subimages (for example
+     * the canvas-sized part of a big layer) have a different origin
+     * and scanline stride than their array.
+     */
+    private static int[] getDirectPixels(BufferedImage src) {
+        int type = src.getType();
+        if (type != TYPE_INT_ARGB && type != TYPE_INT_RGB) {
+            return null;
+        }
+        WritableRaster raster = src.getRaster();
+        if (raster.getSampleModelTranslateX() != 0
+            || raster.getSampleModelTranslateY() != 0
+            || raster.getDataBuffer().getOffset() != 0
+            || !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)
+            || ((SinglePixelPackedSampleModel) raster.getSampleModel())
+            .getScanlineStride() != src.getWidth()) {
+            return null;
+        }
+        return ImageUtils.getPixelsAsArray(src);
+    }
+
+    /**
+     * Returns the gray value of the mask (0-255) for the given pixel.
+     */
+    private int calcMaskValue(int rgb) {
         double dist = calcDistance(rgb);
 
+        int v;
         if (dist > minTolerance) {
-            if (invert) {
-                return WHITE_PIXEL;
-            } else {
-                return BLACK_PIXEL;
-            }
+            v = 0;
         } else if (dist < maxTolerance) {
-            if (invert) {
-                return BLACK_PIXEL;
-            } else {
-                return WHITE_PIXEL;
-            }
+            v = 255;
         } else {
             // linear interpolation
-            int v = (int) ((minTolerance - dist) * 255 / (minTolerance - maxTolerance));
-            if (invert) {
-                v = 255 - v;
-            }
-            return 0xFF_00_00_00 | v << 16 | v << 8 | v;
+            v = (int) ((minTolerance - dist) * 255 / (minTolerance - maxTolerance));
+        }
+        if (invert) {
+            v = 255 - v;
         }
+        return v;
     }
 
     private double calcDistance(int rgb) {
@@ -126,37 +198,73 @@ class MaskFromColorRangeFilter extends PointFilter {
     }
 
     private double calcHSBDistance(int r, int g, int b) {
-        float[] hsb = Color.RGBtoHSB(r, g, b, null);
+        float deltaHue = hueDelta(hue(r, g, b));
+        float deltaSat = saturation(r, g, b) - refSat;
+        float deltaBri = brightness(r, g, b) - refBri;
+
+        return 150 * FastMath.sqrtQuick(deltaHue * deltaHue + deltaSat * deltaSat + deltaBri * deltaBri);
+    }
 
-        float deltaHue = hsb[0] - refHue;
-        float deltaSat = hsb[1] - refSat;
-        float deltaBri = hsb[2] - refBri;
+    private double calcHueDistance(int r, int g, int b) {
+        float deltaHue = hueDelta(hue(r, g, b));
+        return Math.abs(1000 * deltaHue);
+    }
 
+    private double calcSatDistance(int r, int g, int b) {
+        float deltaSat = saturation(r, g, b) - refSat;
+        return 150 * Math.abs(deltaSat);
+    }
+
+    private float hueDelta(float hue) {
+        float deltaHue = hue - refHue;
         // hue is an angle
         if (deltaHue > 0.5f) {
             deltaHue = 1.0f - deltaHue;
         } else if (deltaHue < -0.5f) {
             deltaHue = 1.0f + deltaHue;
         }
+        return deltaHue;
+    }
 
-        return 150 * FastMath.sqrtQuick(deltaHue * deltaHue + deltaSat * deltaSat + deltaBri * deltaBri);
+    // The following methods calculate the same values as Color.RGBtoHSB,
+    // but without allocating an array for every pixel.
+
+    private static float hue(int r, int g, int b) {
+        int cMax = Math.max(r, Math.max(g, b));
+        int cMin = Math.min(r, Math.min(g, b));
+        if (cMax == 0 || cMax == cMin) {
+            return 0.0f; // the saturation is zero
+        }
+        float range = cMax - cMin;
+        float redC = (cMax - r) / range;
+        float greenC = (cMax - g) / range;
+        float blueC = (cMax - b) / range;
+        float hue;
+        if (r == cMax) {
+            hue = blueC - greenC;
+        } else if (g == cMax) {
+            hue = 2.0f + redC - blueC;
+        } else {
+            hue = 4.0f + greenC - redC;
+        }
+        hue = hue / 6.0f;
+        if (hue < 0) {
+            hue = hue + 1.0f;
+        }
+        return hue;
     }
 
-    private double calcHueDistance(int r, int g, int b) {
-        float[] hsb = Color.RGBtoHSB(r, g, b, null);
-        float deltaHue = hsb[0] - refHue;
-        // hue is an angle
-        if (deltaHue > 0.5f) {
-            deltaHue = 1.0f - deltaHue;
-        } else if (deltaHue < -0.5f) {
-            deltaHue = 1.0f + deltaHue;
+    private static float saturation(int r, int g, int b) {
+        int cMax = Math.max(r, Math.max(g, b));
+        if (cMax == 0) {
+            return 0.0f;
         }
-        return Math.abs(1000 * deltaHue);
+        int cMin = Math.min(r, Math.min(g, b));
+        return ((float) (cMax - cMin)) / ((float) cMax);
     }
 
-    private double calcSatDistance(int r, int g, int b) {
-        float[] hsb = Color.RGBtoHSB(r, g, b, null);
-        float deltaSat = hsb[1] - refSat;
-        return 150 * Math.abs(deltaSat);
+    private static float brightness(int r, int g, int b) {
+        int cMax = Math.max(r, Math.max(g, b));
+        return ((float) cMax) / 255.0f;
     }
 }
@@ -24,6 +24,7 @@ import pixelitor.filters.gui.IntChoiceParam.Item;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.gui.utils.*;
 import pixelitor.utils.Cursors;
+import pixelitor.utils.ProgressTracker;
 
 import javax.swing.*;
 import javax.swing.event.ChangeListener;
@@ -262,21 +263,24 @@ public class MaskFromColorRangePanel extends JPanel {
             return; // the color was not set yet
         }
         MaskFromColorRangeFilter filter = createFilterFromSettings(c);
-        BufferedImage rgbMask = filter.filter(colorPickerImg, null);
+
+        // the preview is calculated only for the thumbnail-sized
+        // image, and it is too fast to show its progress
+        filter.setProgressTracker(ProgressTracker.NULL_TRACKER);
+        BufferedImage grayMask = filter.createGrayMask(colorPickerImg);
 
         String previewMode = (String) previewModeCB.getSelectedItem();
 
         switch (previewMode) {
-            case PREVIEW_MODE_MASK -> previewPanel.changeImage(rgbMask);
-            case PREVIEW_MODE_RUBYLITH -> updateRubyPreview(rgbMask);
-            case PREVIEW_MODE_BLACK_MATTE -> updateMattePreview(rgbMask, Color.BLACK);
-            case PREVIEW_MODE_WHITE_MATTE -> updateMattePreview(rgbMask, Color.WHITE);
+            case PREVIEW_MODE_MASK -> previewPanel.changeImage(grayMask);
+            case PREVIEW_MODE_RUBYLITH -> updateRubyPreview(grayMask);
+            case PREVIEW_MODE_BLACK_MATTE -> updateMattePreview(grayMask, Color.BLACK);
+            case PREVIEW_MODE_WHITE_MATTE -> updateMattePreview(grayMask, Color.WHITE);
             default -> throw new IllegalStateException("previewMode = " + previewMode);
         }
     }
 
-    private void updateRubyPreview(BufferedImage rgbMask) {
-        BufferedImage grayMask = convertToGrayScaleImage(rgbMask);
+    private void updateRubyPreview(BufferedImage grayMask) {
         BufferedImage ruby = new BufferedImage(RUBYLITH_COLOR_MODEL,
             grayMask.getRaster(), false, null);
         BufferedImage rubyPreview = copyImage(colorPickerImg);
@@ -287,8 +291,7 @@ public class MaskFromColorRangePanel extends JPanel {
         previewPanel.changeImage(rubyPreview);
     }
 
-    private void updateMattePreview(BufferedImage rgbMask, Color matteColor) {
-        BufferedImage grayMask = convertToGrayScaleImage(rgbMask);
+    private void updateMattePreview(BufferedImage grayMask, Color matteColor) {
         BufferedImage transparencyImage = new BufferedImage(
             TRANSPARENCY_COLOR_MODEL, grayMask.getRaster(),
             false, null);
@@ -300,7 +303,7 @@ public class MaskFromColorRangePanel extends JPanel {
         g.dispose();
 
         BufferedImage preview = createSysCompatibleImage(
-            rgbMask.getWidth(), rgbMask.getHeight());
+            grayMask.getWidth(), grayMask.getHeight());
         Graphics2D previewG = preview.createGraphics();
         Colors.fillWith(matteColor, previewG, preview.getWidth(), preview.getHeight());
         previewG.drawImage(thumbWithTransparency, 0, 0, null);
@@ -312,9 +315,7 @@ public class MaskFromColorRangePanel extends JPanel {
     private BufferedImage getMaskImage() {
         MaskFromColorRangeFilter filter = createFilterFromSettings(lastColor);
 
-        BufferedImage rgbMask = filter.filter(srcImage, null);
-
-        return convertToGrayScaleImage(rgbMask);
+        return filter.createGrayMask(srcImage);
     }
 
     private Color getLastColor() {
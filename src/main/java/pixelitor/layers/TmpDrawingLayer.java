@@ -90,6 +90,13 @@ public class TmpDrawingLayer {
         return image.getHeight();
     }
 
+    /**
+     * Returns the bounds of this temporary layer relative to the canvas
+     */
+    public Rectangle getBounds() {
+        return new Rectangle(selStartX, selStartY, image.getWidth(), image.getHeight());
+    }
+
     public void dispose() {
         g.dispose();
         image.flush();
@@ -20,16 +20,13 @@ package pixelitor.menus.edit;
 import pixelitor.Composition;
 import pixelitor.OpenImages;
 import pixelitor.gui.utils.Dialogs;
-import pixelitor.utils.ImageUtils;
 import pixelitor.utils.Messages;
 import pixelitor.utils.Result;
 
 import javax.swing.*;
-import java.awt.Toolkit;
-import java.awt.datatransfer.Clipboard;
-import java.awt.datatransfer.Transferable;
 import java.awt.event.ActionEvent;
 import java.awt.image.BufferedImage;
+import java.util.function.Supplier;
 
 import static pixelitor.utils.Texts.i18n;
 
@@ -55,21 +52,15 @@ public class CopyAction extends AbstractAction {
     }
 
     private void copyToClipboard(Composition comp) {
-        Result<BufferedImage, String> result = source.getImage(comp);
+        Result<Supplier<BufferedImage>, String> result = source.prepareCopy(comp);
         if (!result.isOK()) {
             String msg = "Could not copy because " + result.getError();
             Dialogs.showErrorDialog("Error", msg);
             return;
         }
-        BufferedImage activeImage = result.get();
-        // make a copy, because otherwise changing the image
-        // will also change the clipboard contents
-        BufferedImage copy = ImageUtils.copySubImage(activeImage);
-        Transferable imageTransferable = new ImageTransferable(copy);
-        Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
-
-        // TODO JDK bug? a stack trace is printed, but the image is copied.
-        clipboard.setContents(imageTransferable, null);
+        // the image is created outside the EDT, and it is not
+        // shared with the composition, so the clipboard can keep it
+        ImageClipboard.copy(result.get())
+            .exceptionally(Messages::showExceptionOnEDT);
     }
 }
-
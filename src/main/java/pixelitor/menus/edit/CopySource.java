@@ -34,6 +34,7 @@ import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.util.function.Supplier;
 
 /**
  * Represents the source of the image that will be copied to the clipboard
@@ -41,31 +42,33 @@ import java.awt.image.BufferedImage;
 public enum CopySource {
     LAYER_OR_MASK {
         @Override
-        Result<BufferedImage, String> getImage(Composition comp) {
+        Result<Supplier<BufferedImage>, String> prepareCopy(Composition comp) {
             Layer layer = comp.getActiveLayer();
             if (layer.isMaskEditing()) {
                 layer = layer.getMask();
             }
 
-            BufferedImage canvasSizedImage = null;
-
             if (layer instanceof AdjustmentLayer) {
                 return Result.error("adjustment layers cannot be copied");
             } else if (layer instanceof ImageLayer) {
-                canvasSizedImage = ((ImageLayer) layer).getCanvasSizedSubImage();
+                ImageLayer imageLayer = (ImageLayer) layer;
+                // the layer doesn't modify the shared image
+                // in place until the copied image is created
+                Runnable release = imageLayer.shareImageWithReader();
+                return prepareImageCopy(imageLayer.getCanvasSizedSubImage(),
+                    true, release, comp);
             } else if (layer instanceof TextLayer) {
                 // TODO Text layers are rasterized, but they should be probably copied
                 //   in other formats as well (as a string, as a serialized object)
                 //   and pasting into Pixelitor should choose the serialized object
                 //   There could be also an internal clipboard, to handle such cases
-                canvasSizedImage = ((TextLayer) layer).createRasterizedImage(true);
-            }
-
-            if (canvasSizedImage == null) {
-                return Result.error("program error (no image from layer)");
+                BufferedImage rasterized = ((TextLayer) layer).createRasterizedImage(true);
+                if (rasterized != null) {
+                    return prepareImageCopy(rasterized, false, null, comp);
+                }
             }
 
-            return createImageWithSelectedPixels(canvasSizedImage, comp);
+            return Result.error("program error (no image from layer)");
         }
 
         @Override
@@ -74,8 +77,10 @@ public enum CopySource {
         }
     }, COMPOSITE {
         @Override
-        Result<BufferedImage, String> getImage(Composition comp) {
-            return createImageWithSelectedPixels(comp.getCompositeImage(), comp);
+        Result<Supplier<BufferedImage>, String> prepareCopy(Composition comp) {
+            // the composite image is cached in the composition,
+            // which will not update it in place after this call
+            return prepareImageCopy(comp.getCompositeImageForReader(), true, null, comp);
         }
 
         @Override
@@ -84,10 +89,41 @@ public enum CopySource {
         }
     };
 
-    private static Result<BufferedImage, String> createImageWithSelectedPixels(
-        BufferedImage canvasSizedImage, Composition comp) {
+    /**
+     * Checks the selection on the EDT, and returns the task that creates
+     * the copied image outside the EDT. If the given image is shared
+     * with the composition, then a copy is made only if the selection
+     * handling doesn't create a new image anyway. The release task
+     * (if not null) is run when the given image is no longer needed.
+     */
+    private static Result<Supplier<BufferedImage>, String> prepareImageCopy(
+        BufferedImage canvasSizedImage, boolean shared, Runnable release, Composition comp) {
+        Result<Supplier<BufferedImage>, String> result =
+            createCopyTask(canvasSizedImage, shared, comp);
+        if (release == null) {
+            return result;
+        }
+        if (!result.isOK()) {
+            release.run();
+            return result;
+        }
+        return result.map(task -> () -> {
+            try {
+                return task.get();
+            } finally {
+                release.run();
+            }
+        });
+    }
+
+    private static Result<Supplier<BufferedImage>, String> createCopyTask(
+        BufferedImage canvasSizedImage, boolean shared, Composition comp) {
         if (!comp.hasSelection()) {
-            return Result.ok(canvasSizedImage);
+            if (shared) {
+                // otherwise changing the image would also change the clipboard contents
+                return Result.ok(() -> ImageUtils.copySubImage(canvasSizedImage));
+            }
+            return Result.ok(() -> canvasSizedImage);
         }
 
         Selection selection = comp.getSelection();
@@ -95,39 +131,45 @@ public enum CopySource {
         if (selection.isRectangular()) {
             // for rectangular selections a simple crop is needed
             Rectangle2D selRect = (Rectangle2D) selectionShape;
-            Rectangle selBounds = Shapes.roundCropRect(selRect);
-            return cropToSelectionBounds(canvasSizedImage, comp.getCanvas(), selBounds);
+            Canvas canvas = comp.getCanvas();
+
+            // just to be sure that the bounds are inside the canvas
+            Rectangle selBounds = SwingUtilities.computeIntersection(
+                0, 0, canvas.getWidth(), canvas.getHeight(),
+                Shapes.roundCropRect(selRect)
+            );
+            if (selBounds.isEmpty()) {
+                return Result.error("the selection is outside the image");
+            }
+            return Result.ok(() -> ImageUtils.crop(canvasSizedImage, selBounds));
         }
 
         // in the case of a nonrectangular selection
         // set the unselected parts to transparent with an AA border
         Rectangle selBounds = selectionShape.getBounds();
+        return Result.ok(() -> copySoftSelection(canvasSizedImage, selectionShape, selBounds));
+    }
 
+    private static BufferedImage copySoftSelection(BufferedImage canvasSizedImage,
+                                                   Shape selectionShape,
+                                                   Rectangle selBounds) {
         BufferedImage tmpImg = ImageUtils.createSysCompatibleImage(
             selBounds.width, selBounds.height);
         Graphics2D g2 = ImageUtils.setupForSoftSelection(
-            tmpImg, selection.getShape(), selBounds.x, selBounds.y);
+            tmpImg, selectionShape, selBounds.x, selBounds.y);
 
         g2.drawImage(canvasSizedImage, -selBounds.x, -selBounds.y, null);
         g2.dispose();
-        return Result.ok(tmpImg);
-    }
-
-    private static Result<BufferedImage, String> cropToSelectionBounds(BufferedImage canvasSizedImage,
-                                                                       Canvas canvas,
-                                                                       Rectangle selBounds) {
-        // just to be sure that the bounds are inside the canvas
-        selBounds = SwingUtilities.computeIntersection(
-            0, 0, canvas.getWidth(), canvas.getHeight(),
-            selBounds
-        );
-        if (selBounds.isEmpty()) {
-            return Result.error("the selection is outside the image");
-        }
-        return Result.ok(ImageUtils.crop(canvasSizedImage, selBounds));
+        return tmpImg;
     }
 
-    abstract Result<BufferedImage, String> getImage(Composition comp);
+    /**
+     * Called on the EDT, returns the task that creates the copied image,
+     * which is not shared with the composition. The task can run outside
+     * the EDT, because the composition doesn't modify the pixels
+     * used by the task in place.
+     */
+    abstract Result<Supplier<BufferedImage>, String> prepareCopy(Composition comp);
 
     abstract String toResourceKey();
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.menus.edit;
+
+import pixelitor.ThreadPool;
+import pixelitor.layers.ImageLayer;
+import pixelitor.utils.Result;
+import pixelitor.utils.SerialExecutor;
+
+import java.awt.Toolkit;
+import java.awt.datatransfer.Clipboard;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Copies images to and pastes images from the system clipboard
+ * outside the EDT.
+ *
+ * The copied images are put on the clipboard without any conversion,
+ * the conversion to the system format happens only if another
+ * application asks for the data. As long as Pixelitor owns the
+ * clipboard, pasting gets back the copied image object itself,
+ * which is shared copy-on-write with the layers created from it.
+ */
+class ImageClipboard {
+    // the clipboard tasks run one at a time, in the order of the
+    // user actions, so that a paste right after a copy gets the copied image
+    private static final Executor executor
+        = new SerialExecutor(ThreadPool.getExecutor());
+
+    private ImageClipboard() {
+        // should not be instantiated
+    }
+
+    /**
+     * Creates the image with the given task, and puts it on the clipboard,
+     * both outside the EDT. The image is shared with the clipboard,
+     * therefore it must not be modified later.
+     */
+    static CompletableFuture<Void> copy(Supplier<BufferedImage> imageCreator) {
+        // TODO JDK bug? a stack trace is printed, but the image is copied.
+        return CompletableFuture.runAsync(() -> {
+            BufferedImage image = imageCreator.get();
+
+            // the layers pasted from the clipboard copy it only before modifying it
+            ImageLayer.addPermanentReader(image);
+
+            var transferable = new ImageTransferable(image);
+            getSystemClipboard().setContents(transferable, null);
+        }, executor);
+    }
+
+    /**
+     * Returns the pasted image, or an error message if there is no image
+     * on the clipboard. The returned image could be shared with the
+     * clipboard, therefore it must not be modified in place.
+     */
+    static CompletableFuture<Result<BufferedImage, String>> paste() {
+        return CompletableFuture.supplyAsync(ImageClipboard::readImage, executor);
+    }
+
+    private static Result<BufferedImage, String> readImage() {
+        Transferable contents = getSystemClipboard().getContents(null);
+        if (contents == null) {
+            return Result.error("There is nothing to paste.");
+        }
+
+        if (contents instanceof ImageTransferable) {
+            // copied within Pixelitor: there is no need for a conversion or a copy
+            return Result.ok(((ImageTransferable) contents).getImage());
+        }
+
+        if (!contents.isDataFlavorSupported(DataFlavor.imageFlavor)) {
+            return Result.error("The clipboard content is not an image.");
+        }
+        BufferedImage image;
+        try {
+            image = (BufferedImage) contents.getTransferData(DataFlavor.imageFlavor);
+        } catch (UnsupportedFlavorException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+        // the image from another application is not shared with anything,
+        // it's converted by the paste destination, also outside the EDT
+        return Result.ok(image);
+    }
+
+    private static Clipboard getSystemClipboard() {
+        return Toolkit.getDefaultToolkit().getSystemClipboard();
+    }
+}
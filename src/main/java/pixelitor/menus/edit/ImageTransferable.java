@@ -21,7 +21,8 @@ import java.awt.datatransfer.Transferable;
 import java.awt.image.BufferedImage;
 
 /**
- * A transferable for putting images on the clipboard
+ * A transferable for putting images on the clipboard.
+ * The image is never modified after it was put on the clipboard.
  */
 class ImageTransferable implements Transferable {
     private final BufferedImage image;
@@ -30,6 +31,10 @@ class ImageTransferable implements Transferable {
         this.image = image;
     }
 
+    BufferedImage getImage() {
+        return image;
+    }
+
     @Override
     public DataFlavor[] getTransferDataFlavors() {
         return new DataFlavor[]{DataFlavor.imageFlavor};
@@ -17,19 +17,18 @@
 
 package pixelitor.menus.edit;
 
+import pixelitor.OpenImages;
 import pixelitor.utils.Messages;
+import pixelitor.utils.Result;
 
 import javax.swing.*;
-import java.awt.Toolkit;
-import java.awt.datatransfer.DataFlavor;
-import java.awt.datatransfer.Transferable;
-import java.awt.datatransfer.UnsupportedFlavorException;
+import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.awt.image.BufferedImage;
-import java.io.IOException;
-import java.util.Optional;
 
 import static pixelitor.utils.Texts.i18n;
+import static pixelitor.utils.Threads.onEDT;
+import static pixelitor.utils.Threads.onPool;
 
 /**
  * Pastes an image from the system clipboard
@@ -45,38 +44,26 @@ public class PasteAction extends AbstractAction {
 
     @Override
     public void actionPerformed(ActionEvent e) {
-        try {
-            getImageFromClipboard().ifPresent(this::pasteImage);
-        } catch (Exception ex) {
-            Messages.showException(ex);
-        }
-    }
+        // reading and converting the clipboard contents can take a long time,
+        // only the canvas size is read here, on the EDT
+        var comp = OpenImages.getActiveComp();
+        Dimension canvasSize = comp == null ? null : comp.getCanvas().getSize();
 
-    private void pasteImage(BufferedImage pastedImage) {
-        // the pasted image could have an unexpected type
-        // (such as RGB, without transparency ), but the
-        // later executing code is responsible for converting it.
-        destination.paste(pastedImage);
+        ImageClipboard.paste()
+            .thenApplyAsync(result -> result.map(image ->
+                destination.prepare(image, canvasSize)), onPool)
+            .thenAcceptAsync(this::pasteImage, onEDT)
+            .exceptionally(Messages::showExceptionOnEDT);
     }
 
-    private static Optional<BufferedImage> getImageFromClipboard() {
-        Transferable clipboardContents = Toolkit.getDefaultToolkit().getSystemClipboard().getContents(null);
-        if (clipboardContents == null) {
-            Messages.showInfo("Paste", "There is nothing to paste.");
-            return Optional.empty();
-        }
-
-        BufferedImage pastedImage = null;
-        if (clipboardContents.isDataFlavorSupported(DataFlavor.imageFlavor)) {
-            try {
-                pastedImage = (BufferedImage) clipboardContents.getTransferData(DataFlavor.imageFlavor);
-            } catch (UnsupportedFlavorException | IOException ex) {
-                Messages.showException(ex);
-            }
-        } else {
-            Messages.showInfo("Paste", "The clipboard content is not an image.");
-            return Optional.empty();
+    private void pasteImage(Result<BufferedImage, String> result) {
+        if (!result.isOK()) {
+            Messages.showInfo("Paste", result.getError());
+            return;
         }
-        return Optional.of(pastedImage);
+        // the prepared image could still be shared with the clipboard,
+        // and it could have a different size than the canvas, if the
+        // canvas was resized in the meantime
+        destination.paste(result.get());
     }
 }
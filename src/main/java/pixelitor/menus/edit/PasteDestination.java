@@ -20,10 +20,13 @@ package pixelitor.menus.edit;
 import pixelitor.Canvas;
 import pixelitor.OpenImages;
 import pixelitor.colors.Colors;
+import pixelitor.layers.ImageLayer;
 import pixelitor.layers.Layer;
 import pixelitor.layers.LayerMask;
+import pixelitor.utils.ImageUtils;
 
 import java.awt.Color;
+import java.awt.Dimension;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 
@@ -40,9 +43,18 @@ public enum PasteDestination {
         }
 
         @Override
-        void paste(BufferedImage pastedImage) {
+        BufferedImage prepare(BufferedImage pastedImage, Dimension canvasSize) {
+            if (canvasSize == null) {
+                return pastedImage;
+            }
+            return ImageLayer.prepareExternalImage(pastedImage,
+                canvasSize.width, canvasSize.height);
+        }
+
+        @Override
+        void paste(BufferedImage image) {
             var comp = OpenImages.getActiveComp();
-            comp.addExternalImageAsNewLayer(pastedImage,
+            comp.addExternalImageAsNewLayer(image,
                     "Pasted Layer", "New Pasted Layer");
         }
     }, NEW_IMAGE {
@@ -54,10 +66,15 @@ public enum PasteDestination {
         }
 
         @Override
-        void paste(BufferedImage pastedImage) {
+        BufferedImage prepare(BufferedImage pastedImage, Dimension canvasSize) {
+            return ImageUtils.toSysCompatibleImage(pastedImage);
+        }
+
+        @Override
+        void paste(BufferedImage image) {
             String title = "Pasted Image " + pastedCount;
 
-            OpenImages.addAsNewComp(pastedImage, null, title);
+            OpenImages.addAsNewComp(image, null, title);
 
             pastedCount++;
         }
@@ -68,31 +85,23 @@ public enum PasteDestination {
         }
 
         @Override
-        void paste(BufferedImage pastedImage) {
+        BufferedImage prepare(BufferedImage pastedImage, Dimension canvasSize) {
+            if (canvasSize == null) {
+                return pastedImage;
+            }
+            return createMaskImage(pastedImage, canvasSize.width, canvasSize.height);
+        }
+
+        @Override
+        void paste(BufferedImage image) {
             var comp = OpenImages.getActiveComp();
             Canvas canvas = comp.getCanvas();
-            int canvasWidth = canvas.getWidth();
-            int canvasHeight = canvas.getHeight();
-
-            int imgWidth = pastedImage.getWidth();
-            int imgHeight = pastedImage.getHeight();
-
-            BufferedImage bwImage = new BufferedImage(canvasWidth, canvasHeight,
-                    TYPE_BYTE_GRAY);
-            Graphics2D g = bwImage.createGraphics();
-
-            // if the pasted image is too small, pad it with white
-            if (!canvas.isFullyCoveredBy(pastedImage)) {
-                Colors.fillWith(Color.WHITE, g, canvasWidth, canvasHeight);
+            BufferedImage bwImage = image;
+            if (image.getType() != TYPE_BYTE_GRAY || canvas.hasDifferentSizeThan(image)) {
+                // the canvas changed since the paste started
+                bwImage = createMaskImage(image, canvas.getWidth(), canvas.getHeight());
             }
 
-            // center the pasted image
-            int x = (canvasWidth - imgWidth) / 2;
-            int y = (canvasHeight - imgHeight) / 2;
-            g.drawImage(pastedImage, x, y, null);
-
-            g.dispose();
-
             Layer layer = comp.getActiveLayer();
             if (layer.hasMask()) {
                 LayerMask mask = layer.getMask();
@@ -103,7 +112,42 @@ public enum PasteDestination {
         }
     };
 
-    abstract void paste(BufferedImage pastedImage);
+    /**
+     * Converts the pasted image into the form needed by this destination.
+     * Called outside the EDT, with the canvas size of the active composition
+     * at the start of the paste (or null if there is no active composition).
+     * The pasted image could be shared with the clipboard, therefore
+     * it must not be modified.
+     */
+    abstract BufferedImage prepare(BufferedImage pastedImage, Dimension canvasSize);
+
+    /**
+     * Pastes the prepared image, called on the EDT.
+     */
+    abstract void paste(BufferedImage image);
 
     abstract String toResourceKey();
+
+    private static BufferedImage createMaskImage(BufferedImage pastedImage,
+                                                 int canvasWidth, int canvasHeight) {
+        int imgWidth = pastedImage.getWidth();
+        int imgHeight = pastedImage.getHeight();
+
+        BufferedImage bwImage = new BufferedImage(canvasWidth, canvasHeight,
+                TYPE_BYTE_GRAY);
+        Graphics2D g = bwImage.createGraphics();
+
+        // if the pasted image is too small, pad it with white
+        if (imgWidth < canvasWidth || imgHeight < canvasHeight) {
+            Colors.fillWith(Color.WHITE, g, canvasWidth, canvasHeight);
+        }
+
+        // center the pasted image
+        int x = (canvasWidth - imgWidth) / 2;
+        int y = (canvasHeight - imgHeight) / 2;
+        g.drawImage(pastedImage, x, y, null);
+
+        g.dispose();
+        return bwImage;
+    }
 }
@@ -30,7 +30,6 @@ import pixelitor.utils.debug.DebugNode;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.geom.AffineTransform;
-import java.awt.geom.Area;
 import java.awt.geom.Rectangle2D;
 
 import static java.awt.BasicStroke.CAP_BUTT;
@@ -66,6 +65,9 @@ public class Selection {
     // the original shape before a shape movement
     private Shape moveStartShape;
 
+    // the rasterized shape, created only when it is needed
+    private SelectionMask mask;
+
     public Selection(Shape shape, View view) {
         // the shape can be null, because this Selection
         // object can be created after a mouse press
@@ -88,8 +90,9 @@ public class Selection {
             view = orig.view;
         }
 
-        // the shapes can be shared
+        // the shapes (and therefore the masks) can be shared
         shape = orig.shape;
+        mask = orig.mask;
 
         // the Timer is not copied! - setView starts it
     }
@@ -208,6 +211,34 @@ public class Selection {
         return shape;
     }
 
+    /**
+     * Returns the rasterized coverage mask of the current shape.
+     * The mask is cached until the shape changes.
+     */
+    public SelectionMask getMask() {
+        if (mask == null || !mask.isFor(shape)) {
+            mask = SelectionMask.render(shape);
+        }
+        return mask;
+    }
+
+    /**
+     * Returns the number of bytes used by the cached mask
+     */
+    public long getMaskMemoryUsage() {
+        if (mask == null) {
+            return 0;
+        }
+        return mask.getMemoryUsage();
+    }
+
+    /**
+     * Releases the cached mask, it will be rendered again when needed
+     */
+    public void releaseMask() {
+        mask = null;
+    }
+
     public boolean isRectangular() {
         return shape instanceof Rectangle2D;
     }
@@ -226,16 +257,13 @@ public class Selection {
     }
 
     public void modify(SelectionModifyType type, float amount) {
-        Stroke outlineStroke = new BasicStroke(amount);
-        Shape outlineShape = outlineStroke.createStrokedShape(shape);
-
-        Area oldArea = new Area(shape);
-        Area outlineArea = new Area(outlineShape);
+        var comp = view.getComp();
 
+        // the modification is calculated with distance
+        // transforms on the rasterized selection
         Shape backupShape = shape;
-        shape = type.modify(oldArea, outlineArea);
+        shape = getMask().modify(type, amount, comp.getCanvasBounds());
 
-        var comp = view.getComp();
         boolean notEmpty = clipToCanvasSize(comp);
         if (notEmpty) {
             var edit = new SelectionShapeChangeEdit(
@@ -348,6 +376,9 @@ public class Selection {
         node.addString("shape class", shape.getClass().getName());
         node.addString("bounds", getShapeBounds().toString());
         node.addString("bounds 2D", getShapeBounds2D().toString());
+        if (mask != null && mask.isFor(shape)) {
+            node.add(mask.createDebugNode());
+        }
 
         return node;
     }
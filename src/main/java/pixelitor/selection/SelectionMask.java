@@ -0,0 +1,678 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.selection;
+
+import pixelitor.ThreadPool;
+import pixelitor.utils.DistanceTransform;
+import pixelitor.utils.ProgressTracker;
+import pixelitor.utils.debug.DebugNode;
+
+import java.awt.*;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+import java.awt.image.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static java.awt.RenderingHints.KEY_ANTIALIASING;
+import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
+import static java.awt.image.BufferedImage.*;
+
+/**
+ * The rasterized, anti-aliased coverage of a selection shape
+ * (0 = not selected, 255 = fully selected).
+ *
+ * The coverage is stored in square tiles covering the shape bounds.
+ * Tiles that are completely outside the shape are not stored at all,
+ * and the tiles that are completely inside share the same array,
+ * so the memory usage is proportional to the length of the outline,
+ * not to the selected area.
+ *
+ * A mask is immutable after it was created, therefore it can be shared
+ * between threads and between copies of the same {@link Selection}.
+ */
+public class SelectionMask {
+    static final int TILE_SIZE = 64;
+    private static final int TILE_AREA = TILE_SIZE * TILE_SIZE;
+
+    // shared by all the tiles which are fully inside the shape
+    private static final byte[] FULL_TILE = createFullTile();
+
+    // the coverage is considered to be selected from this value
+    // when a hard-edged version of the mask is needed
+    private static final int INSIDE_THRESHOLD = 128;
+
+    // the shape for which this mask was rendered
+    private final Shape shape;
+
+    // the bounds of the mask, relative to the canvas
+    private final Rectangle bounds;
+
+    private final int numTilesX;
+    private final int numTilesY;
+
+    // null elements represent empty tiles
+    private final byte[][] tiles;
+
+    private SelectionMask(Shape shape, Rectangle bounds) {
+        this.shape = shape;
+        this.bounds = bounds;
+        numTilesX = (bounds.width + TILE_SIZE - 1) / TILE_SIZE;
+        numTilesY = (bounds.height + TILE_SIZE - 1) / TILE_SIZE;
+        tiles = new byte[numTilesX * numTilesY][];
+    }
+
+    /**
+     * Rasterizes the given shape. Horizontal bands of tiles
+     * are rendered in parallel.
+     */
+    public static SelectionMask render(Shape shape) {
+        var mask = new SelectionMask(shape, shape.getBounds());
+        if (mask.bounds.isEmpty()) {
+            return mask;
+        }
+
+        Future<?>[] futures = new Future<?>[mask.numTilesY];
+        for (int tileY = 0; tileY < mask.numTilesY; tileY++) {
+            int ty = tileY;
+            futures[tileY] = ThreadPool.submit(() -> mask.renderBand(ty));
+        }
+        ThreadPool.waitFor(futures, ProgressTracker.NULL_TRACKER);
+
+        return mask;
+    }
+
+    private void renderBand(int tileY) {
+        int bandY = bounds.y + tileY * TILE_SIZE;
+        int bandWidth = numTilesX * TILE_SIZE;
+
+        // the alpha channel of the band image will contain the coverage
+        var bandImg = new BufferedImage(bandWidth, TILE_SIZE, TYPE_INT_ARGB);
+        Graphics2D g = bandImg.createGraphics();
+        g.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
+        g.setColor(Color.WHITE);
+        g.translate(-bounds.x, -bandY);
+        g.fill(shape);
+        g.dispose();
+
+        int[] bandPixels = ((DataBufferInt) bandImg.getRaster().getDataBuffer()).getData();
+        for (int tileX = 0; tileX < numTilesX; tileX++) {
+            byte[] tile = new byte[TILE_AREA];
+            boolean empty = true;
+            boolean full = true;
+            int startX = tileX * TILE_SIZE;
+            for (int y = 0; y < TILE_SIZE; y++) {
+                int bandIndex = y * bandWidth + startX;
+                int tileIndex = y * TILE_SIZE;
+                for (int x = 0; x < TILE_SIZE; x++) {
+                    int coverage = bandPixels[bandIndex + x] >>> 24;
+                    if (coverage != 0) {
+                        empty = false;
+                    }
+                    if (coverage != 255) {
+                        full = false;
+                    }
+                    tile[tileIndex + x] = (byte) coverage;
+                }
+            }
+            int index = tileY * numTilesX + tileX;
+            if (full) {
+                tiles[index] = FULL_TILE;
+            } else if (!empty) {
+                tiles[index] = tile;
+            }
+        }
+    }
+
+    /**
+     * Returns true if this mask was rendered for the given shape instance.
+     */
+    public boolean isFor(Shape shape) {
+        return this.shape == shape;
+    }
+
+    /**
+     * Returns the coverage at the given canvas coordinates, between 0 and 255.
+     */
+    public int getCoverage(int x, int y) {
+        int relX = x - bounds.x;
+        int relY = y - bounds.y;
+        if (relX < 0 || relY < 0 || relX >= bounds.width || relY >= bounds.height) {
+            return 0;
+        }
+        byte[] tile = tiles[(relY / TILE_SIZE) * numTilesX + relX / TILE_SIZE];
+        if (tile == null) {
+            return 0;
+        }
+        return tile[(relY % TILE_SIZE) * TILE_SIZE + relX % TILE_SIZE] & 0xFF;
+    }
+
+    public Rectangle getBounds() {
+        return new Rectangle(bounds);
+    }
+
+    /**
+     * Blends the src image into the dest image, using the coverage
+     * values of this mask as weights. The coordinates of the images
+     * are given relative to the canvas. Fully selected tiles are simply
+     * copied and empty tiles are skipped, the rest is interpolated
+     * pixel by pixel.
+     *
+     * Returns false if the image types are not supported, in which
+     * case the caller has to fall back to Java2D soft clipping.
+     */
+    public boolean blend(BufferedImage src, int srcX, int srcY,
+                         BufferedImage dest, int destX, int destY) {
+        int type = src.getType();
+        if (type != dest.getType()) {
+            return false;
+        }
+        boolean packedInt = type == TYPE_INT_ARGB_PRE || type == TYPE_INT_ARGB || type == TYPE_INT_RGB;
+        if (!packedInt && type != TYPE_BYTE_GRAY) {
+            return false;
+        }
+
+        // the area where the mask, the source and the destination overlap
+        Rectangle area = bounds
+            .intersection(new Rectangle(srcX, srcY, src.getWidth(), src.getHeight()))
+            .intersection(new Rectangle(destX, destY, dest.getWidth(), dest.getHeight()));
+        if (area.isEmpty()) {
+            return true;
+        }
+
+        var srcAccess = new PixelAccess(src.getRaster(), srcX, srcY);
+        var destAccess = new PixelAccess(dest.getRaster(), destX, destY);
+        if (!srcAccess.isSupported() || !destAccess.isSupported()) {
+            return false;
+        }
+
+        int firstTileY = (area.y - bounds.y) / TILE_SIZE;
+        int lastTileY = (area.y + area.height - 1 - bounds.y) / TILE_SIZE;
+        Future<?>[] futures = new Future<?>[lastTileY - firstTileY + 1];
+        for (int tileY = firstTileY; tileY <= lastTileY; tileY++) {
+            int ty = tileY;
+            futures[tileY - firstTileY] = ThreadPool.submit(() ->
+                blendBand(ty, area, srcAccess, destAccess, type));
+        }
+        ThreadPool.waitFor(futures, ProgressTracker.NULL_TRACKER);
+
+        return true;
+    }
+
+    private void blendBand(int tileY, Rectangle area,
+                           PixelAccess src, PixelAccess dest, int type) {
+        int bandStartY = Math.max(area.y, bounds.y + tileY * TILE_SIZE);
+        int bandEndY = Math.min(area.y + area.height, bounds.y + (tileY + 1) * TILE_SIZE);
+
+        int firstTileX = (area.x - bounds.x) / TILE_SIZE;
+        int lastTileX = (area.x + area.width - 1 - bounds.x) / TILE_SIZE;
+        for (int tileX = firstTileX; tileX <= lastTileX; tileX++) {
+            byte[] tile = tiles[tileY * numTilesX + tileX];
+            if (tile == null) {
+                continue; // nothing is selected here
+            }
+            int startX = Math.max(area.x, bounds.x + tileX * TILE_SIZE);
+            int endX = Math.min(area.x + area.width, bounds.x + (tileX + 1) * TILE_SIZE);
+            int runLength = endX - startX;
+
+            for (int y = bandStartY; y < bandEndY; y++) {
+                int srcIndex = src.indexOf(startX, y);
+                int destIndex = dest.indexOf(startX, y);
+                if (tile == FULL_TILE) {
+                    System.arraycopy(src.data, srcIndex, dest.data, destIndex, runLength);
+                    continue;
+                }
+                int maskIndex = (y - bounds.y) % TILE_SIZE * TILE_SIZE
+                    + (startX - bounds.x) % TILE_SIZE;
+                switch (type) {
+                    case TYPE_INT_ARGB -> blendARGB(tile, maskIndex,
+                        (int[]) src.data, srcIndex,
+                        (int[]) dest.data, destIndex, runLength);
+                    case TYPE_INT_ARGB_PRE, TYPE_INT_RGB -> blendPremultiplied(tile, maskIndex,
+                        (int[]) src.data, srcIndex,
+                        (int[]) dest.data, destIndex, runLength);
+                    case TYPE_BYTE_GRAY -> blendGray(tile, maskIndex,
+                        (byte[]) src.data, srcIndex,
+                        (byte[]) dest.data, destIndex, runLength);
+                    default -> throw new IllegalStateException("type = " + type);
+                }
+            }
+        }
+    }
+
+    private static void blendPremultiplied(byte[] mask, int maskIndex,
+                                           int[] src, int srcIndex,
+                                           int[] dest, int destIndex, int length) {
+        for (int i = 0; i < length; i++) {
+            int coverage = mask[maskIndex + i] & 0xFF;
+            if (coverage == 0) {
+                continue;
+            }
+            if (coverage == 255) {
+                dest[destIndex + i] = src[srcIndex + i];
+                continue;
+            }
+            int s = src[srcIndex + i];
+            int d = dest[destIndex + i];
+            int a = lerp((d >>> 24), (s >>> 24), coverage);
+            int r = lerp((d >>> 16) & 0xFF, (s >>> 16) & 0xFF, coverage);
+            int g = lerp((d >>> 8) & 0xFF, (s >>> 8) & 0xFF, coverage);
+            int b = lerp(d & 0xFF, s & 0xFF, coverage);
+            dest[destIndex + i] = a << 24 | r << 16 | g << 8 | b;
+        }
+    }
+
+    private static void blendARGB(byte[] mask, int maskIndex,
+                                  int[] src, int srcIndex,
+                                  int[] dest, int destIndex, int length) {
+        for (int i = 0; i < length; i++) {
+            int coverage = mask[maskIndex + i] & 0xFF;
+            if (coverage == 0) {
+                continue;
+            }
+            if (coverage == 255) {
+                dest[destIndex + i] = src[srcIndex + i];
+                continue;
+            }
+            int s = src[srcIndex + i];
+            int d = dest[destIndex + i];
+
+            // the color channels are weighted by the alpha values,
+            // which is the same as interpolating the premultiplied colors
+            int srcWeight = (s >>> 24) * coverage;
+            int destWeight = (d >>> 24) * (255 - coverage);
+            int weightSum = srcWeight + destWeight;
+            if (weightSum == 0) {
+                dest[destIndex + i] = 0;
+                continue;
+            }
+            int a = lerp(d >>> 24, s >>> 24, coverage);
+            int r = (((s >>> 16) & 0xFF) * srcWeight + ((d >>> 16) & 0xFF) * destWeight) / weightSum;
+            int g = (((s >>> 8) & 0xFF) * srcWeight + ((d >>> 8) & 0xFF) * destWeight) / weightSum;
+            int b = ((s & 0xFF) * srcWeight + (d & 0xFF) * destWeight) / weightSum;
+            dest[destIndex + i] = a << 24 | r << 16 | g << 8 | b;
+        }
+    }
+
+    private static void blendGray(byte[] mask, int maskIndex,
+                                  byte[] src, int srcIndex,
+                                  byte[] dest, int destIndex, int length) {
+        for (int i = 0; i < length; i++) {
+            int coverage = mask[maskIndex + i] & 0xFF;
+            if (coverage == 0) {
+                continue;
+            }
+            int s = src[srcIndex + i] & 0xFF;
+            int d = dest[destIndex + i] & 0xFF;
+            dest[destIndex + i] = (byte) lerp(d, s, coverage);
+        }
+    }
+
+    private static int lerp(int from, int to, int coverage) {
+        return from + ((to - from) * coverage + 127) / 255;
+    }
+
+    /**
+     * Calculates the outline of a modified selection. The mask is
+     * thresholded, and the new selection level is calculated for every
+     * pixel based on its Euclidean distance from the original edge.
+     * The outline is then traced with sub-pixel precision between
+     * the pixel centers, and it is clipped to the given bounds.
+     */
+    public Shape modify(SelectionModifyType type, float amount, Rectangle clipBounds) {
+        float radius = amount / 2.0f;
+        int pad = (int) Math.ceil(radius) + 1;
+        Rectangle region = new Rectangle(bounds);
+        region.grow(pad, pad);
+        region = region.intersection(clipBounds);
+        if (region.isEmpty()) {
+            return new Rectangle();
+        }
+
+        int width = region.width;
+        int height = region.height;
+        boolean[] inside = new boolean[width * height];
+        boolean[] outside = new boolean[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = y * width + x;
+                inside[i] = getCoverage(region.x + x, region.y + y) >= INSIDE_THRESHOLD;
+                outside[i] = !inside[i];
+            }
+        }
+
+        // the distances of the outside pixels from the nearest inside
+        // pixel, and the distances of the inside pixels from the nearest
+        // outside pixel are calculated only if they are needed
+        float[] outsideDist = type.usesOutsideDistances()
+            ? DistanceTransform.squaredDistances(inside, width, height) : null;
+        float[] insideDist = type.usesInsideDistances()
+            ? DistanceTransform.squaredDistances(outside, width, height) : null;
+
+        float[] levels = new float[width * height];
+        for (int i = 0; i < levels.length; i++) {
+            // the original edge is half-way between the pixel centers,
+            // and the missing distances are only needed near the edge
+            float edgeDist;
+            if (inside[i]) {
+                edgeDist = insideDist == null ? 0.5f : (float) Math.sqrt(insideDist[i]) - 0.5f;
+            } else {
+                edgeDist = outsideDist == null ? -0.5f : 0.5f - (float) Math.sqrt(outsideDist[i]);
+            }
+            levels[i] = type.level(edgeDist, radius);
+        }
+
+        return traceContour(levels, width, height, region.x, region.y);
+    }
+
+    /**
+     * Converts a grid of levels given at the pixel centers into a shape
+     * containing the area where the levels are positive, using the
+     * marching squares algorithm. The outline crosses the grid lines
+     * at the linearly interpolated zero levels, and it is clipped
+     * to the pixel bounds. Every outline is traced with the selected
+     * area on its right side, which means that holes are traced
+     * in the opposite direction.
+     */
+    static Shape traceContour(float[] levels, int width, int height,
+                              int offsetX, int offsetY) {
+        // the grid is padded by one row/column of unselected points on each side,
+        // so that every contour is closed, and every cell has four corners
+        var grid = new ContourGrid(levels, width, height);
+
+        // the crossed grid lines that were already traced
+        var visited = new BitSet(grid.numEdgeIds());
+
+        Path2D path = new Path2D.Float(Path2D.WIND_NON_ZERO);
+        var points = new ArrayList<Point2D.Float>();
+        Rectangle clip = new Rectangle(offsetX, offsetY, width, height);
+        for (int cy = 0; cy <= height; cy++) {
+            for (int cx = 0; cx <= width; cx++) {
+                for (int side = 0; side < 4; side++) {
+                    if (grid.isLeaving(cx, cy, side)
+                        && !visited.get(grid.edgeId(cx, cy, side))) {
+                        points.clear();
+                        grid.trace(cx, cy, side, visited, points, offsetX, offsetY, clip);
+                        addSimplified(path, points);
+                    }
+                }
+            }
+        }
+        return path;
+    }
+
+    // the maximal distance of the dropped contour points
+    // from the straight segment which replaces them
+    private static final double SIMPLIFY_TOLERANCE = 0.05;
+
+    /**
+     * Adds a closed polygon to the path, merging the
+     * runs of (almost) collinear segments into single segments.
+     */
+    private static void addSimplified(Path2D path, List<Point2D.Float> points) {
+        int numPoints = points.size();
+        int anchor = 0;
+        path.moveTo(points.get(0).x, points.get(0).y);
+        for (int end = 2; end <= numPoints; end++) {
+            // the closing point is the same as the first one
+            Point2D.Float endPoint = points.get(end % numPoints);
+            if (!allCloseToSegment(points, anchor, end, endPoint)) {
+                anchor = end - 1;
+                Point2D.Float corner = points.get(anchor);
+                path.lineTo(corner.x, corner.y);
+            }
+        }
+        path.closePath();
+    }
+
+    private static boolean allCloseToSegment(List<Point2D.Float> points,
+                                             int from, int to, Point2D.Float toPoint) {
+        Point2D.Float fromPoint = points.get(from);
+        for (int i = from + 1; i < to; i++) {
+            if (Line2D.ptSegDist(fromPoint.x, fromPoint.y, toPoint.x, toPoint.y,
+                points.get(i).x, points.get(i).y) > SIMPLIFY_TOLERANCE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The levels of a padded grid for the marching squares algorithm.
+     * The cell (cx, cy) has the padded grid points (cx, cy) and
+     * (cx + 1, cy + 1) as its corners, and its sides are numbered
+     * clockwise from the top, each going clockwise between two corners.
+     */
+    private static class ContourGrid {
+        private static final int TOP = 0;
+        private static final int RIGHT = 1;
+        private static final int BOTTOM = 2;
+        private static final int LEFT = 3;
+
+        // the corner offsets in clockwise order, starting at the top left
+        private static final int[] CORNER_DX = {0, 1, 1, 0};
+        private static final int[] CORNER_DY = {0, 0, 1, 1};
+
+        private static final float PADDING_LEVEL = -1.0f;
+
+        private final float[] levels;
+        private final int width;
+        private final int height;
+        private final int paddedWidth;
+
+        ContourGrid(float[] levels, int width, int height) {
+            this.levels = levels;
+            this.width = width;
+            this.height = height;
+            paddedWidth = width + 2;
+        }
+
+        int numEdgeIds() {
+            return 2 * paddedWidth * (height + 2);
+        }
+
+        float levelAt(int px, int py) {
+            if (px == 0 || py == 0 || px > width || py > height) {
+                return PADDING_LEVEL;
+            }
+            return levels[(py - 1) * width + px - 1];
+        }
+
+        float cornerLevel(int cx, int cy, int corner) {
+            return levelAt(cx + CORNER_DX[corner], cy + CORNER_DY[corner]);
+        }
+
+        boolean isCrossed(int cx, int cy, int side) {
+            return (cornerLevel(cx, cy, side) > 0) != (cornerLevel(cx, cy, (side + 1) % 4) > 0);
+        }
+
+        /**
+         * Whether the given side is crossed from the selected
+         * start corner to the unselected end corner. The contour
+         * enters the cell through such sides.
+         */
+        boolean isLeaving(int cx, int cy, int side) {
+            return cornerLevel(cx, cy, side) > 0 && isCrossed(cx, cy, side);
+        }
+
+        /**
+         * Returns a unique id for each side, shared by the neighboring cells.
+         */
+        int edgeId(int cx, int cy, int side) {
+            return switch (side) {
+                case TOP -> 2 * (cy * paddedWidth + cx);
+                case BOTTOM -> 2 * ((cy + 1) * paddedWidth + cx);
+                case LEFT -> 2 * (cy * paddedWidth + cx) + 1;
+                case RIGHT -> 2 * (cy * paddedWidth + cx + 1) + 1;
+                default -> throw new IllegalStateException("side = " + side);
+            };
+        }
+
+        /**
+         * Returns the side where a contour entering at the given side
+         * leaves the cell. In the ambiguous cases (two diagonal selected corners)
+         * the average of the corners decides whether they are connected.
+         */
+        int exitSide(int cx, int cy, int entrySide) {
+            int next = (entrySide + 1) % 4;
+            int opposite = (entrySide + 2) % 4;
+            int previous = (entrySide + 3) % 4;
+            if (isCrossed(cx, cy, opposite)) {
+                if (!isCrossed(cx, cy, next)) {
+                    return opposite;
+                }
+                // all four sides are crossed
+                float center = 0;
+                for (int corner = 0; corner < 4; corner++) {
+                    center += cornerLevel(cx, cy, corner);
+                }
+                return center > 0 ? next : previous;
+            }
+            return isCrossed(cx, cy, next) ? next : previous;
+        }
+
+        /**
+         * Follows the contour starting at the given side until it gets
+         * back to it, and collects the crossing points in canvas coordinates.
+         */
+        void trace(int startX, int startY, int startSide, BitSet visited,
+                   List<Point2D.Float> points, int offsetX, int offsetY, Rectangle clip) {
+            int cx = startX;
+            int cy = startY;
+            int side = startSide;
+            do {
+                visited.set(edgeId(cx, cy, side));
+                points.add(crossingPoint(cx, cy, side, offsetX, offsetY, clip));
+
+                int exit = exitSide(cx, cy, side);
+                switch (exit) {
+                    case TOP -> cy--;
+                    case RIGHT -> cx++;
+                    case BOTTOM -> cy++;
+                    case LEFT -> cx--;
+                    default -> throw new IllegalStateException("exit = " + exit);
+                }
+                // the same grid line, seen from the neighboring cell
+                side = (exit + 2) % 4;
+            } while (cx != startX || cy != startY || side != startSide);
+        }
+
+        private Point2D.Float crossingPoint(int cx, int cy, int side,
+                                            int offsetX, int offsetY, Rectangle clip) {
+            int endCorner = (side + 1) % 4;
+            float startLevel = cornerLevel(cx, cy, side);
+            float endLevel = cornerLevel(cx, cy, endCorner);
+            float t = startLevel / (startLevel - endLevel);
+
+            // the padded grid point (1, 1) is the center of the first pixel
+            float x = cx + CORNER_DX[side] + t * (CORNER_DX[endCorner] - CORNER_DX[side]);
+            float y = cy + CORNER_DY[side] + t * (CORNER_DY[endCorner] - CORNER_DY[side]);
+            x = offsetX + x - 0.5f;
+            y = offsetY + y - 0.5f;
+
+            // the crossings towards the padding are moved to the pixel bounds
+            x = Math.max(clip.x, Math.min(clip.x + clip.width, x));
+            y = Math.max(clip.y, Math.min(clip.y + clip.height, y));
+            return new Point2D.Float(x, y);
+        }
+    }
+
+    /**
+     * Returns the approximate number of bytes used by this mask.
+     */
+    public long getMemoryUsage() {
+        return (long) countTiles(false, false) * TILE_AREA;
+    }
+
+    private int countTiles(boolean empty, boolean full) {
+        int count = 0;
+        for (byte[] tile : tiles) {
+            if ((tile == null) == empty && (tile == FULL_TILE) == full) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static byte[] createFullTile() {
+        byte[] tile = new byte[TILE_AREA];
+        Arrays.fill(tile, (byte) 255);
+        return tile;
+    }
+
+    public DebugNode createDebugNode() {
+        var node = new DebugNode("mask", this);
+
+        node.addString("bounds", bounds.toString());
+        node.addInt("tiles", tiles.length);
+        node.addInt("empty tiles", countTiles(true, false));
+        node.addInt("full tiles", countTiles(false, true));
+        node.addInt("partial tiles", countTiles(false, false));
+
+        return node;
+    }
+
+    /**
+     * Direct access to the data array of a packed int or a byte gray raster,
+     * with the pixel coordinates given relative to the canvas.
+     */
+    private static class PixelAccess {
+        private final Object data;
+        private final int origin;
+        private final int stride;
+        private final boolean supported;
+
+        PixelAccess(WritableRaster raster, int canvasX, int canvasY) {
+            SampleModel sm = raster.getSampleModel();
+            DataBuffer db = raster.getDataBuffer();
+            int bandOffset = 0;
+            if (sm instanceof SinglePixelPackedSampleModel && db instanceof DataBufferInt) {
+                stride = ((SinglePixelPackedSampleModel) sm).getScanlineStride();
+                data = ((DataBufferInt) db).getData();
+                supported = db.getNumBanks() == 1;
+            } else if (sm instanceof ComponentSampleModel && db instanceof DataBufferByte
+                && ((ComponentSampleModel) sm).getPixelStride() == 1) {
+                var csm = (ComponentSampleModel) sm;
+                stride = csm.getScanlineStride();
+                bandOffset = csm.getBandOffsets()[0];
+                data = ((DataBufferByte) db).getData();
+                supported = db.getNumBanks() == 1 && csm.getNumBands() == 1;
+            } else {
+                stride = 0;
+                data = null;
+                supported = false;
+            }
+            origin = db.getOffset() + bandOffset
+                - raster.getSampleModelTranslateY() * stride
+                - raster.getSampleModelTranslateX()
+                - canvasY * stride - canvasX;
+        }
+
+        boolean isSupported() {
+            return supported;
+        }
+
+        int indexOf(int canvasX, int canvasY) {
+            return origin + canvasY * stride + canvasX;
+        }
+    }
+}
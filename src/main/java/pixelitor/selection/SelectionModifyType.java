@@ -20,55 +20,71 @@ package pixelitor.selection;
 import pixelitor.filters.gui.EnumParam;
 import pixelitor.gui.GUIText;
 
-import java.awt.Shape;
-import java.awt.geom.Area;
-
 /**
  * The "Type" in the "Modify Selection" dialog
  */
 public enum SelectionModifyType {
-    EXPAND("Expand") {
+    EXPAND("Expand", false, true) {
         @Override
-        public Shape modify(Area previous, Area outlineShape) {
-            previous.add(outlineShape);
-            return previous;
+        public float level(float edgeDist, float radius) {
+            return radius + edgeDist;
         }
-    }, CONTRACT("Contract") {
+    }, CONTRACT("Contract", true, false) {
         @Override
-        public Shape modify(Area previous, Area outlineShape) {
-            previous.subtract(outlineShape);
-            return previous;
+        public float level(float edgeDist, float radius) {
+            return edgeDist - radius;
         }
-    }, BORDER("Border") {
+    }, BORDER("Border", true, true) {
         @Override
-        public Shape modify(Area previous, Area outlineShape) {
-            return outlineShape;
+        public float level(float edgeDist, float radius) {
+            return radius - Math.abs(edgeDist);
         }
-    }, BORDER_OUT("Border Outwards Only") {
+    }, BORDER_OUT("Border Outwards Only", false, true) {
         @Override
-        public Shape modify(Area previous, Area outlineShape) {
-            outlineShape.subtract(previous);
-            return outlineShape;
+        public float level(float edgeDist, float radius) {
+            return Math.min(-edgeDist, radius + edgeDist);
         }
-    }, BORDER_IN("Border Inwards Only") {
+    }, BORDER_IN("Border Inwards Only", true, false) {
         @Override
-        public Shape modify(Area previous, Area outlineShape) {
-            previous.intersect(outlineShape);
-            return previous;
+        public float level(float edgeDist, float radius) {
+            return Math.min(edgeDist, radius - edgeDist);
         }
     };
 
     private final String guiName;
+    private final boolean usesInsideDistances;
+    private final boolean usesOutsideDistances;
 
-    SelectionModifyType(String guiName) {
+    SelectionModifyType(String guiName,
+                        boolean usesInsideDistances,
+                        boolean usesOutsideDistances) {
         this.guiName = guiName;
+        this.usesInsideDistances = usesInsideDistances;
+        this.usesOutsideDistances = usesOutsideDistances;
     }
 
     /**
-     * Calculates a new shape from the existing one
-     * and its stroked outline shape.
+     * Returns a value which is positive where the modified selection is
+     * selected, and which changes continuously, so that the new outline
+     * can be placed between the pixels where it changes its sign.
+     * The edgeDist argument is the signed distance of a pixel from the
+     * original edge: positive inside and negative outside the original selection.
      */
-    public abstract Shape modify(Area previous, Area outlineShape);
+    public abstract float level(float edgeDist, float radius);
+
+    /**
+     * Whether the distances of the selected pixels from the edge are needed
+     */
+    public boolean usesInsideDistances() {
+        return usesInsideDistances;
+    }
+
+    /**
+     * Whether the distances of the unselected pixels from the edge are needed
+     */
+    public boolean usesOutsideDistances() {
+        return usesOutsideDistances;
+    }
 
     public static EnumParam<SelectionModifyType> asParam() {
         return new EnumParam<>(GUIText.TYPE, SelectionModifyType.class);
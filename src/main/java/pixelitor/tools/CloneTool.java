@@ -196,6 +196,9 @@ public class CloneTool extends BlendingModeBrushTool {
             sourceImage = comp.getCompositeImage();
         } else {
             Drawable dr = comp.getActiveDrawableOrThrow();
+            // typically the same layer is also the destination, and the
+            // brush strokes would not be cloned if the image was copied later
+            dr.copyImageIfShared();
             sourceImage = dr.getImage();
             dx = -dr.getTx();
             dy = -dr.getTy();
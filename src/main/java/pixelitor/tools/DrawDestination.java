@@ -65,6 +65,7 @@ public enum DrawDestination {
 
         @Override
         public void prepareBrushStroke(Drawable dr) {
+            dr.copyImageIfShared();
             BufferedImage image = dr.getImage();
 
             assert Assertions.checkRasterMinimum(image);
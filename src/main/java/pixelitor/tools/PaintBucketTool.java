@@ -101,6 +101,7 @@ public class PaintBucketTool extends Tool {
         x -= tx;
         y -= ty;
 
+        dr.copyImageIfShared();
         BufferedImage image = dr.getImage();
 
         int imgHeight = image.getHeight();
@@ -152,19 +153,25 @@ public class PaintBucketTool extends Tool {
             }
 
             if (thereIsSelection) {
-                Graphics2D g = image.createGraphics();
-
-                // the selection is relative to the canvas,
-                // so go to the canvas start
-                g.translate(-tx, -ty);
-                comp.applySelectionClipping(g);
-                g.translate(tx, ty); // go back
-
-                // makes "fill with transparency" possible
-                g.setComposite(AlphaComposite.Src);
-
-                g.drawImage(workingImage, 0, 0, null);
-                g.dispose();
+                // the anti-aliased coverage mask of the selection
+                // decides how much of the filled image is used
+                boolean blended = comp.getSelection().getMask()
+                    .blend(workingImage, tx, ty, image, tx, ty);
+                if (!blended) {
+                    Graphics2D g = image.createGraphics();
+
+                    // the selection is relative to the canvas,
+                    // so go to the canvas start
+                    g.translate(-tx, -ty);
+                    comp.applySelectionClipping(g);
+                    g.translate(tx, ty); // go back
+
+                    // makes "fill with transparency" possible
+                    g.setComposite(AlphaComposite.Src);
+
+                    g.drawImage(workingImage, 0, 0, null);
+                    g.dispose();
+                }
                 workingImage.flush();
             }
             comp.imageChanged();
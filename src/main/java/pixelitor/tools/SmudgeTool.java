@@ -109,6 +109,9 @@ public class SmudgeTool extends AbstractBrushTool {
         // We could also pass the full image and the translation
         // and the smudge brush could always adjust the last sampling point
         // with the translation.
+        // The source is the image that will be modified by the brush
+        // stroke, therefore it can't be a shared image.
+        dr.copyImageIfShared();
         BufferedImage sourceImage = dr.getCanvasSizedSubImage();
 
         if (e.isShiftDown()) {
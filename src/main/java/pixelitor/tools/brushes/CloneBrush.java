@@ -53,6 +53,9 @@ public class CloneBrush extends CopyBrush {
     private double scaleY;
     private double rotate;
 
+    // reused for each dab when scaling or rotating
+    private final AffineTransform stampTransform = new AffineTransform();
+
     public CloneBrush(double radius, CopyBrushType type) {
         super(radius, type, new RadiusRatioSpacing(0.25));
     }
@@ -91,14 +94,47 @@ public class CloneBrush extends CopyBrush {
      */
     @Override
     void setupBrushStamp(PPoint p) {
-        Graphics2D g = brushImage.createGraphics();
-
-        type.beforeDrawImage(g);
-
         // the current sampling coordinates relative to the source image
         double currSrcX = dx - p.getImX();
         double currSrcY = dy - p.getImY();
 
+        if (!StampSampler.canSample(sourceImage)) {
+            setupBrushStampWithGraphics(currSrcX, currSrcY);
+            return;
+        }
+
+        int size = (int) diameter;
+        if (isScaledOrRotated()) {
+            // calculate the transformation from the brush image to the source
+            stampTransform.setToTranslation(origSrcX, origSrcY);
+            stampTransform.rotate(-rotate);
+            stampTransform.scale(1.0 / scaleX, 1.0 / scaleY);
+            stampTransform.translate(-origSrcX - currSrcX - radius,
+                -origSrcY - currSrcY - radius);
+            StampSampler.sampleTransformed(sourceImage, stampTransform,
+                brushPixels, size, type.getMask());
+        } else {
+            // like nearest neighbor sampling with a translation: the
+            // brush pixel at x gets the source pixel at x + offsetX
+            int offsetX = (int) Math.floor(0.5 - currSrcX - radius);
+            int offsetY = (int) Math.floor(0.5 - currSrcY - radius);
+            StampSampler.copyTranslated(sourceImage, offsetX, offsetY,
+                brushPixels, size, type.getMask());
+        }
+
+        debugImage();
+    }
+
+    private boolean isScaledOrRotated() {
+        return scaleX != 1.0 || scaleY != 1.0 || rotate != 0.0;
+    }
+
+    // the general, but slower way of calculating the brush stamp
+    private void setupBrushStampWithGraphics(double currSrcX, double currSrcY) {
+        Graphics2D g = brushImage.createGraphics();
+
+        type.beforeDrawImage(g);
+
         // Now calculate the transformation from the source to the brush image.
         // Concatenated transformations have a last-specified-first-applied
         // order, so start with the last transformation
@@ -106,7 +142,7 @@ public class CloneBrush extends CopyBrush {
         var transform = AffineTransform.getTranslateInstance(
                 currSrcX + radius, currSrcY + radius);
 
-        if (scaleX != 1.0 || scaleY != 1.0 || rotate != 0.0) {
+        if (isScaledOrRotated()) {
             g.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_BILINEAR);
             // we need to scale/rotate the image
             // around the source point, so translate first
@@ -126,11 +162,8 @@ public class CloneBrush extends CopyBrush {
 
     @Override
     public void putDab(PPoint p, double theta) {
-        var transform = AffineTransform.getTranslateInstance(
-                p.getImX() - radius,
-                p.getImY() - radius
-        );
-        targetG.drawImage(brushImage, transform, null);
+        dabTransform.setToTranslation(p.getImX() - radius, p.getImY() - radius);
+        targetG.drawImage(brushImage, dabTransform, null);
         repaintComp(p);
     }
 
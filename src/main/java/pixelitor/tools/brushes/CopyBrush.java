@@ -17,9 +17,11 @@
 
 package pixelitor.tools.brushes;
 
+import pixelitor.utils.ImageUtils;
 import pixelitor.utils.debug.Debug;
 import pixelitor.utils.debug.DebugNode;
 
+import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 
 import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
@@ -34,6 +36,13 @@ public abstract class CopyBrush extends DabsBrush {
     protected BufferedImage brushImage;
     protected CopyBrushType type;
 
+    // the pixels of the brush image, used when the
+    // source pixels can be sampled directly
+    protected int[] brushPixels;
+
+    // reused for placing each dab
+    protected final AffineTransform dabTransform = new AffineTransform();
+
     // can be set from the develop menu
     private static boolean debugBrushImage = false;
 
@@ -48,6 +57,7 @@ public abstract class CopyBrush extends DabsBrush {
         if (type != null) { // can't initialize properly when called from superclass constructor
             int size = (int) diameter;
             brushImage = new BufferedImage(size, size, TYPE_INT_ARGB);
+            brushPixels = ImageUtils.getPixelsAsArray(brushImage);
             type.setSize(diameter);
         }
     }
@@ -35,6 +35,11 @@ public enum CopyBrushType {
         public void setSize(double size) {
             super.setSize(size);
             transparencyImage = ImageUtils.createSoftTransparencyImage((int) size);
+
+            int[] pixels = ImageUtils.getPixelsAsArray(transparencyImage);
+            for (int i = 0; i < mask.length; i++) {
+                mask[i] = pixels[i] >>> 24;
+            }
         }
 
         @Override
@@ -55,6 +60,15 @@ public enum CopyBrushType {
         public void setSize(double size) {
             super.setSize(size);
             circleClip = new Ellipse2D.Double(0, 0, size, size);
+
+            // like the clip, include the pixels with the center inside the circle
+            int intSize = (int) size;
+            for (int y = 0; y < intSize; y++) {
+                for (int x = 0; x < intSize; x++) {
+                    boolean inside = circleClip.contains(x + 0.5, y + 0.5);
+                    mask[y * intSize + x] = inside ? 255 : 0;
+                }
+            }
         }
 
         @Override
@@ -85,6 +99,9 @@ public enum CopyBrushType {
     private final String guiName;
     protected double size;
 
+    // the alpha multipliers (0..255) of the brush pixels
+    protected int[] mask;
+
     CopyBrushType(String guiName) {
         this.guiName = guiName;
     }
@@ -101,6 +118,17 @@ public enum CopyBrushType {
 
     public void setSize(double size) {
         this.size = size;
+        int intSize = (int) size;
+        mask = new int[intSize * intSize];
+    }
+
+    /**
+     * Returns the alpha multipliers (0..255) of the brush pixels in a
+     * size x size array, the same shape as the one given by the
+     * drawing methods.
+     */
+    public int[] getMask() {
+        return mask;
     }
 
     @Override
@@ -22,6 +22,7 @@ import pixelitor.utils.ImageUtils;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.util.EnumMap;
 import java.util.Map;
@@ -29,6 +30,7 @@ import java.util.Map;
 import static java.awt.RenderingHints.KEY_INTERPOLATION;
 import static java.awt.RenderingHints.VALUE_INTERPOLATION_BILINEAR;
 import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
 
 /**
  * A {@link DabsBrush} where the dabs are images
@@ -41,6 +43,9 @@ public class ImageDabsBrush extends DabsBrush {
     private BufferedImage finalScaledImg;
     private Color lastColor;
 
+    // null if it must be recreated or if the dabs are too large to be cached
+    private StampCache stamps;
+
     public ImageDabsBrush(double radius, ImageBrushType imageBrushType,
                           double spacingRatio, AngleSettings angleSettings) {
         super(radius, new RadiusRatioSpacing(spacingRatio),
@@ -86,15 +91,23 @@ public class ImageDabsBrush extends DabsBrush {
         if (finalScaledImg != null) {
             finalScaledImg.flush();
         }
+        discardStamps();
 
         int newSizeInt = (int) newSize;
         assert newSizeInt > 0 : "newSize = " + newSize;
-        finalScaledImg = new BufferedImage(newSizeInt, newSizeInt, TYPE_INT_ARGB);
+        finalScaledImg = new BufferedImage(newSizeInt, newSizeInt, TYPE_INT_ARGB_PRE);
         Graphics2D g = finalScaledImg.createGraphics();
         g.drawImage(coloredBrushImg, 0, 0, newSizeInt, newSizeInt, null);
         g.dispose();
     }
 
+    private void discardStamps() {
+        if (stamps != null) {
+            stamps.flush();
+            stamps = null;
+        }
+    }
+
     private boolean brushImageHasSize(double newSize) {
         return finalScaledImg != null && finalScaledImg.getWidth() == newSize;
     }
@@ -131,6 +144,19 @@ public class ImageDabsBrush extends DabsBrush {
 
         double x = p.getImX();
         double y = p.getImY();
+        boolean rotated = settings.isAngleAware();
+        if (stamps == null) {
+            double imgHalfSize = finalScaledImg.getWidth() / 2.0;
+            double extent = rotated ? imgHalfSize * Math.sqrt(2) : imgHalfSize;
+            // the unrotated image is copied exactly if its corner is on a pixel corner
+            stamps = StampCache.create(this::renderDab, extent, rotated, imgHalfSize);
+        }
+        if (stamps != null) {
+            stamps.putDab(targetG, x, y, rotated ? theta : 0);
+            repaintComp(p);
+            return;
+        }
+
         int drawStartX = (int) (x - radius);
         int drawStartY = (int) (y - radius);
         if (!settings.isAngleAware() || theta == 0) {
@@ -144,4 +170,25 @@ public class ImageDabsBrush extends DabsBrush {
         }
         repaintComp(p);
     }
+
+    private void renderDab(Graphics2D g, double centerX, double centerY, double theta) {
+        double imgHalfSize = finalScaledImg.getWidth() / 2.0;
+        var transform = AffineTransform.getRotateInstance(theta, centerX, centerY);
+        transform.translate(centerX - imgHalfSize, centerY - imgHalfSize);
+        g.drawImage(finalScaledImg, transform, null);
+    }
+
+    @Override
+    public void settingsChanged() {
+        super.settingsChanged();
+
+        // the angle awareness could have changed
+        discardStamps();
+    }
+
+    @Override
+    public void dispose() {
+        super.dispose();
+        discardStamps();
+    }
 }
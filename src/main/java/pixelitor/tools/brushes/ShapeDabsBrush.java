@@ -21,6 +21,7 @@ import pixelitor.Composition;
 import pixelitor.tools.shapes.ShapeType;
 import pixelitor.tools.util.PPoint;
 
+import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
@@ -32,6 +33,13 @@ import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
  * A {@link DabsBrush} where the dabs are filled shapes
  */
 public class ShapeDabsBrush extends DabsBrush {
+    // the cached dabs are valid only for these values
+    private StampCache stamps;
+    private ShapeType stampsShapeType;
+    private Color stampsColor;
+    private double stampsDiameter;
+    private boolean stampsRotated;
+
     public ShapeDabsBrush(double radius, ShapeDabsBrushSettings settings) {
         super(radius, settings);
     }
@@ -47,7 +55,11 @@ public class ShapeDabsBrush extends DabsBrush {
         double x = p.getImX();
         double y = p.getImY();
         ShapeType shapeType = ((ShapeDabsBrushSettings) settings).getShapeType();
-        if (theta != 0) {
+        // random shapes can't be cached, because each dab is different
+        StampCache cache = shapeType.isRandom() ? null : getStamps(shapeType);
+        if (cache != null && (theta == 0 || stampsRotated)) {
+            cache.putDab(targetG, x, y, theta);
+        } else if (theta != 0) {
             Shape shape = shapeType.createShape(x - radius, y - radius, diameter);
             var rotTx = AffineTransform.getRotateInstance(theta, x, y);
             Shape rotatedShape = rotTx.createTransformedShape(shape);
@@ -59,8 +71,58 @@ public class ShapeDabsBrush extends DabsBrush {
         repaintComp(p);
     }
 
+    /**
+     * Returns the cached dabs for the current shape type, color and size,
+     * or null if they can't be cached.
+     */
+    private StampCache getStamps(ShapeType shapeType) {
+        Color color = targetG.getColor();
+        AngleSettings angleSettings = settings.getAngleSettings();
+        boolean rotated = angleSettings.isAngleAware() || angleSettings.shouldJitterAngle();
+        if (stamps == null || shapeType != stampsShapeType || !color.equals(stampsColor)
+            || diameter != stampsDiameter || rotated != stampsRotated) {
+            discardStamps();
+            double size = diameter;
+            // the rotated shapes still fit into the circumscribed circle of their square
+            double extent = rotated ? radius * Math.sqrt(2) : radius;
+            stamps = StampCache.create((g, centerX, centerY, theta) ->
+                    renderDab(g, shapeType, color, size, centerX, centerY, theta),
+                extent, rotated, 0);
+            stampsShapeType = shapeType;
+            stampsColor = color;
+            stampsDiameter = diameter;
+            stampsRotated = rotated;
+        }
+        return stamps;
+    }
+
+    private static void renderDab(Graphics2D g, ShapeType shapeType, Color color, double size,
+                                  double centerX, double centerY, double theta) {
+        double half = size / 2;
+        Shape shape = shapeType.createShape(centerX - half, centerY - half, size);
+        if (theta != 0) {
+            shape = AffineTransform.getRotateInstance(theta, centerX, centerY)
+                .createTransformedShape(shape);
+        }
+        g.setColor(color);
+        g.fill(shape);
+    }
+
+    private void discardStamps() {
+        if (stamps != null) {
+            stamps.flush();
+            stamps = null;
+        }
+    }
+
     @Override
     void setupBrushStamp(PPoint p) {
-        // no setup is necessary for shape brushes
+        // the dabs are cached when they are first needed
+    }
+
+    @Override
+    public void dispose() {
+        super.dispose();
+        discardStamps();
     }
 }
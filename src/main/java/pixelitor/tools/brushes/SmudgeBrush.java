@@ -42,6 +42,7 @@ public class SmudgeBrush extends CopyBrush {
      * The opacity of the brush (strength in the GUI).
      */
     private float strength;
+    private AlphaComposite dabComposite;
 
     private boolean firstUsageInStroke = true;
 
@@ -58,6 +59,7 @@ public class SmudgeBrush extends CopyBrush {
         this.sourceImage = sourceImage;
         last = src;
         this.strength = strength;
+        dabComposite = AlphaComposite.SrcOver.derive(strength);
         firstUsageInStroke = true;
     }
 
@@ -67,42 +69,48 @@ public class SmudgeBrush extends CopyBrush {
 
     @Override
     void setupBrushStamp(PPoint p) {
-        Graphics2D g = brushImage.createGraphics();
-        type.beforeDrawImage(g);
-
         if (firstUsageInStroke && fingerPainting) {
             // finger painting starts with the foreground color
-            g.setColor(getFGColor());
-            int size = (int) diameter;
-            g.fillRect(0, 0, size, size);
+            StampSampler.fill(getFGColor().getRGB(), brushPixels, type.getMask());
+        } else if (StampSampler.canSample(sourceImage)) {
+            // samples the source image at the last point into the brush
+            // image, like nearest neighbor sampling with a translation
+            int offsetX = (int) Math.floor(0.5 + last.getImX() - radius);
+            int offsetY = (int) Math.floor(0.5 + last.getImY() - radius);
+            StampSampler.copyTranslated(sourceImage, offsetX, offsetY,
+                brushPixels, (int) diameter, type.getMask());
         } else {
-            // samples the source image at the last point into the brush image
-            g.drawImage(sourceImage,
-                AffineTransform.getTranslateInstance(
-                    -last.getImX() + radius,
-                    -last.getImY() + radius), null);
+            setupBrushStampWithGraphics();
         }
 
-        type.afterDrawImage(g);
-        g.dispose();
-
         firstUsageInStroke = false;
         debugImage();
     }
 
+    // the general, but slower way of sampling the source image
+    private void setupBrushStampWithGraphics() {
+        Graphics2D g = brushImage.createGraphics();
+        type.beforeDrawImage(g);
+
+        g.drawImage(sourceImage,
+            AffineTransform.getTranslateInstance(
+                -last.getImX() + radius,
+                -last.getImY() + radius), null);
+
+        type.afterDrawImage(g);
+        g.dispose();
+    }
+
     @Override
     public void putDab(PPoint p, double theta) {
-        var transform = AffineTransform.getTranslateInstance(
-            p.getImX() - radius,
-            p.getImY() - radius
-        );
+        dabTransform.setToTranslation(p.getImX() - radius, p.getImY() - radius);
 
         // SrcOver allows to smudge into transparent areas, but transparency
         // can't be smudged into non-transparent areas.
         // DstOver allows only smudging into transparent.
-        targetG.setComposite(AlphaComposite.SrcOver.derive(strength));
+        targetG.setComposite(dabComposite);
 
-        targetG.drawImage(brushImage, transform, null);
+        targetG.drawImage(brushImage, dabTransform, null);
         last = p;
         repaintComp(p);
     }
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.tools.brushes;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import static java.awt.RenderingHints.KEY_ANTIALIASING;
+import static java.awt.RenderingHints.KEY_INTERPOLATION;
+import static java.awt.RenderingHints.KEY_RENDERING;
+import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
+import static java.awt.RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+import static java.awt.RenderingHints.VALUE_RENDER_QUALITY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+
+/**
+ * Caches the pre-rendered dabs of a {@link DabsBrush} at quantized angles
+ * and sub-pixel positions. A cached dab is put down by drawing a premultiplied
+ * image at integer coordinates, which is a simple blit in Java2D, while
+ * drawing a rotated image or an antialiased shape for each dab is much slower.
+ *
+ * The stamps are rendered lazily, when they are first needed.
+ */
+class StampCache {
+    // the number of quantized angles for brushes with rotated dabs
+    static final int NUM_ANGLES = 64;
+
+    // the number of sub-pixel positions along each axis
+    private static final int MAX_PHASES = 4;
+
+    // the memory limit for all the possible stamps of a brush
+    private static final long MAX_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * Renders a dab centered at the given point, rotated by the given angle.
+     */
+    interface StampRenderer {
+        void render(Graphics2D g, double centerX, double centerY, double theta);
+    }
+
+    private final StampRenderer renderer;
+    private final int numAngles;
+    private final int numPhases;
+
+    // the stamp images are square, with their center at (half, half)
+    private final int size;
+    private final int half;
+
+    // the fractional part of the coordinates for which
+    // the dab can be rendered without sub-pixel shifting
+    private final double alignment;
+
+    private final BufferedImage[] stamps;
+
+    private StampCache(StampRenderer renderer, int size,
+                       int numAngles, int numPhases, double alignment) {
+        this.renderer = renderer;
+        this.size = size;
+        this.numAngles = numAngles;
+        this.numPhases = numPhases;
+        this.alignment = alignment;
+        half = size / 2;
+        stamps = new BufferedImage[numAngles * numPhases * numPhases];
+    }
+
+    /**
+     * Returns a new cache for dabs that don't extend further than the
+     * given distance from their center, or null if the stamps would need
+     * too much memory. If rotated is false, then only the angle zero is used.
+     */
+    static StampCache create(StampRenderer renderer, double extent,
+                             boolean rotated, double alignment) {
+        // one extra pixel on each side for the antialiasing and the sub-pixel shifts
+        int size = 2 * (int) Math.ceil(extent) + 3;
+        int numAngles = rotated ? NUM_ANGLES : 1;
+        long stampBytes = 4L * size * size * numAngles;
+
+        for (int numPhases = MAX_PHASES; numPhases >= 1; numPhases /= 2) {
+            if (stampBytes * numPhases * numPhases <= MAX_BYTES) {
+                return new StampCache(renderer, size, numAngles, numPhases,
+                    alignment - Math.floor(alignment));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Draws the dab centered at the given point
+     */
+    void putDab(Graphics2D g, double x, double y, double theta) {
+        double shiftedX = x - alignment;
+        double shiftedY = y - alignment;
+        int drawX = (int) Math.floor(shiftedX);
+        int drawY = (int) Math.floor(shiftedY);
+        int phaseX = (int) Math.round((shiftedX - drawX) * numPhases);
+        int phaseY = (int) Math.round((shiftedY - drawY) * numPhases);
+        if (phaseX == numPhases) {
+            phaseX = 0;
+            drawX++;
+        }
+        if (phaseY == numPhases) {
+            phaseY = 0;
+            drawY++;
+        }
+
+        int angleIndex = numAngles == 1 ? 0 : quantizeAngle(theta);
+        int index = (angleIndex * numPhases + phaseY) * numPhases + phaseX;
+        BufferedImage stamp = stamps[index];
+        if (stamp == null) {
+            stamp = renderStamp(angleIndex, phaseX, phaseY);
+            stamps[index] = stamp;
+        }
+        g.drawImage(stamp, drawX - half, drawY - half, null);
+    }
+
+    private BufferedImage renderStamp(int angleIndex, int phaseX, int phaseY) {
+        var stamp = new BufferedImage(size, size, TYPE_INT_ARGB_PRE);
+        Graphics2D g = stamp.createGraphics();
+        g.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_BILINEAR);
+        g.setRenderingHint(KEY_RENDERING, VALUE_RENDER_QUALITY);
+
+        double centerX = half + alignment + phaseX / (double) numPhases;
+        double centerY = half + alignment + phaseY / (double) numPhases;
+        double theta = angleIndex * 2 * Math.PI / NUM_ANGLES;
+        renderer.render(g, centerX, centerY, theta);
+        g.dispose();
+
+        return stamp;
+    }
+
+    static int quantizeAngle(double theta) {
+        int index = (int) Math.round(theta * NUM_ANGLES / (2 * Math.PI)) % NUM_ANGLES;
+        if (index < 0) {
+            index += NUM_ANGLES;
+        }
+        return index;
+    }
+
+    void flush() {
+        for (BufferedImage stamp : stamps) {
+            if (stamp != null) {
+                stamp.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.tools.brushes;
+
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+
+/**
+ * Creates the brush stamps of the {@link CopyBrush} subclasses directly
+ * from the packed int pixels of the source image, without creating
+ * Graphics2D objects or other temporary objects for each dab.
+ *
+ * The stamps are square, non-premultiplied ARGB pixel arrays. The alpha
+ * of each stamp pixel is multiplied by the corresponding value (0..255)
+ * of the mask, and stamp pixels without a source pixel are transparent.
+ */
+final class StampSampler {
+    private StampSampler() {
+    }
+
+    /**
+     * Returns true if the pixels of the given image can be sampled directly
+     */
+    static boolean canSample(BufferedImage src) {
+        int type = src.getType();
+        return (type == TYPE_INT_ARGB || type == TYPE_INT_ARGB_PRE)
+            && src.getRaster().getSampleModel() instanceof SinglePixelPackedSampleModel;
+    }
+
+    /**
+     * Copies the source pixels into the stamp so that the stamp pixel
+     * at (x, y) gets the source pixel at (x + offsetX, y + offsetY).
+     * This is used when the source is only translated.
+     */
+    static void copyTranslated(BufferedImage src, int offsetX, int offsetY,
+                               int[] stamp, int size, int[] mask) {
+        WritableRaster raster = src.getRaster();
+        int[] srcPixels = ((DataBufferInt) raster.getDataBuffer()).getData();
+        int srcWidth = src.getWidth();
+        int srcHeight = src.getHeight();
+        int scanlineStride = getScanlineStride(raster);
+        int baseIndex = getBaseIndex(raster);
+        boolean premultiplied = src.isAlphaPremultiplied();
+
+        // the range of the stamp columns with a source pixel
+        int fromX = Math.max(0, -offsetX);
+        int toX = Math.min(size, srcWidth - offsetX);
+
+        for (int y = 0; y < size; y++) {
+            int rowStart = y * size;
+            int srcY = y + offsetY;
+            if (srcY < 0 || srcY >= srcHeight || fromX >= toX) {
+                clear(stamp, rowStart, rowStart + size);
+                continue;
+            }
+            clear(stamp, rowStart, rowStart + fromX);
+            clear(stamp, rowStart + toX, rowStart + size);
+
+            int srcIndex = baseIndex + srcY * scanlineStride + fromX + offsetX;
+            for (int x = fromX; x < toX; x++, srcIndex++) {
+                int i = rowStart + x;
+                int maskValue = mask[i];
+                if (maskValue == 0) {
+                    stamp[i] = 0;
+                    continue;
+                }
+                int argb = srcPixels[srcIndex];
+                if (premultiplied) {
+                    argb = unpremultiply(argb);
+                }
+                stamp[i] = applyMask(argb, maskValue);
+            }
+        }
+    }
+
+    /**
+     * Samples the source pixels into the stamp with bilinear interpolation.
+     * The given transform maps the stamp coordinates to the source coordinates.
+     * This is used when the source is scaled or rotated.
+     */
+    static void sampleTransformed(BufferedImage src, AffineTransform stampToSrc,
+                                  int[] stamp, int size, int[] mask) {
+        WritableRaster raster = src.getRaster();
+        int[] srcPixels = ((DataBufferInt) raster.getDataBuffer()).getData();
+        int srcWidth = src.getWidth();
+        int srcHeight = src.getHeight();
+        int scanlineStride = getScanlineStride(raster);
+        int baseIndex = getBaseIndex(raster);
+        boolean premultiplied = src.isAlphaPremultiplied();
+
+        // the change of the source coordinates for one stamp pixel step
+        double m00 = stampToSrc.getScaleX();
+        double m01 = stampToSrc.getShearX();
+        double m10 = stampToSrc.getShearY();
+        double m11 = stampToSrc.getScaleY();
+        double m02 = stampToSrc.getTranslateX();
+        double m12 = stampToSrc.getTranslateY();
+
+        for (int y = 0; y < size; y++) {
+            // The source coordinates of the center of the first pixel in the
+            // row, shifted by half a pixel so that the integer parts are the
+            // coordinates of the top-left tap. The rest of the row is stepped.
+            double cy = y + 0.5;
+            double u = m00 * 0.5 + m01 * cy + m02 - 0.5;
+            double v = m10 * 0.5 + m11 * cy + m12 - 0.5;
+
+            int rowStart = y * size;
+            for (int x = 0; x < size; x++, u += m00, v += m10) {
+                int i = rowStart + x;
+                int maskValue = mask[i];
+                if (maskValue == 0) {
+                    stamp[i] = 0;
+                    continue;
+                }
+
+                int x0 = (int) Math.floor(u);
+                int y0 = (int) Math.floor(v);
+                if (x0 < -1 || y0 < -1 || x0 >= srcWidth || y0 >= srcHeight) {
+                    stamp[i] = 0;
+                    continue;
+                }
+
+                // 8-bit fixed point tap weights
+                int wx = (int) ((u - x0) * 256);
+                int wy = (int) ((v - y0) * 256);
+
+                int index = baseIndex + y0 * scanlineStride + x0;
+                boolean left = x0 >= 0;
+                boolean right = x0 + 1 < srcWidth;
+                boolean top = y0 >= 0;
+                boolean bottom = y0 + 1 < srcHeight;
+
+                // missing taps are transparent
+                int nw = top && left ? srcPixels[index] : 0;
+                int ne = top && right ? srcPixels[index + 1] : 0;
+                int sw = bottom && left ? srcPixels[index + scanlineStride] : 0;
+                int se = bottom && right ? srcPixels[index + scanlineStride + 1] : 0;
+                if (!premultiplied) {
+                    nw = premultiply(nw);
+                    ne = premultiply(ne);
+                    sw = premultiply(sw);
+                    se = premultiply(se);
+                }
+
+                int argb = unpremultiply(interpolate(nw, ne, sw, se, wx, wy));
+                stamp[i] = applyMask(argb, maskValue);
+            }
+        }
+    }
+
+    /**
+     * Fills the stamp with the given non-premultiplied color
+     */
+    static void fill(int argb, int[] stamp, int[] mask) {
+        for (int i = 0; i < stamp.length; i++) {
+            stamp[i] = applyMask(argb, mask[i]);
+        }
+    }
+
+    // interpolates premultiplied pixels channel by channel
+    private static int interpolate(int nw, int ne, int sw, int se, int wx, int wy) {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            int top = ((nw >>> shift) & 0xFF) * (256 - wx) + ((ne >>> shift) & 0xFF) * wx;
+            int bottom = ((sw >>> shift) & 0xFF) * (256 - wx) + ((se >>> shift) & 0xFF) * wx;
+            int value = (top * (256 - wy) + bottom * wy + (1 << 15)) >>> 16;
+            result |= value << shift;
+        }
+        return result;
+    }
+
+    private static int applyMask(int argb, int maskValue) {
+        int a = argb >>> 24;
+        if (maskValue != 255) {
+            a = (a * maskValue + 127) / 255;
+        }
+        return a << 24 | (argb & 0x00_FF_FF_FF);
+    }
+
+    private static int premultiply(int argb) {
+        int a = argb >>> 24;
+        if (a == 255) {
+            return argb;
+        }
+        if (a == 0) {
+            return 0;
+        }
+        int r = ((argb >>> 16) & 0xFF) * a / 255;
+        int g = ((argb >>> 8) & 0xFF) * a / 255;
+        int b = (argb & 0xFF) * a / 255;
+        return a << 24 | r << 16 | g << 8 | b;
+    }
+
+    private static int unpremultiply(int argb) {
+        int a = argb >>> 24;
+        if (a == 255) {
+            return argb;
+        }
+        if (a == 0) {
+            return 0;
+        }
+        int r = Math.min(255, (((argb >>> 16) & 0xFF) * 255 + a / 2) / a);
+        int g = Math.min(255, (((argb >>> 8) & 0xFF) * 255 + a / 2) / a);
+        int b = Math.min(255, ((argb & 0xFF) * 255 + a / 2) / a);
+        return a << 24 | r << 16 | g << 8 | b;
+    }
+
+    private static void clear(int[] stamp, int from, int to) {
+        for (int i = from; i < to; i++) {
+            stamp[i] = 0;
+        }
+    }
+
+    private static int getScanlineStride(WritableRaster raster) {
+        return ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+    }
+
+    // the array index of the top-left pixel, which is not zero for subimages
+    private static int getBaseIndex(WritableRaster raster) {
+        var sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        return raster.getDataBuffer().getOffset() + sampleModel.getOffset(
+            -raster.getSampleModelTranslateX(),
+            -raster.getSampleModelTranslateY());
+    }
+}
@@ -86,6 +86,7 @@ public class Gradient {
         int canvasHeight = canvas.getHeight();
         boolean smallImage; // the temporary image might be smaller than the canvas, if there is selection
         if (dr instanceof LayerMask) {
+            dr.copyImageIfShared();
             BufferedImage subImage = dr.getCanvasSizedSubImage();
             g = subImage.createGraphics();
             assert canvasWidth == subImage.getWidth();
@@ -110,6 +111,9 @@ public class Gradient {
         }
 
         g.dispose();
+        if (dr instanceof LayerMask) {
+            dr.pixelsChanged(new Rectangle(-dr.getTx(), -dr.getTy(), canvasWidth, canvasHeight));
+        }
         dr.mergeTmpDrawingLayerDown();
         dr.updateIconImage();
     }
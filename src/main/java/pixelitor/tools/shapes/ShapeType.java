@@ -236,6 +236,11 @@ public enum ShapeType {
             return new RandomStarShape(x, y, size, size);
         }
 
+        @Override
+        public boolean isRandom() {
+            return true;
+        }
+
         @Override
         public DragDisplayType getDragDisplayType() {
             return DragDisplayType.WIDTH_HEIGHT;
@@ -492,6 +497,15 @@ public enum ShapeType {
         return closed;
     }
 
+    /**
+     * Returns true if {@link #createShape(double, double, double)}
+     * creates a different shape each time, even for the same arguments
+     */
+    public boolean isRandom() {
+        // overridden if necessary
+        return false;
+    }
+
     public boolean hasSettings() {
         return hasSettings;
     }
@@ -403,6 +403,7 @@ public class StyledShape implements Cloneable, Transformable {
         int tx = -dr.getTx();
         int ty = -dr.getTy();
 
+        dr.copyImageIfShared();
         BufferedImage bi = dr.getImage();
         Graphics2D g2 = bi.createGraphics();
         g2.translate(tx, ty);
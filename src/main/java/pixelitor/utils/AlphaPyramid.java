@@ -0,0 +1,281 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * A coarse index of the alpha channel of an image, used for
+ * trimming and hit-testing layers without scanning their pixels.
+ *
+ * The image is divided into square blocks, and for each block the
+ * maximum alpha and the bounds of the non-transparent pixels are stored.
+ * These blocks are the lowest level of a pyramid, where each node
+ * summarizes the (at most) four nodes below it, so the trimmed bounds
+ * of the whole image are stored in the top node.
+ *
+ * The index is updated lazily: the modified areas are only marked
+ * as dirty, and the dirty blocks (and the nodes above them) are
+ * recalculated when the index is queried the next time.
+ */
+public class AlphaPyramid {
+    private static final int BLOCK_SHIFT = 5;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+    private final int width;
+    private final int height;
+
+    // levels[0] contains the blocks, the last level has a single node
+    private final Level[] levels;
+
+    // the dirty blocks in block coordinates, or null if there are none
+    private Rectangle dirtyBlocks;
+
+    public AlphaPyramid(BufferedImage image) {
+        width = image.getWidth();
+        height = image.getHeight();
+
+        int numLevels = 1;
+        int cols = numBlocks(width);
+        int rows = numBlocks(height);
+        while (cols > 1 || rows > 1) {
+            cols = (cols + 1) / 2;
+            rows = (rows + 1) / 2;
+            numLevels++;
+        }
+
+        levels = new Level[numLevels];
+        cols = numBlocks(width);
+        rows = numBlocks(height);
+        for (int i = 0; i < numLevels; i++) {
+            levels[i] = new Level(cols, rows);
+            cols = (cols + 1) / 2;
+            rows = (rows + 1) / 2;
+        }
+
+        // everything will be calculated at the first query
+        Level blocks = levels[0];
+        dirtyBlocks = new Rectangle(0, 0, blocks.cols, blocks.rows);
+    }
+
+    /**
+     * Returns true if this index can be used for the given image,
+     * assuming that its pixels were indexed.
+     */
+    public boolean hasSameSize(BufferedImage image) {
+        return image.getWidth() == width && image.getHeight() == height;
+    }
+
+    /**
+     * Marks the given area (relative to the image) as modified.
+     */
+    public void markDirty(Rectangle area) {
+        Rectangle clipped = area.intersection(new Rectangle(width, height));
+        if (clipped.isEmpty()) {
+            return;
+        }
+        int firstCol = clipped.x >> BLOCK_SHIFT;
+        int firstRow = clipped.y >> BLOCK_SHIFT;
+        int lastCol = (clipped.x + clipped.width - 1) >> BLOCK_SHIFT;
+        int lastRow = (clipped.y + clipped.height - 1) >> BLOCK_SHIFT;
+        var blocks = new Rectangle(firstCol, firstRow,
+            lastCol - firstCol + 1, lastRow - firstRow + 1);
+
+        if (dirtyBlocks == null) {
+            dirtyBlocks = blocks;
+        } else {
+            dirtyBlocks.add(blocks);
+        }
+    }
+
+    /**
+     * Returns the bounds of the non-transparent pixels of the given
+     * image (which must be the indexed image or a copy of it), or
+     * an empty rectangle if all the pixels are transparent.
+     */
+    public Rectangle getTrimRect(BufferedImage image) {
+        update(image);
+
+        Level top = levels[levels.length - 1];
+        if (top.maxAlpha[0] == 0) {
+            return new Rectangle();
+        }
+        return top.getBounds(0);
+    }
+
+    /**
+     * Returns the maximum alpha in the block containing the given pixel.
+     * If it's zero, then the pixel is also transparent.
+     */
+    public int getMaxAlpha(BufferedImage image, int x, int y) {
+        assert x >= 0 && y >= 0 && x < width && y < height;
+        update(image);
+
+        Level blocks = levels[0];
+        return blocks.maxAlpha[(y >> BLOCK_SHIFT) * blocks.cols + (x >> BLOCK_SHIFT)] & 0xFF;
+    }
+
+    private void update(BufferedImage image) {
+        if (dirtyBlocks == null) {
+            return;
+        }
+        assert hasSameSize(image);
+
+        var scanner = new BlockScanner(image);
+        Level blocks = levels[0];
+        int firstCol = dirtyBlocks.x;
+        int firstRow = dirtyBlocks.y;
+        int lastCol = firstCol + dirtyBlocks.width - 1;
+        int lastRow = firstRow + dirtyBlocks.height - 1;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                scanner.scan(blocks, row * blocks.cols + col,
+                    col << BLOCK_SHIFT, row << BLOCK_SHIFT);
+            }
+        }
+
+        // only the nodes above the dirty blocks are recalculated
+        for (int i = 1; i < levels.length; i++) {
+            firstCol >>= 1;
+            firstRow >>= 1;
+            lastCol >>= 1;
+            lastRow >>= 1;
+            Level level = levels[i];
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int col = firstCol; col <= lastCol; col++) {
+                    level.mergeChildren(levels[i - 1], col, row);
+                }
+            }
+        }
+        dirtyBlocks = null;
+    }
+
+    private static int numBlocks(int size) {
+        return Math.max(1, (size + BLOCK_SIZE - 1) >> BLOCK_SHIFT);
+    }
+
+    /**
+     * One level of the pyramid. The bounds of a node are
+     * valid only if its maximum alpha isn't zero.
+     */
+    private static class Level {
+        private final int cols;
+        private final int rows;
+
+        // the values are unsigned
+        private final byte[] maxAlpha;
+
+        // the inclusive pixel bounds of the non-transparent pixels
+        private final int[] minX;
+        private final int[] minY;
+        private final int[] maxX;
+        private final int[] maxY;
+
+        private Level(int cols, int rows) {
+            this.cols = cols;
+            this.rows = rows;
+            int numNodes = cols * rows;
+            maxAlpha = new byte[numNodes];
+            minX = new int[numNodes];
+            minY = new int[numNodes];
+            maxX = new int[numNodes];
+            maxY = new int[numNodes];
+        }
+
+        private void set(int node, int alpha, int x1, int y1, int x2, int y2) {
+            // 16-bit alpha values are clamped, only their being zero matters
+            maxAlpha[node] = (byte) Math.min(alpha, 255);
+            minX[node] = x1;
+            minY[node] = y1;
+            maxX[node] = x2;
+            maxY[node] = y2;
+        }
+
+        private void mergeChildren(Level below, int col, int row) {
+            int alpha = 0;
+            int x1 = Integer.MAX_VALUE;
+            int y1 = Integer.MAX_VALUE;
+            int x2 = Integer.MIN_VALUE;
+            int y2 = Integer.MIN_VALUE;
+
+            int lastChildCol = Math.min(2 * col + 1, below.cols - 1);
+            int lastChildRow = Math.min(2 * row + 1, below.rows - 1);
+            for (int childRow = 2 * row; childRow <= lastChildRow; childRow++) {
+                for (int childCol = 2 * col; childCol <= lastChildCol; childCol++) {
+                    int child = childRow * below.cols + childCol;
+                    int childAlpha = below.maxAlpha[child] & 0xFF;
+                    if (childAlpha == 0) {
+                        continue;
+                    }
+                    alpha = Math.max(alpha, childAlpha);
+                    x1 = Math.min(x1, below.minX[child]);
+                    y1 = Math.min(y1, below.minY[child]);
+                    x2 = Math.max(x2, below.maxX[child]);
+                    y2 = Math.max(y2, below.maxY[child]);
+                }
+            }
+            set(row * cols + col, alpha, x1, y1, x2, y2);
+        }
+
+        private Rectangle getBounds(int node) {
+            return new Rectangle(minX[node], minY[node],
+                maxX[node] - minX[node] + 1, maxY[node] - minY[node] + 1);
+        }
+    }
+
+    /**
+     * Calculates the maximum alpha and the bounds
+     * of the non-transparent pixels of image blocks.
+     */
+    private static class BlockScanner {
+        private final AlphaReader reader;
+        private final int width;
+        private final int height;
+
+        private BlockScanner(BufferedImage image) {
+            reader = new AlphaReader(image);
+            width = image.getWidth();
+            height = image.getHeight();
+        }
+
+        private void scan(Level blocks, int node, int startX, int startY) {
+            int endX = Math.min(startX + BLOCK_SIZE, width);
+            int endY = Math.min(startY + BLOCK_SIZE, height);
+
+            int alpha = 0;
+            int x1 = Integer.MAX_VALUE;
+            int y1 = Integer.MAX_VALUE;
+            int x2 = Integer.MIN_VALUE;
+            int y2 = Integer.MIN_VALUE;
+            for (int y = startY; y < endY; y++) {
+                int first = reader.findFirst(y, startX, endX);
+                if (first == -1) {
+                    continue;
+                }
+                int last = reader.findLast(y, first, endX);
+                alpha = Math.max(alpha, reader.findMax(y, first, last + 1));
+                x1 = Math.min(x1, first);
+                x2 = Math.max(x2, last);
+                y1 = Math.min(y1, y);
+                y2 = y;
+            }
+            blocks.set(node, alpha, x1, y1, x2, y2);
+        }
+    }
+}
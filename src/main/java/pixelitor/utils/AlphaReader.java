@@ -0,0 +1,211 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+
+/**
+ * Reads the alpha values of an image row by row. The packed int ARGB
+ * images and the interleaved byte images are read directly from their
+ * pixel arrays, the others through their alpha raster.
+ *
+ * For gray images (such as the layer masks) the gray value is used
+ * as the alpha, and the other images without alpha are opaque.
+ *
+ * The row methods take the start (inclusive) and the end (exclusive)
+ * x coordinates of the scanned part of the row. A reader can be used
+ * only by one thread at a time.
+ */
+final class AlphaReader {
+    private final int[] intPixels;
+    private final byte[] bytePixels;
+    private final int baseIndex;
+    private final int scanlineStride;
+    private final int pixelStride;
+
+    // the fallback for the other image types, or null
+    private final WritableRaster alphaRaster;
+    private int[] rowSamples;
+
+    private final boolean opaque;
+
+    AlphaReader(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        SampleModel sampleModel = raster.getSampleModel();
+        int type = image.getType();
+        boolean gray = type == TYPE_BYTE_GRAY;
+        opaque = !gray && !image.getColorModel().hasAlpha();
+
+        int[] ints = null;
+        byte[] bytes = null;
+        int base = 0;
+        int scanline = 0;
+        int pixel = 1;
+        if (opaque) {
+            // nothing to read
+        } else if ((type == TYPE_INT_ARGB || type == TYPE_INT_ARGB_PRE)
+            && sampleModel instanceof SinglePixelPackedSampleModel) {
+            ints = ((DataBufferInt) raster.getDataBuffer()).getData();
+            scanline = ((SinglePixelPackedSampleModel) sampleModel).getScanlineStride();
+            // not zero for subimages
+            base = raster.getDataBuffer().getOffset()
+                - raster.getSampleModelTranslateX()
+                - raster.getSampleModelTranslateY() * scanline;
+        } else if (sampleModel instanceof ComponentSampleModel
+            && raster.getDataBuffer() instanceof DataBufferByte
+            && raster.getDataBuffer().getNumBanks() == 1) {
+            var componentModel = (ComponentSampleModel) sampleModel;
+            // the gray value or the last band is used as the alpha
+            int band = gray ? 0 : sampleModel.getNumBands() - 1;
+            bytes = ((DataBufferByte) raster.getDataBuffer()).getData();
+            scanline = componentModel.getScanlineStride();
+            pixel = componentModel.getPixelStride();
+            base = raster.getDataBuffer().getOffset()
+                + componentModel.getBandOffsets()[band]
+                - raster.getSampleModelTranslateX() * pixel
+                - raster.getSampleModelTranslateY() * scanline;
+        }
+        intPixels = ints;
+        bytePixels = bytes;
+        baseIndex = base;
+        scanlineStride = scanline;
+        pixelStride = pixel;
+
+        if (opaque || ints != null || bytes != null) {
+            alphaRaster = null;
+        } else {
+            alphaRaster = gray ? raster : image.getAlphaRaster();
+        }
+    }
+
+    /**
+     * Returns the first x in the given part of the row
+     * where the alpha isn't zero, or -1 if there is none.
+     */
+    int findFirst(int y, int fromX, int toX) {
+        if (fromX >= toX) {
+            return -1;
+        }
+        if (opaque) {
+            return fromX;
+        }
+        if (intPixels != null) {
+            int rowStart = baseIndex + y * scanlineStride;
+            for (int x = fromX; x < toX; x++) {
+                if (intPixels[rowStart + x] >>> 24 != 0) {
+                    return x;
+                }
+            }
+        } else if (bytePixels != null) {
+            int index = baseIndex + y * scanlineStride + fromX * pixelStride;
+            for (int x = fromX; x < toX; x++, index += pixelStride) {
+                if (bytePixels[index] != 0) {
+                    return x;
+                }
+            }
+        } else {
+            readSamples(y, fromX, toX);
+            for (int x = fromX; x < toX; x++) {
+                if (rowSamples[x - fromX] != 0) {
+                    return x;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the last x in the given part of the row
+     * where the alpha isn't zero, or -1 if there is none.
+     */
+    int findLast(int y, int fromX, int toX) {
+        if (fromX >= toX) {
+            return -1;
+        }
+        if (opaque) {
+            return toX - 1;
+        }
+        if (intPixels != null) {
+            int rowStart = baseIndex + y * scanlineStride;
+            for (int x = toX - 1; x >= fromX; x--) {
+                if (intPixels[rowStart + x] >>> 24 != 0) {
+                    return x;
+                }
+            }
+        } else if (bytePixels != null) {
+            int index = baseIndex + y * scanlineStride + (toX - 1) * pixelStride;
+            for (int x = toX - 1; x >= fromX; x--, index -= pixelStride) {
+                if (bytePixels[index] != 0) {
+                    return x;
+                }
+            }
+        } else {
+            readSamples(y, fromX, toX);
+            for (int x = toX - 1; x >= fromX; x--) {
+                if (rowSamples[x - fromX] != 0) {
+                    return x;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the maximum alpha in the given part of the row.
+     */
+    int findMax(int y, int fromX, int toX) {
+        if (fromX >= toX) {
+            return 0;
+        }
+        if (opaque) {
+            return 255;
+        }
+        int max = 0;
+        if (intPixels != null) {
+            int rowStart = baseIndex + y * scanlineStride;
+            for (int x = fromX; x < toX; x++) {
+                max = Math.max(max, intPixels[rowStart + x] >>> 24);
+            }
+        } else if (bytePixels != null) {
+            int index = baseIndex + y * scanlineStride + fromX * pixelStride;
+            for (int x = fromX; x < toX; x++, index += pixelStride) {
+                max = Math.max(max, bytePixels[index] & 0xFF);
+            }
+        } else {
+            readSamples(y, fromX, toX);
+            for (int i = 0; i < toX - fromX; i++) {
+                max = Math.max(max, rowSamples[i]);
+            }
+        }
+        return max;
+    }
+
+    private void readSamples(int y, int fromX, int toX) {
+        rowSamples = alphaRaster.getSamples(fromX, y, toX - fromX, 1, 0, rowSamples);
+    }
+}
@@ -29,6 +29,7 @@ import pixelitor.gui.utils.Themes;
 import pixelitor.guides.GuideStrokeType;
 import pixelitor.guides.GuideStyle;
 import pixelitor.history.History;
+import pixelitor.io.AutoSave;
 import pixelitor.io.Dirs;
 import pixelitor.layers.LayerButtonLayout;
 import pixelitor.menus.file.RecentFile;
@@ -98,6 +99,9 @@ public final class AppPreferences {
     private static GuideStyle cropGuideStyle;
 
     private static final String MAGICK_DIR_KEY = "magick_dir";
+    private static final String MEMORY_LIMIT_KEY = "memory_limit";
+    private static final String AUTOSAVE_INTERVAL_KEY = "autosave_interval";
+    private static final String AUTOSAVE_RATE_KEY = "autosave_rate";
 
     // loaded and stored here to avoid initializing the ImageMagick class
     // (which also searches for this directory), if ImageMagick is not needed
@@ -300,6 +304,27 @@ public final class AppPreferences {
         mainNode.putInt(UNDO_LEVELS_KEY, History.getUndoLevels());
     }
 
+    public static int loadMemoryLimit() {
+        return mainNode.getInt(MEMORY_LIMIT_KEY, MemoryGovernor.DEFAULT_LIMIT_PERCENT);
+    }
+
+    private static void saveMemoryLimit() {
+        mainNode.putInt(MEMORY_LIMIT_KEY, MemoryGovernor.getLimitPercent());
+    }
+
+    public static int loadAutoSaveInterval() {
+        return mainNode.getInt(AUTOSAVE_INTERVAL_KEY, AutoSave.DEFAULT_INTERVAL_SECONDS);
+    }
+
+    public static int loadAutoSaveRate() {
+        return mainNode.getInt(AUTOSAVE_RATE_KEY, AutoSave.DEFAULT_MAX_MB_PER_SECOND);
+    }
+
+    private static void saveAutoSaveSettings() {
+        mainNode.putInt(AUTOSAVE_INTERVAL_KEY, AutoSave.getIntervalSeconds());
+        mainNode.putInt(AUTOSAVE_RATE_KEY, AutoSave.getMaxMBPerSecond());
+    }
+
     public static int loadThumbSize() {
         return mainNode.getInt(THUMB_SIZE_KEY, LayerButtonLayout.SMALL_THUMB_SIZE);
     }
@@ -359,6 +384,8 @@ public final class AppPreferences {
         WorkSpace.saveVisibility();
         saveUndoLevels();
         saveThumbSize();
+        saveMemoryLimit();
+        saveAutoSaveSettings();
         TipsOfTheDay.saveNextTipNr();
         saveNewImageSize();
         saveLastToolName();
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import pixelitor.ThreadPool;
+
+import java.util.concurrent.Future;
+
+/**
+ * Exact Euclidean distance transform of binary images, based on
+ * "Distance Transforms of Sampled Functions" by Felzenszwalb and Huttenlocher.
+ * The transform is separable: the columns and then the rows are
+ * processed independently, so both passes run in parallel.
+ */
+public class DistanceTransform {
+    // larger than any squared distance that can occur in an image
+    private static final float INF = 1.0e20f;
+
+    // the number of columns or rows processed by one task
+    private static final int CHUNK_SIZE = 32;
+
+    private DistanceTransform() {
+    }
+
+    /**
+     * Returns the squared distance from each pixel to the
+     * nearest pixel for which the given target array is true.
+     * Target pixels have the distance 0. If there are no target
+     * pixels at all, then all distances are very large.
+     */
+    public static float[] squaredDistances(boolean[] target, int width, int height) {
+        assert target.length == width * height;
+
+        float[] dist = new float[target.length];
+        for (int i = 0; i < dist.length; i++) {
+            dist[i] = target[i] ? 0 : INF;
+        }
+
+        // vertical pass: every column is independent
+        Future<?>[] futures = new Future<?>[(width + CHUNK_SIZE - 1) / CHUNK_SIZE];
+        for (int i = 0; i < futures.length; i++) {
+            int startX = i * CHUNK_SIZE;
+            int endX = Math.min(width, startX + CHUNK_SIZE);
+            futures[i] = ThreadPool.submit(() -> {
+                float[] f = new float[height];
+                float[] d = new float[height];
+                int[] v = new int[height];
+                float[] z = new float[height + 1];
+                for (int x = startX; x < endX; x++) {
+                    for (int y = 0; y < height; y++) {
+                        f[y] = dist[y * width + x];
+                    }
+                    transform1D(f, d, v, z, height);
+                    for (int y = 0; y < height; y++) {
+                        dist[y * width + x] = d[y];
+                    }
+                }
+            });
+        }
+        waitFor(futures);
+
+        // horizontal pass: every row is independent
+        futures = new Future<?>[(height + CHUNK_SIZE - 1) / CHUNK_SIZE];
+        for (int i = 0; i < futures.length; i++) {
+            int startY = i * CHUNK_SIZE;
+            int endY = Math.min(height, startY + CHUNK_SIZE);
+            futures[i] = ThreadPool.submit(() -> {
+                float[] f = new float[width];
+                float[] d = new float[width];
+                int[] v = new int[width];
+                float[] z = new float[width + 1];
+                for (int y = startY; y < endY; y++) {
+                    int offset = y * width;
+                    System.arraycopy(dist, offset, f, 0, width);
+                    transform1D(f, d, v, z, width);
+                    System.arraycopy(d, 0, dist, offset, width);
+                }
+            });
+        }
+        waitFor(futures);
+
+        return dist;
+    }
+
+    private static void waitFor(Future<?>[] futures) {
+        // this can be called from pool threads (for example while
+        // rendering area effects), so queued tasks are run here
+        for (Future<?> future : futures) {
+            ThreadPool.runIfNotStarted(future);
+        }
+        ThreadPool.waitFor(futures, ProgressTracker.NULL_TRACKER);
+    }
+
+    /**
+     * The one-dimensional distance transform of the sampled function f,
+     * computed as the lower envelope of parabolas rooted at the samples.
+     * The arrays v and z are working storage, reused between calls.
+     */
+    private static void transform1D(float[] f, float[] d, int[] v, float[] z, int n) {
+        int k = 0;
+        v[0] = 0;
+        z[0] = -INF;
+        z[1] = INF;
+        for (int q = 1; q < n; q++) {
+            if (f[q] >= INF) {
+                // parabolas rooted at infinity never form
+                // a part of the lower envelope
+                continue;
+            }
+            if (f[v[k]] >= INF) {
+                // the envelope so far is empty
+                v[k] = q;
+                z[k] = -INF;
+                z[k + 1] = INF;
+                continue;
+            }
+            float s = intersection(f, q, v[k]);
+            while (s <= z[k]) {
+                k--;
+                s = intersection(f, q, v[k]);
+            }
+            k++;
+            v[k] = q;
+            z[k] = s;
+            z[k + 1] = INF;
+        }
+
+        if (f[v[0]] >= INF) {
+            // no target in this line
+            for (int q = 0; q < n; q++) {
+                d[q] = INF;
+            }
+            return;
+        }
+
+        k = 0;
+        for (int q = 0; q < n; q++) {
+            while (z[k + 1] < q) {
+                k++;
+            }
+            int dq = q - v[k];
+            d[q] = dq * dq + f[v[k]];
+        }
+    }
+
+    private static float intersection(float[] f, int q, int p) {
+        return ((f[q] + q * q) - (f[p] + p * p)) / (2.0f * (q - p));
+    }
+}
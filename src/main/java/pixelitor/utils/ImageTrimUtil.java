@@ -17,84 +17,232 @@
 
 package pixelitor.utils;
 
+import pixelitor.ThreadPool;
+
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.awt.image.WritableRaster;
-
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
 
 /**
  * Trim image from transparent pixels
  * See https://stackoverflow.com/questions/3224561/crop-image-to-smallest-size-by-removing-transparent-pixels-in-java
  *
- * There could be two possible needs:
- * 1. Full trim: only pixels that are in format argb (0,0,0,0)
- * 2. Trim transparent pixels: only pixels with alpha = 0
+ * The pixels are read directly from the pixel arrays (see {@link AlphaReader}),
+ * and the rows and columns are scanned from the edges inwards, stopping at
+ * the first non-transparent pixel. For large images the opposite edges
+ * are scanned in parallel.
  *
  * @author Łukasz Kurzaj lukaszkurzaj@gmail.com
  */
 public class ImageTrimUtil {
+    // smaller areas are scanned only in the calling thread
+    private static final int MIN_PIXELS_FOR_PARALLEL = 512 * 512;
+
+    private static final int NOT_FOUND = -1;
+
     private ImageTrimUtil() {
     }
 
     /**
-     * Returns image bounding box trimmed from transparent pixels (alpha channel = 0)
+     * Returns image bounding box trimmed from transparent pixels (alpha channel = 0),
+     * or an empty rectangle if all pixels are transparent.
+     * For gray images the zero gray values are considered transparent.
      */
     public static Rectangle getTrimRect(BufferedImage image) {
-        WritableRaster raster = image.getAlphaRaster();
-        int width = raster.getWidth();
-        int height = raster.getHeight();
-        int left = 0;
-        int top = 0;
-        int right = width - 1;
-        int bottom = height - 1;
-        int minRight = width - 1;
-        int minBottom = height - 1;
-
-        top:
-        for (; top < bottom; top++) {
-            for (int x = 0; x < width; x++) {
-                if (raster.getSample(x, top, 0) != 0) {
-                    minRight = x;
-                    minBottom = top;
-                    break top;
+        return getTrimRect(image, new Rectangle(image.getWidth(), image.getHeight()));
+    }
+
+    /**
+     * Returns the bounding box of the non-transparent pixels within the
+     * given area of the image, or an empty rectangle if there are none.
+     */
+    public static Rectangle getTrimRect(BufferedImage image, Rectangle area) {
+        area = area.intersection(new Rectangle(image.getWidth(), image.getHeight()));
+        if (area.isEmpty()) {
+            return new Rectangle();
+        }
+        boolean parallel = (long) area.width * area.height >= MIN_PIXELS_FOR_PARALLEL;
+        var edges = new EdgeScan(image, area);
+
+        // the top and bottom edges, stopping when they meet
+        int top;
+        int bottom;
+        if (parallel) {
+            Future<Integer> bottomFuture = ThreadPool.submit2(edges::scanBottom);
+            top = edges.scanTop();
+            bottom = ThreadPool.getResult(bottomFuture);
+        } else {
+            top = edges.scanTop();
+            bottom = top == NOT_FOUND ? NOT_FOUND : edges.scanBottom();
+        }
+        if (top == NOT_FOUND || bottom == NOT_FOUND) {
+            return new Rectangle();
+        }
+
+        // the left and right edges, only between the found rows
+        int left;
+        int right;
+        if (parallel) {
+            Future<Integer> rightFuture = ThreadPool.submit2(() -> edges.scanRight(top, bottom));
+            left = edges.scanLeft(top, bottom);
+            right = ThreadPool.getResult(rightFuture);
+        } else {
+            left = edges.scanLeft(top, bottom);
+            right = edges.scanRight(top, bottom);
+        }
+
+        return new Rectangle(left, top, right - left + 1, bottom - top + 1);
+    }
+
+    /**
+     * Returns the updated trim rectangle of an image after the pixels
+     * in the given dirty area (relative to the image) changed. Outside
+     * the dirty area the image must be unchanged since the old trim
+     * rectangle was calculated.
+     */
+    public static Rectangle updateTrimRect(BufferedImage image,
+                                           Rectangle oldTrimRect, Rectangle dirtyArea) {
+        Rectangle dirty = dirtyArea.intersection(
+            new Rectangle(image.getWidth(), image.getHeight()));
+        if (dirty.isEmpty()) {
+            return new Rectangle(oldTrimRect);
+        }
+
+        Rectangle dirtyTrim = getTrimRect(image, dirty);
+        if (oldTrimRect.isEmpty()) {
+            return dirtyTrim;
+        }
+        Rectangle maxTrim = dirtyTrim.isEmpty() ? oldTrimRect : oldTrimRect.union(dirtyTrim);
+
+        if (!touchesEdges(dirty, oldTrimRect)) {
+            // the pixels that determined the old edges are unchanged,
+            // so the trim rectangle can only grow
+            return maxTrim;
+        }
+        // The trim rectangle could also shrink, but the pixels outside
+        // both the old trim rectangle and the dirty area are transparent.
+        // The scan of the smaller area stops at the edges that didn't move.
+        return getTrimRect(image, maxTrim);
+    }
+
+    // returns true if the dirty area intersects one of the border rows or columns
+    private static boolean touchesEdges(Rectangle dirty, Rectangle trimRect) {
+        if (!dirty.intersects(trimRect)) {
+            return false;
+        }
+        Rectangle inside = new Rectangle(trimRect.x + 1, trimRect.y + 1,
+            trimRect.width - 2, trimRect.height - 2);
+        return inside.isEmpty() || !inside.contains(dirty.intersection(trimRect));
+    }
+
+    /**
+     * Returns the trim rectangles of all the given images (for example
+     * the layer images of an exported composition), calculated in parallel.
+     */
+    public static List<Rectangle> getTrimRects(List<BufferedImage> images) {
+        List<Future<Rectangle>> futures = new ArrayList<>(images.size());
+        for (BufferedImage image : images) {
+            futures.add(ThreadPool.submit2(() -> getTrimRect(image)));
+        }
+
+        List<Rectangle> trimRects = new ArrayList<>(images.size());
+        for (Future<Rectangle> future : futures) {
+            trimRects.add(ThreadPool.getResult(future));
+        }
+        return trimRects;
+    }
+
+    /**
+     * Returns the part of the image without the transparent borders,
+     * or null if all pixels are transparent. The returned image
+     * shares the pixels with the given one.
+     */
+    public static BufferedImage trimImage(BufferedImage image) {
+        Rectangle rect = getTrimRect(image);
+        if (rect.isEmpty()) {
+            return null;
+        }
+        return image.getSubimage(rect.x, rect.y, rect.width, rect.height);
+    }
+
+    /**
+     * Scans one area of an image from its edges. The top and bottom
+     * scans can run in parallel: each of them stops when it reaches
+     * the rows already scanned by the other one.
+     */
+    private static class EdgeScan {
+        private final BufferedImage image;
+        private final Rectangle area;
+
+        // the rows above and including the first one are transparent
+        private volatile int topScanned;
+        // the rows below and including the first one are transparent
+        private volatile int bottomScanned;
+
+        private EdgeScan(BufferedImage image, Rectangle area) {
+            this.image = image;
+            this.area = area;
+            topScanned = area.y - 1;
+            bottomScanned = area.y + area.height;
+        }
+
+        private int scanTop() {
+            var reader = new AlphaReader(image);
+            int toX = area.x + area.width;
+            for (int y = area.y; y < area.y + area.height; y++) {
+                if (y >= bottomScanned) {
+                    return NOT_FOUND;
                 }
+                if (reader.findFirst(y, area.x, toX) != NOT_FOUND) {
+                    return y;
+                }
+                topScanned = y;
             }
+            return NOT_FOUND;
         }
 
-        left:
-        for (; left < minRight; left++) {
-            for (int y = height - 1; y > top; y--) {
-                if (raster.getSample(left, y, 0) != 0) {
-                    minBottom = y;
-                    break left;
+        private int scanBottom() {
+            var reader = new AlphaReader(image);
+            int toX = area.x + area.width;
+            for (int y = area.y + area.height - 1; y >= area.y; y--) {
+                if (y <= topScanned) {
+                    return NOT_FOUND;
+                }
+                if (reader.findLast(y, area.x, toX) != NOT_FOUND) {
+                    return y;
                 }
+                bottomScanned = y;
             }
+            return NOT_FOUND;
         }
 
-        bottom:
-        for (; bottom > minBottom; bottom--) {
-            for (int x = width - 1; x >= left; x--) {
-                if (raster.getSample(x, bottom, 0) != 0) {
-                    minRight = x;
-                    break bottom;
+        // the rows are scanned only up to the leftmost pixel found so far
+        private int scanLeft(int top, int bottom) {
+            var reader = new AlphaReader(image);
+            int left = area.x + area.width;
+            for (int y = top; y <= bottom && left > area.x; y++) {
+                int first = reader.findFirst(y, area.x, left);
+                if (first != NOT_FOUND) {
+                    left = first;
                 }
             }
+            return left;
         }
 
-        right:
-        for (; right > minRight; right--) {
-            for (int y = bottom; y >= top; y--) {
-                if (raster.getSample(right, y, 0) != 0) {
-                    break right;
+        // the rows are scanned only down to the rightmost pixel found so far
+        private int scanRight(int top, int bottom) {
+            var reader = new AlphaReader(image);
+            int right = area.x - 1;
+            int toX = area.x + area.width;
+            for (int y = top; y <= bottom && right < toX - 1; y++) {
+                int last = reader.findLast(y, right + 1, toX);
+                if (last != NOT_FOUND) {
+                    right = last;
                 }
             }
+            return right;
         }
-
-        return new Rectangle(left, top, right - left + 1, bottom - top + 1);
-    }
-
-    public static BufferedImage trimImage(BufferedImage image) {
-        Rectangle rect = getTrimRect(image);
-        return image.getSubimage(rect.x, rect.y, rect.width, rect.height);
     }
 }
@@ -63,6 +63,10 @@ public class ImageUtils {
     public static final double DEG_315_IN_RADIANS = Math.PI / 4;
     private static final Color CHECKERBOARD_GRAY = new Color(200, 200, 200);
 
+    // the maximum number of source pixels averaged for
+    // a thumbnail pixel along each axis, see downSizeFast
+    private static final int THUMB_OVERSAMPLING = 4;
+
     private static final GraphicsConfiguration graphicsConfig = GraphicsEnvironment
         .getLocalGraphicsEnvironment()
         .getDefaultScreenDevice()
@@ -135,6 +139,13 @@ public class ImageUtils {
     public static CompletableFuture<BufferedImage> resizeAsync(BufferedImage img,
                                                                int targetWidth,
                                                                int targetHeight) {
+        if (Resampler.canResample(img)) {
+            var filter = Resampler.Filter.forResizing(
+                img.getWidth(), img.getHeight(), targetWidth, targetHeight);
+            return CompletableFuture.supplyAsync(() ->
+                Resampler.resample(img, targetWidth, targetHeight, filter), onPool);
+        }
+
         boolean progressiveBilinear = false;
         if (targetWidth < img.getWidth() / 2
             || targetHeight < img.getHeight() / 2) {
@@ -570,13 +581,46 @@ public class ImageUtils {
             painter.paint(g, null, thumbWidth, thumbHeight);
         }
 
-        g.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
-        g.drawImage(src, 0, 0, thumbWidth, thumbHeight, null);
+        if (Resampler.canResample(src)) {
+            // Averaging the pixels avoids the aliasing of nearest neighbor
+            // sampling. The cost of the box filter depends on the source size,
+            // therefore big sources are first decimated by nearest neighbor
+            // sampling, which costs only as much as the decimated size.
+            BufferedImage decimated = decimate(src,
+                thumbWidth * THUMB_OVERSAMPLING, thumbHeight * THUMB_OVERSAMPLING);
+            BufferedImage resampled = Resampler.resample(decimated,
+                thumbWidth, thumbHeight, Resampler.Filter.BOX);
+            g.drawImage(resampled, 0, 0, null);
+        } else {
+            g.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            g.drawImage(src, 0, 0, thumbWidth, thumbHeight, null);
+        }
         g.dispose();
 
         return thumb;
     }
 
+    /**
+     * Returns a nearest neighbor sampled version of the given image, which
+     * is not larger than the given size, or the image itself if it's small
+     * enough. The returned image has the same type as the source.
+     */
+    private static BufferedImage decimate(BufferedImage src, int maxWidth, int maxHeight) {
+        int width = Math.min(src.getWidth(), maxWidth);
+        int height = Math.min(src.getHeight(), maxHeight);
+        if (width == src.getWidth() && height == src.getHeight()) {
+            return src;
+        }
+
+        var decimated = new BufferedImage(width, height, src.getType());
+        Graphics2D g = decimated.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g.drawImage(src, 0, 0, width, height, null);
+        g.dispose();
+        return decimated;
+    }
+
     public static void paintRedXOn(BufferedImage thumb) {
         int thumbWidth = thumb.getWidth();
         int thumbHeight = thumb.getHeight();
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import pixelitor.Composition;
+import pixelitor.OpenImages;
+import pixelitor.gui.View;
+import pixelitor.history.History;
+import pixelitor.layers.ImageLayer;
+import pixelitor.layers.Layer;
+import pixelitor.layers.LayerButtonLayout;
+import pixelitor.utils.debug.DebugNode;
+
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static java.lang.String.format;
+import static pixelitor.utils.Threads.calledOnEDT;
+import static pixelitor.utils.Threads.threadInfo;
+
+/**
+ * Keeps track of the memory used by the various parts of the app,
+ * and releases the cheapest caches first if the used heap
+ * approaches the configured fraction of the max heap size.
+ */
+public class MemoryGovernor {
+    public static final int DEFAULT_LIMIT_PERCENT = 75;
+
+    // after an eviction the accounted memory should
+    // be this much below the limit, to avoid thrashing
+    private static final double TARGET_RATIO = 0.9;
+
+    private static int limitPercent = AppPreferences.loadMemoryLimit();
+
+    private MemoryGovernor() {
+    }
+
+    /**
+     * The parts of the app that are accounted separately
+     */
+    public enum Category {
+        IMAGES("open images", true),
+        COMPOSITE_CACHES("composite caches", true),
+        PREVIEWS("filter previews", true),
+        THUMBNAILS("layer thumbnails", true),
+        SELECTION_MASKS("selection masks", true),
+        HISTORY("history", true),
+        OFF_HEAP_HISTORY("off-heap history", false);
+
+        private final String displayName;
+        private final boolean onHeap;
+
+        Category(String displayName, boolean onHeap) {
+            this.displayName = displayName;
+            this.onHeap = onHeap;
+        }
+
+        public boolean isOnHeap() {
+            return onHeap;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
+    /**
+     * Measures the memory used by the open images, their
+     * caches and the history. Must be called on the EDT.
+     */
+    public static Breakdown measure() {
+        assert calledOnEDT() : threadInfo();
+
+        var breakdown = new Breakdown();
+        long thumbBytes = 4L * LayerButtonLayout.getThumbSize() * LayerButtonLayout.getThumbSize();
+
+        // the images shared by duplicated layers are counted only once
+        Set<BufferedImage> countedImages = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (View view : OpenImages.getViews()) {
+            Composition comp = view.getComp();
+            comp.forEachLayer(layer -> addLayer(layer, breakdown, thumbBytes, countedImages));
+            breakdown.add(Category.COMPOSITE_CACHES, comp.getCompositeCacheMemoryUsage());
+            if (comp.hasSelection()) {
+                breakdown.add(Category.SELECTION_MASKS,
+                    comp.getSelection().getMaskMemoryUsage());
+            }
+        }
+        breakdown.add(Category.HISTORY, History.getMemoryUsage());
+
+        var tileCache = OffHeapTileCache.get();
+        breakdown.add(Category.OFF_HEAP_HISTORY,
+            tileCache.getResidentBytes() + tileCache.getSwappedBytes());
+        return breakdown;
+    }
+
+    private static void addLayer(Layer layer, Breakdown breakdown, long thumbBytes,
+                                 Set<BufferedImage> countedImages) {
+        if (layer instanceof ImageLayer) {
+            ImageLayer imageLayer = (ImageLayer) layer;
+            addImage(imageLayer.getImage(), breakdown, countedImages);
+            breakdown.add(Category.PREVIEWS, imageLayer.getPreviewMemoryUsage());
+            breakdown.add(Category.THUMBNAILS, thumbBytes);
+        }
+        if (layer.hasMask()) {
+            addImage(layer.getMask().getImage(), breakdown, countedImages);
+            breakdown.add(Category.THUMBNAILS, thumbBytes);
+        }
+    }
+
+    private static void addImage(BufferedImage image, Breakdown breakdown,
+                                 Set<BufferedImage> countedImages) {
+        if (countedImages.add(image)) {
+            breakdown.add(Category.IMAGES, MemoryInfo.getImageSize(image));
+        }
+    }
+
+    /**
+     * Checks the heap usage, and if it is above the limit, then
+     * releases memory in the following order, until the accounted
+     * memory gets below the limit:
+     * 1. the composite caches of the inactive images
+     * 2. the selection masks of the inactive images
+     * 3. the heap backups of the history, which are moved off-heap
+     *    (the copying happens in the background, outside the EDT)
+     * 4. the oldest history edits
+     * The open images and the filter previews are never touched.
+     * Must be called on the EDT.
+     */
+    public static void checkMemory() {
+        assert calledOnEDT() : threadInfo();
+
+        Runtime runtime = Runtime.getRuntime();
+        long usedHeap = runtime.totalMemory() - runtime.freeMemory();
+        long limit = getLimitBytes();
+        if (usedHeap <= limit) {
+            return;
+        }
+
+        // the used heap also contains garbage, so the decision
+        // is based on the memory that is known to be reachable
+        long accounted = measure().getHeapTotal();
+        long toRelease = accounted - (long) (limit * TARGET_RATIO);
+        if (toRelease <= 0) {
+            return;
+        }
+
+        toRelease -= releaseInactiveCaches();
+        if (toRelease <= 0) {
+            return;
+        }
+
+        toRelease -= History.moveBackupsOffHeap();
+        if (toRelease <= 0) {
+            return;
+        }
+
+        int numDiscarded = History.discardOldestEdits(toRelease);
+        if (numDiscarded > 0) {
+            Messages.showPlainInStatusBar(format(
+                "The oldest %d history steps were discarded in order to save memory.",
+                numDiscarded));
+        }
+    }
+
+    private static long releaseInactiveCaches() {
+        long released = 0;
+        Composition activeComp = OpenImages.getActiveComp();
+        for (View view : OpenImages.getViews()) {
+            Composition comp = view.getComp();
+            if (comp == activeComp) {
+                continue;
+            }
+            released += comp.getCompositeCacheMemoryUsage();
+            comp.releaseCompositeCache();
+        }
+        for (View view : OpenImages.getViews()) {
+            Composition comp = view.getComp();
+            if (comp == activeComp || !comp.hasSelection()) {
+                continue;
+            }
+            released += comp.getSelection().getMaskMemoryUsage();
+            comp.getSelection().releaseMask();
+        }
+        return released;
+    }
+
+    public static long getLimitBytes() {
+        return Runtime.getRuntime().maxMemory() / 100 * limitPercent;
+    }
+
+    public static int getLimitPercent() {
+        return limitPercent;
+    }
+
+    public static void setLimitPercent(int limitPercent) {
+        assert limitPercent > 0 && limitPercent <= 100;
+        MemoryGovernor.limitPercent = limitPercent;
+    }
+
+    public static DebugNode createDebugNode() {
+        var node = measure().createDebugNode();
+        node.addString("limit", MemoryInfo.bytesToString(getLimitBytes()));
+        node.add(OffHeapTileCache.get().createDebugNode());
+        return node;
+    }
+
+    /**
+     * The number of bytes used by each {@link Category}
+     */
+    public static class Breakdown {
+        private final Map<Category, Long> bytes = new EnumMap<>(Category.class);
+
+        private Breakdown() {
+            for (Category category : Category.values()) {
+                bytes.put(category, 0L);
+            }
+        }
+
+        private void add(Category category, long numBytes) {
+            bytes.merge(category, numBytes, Long::sum);
+        }
+
+        public long get(Category category) {
+            return bytes.get(category);
+        }
+
+        /**
+         * Returns the accounted number of bytes in the Java heap
+         */
+        public long getHeapTotal() {
+            long sum = 0;
+            for (Category category : Category.values()) {
+                if (category.isOnHeap()) {
+                    sum += bytes.get(category);
+                }
+            }
+            return sum;
+        }
+
+        /**
+         * Returns a HTML table, which can be used as a tooltip
+         */
+        public String toHTML() {
+            var sb = new StringBuilder("<html><table>");
+            for (Category category : Category.values()) {
+                sb.append(format("<tr><td>%s:</td><td align='right'>%s</td></tr>",
+                    category, MemoryInfo.bytesToString(bytes.get(category))));
+            }
+            sb.append("</table>");
+            return sb.toString();
+        }
+
+        public DebugNode createDebugNode() {
+            var node = new DebugNode("memory", this);
+            for (Category category : Category.values()) {
+                node.addString(category.toString(),
+                    MemoryInfo.bytesToString(bytes.get(category)));
+            }
+            node.addString("accounted heap total",
+                MemoryInfo.bytesToString(getHeapTotal()));
+            return node;
+        }
+    }
+}
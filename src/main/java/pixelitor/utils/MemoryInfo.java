@@ -17,6 +17,10 @@
 
 package pixelitor.utils;
 
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+
 import static java.lang.String.format;
 
 public class MemoryInfo {
@@ -61,6 +65,40 @@ public class MemoryInfo {
         return maxMemoryMB - usedMemoryMB;
     }
 
+    /**
+     * Formats the given number of bytes in a human-readable way
+     */
+    public static String bytesToString(long bytes) {
+        if (bytes < ONE_MEGABYTE) {
+            return format("%.1f kilobytes", bytes / 1024.0);
+        }
+        return format("%.1f megabytes", bytes / (double) ONE_MEGABYTE);
+    }
+
+    /**
+     * Returns the number of bytes used by the pixels of the given image
+     */
+    public static long getImageSize(BufferedImage img) {
+        if (img == null) {
+            return 0;
+        }
+        return getRasterSize(img.getRaster());
+    }
+
+    /**
+     * Returns the number of bytes used by the data buffer of the given raster,
+     * which can be shared with other rasters
+     */
+    public static long getRasterSize(Raster raster) {
+        if (raster == null) {
+            return 0;
+        }
+        DataBuffer db = raster.getDataBuffer();
+        long bits = (long) db.getSize() * db.getNumBanks()
+            * DataBuffer.getDataTypeSize(db.getDataType());
+        return bits / 8;
+    }
+
     @Override
     public String toString() {
         return format("allocated = %d, used = %d, free = %d, max = %d",
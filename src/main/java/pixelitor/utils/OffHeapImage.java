@@ -0,0 +1,295 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import pixelitor.ThreadPool;
+import pixelitor.utils.OffHeapTileCache.Tile;
+import pixelitor.utils.OffHeapTileCache.TileGroup;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.Future;
+
+import static java.awt.image.BufferedImage.*;
+
+/**
+ * The pixels of an image stored outside the Java heap,
+ * in tiles managed by an {@link OffHeapTileCache}.
+ *
+ * Images stored this way don't count towards the heap limit,
+ * don't slow down the garbage collector, and the least recently
+ * used tiles can be swapped out to the disk. Their pixels can be
+ * processed tile by tile, or copied back into a {@link BufferedImage}.
+ *
+ * The off-heap memory is released by {@link #dispose()}, or when the
+ * image becomes unreachable. A reclaimable image can also be
+ * released by the cache if it runs out of its total budget.
+ */
+public class OffHeapImage {
+    public static final int TILE_SIZE = 256;
+
+    // frees the tiles of the images that were not disposed explicitly
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final int width;
+    private final int height;
+    private final int imageType;
+    private final int bytesPerPixel;
+    private final int numTilesX;
+    private final int numTilesY;
+    private final TileGroup group;
+    private final Tile[] tiles;
+    private final OffHeapTileCache cache;
+    private final Cleaner.Cleanable cleanable;
+    private boolean disposed = false;
+
+    private OffHeapImage(int width, int height, int imageType, OffHeapTileCache cache) {
+        this.width = width;
+        this.height = height;
+        this.imageType = imageType;
+        this.cache = cache;
+        bytesPerPixel = imageType == TYPE_BYTE_GRAY ? 1 : 4;
+        numTilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        numTilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        group = new TileGroup(numTilesX * numTilesY);
+        tiles = group.getTiles();
+
+        // the cleaning action must not reference this image
+        TileGroup tileGroup = group;
+        cleanable = CLEANER.register(this, () -> cache.free(tileGroup));
+    }
+
+    /**
+     * Returns true if the pixels of the given image can be stored off-heap.
+     */
+    public static boolean canStore(BufferedImage img) {
+        int type = img.getType();
+        return type == TYPE_INT_ARGB_PRE || type == TYPE_INT_ARGB
+            || type == TYPE_INT_RGB || type == TYPE_BYTE_GRAY;
+    }
+
+    public static OffHeapImage store(BufferedImage img) {
+        return store(img, OffHeapTileCache.get());
+    }
+
+    /**
+     * Copies the pixels of the given image into off-heap tiles.
+     * The rows of tiles are copied in parallel.
+     */
+    public static OffHeapImage store(BufferedImage img, OffHeapTileCache cache) {
+        assert canStore(img) : "type = " + img.getType();
+
+        var stored = new OffHeapImage(img.getWidth(), img.getHeight(), img.getType(), cache);
+        WritableRaster raster = img.getRaster();
+        stored.forEachTileRowInParallel(tileY -> {
+            Object transferArray = stored.createTransferArray();
+            for (int tileX = 0; tileX < stored.numTilesX; tileX++) {
+                Rectangle r = stored.getTileBounds(tileX, tileY);
+                // the new tile is pinned until its data is written
+                Tile tile = cache.allocate(r.width * r.height * stored.bytesPerPixel);
+                try {
+                    raster.getDataElements(r.x, r.y, r.width, r.height, transferArray);
+                    stored.copyToTile(transferArray, cache.getPinnedData(tile), r.width * r.height);
+                } finally {
+                    cache.unpin(tile);
+                }
+                stored.tiles[tileY * stored.numTilesX + tileX] = tile;
+            }
+        });
+        return stored;
+    }
+
+    /**
+     * Allows the cache to release this image if the total size of the
+     * off-heap images exceeds its budget. After that the pixels can't
+     * be accessed any more, see {@link #isReclaimed()}.
+     */
+    public void makeReclaimable() {
+        cache.makeReclaimable(group);
+    }
+
+    /**
+     * Returns true if the cache released this reclaimable image.
+     */
+    public boolean isReclaimed() {
+        return !disposed && cache.isFreed(group);
+    }
+
+    /**
+     * Creates a new heap image with the stored pixels,
+     * or returns null if the image was reclaimed.
+     */
+    public BufferedImage toBufferedImage() {
+        checkNotDisposed();
+        if (!cache.acquire(group)) {
+            return null;
+        }
+
+        try {
+            BufferedImage img = new BufferedImage(width, height, imageType);
+            WritableRaster raster = img.getRaster();
+            forEachTileRowInParallel(tileY -> {
+                Object transferArray = createTransferArray();
+                for (int tileX = 0; tileX < numTilesX; tileX++) {
+                    Rectangle r = getTileBounds(tileX, tileY);
+                    Tile tile = tiles[tileY * numTilesX + tileX];
+                    try {
+                        copyFromTile(cache.pin(tile), transferArray, r.width * r.height);
+                    } finally {
+                        cache.unpin(tile);
+                    }
+                    raster.setDataElements(r.x, r.y, r.width, r.height, transferArray);
+                }
+            });
+            return img;
+        } finally {
+            cache.release(group);
+        }
+    }
+
+    /**
+     * Calls the given visitor for each tile, in row-major order.
+     * The buffer passed to the visitor contains the pixels of the
+     * tile in row-major order, either as native-order ints or as
+     * bytes (for grayscale images), and it is valid only during the call.
+     * Returns false if the image was reclaimed, and there are no pixels to visit.
+     */
+    public boolean forEachTile(TileVisitor visitor) {
+        checkNotDisposed();
+        if (!cache.acquire(group)) {
+            return false;
+        }
+
+        try {
+            for (int tileY = 0; tileY < numTilesY; tileY++) {
+                for (int tileX = 0; tileX < numTilesX; tileX++) {
+                    Tile tile = tiles[tileY * numTilesX + tileX];
+                    try {
+                        visitor.visit(getTileBounds(tileX, tileY),
+                            cache.pin(tile).asReadOnlyBuffer().order(ByteOrder.nativeOrder()));
+                    } finally {
+                        cache.unpin(tile);
+                    }
+                }
+            }
+            return true;
+        } finally {
+            cache.release(group);
+        }
+    }
+
+    /**
+     * Releases the off-heap memory. The image can't be used after this.
+     */
+    public void dispose() {
+        if (disposed) {
+            return;
+        }
+        disposed = true;
+        cleanable.clean();
+    }
+
+    private void forEachTileRowInParallel(TileRowTask task) {
+        Future<?>[] futures = new Future<?>[numTilesY];
+        for (int tileY = 0; tileY < numTilesY; tileY++) {
+            int ty = tileY;
+            futures[tileY] = ThreadPool.submit(() -> task.process(ty));
+        }
+        // the images can be also stored from pool threads
+        for (Future<?> future : futures) {
+            ThreadPool.runIfNotStarted(future);
+        }
+        ThreadPool.waitFor(futures, ProgressTracker.NULL_TRACKER);
+    }
+
+    private Rectangle getTileBounds(int tileX, int tileY) {
+        int x = tileX * TILE_SIZE;
+        int y = tileY * TILE_SIZE;
+        return new Rectangle(x, y,
+            Math.min(TILE_SIZE, width - x),
+            Math.min(TILE_SIZE, height - y));
+    }
+
+    private Object createTransferArray() {
+        if (bytesPerPixel == 1) {
+            return new byte[TILE_SIZE * TILE_SIZE];
+        }
+        return new int[TILE_SIZE * TILE_SIZE];
+    }
+
+    private void copyToTile(Object array, ByteBuffer tileData, int numPixels) {
+        if (bytesPerPixel == 1) {
+            tileData.put((byte[]) array, 0, numPixels);
+        } else {
+            tileData.asIntBuffer().put((int[]) array, 0, numPixels);
+        }
+    }
+
+    private void copyFromTile(ByteBuffer tileData, Object array, int numPixels) {
+        if (bytesPerPixel == 1) {
+            tileData.get((byte[]) array, 0, numPixels);
+        } else {
+            tileData.asIntBuffer().get((int[]) array, 0, numPixels);
+        }
+    }
+
+    private void checkNotDisposed() {
+        if (disposed) {
+            throw new IllegalStateException("disposed");
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the number of bytes used by the pixels,
+     * either in off-heap memory or in the swap file
+     */
+    public long getSizeInBytes() {
+        return (long) width * height * bytesPerPixel;
+    }
+
+    @Override
+    public String toString() {
+        return "OffHeapImage{" + width + "x" + height
+            + ", type=" + imageType
+            + ", disposed=" + disposed + '}';
+    }
+
+    /**
+     * Processes the pixels of a single tile
+     */
+    @FunctionalInterface
+    public interface TileVisitor {
+        void visit(Rectangle tileBounds, ByteBuffer pixels);
+    }
+
+    private interface TileRowTask {
+        void process(int tileY);
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import pixelitor.utils.debug.DebugNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Manages the off-heap memory of the {@link OffHeapImage} tiles.
+ *
+ * The tiles are kept in direct byte buffers, outside the Java heap.
+ * If the resident tiles need more memory than the budget, then the
+ * least recently used tiles are written into a swap file, and they
+ * are loaded back only when they are accessed again.
+ *
+ * If the resident and the swapped tiles together need more memory than
+ * the total budget, then the least recently used reclaimable tile groups
+ * (images that can be recreated or given up, like the undo backups) are
+ * freed, similarly to the soft references of the heap.
+ *
+ * All the methods are synchronized, but the contents of a pinned tile
+ * can be read and written without holding the lock, because pinned
+ * tiles are never evicted.
+ */
+public class OffHeapTileCache {
+    private static final OffHeapTileCache INSTANCE = new OffHeapTileCache(
+        Runtime.getRuntime().maxMemory() / 4, Runtime.getRuntime().maxMemory() * 2);
+
+    // the number of unused buffers of a given size kept for later reuse
+    private static final int MAX_POOLED_BUFFERS = 16;
+
+    private final long residentBudget;
+    private final long totalBudget;
+    private long residentBytes;
+    private long swappedBytes;
+
+    // the resident tiles in access order: the eldest is evicted first
+    private final LinkedHashMap<Tile, Tile> residentTiles =
+        new LinkedHashMap<>(64, 0.75f, true);
+
+    // the groups that can be freed in access order: the eldest is freed first
+    private final LinkedHashMap<TileGroup, TileGroup> reclaimableGroups =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    // the direct buffers are expensive to allocate and they are
+    // released only by the garbage collector, so they are reused
+    private final Map<Integer, Deque<ByteBuffer>> bufferPool = new HashMap<>();
+
+    private FileChannel swapChannel;
+    private long swapFileEnd;
+    private final Map<Integer, Deque<Long>> freeSwapSlots = new HashMap<>();
+
+    OffHeapTileCache(long residentBudget) {
+        this(residentBudget, Long.MAX_VALUE);
+    }
+
+    OffHeapTileCache(long residentBudget, long totalBudget) {
+        this.residentBudget = residentBudget;
+        this.totalBudget = totalBudget;
+    }
+
+    public static OffHeapTileCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Allocates a new pinned tile with the given number of bytes.
+     */
+    synchronized Tile allocate(int numBytes) {
+        Tile tile = new Tile(numBytes);
+        tile.buffer = obtainBuffer(numBytes);
+        tile.pinCount = 1;
+        makeResident(tile);
+        reclaimIfNecessary();
+        return tile;
+    }
+
+    /**
+     * Returns the data of the given tile, loading it from
+     * the swap file if necessary. The tile stays in memory
+     * until {@link #unpin(Tile)} is called.
+     */
+    synchronized ByteBuffer pin(Tile tile) {
+        if (tile.freed) {
+            throw new IllegalStateException("freed tile");
+        }
+        // pinned before it becomes resident, so that
+        // it is not evicted again immediately
+        tile.pinCount++;
+        if (tile.buffer == null) {
+            loadFromSwap(tile);
+            makeResident(tile);
+        } else {
+            residentTiles.get(tile); // updates the access order
+        }
+        return tile.buffer.duplicate().order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Returns the data of a tile which is already pinned.
+     */
+    synchronized ByteBuffer getPinnedData(Tile tile) {
+        assert tile.pinCount > 0;
+        return tile.buffer.duplicate().order(ByteOrder.nativeOrder());
+    }
+
+    synchronized void unpin(Tile tile) {
+        assert tile.pinCount > 0;
+        tile.pinCount--;
+        if (tile.pinCount == 0) {
+            evictIfNecessary();
+        }
+    }
+
+    /**
+     * Releases the memory and the swap space used by the given tile.
+     */
+    synchronized void free(Tile tile) {
+        if (tile.freed) {
+            return;
+        }
+        tile.freed = true;
+        if (tile.buffer != null) {
+            residentTiles.remove(tile);
+            residentBytes -= tile.numBytes;
+            recycleBuffer(tile.buffer);
+            tile.buffer = null;
+        }
+        if (tile.swapOffset >= 0) {
+            freeSwapSlots.computeIfAbsent(tile.numBytes, k -> new ArrayDeque<>())
+                .push(tile.swapOffset);
+            swappedBytes -= tile.numBytes;
+            tile.swapOffset = -1;
+        }
+    }
+
+    /**
+     * Allows the cache to free the given group if the total budget is exceeded
+     * while none of its tiles are in use. The group can also be freed explicitly.
+     */
+    synchronized void makeReclaimable(TileGroup group) {
+        if (group.freed) {
+            return;
+        }
+        reclaimableGroups.put(group, group);
+        reclaimIfNecessary();
+    }
+
+    /**
+     * Prevents the given group from being reclaimed until
+     * {@link #release(TileGroup)} is called. Returns false
+     * if the group was already freed.
+     */
+    synchronized boolean acquire(TileGroup group) {
+        if (group.freed) {
+            return false;
+        }
+        group.useCount++;
+        reclaimableGroups.get(group); // updates the access order
+        return true;
+    }
+
+    synchronized void release(TileGroup group) {
+        assert group.useCount > 0;
+        group.useCount--;
+        if (group.useCount == 0) {
+            reclaimIfNecessary();
+        }
+    }
+
+    /**
+     * Releases the memory and the swap space used by all the tiles of the group.
+     */
+    synchronized void free(TileGroup group) {
+        reclaimableGroups.remove(group);
+        freeTiles(group);
+    }
+
+    synchronized boolean isFreed(TileGroup group) {
+        return group.freed;
+    }
+
+    private void freeTiles(TileGroup group) {
+        if (group.freed) {
+            return;
+        }
+        group.freed = true;
+        for (Tile tile : group.tiles) {
+            if (tile != null) {
+                free(tile);
+            }
+        }
+    }
+
+    private void reclaimIfNecessary() {
+        Iterator<TileGroup> it = reclaimableGroups.keySet().iterator();
+        while (residentBytes + swappedBytes > totalBudget && it.hasNext()) {
+            TileGroup group = it.next();
+            if (group.useCount > 0) {
+                continue;
+            }
+            it.remove();
+            freeTiles(group);
+        }
+    }
+
+    private void makeResident(Tile tile) {
+        residentTiles.put(tile, tile);
+        residentBytes += tile.numBytes;
+        evictIfNecessary();
+    }
+
+    private void evictIfNecessary() {
+        if (residentBytes <= residentBudget) {
+            return;
+        }
+        Iterator<Tile> it = residentTiles.keySet().iterator();
+        while (residentBytes > residentBudget && it.hasNext()) {
+            Tile tile = it.next();
+            if (tile.pinCount > 0) {
+                continue;
+            }
+            writeToSwap(tile);
+            it.remove();
+            residentBytes -= tile.numBytes;
+            recycleBuffer(tile.buffer);
+            tile.buffer = null;
+        }
+    }
+
+    private void writeToSwap(Tile tile) {
+        try {
+            FileChannel channel = getSwapChannel();
+            Deque<Long> freeSlots = freeSwapSlots.get(tile.numBytes);
+            long offset;
+            if (freeSlots != null && !freeSlots.isEmpty()) {
+                offset = freeSlots.pop();
+            } else {
+                offset = swapFileEnd;
+                swapFileEnd += tile.numBytes;
+            }
+            ByteBuffer src = tile.buffer.duplicate();
+            src.clear();
+            long pos = offset;
+            while (src.hasRemaining()) {
+                pos += channel.write(src, pos);
+            }
+            tile.swapOffset = offset;
+            swappedBytes += tile.numBytes;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void loadFromSwap(Tile tile) {
+        assert tile.swapOffset >= 0;
+        ByteBuffer buffer = obtainBuffer(tile.numBytes);
+        try {
+            long pos = tile.swapOffset;
+            while (buffer.hasRemaining()) {
+                int read = swapChannel.read(buffer, pos);
+                if (read < 0) {
+                    throw new IOException("unexpected end of the swap file");
+                }
+                pos += read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+        tile.buffer = buffer;
+
+        // the swap slot can be reused, the tile will be
+        // written again if it is evicted again
+        freeSwapSlots.computeIfAbsent(tile.numBytes, k -> new ArrayDeque<>())
+            .push(tile.swapOffset);
+        swappedBytes -= tile.numBytes;
+        tile.swapOffset = -1;
+    }
+
+    private FileChannel getSwapChannel() throws IOException {
+        if (swapChannel == null) {
+            File file = File.createTempFile("pixelitor_tiles", ".swap");
+            file.deleteOnExit();
+            swapChannel = new RandomAccessFile(file, "rw").getChannel();
+        }
+        return swapChannel;
+    }
+
+    private ByteBuffer obtainBuffer(int numBytes) {
+        Deque<ByteBuffer> pooled = bufferPool.get(numBytes);
+        if (pooled != null && !pooled.isEmpty()) {
+            ByteBuffer buffer = pooled.pop();
+            buffer.clear();
+            return buffer;
+        }
+        return ByteBuffer.allocateDirect(numBytes).order(ByteOrder.nativeOrder());
+    }
+
+    private void recycleBuffer(ByteBuffer buffer) {
+        Deque<ByteBuffer> pooled = bufferPool.computeIfAbsent(
+            buffer.capacity(), k -> new ArrayDeque<>());
+        if (pooled.size() < MAX_POOLED_BUFFERS) {
+            pooled.push(buffer);
+        }
+    }
+
+    /**
+     * Returns the number of bytes held in off-heap memory by live tiles
+     */
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    /**
+     * Returns the number of bytes written to the swap file by live tiles
+     */
+    public synchronized long getSwappedBytes() {
+        return swappedBytes;
+    }
+
+    public synchronized DebugNode createDebugNode() {
+        var node = new DebugNode("off-heap tiles", this);
+
+        node.addString("resident budget", MemoryInfo.bytesToString(residentBudget));
+        node.addString("resident", MemoryInfo.bytesToString(residentBytes));
+        node.addString("swapped", MemoryInfo.bytesToString(swappedBytes));
+        node.addInt("resident tiles", residentTiles.size());
+        node.addInt("reclaimable groups", reclaimableGroups.size());
+
+        return node;
+    }
+
+    /**
+     * The tiles of an image, which are freed together
+     */
+    static class TileGroup {
+        private final Tile[] tiles;
+        private int useCount;
+        private boolean freed;
+
+        TileGroup(int numTiles) {
+            tiles = new Tile[numTiles];
+        }
+
+        Tile[] getTiles() {
+            return tiles;
+        }
+    }
+
+    /**
+     * A block of off-heap memory, which is either resident
+     * (in a direct buffer) or swapped out to the disk.
+     */
+    static class Tile {
+        private final int numBytes;
+        private ByteBuffer buffer;
+        private long swapOffset = -1;
+        private int pinCount;
+        private boolean freed;
+
+        private Tile(int numBytes) {
+            this.numBytes = numBytes;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+/**
+ * The hottest per-pixel loops, which have both a scalar and
+ * a SIMD implementation. The SIMD implementation uses the incubating
+ * Vector API, and it is selected at runtime only if the
+ * jdk.incubator.vector module is available (Pixelitor is started
+ * with "--add-modules jdk.incubator.vector"), and it's not disabled
+ * with -Dpixelitor.simd=false. Both implementations give exactly
+ * the same results.
+ */
+public abstract class PixelKernels {
+    private static final String VECTOR_CLASS_NAME = "pixelitor.utils.VectorPixelKernels";
+    private static final String VECTOR_MODULE_NAME = "jdk.incubator.vector";
+
+    private static final PixelKernels SCALAR = new ScalarPixelKernels();
+    private static final PixelKernels SELECTED = select();
+
+    PixelKernels() {
+    }
+
+    /**
+     * Returns the best available implementation
+     */
+    public static PixelKernels get() {
+        return SELECTED;
+    }
+
+    public static PixelKernels getScalar() {
+        return SCALAR;
+    }
+
+    /**
+     * Returns the SIMD implementation, or null if it's not available
+     */
+    public static PixelKernels getVectorized() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE_NAME).isEmpty()) {
+            return null;
+        }
+        try {
+            // loaded by reflection, because it isn't compiled
+            // at all if the JDK has no Vector API
+            Class<?> vectorClass = Class.forName(VECTOR_CLASS_NAME);
+            var kernels = (PixelKernels) vectorClass.getDeclaredConstructor().newInstance();
+            return kernels.isUsable() ? kernels : null;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    private static PixelKernels select() {
+        if ("false".equals(System.getProperty("pixelitor.simd"))) {
+            return SCALAR;
+        }
+        PixelKernels vectorized = getVectorized();
+        return vectorized != null ? vectorized : SCALAR;
+    }
+
+    public static boolean isVectorized() {
+        return SELECTED != SCALAR;
+    }
+
+    /**
+     * Returns false if this implementation can't be used on the current hardware
+     */
+    boolean isUsable() {
+        return true;
+    }
+
+    public abstract String getName();
+
+    /**
+     * Premultiplies the alpha of the given ARGB pixels in place.
+     */
+    public abstract void premultiply(int[] p, int offset, int length);
+
+    /**
+     * Reverses the alpha premultiplication of the given ARGB pixels in place.
+     */
+    public abstract void unpremultiply(int[] p, int offset, int length);
+
+    /**
+     * Convolves the row y of the given ARGB pixels with the given
+     * one-dimensional kernel, and writes the results transposed
+     * into the column y of the output. Used by the Gaussian blur.
+     */
+    public abstract void convolveAndTransposeLine(float[] matrix,
+                                                  int[] inPixels, int[] outPixels,
+                                                  int width, int height,
+                                                  boolean alpha, boolean premultiply,
+                                                  boolean unpremultiply,
+                                                  int edgeAction, int y);
+
+    /**
+     * The multiply blending mode on unpacked RGBA samples,
+     * four ints per pixel. The result is written into dst.
+     */
+    public abstract void multiplyBlend(int[] src, int[] dst, float alpha);
+}
@@ -0,0 +1,435 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import pixelitor.ThreadPool;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.concurrent.Future;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+
+/**
+ * Resizes images with separable filter kernels: the image is first
+ * resampled horizontally, and then vertically. The kernel weights are
+ * calculated only once for each destination column and row, and both
+ * passes run in parallel bands on the {@link ThreadPool}.
+ *
+ * The resampling happens with premultiplied alpha, so that
+ * the colors of transparent pixels don't bleed into their neighbors.
+ */
+public class Resampler {
+    // the kernel weights are stored as fixed point numbers with this precision
+    private static final int WEIGHT_BITS = 14;
+    private static final int WEIGHT_ONE = 1 << WEIGHT_BITS;
+    private static final int WEIGHT_HALF = 1 << (WEIGHT_BITS - 1);
+
+    // smaller images are resampled in the calling thread
+    private static final int MIN_PIXELS_PER_BAND = 64 * 1024;
+
+    public enum Filter {
+        /**
+         * Averages the covered source pixels when downscaling,
+         * and works like nearest neighbor when enlarging
+         */
+        BOX("Box", 0.5) {
+            @Override
+            double weight(double x) {
+                return x >= -0.5 && x < 0.5 ? 1.0 : 0.0;
+            }
+        },
+        /**
+         * The Mitchell-Netravali cubic filter (B = C = 1/3), a good
+         * compromise between sharpness and ringing, mainly for enlarging
+         */
+        MITCHELL("Mitchell", 2.0) {
+            private static final double B = 1.0 / 3.0;
+            private static final double C = 1.0 / 3.0;
+
+            @Override
+            double weight(double x) {
+                x = Math.abs(x);
+                double xx = x * x;
+                if (x < 1.0) {
+                    return ((12 - 9 * B - 6 * C) * xx * x
+                        + (-18 + 12 * B + 6 * C) * xx
+                        + (6 - 2 * B)) / 6.0;
+                }
+                if (x < 2.0) {
+                    return ((-B - 6 * C) * xx * x
+                        + (6 * B + 30 * C) * xx
+                        + (-12 * B - 48 * C) * x
+                        + (8 * B + 24 * C)) / 6.0;
+                }
+                return 0.0;
+            }
+        },
+        /**
+         * A windowed sinc filter with three lobes, which
+         * gives the sharpest results, mainly for downscaling
+         */
+        LANCZOS3("Lanczos3", 3.0) {
+            @Override
+            double weight(double x) {
+                if (x == 0.0) {
+                    return 1.0;
+                }
+                if (x <= -3.0 || x >= 3.0) {
+                    return 0.0;
+                }
+                double px = Math.PI * x;
+                return 3.0 * Math.sin(px) * Math.sin(px / 3.0) / (px * px);
+            }
+        };
+
+        private final String displayName;
+        private final double support;
+
+        Filter(String displayName, double support) {
+            this.displayName = displayName;
+            this.support = support;
+        }
+
+        abstract double weight(double x);
+
+        /**
+         * Returns the recommended filter for resizing an image
+         * from the given size to the given target size.
+         */
+        public static Filter forResizing(int srcWidth, int srcHeight,
+                                         int targetWidth, int targetHeight) {
+            if (targetWidth < srcWidth || targetHeight < srcHeight) {
+                return LANCZOS3;
+            }
+            return MITCHELL;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
+    private Resampler() {
+    }
+
+    /**
+     * Returns true if the given image can be resampled by this class.
+     * Subimages are also supported.
+     */
+    public static boolean canResample(BufferedImage img) {
+        int type = img.getType();
+        return type == TYPE_INT_ARGB
+            || type == TYPE_INT_ARGB_PRE
+            || type == TYPE_INT_RGB
+            || type == TYPE_BYTE_GRAY;
+    }
+
+    /**
+     * Returns a new image with the given size and with the same
+     * color model as the source image, which is not modified.
+     */
+    public static BufferedImage resample(BufferedImage src,
+                                         int targetWidth, int targetHeight,
+                                         Filter filter) {
+        assert src != null;
+        if (!canResample(src)) {
+            throw new IllegalArgumentException("type = " + src.getType());
+        }
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            throw new IllegalArgumentException(
+                "targetWidth = " + targetWidth + ", targetHeight = " + targetHeight);
+        }
+
+        int srcWidth = src.getWidth();
+        int srcHeight = src.getHeight();
+        int type = src.getType();
+
+        AxisWeights horWeights = new AxisWeights(srcWidth, targetWidth, filter);
+        AxisWeights verWeights = new AxisWeights(srcHeight, targetHeight, filter);
+
+        // the horizontally resampled, but still premultiplied pixels
+        int[] tmp = new int[srcHeight * targetWidth];
+
+        Raster srcRaster = src.getRaster();
+        runInBands(srcHeight, targetWidth, (fromRow, toRow) -> {
+            int[] srcLine = new int[srcWidth];
+            byte[] grayLine = type == TYPE_BYTE_GRAY ? new byte[srcWidth] : null;
+            for (int y = fromRow; y < toRow; y++) {
+                readLine(srcRaster, y, type, srcLine, grayLine);
+                resampleLine(srcLine, 0, 1, horWeights,
+                    tmp, y * targetWidth, 1, targetWidth);
+            }
+        });
+
+        ColorModel cm = src.getColorModel();
+        BufferedImage dst = new BufferedImage(cm,
+            cm.createCompatibleWritableRaster(targetWidth, targetHeight),
+            cm.isAlphaPremultiplied(), null);
+        WritableRaster dstRaster = dst.getRaster();
+        runInBands(targetHeight, targetWidth, (fromRow, toRow) -> {
+            int[] dstLine = new int[targetWidth];
+            byte[] grayLine = type == TYPE_BYTE_GRAY ? new byte[targetWidth] : null;
+            int[][] acc = new int[4][targetWidth];
+            for (int y = fromRow; y < toRow; y++) {
+                resampleColumns(tmp, targetWidth, verWeights, y, acc, dstLine);
+                writeLine(dstRaster, y, type, dstLine, grayLine);
+            }
+        });
+
+        return dst;
+    }
+
+    /**
+     * Reads a line of the source image as premultiplied ARGB pixels.
+     * Gray values are read into all four channels.
+     */
+    private static void readLine(Raster raster, int y, int type,
+                                 int[] line, byte[] grayLine) {
+        int width = line.length;
+        if (type == TYPE_BYTE_GRAY) {
+            raster.getDataElements(0, y, width, 1, grayLine);
+            for (int x = 0; x < width; x++) {
+                line[x] = (grayLine[x] & 0xFF) * 0x01_01_01_01;
+            }
+            return;
+        }
+
+        raster.getDataElements(0, y, width, 1, line);
+        if (type == TYPE_INT_RGB) {
+            for (int x = 0; x < width; x++) {
+                line[x] |= 0xFF_00_00_00;
+            }
+        } else if (type == TYPE_INT_ARGB) {
+            PixelKernels.get().premultiply(line, 0, width);
+        }
+    }
+
+    private static void writeLine(WritableRaster raster, int y, int type,
+                                  int[] line, byte[] grayLine) {
+        int width = line.length;
+        if (type == TYPE_BYTE_GRAY) {
+            for (int x = 0; x < width; x++) {
+                grayLine[x] = (byte) line[x];
+            }
+            raster.setDataElements(0, y, width, 1, grayLine);
+            return;
+        }
+
+        if (type == TYPE_INT_ARGB) {
+            PixelKernels.get().unpremultiply(line, 0, width);
+        }
+        raster.setDataElements(0, y, width, 1, line);
+    }
+
+    /**
+     * Resamples a line of premultiplied pixels. The source and destination
+     * lines can be rows or columns, depending on the offsets and steps.
+     */
+    private static void resampleLine(int[] src, int srcOffset, int srcStep,
+                                     AxisWeights aw,
+                                     int[] dst, int dstOffset, int dstStep,
+                                     int dstLength) {
+        int[] weights = aw.weights;
+        int stride = aw.stride;
+        for (int i = 0; i < dstLength; i++) {
+            int a = WEIGHT_HALF;
+            int r = WEIGHT_HALF;
+            int g = WEIGHT_HALF;
+            int b = WEIGHT_HALF;
+
+            int srcIndex = srcOffset + aw.starts[i] * srcStep;
+            int weightIndex = i * stride;
+            int count = aw.counts[i];
+            for (int k = 0; k < count; k++) {
+                int w = weights[weightIndex + k];
+                int rgb = src[srcIndex];
+                a += (rgb >>> 24) * w;
+                r += ((rgb >>> 16) & 0xFF) * w;
+                g += ((rgb >>> 8) & 0xFF) * w;
+                b += (rgb & 0xFF) * w;
+                srcIndex += srcStep;
+            }
+
+            dst[dstOffset + i * dstStep] = pack(a, r, g, b);
+        }
+    }
+
+    /**
+     * Calculates a destination row from the rows of the horizontally
+     * resampled image. The source rows are processed one after the other,
+     * which is much more cache-friendly than processing columns.
+     */
+    private static void resampleColumns(int[] tmp, int width,
+                                        AxisWeights aw, int dstY,
+                                        int[][] acc, int[] dstLine) {
+        int[] accA = acc[0];
+        int[] accR = acc[1];
+        int[] accG = acc[2];
+        int[] accB = acc[3];
+        for (int[] channel : acc) {
+            Arrays.fill(channel, WEIGHT_HALF);
+        }
+
+        int weightIndex = dstY * aw.stride;
+        int start = aw.starts[dstY];
+        int count = aw.counts[dstY];
+        for (int k = 0; k < count; k++) {
+            int w = aw.weights[weightIndex + k];
+            int rowOffset = (start + k) * width;
+            for (int x = 0; x < width; x++) {
+                int rgb = tmp[rowOffset + x];
+                accA[x] += (rgb >>> 24) * w;
+                accR[x] += ((rgb >>> 16) & 0xFF) * w;
+                accG[x] += ((rgb >>> 8) & 0xFF) * w;
+                accB[x] += (rgb & 0xFF) * w;
+            }
+        }
+
+        for (int x = 0; x < width; x++) {
+            dstLine[x] = pack(accA[x], accR[x], accG[x], accB[x]);
+        }
+    }
+
+    /**
+     * Packs the given fixed point channel sums into a premultiplied pixel.
+     * Kernels with negative lobes can overshoot, so the alpha is clamped
+     * to 0..255, and the colors are clamped to 0..alpha.
+     */
+    private static int pack(int a, int r, int g, int b) {
+        a = clamp(a >> WEIGHT_BITS, 255);
+        r = clamp(r >> WEIGHT_BITS, a);
+        g = clamp(g >> WEIGHT_BITS, a);
+        b = clamp(b >> WEIGHT_BITS, a);
+        return a << 24 | r << 16 | g << 8 | b;
+    }
+
+    private static int clamp(int value, int max) {
+        if (value < 0) {
+            return 0;
+        }
+        return Math.min(value, max);
+    }
+
+    /**
+     * Splits the given number of rows into bands, runs them on the
+     * thread pool, and waits for all of them. Since this can be called
+     * from a pool thread, the bands that no pool thread started yet
+     * are executed in the calling thread.
+     */
+    private static void runInBands(int numRows, int rowLength, BandTask task) {
+        long numPixels = (long) numRows * rowLength;
+        int numBands = (int) Math.min(ThreadPool.getNumCores() * 2L,
+            numPixels / MIN_PIXELS_PER_BAND);
+        numBands = Math.min(numBands, numRows);
+        if (numBands <= 1) {
+            task.run(0, numRows);
+            return;
+        }
+
+        Future<?>[] futures = new Future<?>[numBands];
+        for (int i = 0; i < numBands; i++) {
+            int fromRow = (int) ((long) numRows * i / numBands);
+            int toRow = (int) ((long) numRows * (i + 1) / numBands);
+            futures[i] = ThreadPool.submit(() -> task.run(fromRow, toRow));
+        }
+
+        for (Future<?> future : futures) {
+            ThreadPool.getResult(future);
+        }
+    }
+
+    private interface BandTask {
+        void run(int fromRow, int toRow);
+    }
+
+    /**
+     * The precalculated kernel weights for one axis: for each destination
+     * pixel the index of the first contributing source pixel, the number
+     * of contributing pixels, and their weights as fixed point numbers.
+     */
+    private static class AxisWeights {
+        private final int[] starts;
+        private final int[] counts;
+        private final int[] weights;
+        private final int stride;
+
+        AxisWeights(int srcSize, int dstSize, Filter filter) {
+            double scale = dstSize / (double) srcSize;
+
+            // when downscaling, the kernel is stretched so that
+            // every source pixel contributes to the result
+            double filterScale = Math.max(1.0, 1.0 / scale);
+            double support = filter.support * filterScale;
+
+            stride = (int) Math.ceil(2 * support) + 2;
+            starts = new int[dstSize];
+            counts = new int[dstSize];
+            weights = new int[dstSize * stride];
+
+            double[] exactWeights = new double[stride];
+            for (int i = 0; i < dstSize; i++) {
+                // the center of the destination pixel in source coordinates
+                double center = (i + 0.5) / scale;
+                int left = Math.max(0, (int) Math.floor(center - support));
+                int right = Math.min(srcSize, (int) Math.ceil(center + support) + 1);
+                int count = Math.min(right - left, stride);
+
+                double sum = 0;
+                for (int k = 0; k < count; k++) {
+                    double dist = (left + k + 0.5 - center) / filterScale;
+                    exactWeights[k] = filter.weight(dist);
+                    sum += exactWeights[k];
+                }
+
+                if (sum == 0) {
+                    // can't happen with the current filters,
+                    // but fall back to the nearest neighbor
+                    int nearest = Math.min(srcSize - 1, (int) center);
+                    starts[i] = nearest;
+                    counts[i] = 1;
+                    weights[i * stride] = WEIGHT_ONE;
+                    continue;
+                }
+
+                // normalize, and make sure that the fixed point weights add up to one
+                int fixedSum = 0;
+                int maxIndex = 0;
+                for (int k = 0; k < count; k++) {
+                    int w = (int) Math.round(exactWeights[k] / sum * WEIGHT_ONE);
+                    weights[i * stride + k] = w;
+                    fixedSum += w;
+                    if (w > weights[i * stride + maxIndex]) {
+                        maxIndex = k;
+                    }
+                }
+                weights[i * stride + maxIndex] += WEIGHT_ONE - fixedSum;
+
+                starts[i] = left;
+                counts[i] = count;
+            }
+        }
+    }
+}
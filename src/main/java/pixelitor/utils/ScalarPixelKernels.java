@@ -0,0 +1,192 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import com.jhlabs.image.PixelUtils;
+
+import static com.jhlabs.image.ConvolveFilter.CLAMP_EDGES;
+import static com.jhlabs.image.ConvolveFilter.WRAP_EDGES;
+
+/**
+ * The scalar implementation of the {@link PixelKernels}.
+ * This is the original code of the optimized loops.
+ */
+class ScalarPixelKernels extends PixelKernels {
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+
+    @Override
+    public void premultiply(int[] p, int offset, int length) {
+        length += offset;
+        for (int i = offset; i < length; i++) {
+            int rgb = p[i];
+            int a = (rgb >> 24) & 0xff;
+            int r = (rgb >> 16) & 0xff;
+            int g = (rgb >> 8) & 0xff;
+            int b = rgb & 0xff;
+            float f = a * (1.0f / 255.0f);
+            r = (int) (r * f);
+            g = (int) (g * f);
+            b = (int) (b * f);
+            p[i] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+    }
+
+    @Override
+    public void unpremultiply(int[] p, int offset, int length) {
+        length += offset;
+        for (int i = offset; i < length; i++) {
+            int rgb = p[i];
+            int a = (rgb >> 24) & 0xff;
+            int r = (rgb >> 16) & 0xff;
+            int g = (rgb >> 8) & 0xff;
+            int b = rgb & 0xff;
+            if (a != 0 && a != 255) {
+                float f = 255.0f / a;
+                r = (int) (r * f);
+                g = (int) (g * f);
+                b = (int) (b * f);
+                if (r > 255) {
+                    r = 255;
+                }
+                if (g > 255) {
+                    g = 255;
+                }
+                if (b > 255) {
+                    b = 255;
+                }
+                p[i] = (a << 24) | (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+
+    @Override
+    public void convolveAndTransposeLine(float[] matrix, int[] inPixels, int[] outPixels,
+                                         int width, int height, boolean alpha,
+                                         boolean premultiply, boolean unpremultiply,
+                                         int edgeAction, int y) {
+        convolveAndTransposePixels(matrix, inPixels, outPixels, width, height,
+            alpha, premultiply, unpremultiply, edgeAction, y, 0, width);
+    }
+
+    /**
+     * Convolves the pixels between startX (inclusive) and endX (exclusive)
+     * in the row y. Also used by the vectorized implementation at the edges.
+     */
+    static void convolveAndTransposePixels(float[] matrix, int[] inPixels, int[] outPixels,
+                                           int width, int height, boolean alpha,
+                                           boolean premultiply, boolean unpremultiply,
+                                           int edgeAction, int y, int startX, int endX) {
+        int cols2 = matrix.length / 2;
+        int index = y + startX * height;
+        int ioffset = y * width;
+        for (int x = startX; x < endX; x++) {
+            float r = 0, g = 0, b = 0, a = 0;
+            int moffset = cols2;
+            for (int col = -cols2; col <= cols2; col++) {
+                float f = matrix[moffset + col];
+
+                if (f != 0) {
+                    int ix = x + col;
+                    if (ix < 0) {
+                        if (edgeAction == CLAMP_EDGES) {
+                            ix = 0;
+                        } else if (edgeAction == WRAP_EDGES) {
+                            ix = (x + width) % width;
+                        }
+                    } else if (ix >= width) {
+                        if (edgeAction == CLAMP_EDGES) {
+                            ix = width - 1;
+                        } else if (edgeAction == WRAP_EDGES) {
+                            ix = (x + width) % width;
+                        }
+                    }
+                    int rgb = inPixels[ioffset + ix];
+                    int pa = (rgb >> 24) & 0xff;
+                    int pr = (rgb >> 16) & 0xff;
+                    int pg = (rgb >> 8) & 0xff;
+                    int pb = rgb & 0xff;
+                    if (premultiply) {
+                        float a255 = pa * (1.0f / 255.0f);
+                        pr = (int) (pr * a255);
+                        pg = (int) (pg * a255);
+                        pb = (int) (pb * a255);
+                    }
+                    a += f * pa;
+                    r += f * pr;
+                    g += f * pg;
+                    b += f * pb;
+                }
+            }
+            if (unpremultiply && a != 0 && a != 255) {
+                float f = 255.0f / a;
+                r *= f;
+                g *= f;
+                b *= f;
+            }
+            int ia = alpha ? PixelUtils.clamp((int) (a + 0.5)) : 0xff;
+
+            int ir = PixelUtils.clamp((int) (r + 0.5));
+            int ig = PixelUtils.clamp((int) (g + 0.5));
+            int ib = PixelUtils.clamp((int) (b + 0.5));
+            outPixels[index] = (ia << 24) | (ir << 16) | (ig << 8) | ib;
+            index += height;
+        }
+    }
+
+    @Override
+    public void multiplyBlend(int[] src, int[] dst, float alpha) {
+        multiplyBlend(src, dst, alpha, 0);
+    }
+
+    /**
+     * Blends the samples starting at the given index.
+     * Also used by the vectorized implementation at the end.
+     */
+    static void multiplyBlend(int[] src, int[] dst, float alpha, int start) {
+        int w = src.length;
+
+        for (int i = start; i < w; i += 4) {
+            int sr = src[i];
+            int dir = dst[i];
+            int sg = src[i + 1];
+            int dig = dst[i + 1];
+            int sb = src[i + 2];
+            int dib = dst[i + 2];
+            int sa = src[i + 3];
+            int dia = dst[i + 3];
+
+            int t = dir * sr + 0x80;
+            int dor = ((t >> 8) + t) >> 8;
+            t = dig * sg + 0x80;
+            int dog = ((t >> 8) + t) >> 8;
+            t = dib * sb + 0x80;
+            int dob = ((t >> 8) + t) >> 8;
+
+            float a = alpha * sa / 255.0f;
+            float ac = 1 - a;
+
+            dst[i] = (int) (a * dor + ac * dir);
+            dst[i + 1] = (int) (a * dog + ac * dig);
+            dst[i + 2] = (int) (a * dob + ac * dib);
+            dst[i + 3] = (int) (sa * alpha + dia * ac);
+        }
+    }
+}
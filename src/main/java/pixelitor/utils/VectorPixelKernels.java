@@ -0,0 +1,344 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+import static jdk.incubator.vector.VectorOperators.ASHR;
+import static jdk.incubator.vector.VectorOperators.EQ;
+import static jdk.incubator.vector.VectorOperators.GE;
+import static jdk.incubator.vector.VectorOperators.GT;
+import static jdk.incubator.vector.VectorOperators.I2F;
+import static jdk.incubator.vector.VectorOperators.LSHL;
+import static jdk.incubator.vector.VectorOperators.LSHR;
+import static jdk.incubator.vector.VectorOperators.NE;
+
+/**
+ * The SIMD implementation of the {@link PixelKernels}, processing
+ * as many packed ARGB pixels (or unpacked samples) at once as the
+ * preferred vector size of the hardware allows. The floating point
+ * operations are done in the same order as in the scalar code,
+ * so that the results are exactly the same.
+ *
+ * This class is compiled only with JDK 16+ (see the "simd" Maven
+ * profile), and it is loaded only by reflection from {@link PixelKernels}.
+ */
+class VectorPixelKernels extends PixelKernels {
+    private static final VectorSpecies<Integer> IS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FS = FloatVector.SPECIES_PREFERRED;
+    private static final int LANES = IS.length();
+
+    private static final float MAGIC = 8_388_608.0f; // 2^23
+    private static final int MAGIC_BITS = Float.floatToIntBits(MAGIC);
+
+    // every lane gets the alpha of its own pixel in the unpacked RGBA samples
+    private static final VectorShuffle<Integer> ALPHA_SHUFFLE =
+        VectorShuffle.fromOp(IS, i -> (i | 3) % LANES);
+    private static final VectorMask<Integer> ALPHA_LANES =
+        IntVector.fromArray(IS, createLaneIndices(), 0).and(3).compare(EQ, 3);
+
+    private static final ThreadLocal<LineBuffers> lineBuffers =
+        ThreadLocal.withInitial(LineBuffers::new);
+
+    VectorPixelKernels() {
+    }
+
+    @Override
+    boolean isUsable() {
+        // the unpacked samples need whole pixels in a vector
+        return LANES >= 4 && LANES % 4 == 0 && FS.length() == LANES;
+    }
+
+    @Override
+    public String getName() {
+        return "SIMD (" + LANES + " lanes)";
+    }
+
+    @Override
+    public void premultiply(int[] p, int offset, int length) {
+        int end = offset + length;
+        int vectorEnd = offset + IS.loopBound(length);
+        int i = offset;
+        for (; i < vectorEnd; i += LANES) {
+            IntVector rgb = IntVector.fromArray(IS, p, i);
+            IntVector a = rgb.lanewise(LSHR, 24);
+            FloatVector f = toFloat(a).mul(1.0f / 255.0f);
+            IntVector r = toInt(toFloat(rgb.lanewise(ASHR, 16).and(0xFF)).mul(f));
+            IntVector g = toInt(toFloat(rgb.lanewise(ASHR, 8).and(0xFF)).mul(f));
+            IntVector b = toInt(toFloat(rgb.and(0xFF)).mul(f));
+            packWithAlpha(rgb, r, g, b).intoArray(p, i);
+        }
+        if (i < end) {
+            getScalar().premultiply(p, i, end - i);
+        }
+    }
+
+    @Override
+    public void unpremultiply(int[] p, int offset, int length) {
+        int end = offset + length;
+        int vectorEnd = offset + IS.loopBound(length);
+        int i = offset;
+        for (; i < vectorEnd; i += LANES) {
+            IntVector rgb = IntVector.fromArray(IS, p, i);
+            IntVector a = rgb.lanewise(LSHR, 24);
+            VectorMask<Integer> changed = a.compare(NE, 0).and(a.compare(NE, 255));
+            if (!changed.anyTrue()) {
+                continue;
+            }
+            FloatVector f = FloatVector.broadcast(FS, 255.0f).div(toFloat(a));
+            IntVector r = toInt(toFloat(rgb.lanewise(ASHR, 16).and(0xFF)).mul(f)).min(255);
+            IntVector g = toInt(toFloat(rgb.lanewise(ASHR, 8).and(0xFF)).mul(f)).min(255);
+            IntVector b = toInt(toFloat(rgb.and(0xFF)).mul(f)).min(255);
+            rgb.blend(packWithAlpha(rgb, r, g, b), changed).intoArray(p, i);
+        }
+        if (i < end) {
+            getScalar().unpremultiply(p, i, end - i);
+        }
+    }
+
+    @Override
+    public void convolveAndTransposeLine(float[] matrix, int[] inPixels, int[] outPixels,
+                                         int width, int height, boolean alpha,
+                                         boolean premultiply, boolean unpremultiply,
+                                         int edgeAction, int y) {
+        int cols2 = matrix.length / 2;
+
+        // only the pixels whose kernel doesn't reach
+        // beyond the edges are processed in bulk
+        int vectorStart = Math.min(cols2, width);
+        int vectorEnd = vectorStart + IS.loopBound(Math.max(0, width - 2 * cols2));
+
+        ScalarPixelKernels.convolveAndTransposePixels(matrix, inPixels, outPixels,
+            width, height, alpha, premultiply, unpremultiply, edgeAction, y, 0, vectorStart);
+
+        if (vectorEnd > vectorStart) {
+            // The work is split into small methods, because
+            // the JIT compiler can't inline all vector operations
+            // into a single large method, and then they become slow.
+            // The channels are unpacked only once, not for every
+            // kernel position as in the scalar code.
+            LineBuffers buffers = lineBuffers.get().ensureCapacity(width);
+            unpack(inPixels, y * width, width, premultiply, buffers);
+            convolveChannel(matrix, buffers.a, buffers.convolvedA, vectorStart, vectorEnd);
+            convolveChannel(matrix, buffers.r, buffers.convolvedR, vectorStart, vectorEnd);
+            convolveChannel(matrix, buffers.g, buffers.convolvedG, vectorStart, vectorEnd);
+            convolveChannel(matrix, buffers.b, buffers.convolvedB, vectorStart, vectorEnd);
+            packAndTranspose(buffers, outPixels, height, alpha, unpremultiply, y, vectorStart, vectorEnd);
+        }
+
+        ScalarPixelKernels.convolveAndTransposePixels(matrix, inPixels, outPixels,
+            width, height, alpha, premultiply, unpremultiply, edgeAction, y, vectorEnd, width);
+    }
+
+    // unpacks a line of ARGB pixels into separate float channels
+    private static void unpack(int[] pixels, int offset, int width,
+                               boolean premultiply, LineBuffers buffers) {
+        int vectorEnd = IS.loopBound(width);
+        int x = 0;
+        for (; x < vectorEnd; x += LANES) {
+            IntVector rgb = IntVector.fromArray(IS, pixels, offset + x);
+            FloatVector a = toFloat(rgb.lanewise(LSHR, 24));
+            FloatVector r = toFloat(rgb.lanewise(ASHR, 16).and(0xFF));
+            FloatVector g = toFloat(rgb.lanewise(ASHR, 8).and(0xFF));
+            FloatVector b = toFloat(rgb.and(0xFF));
+            if (premultiply) {
+                FloatVector a255 = a.mul(1.0f / 255.0f);
+                r = toFloat(toInt(r.mul(a255)));
+                g = toFloat(toInt(g.mul(a255)));
+                b = toFloat(toInt(b.mul(a255)));
+            }
+            a.intoArray(buffers.a, x);
+            r.intoArray(buffers.r, x);
+            g.intoArray(buffers.g, x);
+            b.intoArray(buffers.b, x);
+        }
+        for (; x < width; x++) {
+            int rgb = pixels[offset + x];
+            int pa = (rgb >> 24) & 0xff;
+            int pr = (rgb >> 16) & 0xff;
+            int pg = (rgb >> 8) & 0xff;
+            int pb = rgb & 0xff;
+            if (premultiply) {
+                float a255 = pa * (1.0f / 255.0f);
+                pr = (int) (pr * a255);
+                pg = (int) (pg * a255);
+                pb = (int) (pb * a255);
+            }
+            buffers.a[x] = pa;
+            buffers.r[x] = pr;
+            buffers.g[x] = pg;
+            buffers.b[x] = pb;
+        }
+    }
+
+    private static void convolveChannel(float[] matrix, float[] in, float[] out,
+                                        int startX, int endX) {
+        int cols2 = matrix.length / 2;
+        for (int x = startX; x < endX; x += LANES) {
+            FloatVector sum = FloatVector.zero(FS);
+            for (int col = -cols2; col <= cols2; col++) {
+                float f = matrix[cols2 + col];
+                if (f != 0) {
+                    sum = sum.add(FloatVector.fromArray(FS, in, x + col).mul(f));
+                }
+            }
+            sum.intoArray(out, x);
+        }
+    }
+
+    private static void packAndTranspose(LineBuffers buffers, int[] outPixels, int height,
+                                         boolean alpha, boolean unpremultiply,
+                                         int y, int startX, int endX) {
+        int[] offsets = buffers.transposeOffsets;
+        for (int i = 0; i < LANES; i++) {
+            offsets[i] = i * height;
+        }
+        IntVector opaque = IntVector.broadcast(IS, 0xFF);
+        for (int x = startX; x < endX; x += LANES) {
+            FloatVector a = FloatVector.fromArray(FS, buffers.convolvedA, x);
+            FloatVector r = FloatVector.fromArray(FS, buffers.convolvedR, x);
+            FloatVector g = FloatVector.fromArray(FS, buffers.convolvedG, x);
+            FloatVector b = FloatVector.fromArray(FS, buffers.convolvedB, x);
+            if (unpremultiply) {
+                VectorMask<Float> changed = a.compare(NE, 0).and(a.compare(NE, 255));
+                FloatVector f = FloatVector.broadcast(FS, 255.0f).div(a);
+                r = r.mul(f, changed);
+                g = g.mul(f, changed);
+                b = b.mul(f, changed);
+            }
+            IntVector ia = alpha ? roundAndClamp(a) : opaque;
+            IntVector packed = pack(ia, roundAndClamp(r), roundAndClamp(g), roundAndClamp(b));
+            packed.intoArray(outPixels, y + x * height, offsets, 0);
+        }
+    }
+
+    @Override
+    public void multiplyBlend(int[] src, int[] dst, float alpha) {
+        int vectorEnd = IS.loopBound(src.length);
+        FloatVector one = FloatVector.broadcast(FS, 1.0f);
+        int i = 0;
+        for (; i < vectorEnd; i += LANES) {
+            IntVector s = IntVector.fromArray(IS, src, i);
+            IntVector d = IntVector.fromArray(IS, dst, i);
+
+            IntVector t = d.mul(s).add(0x80);
+            FloatVector multiplied = toFloat(t.lanewise(ASHR, 8).add(t).lanewise(ASHR, 8));
+
+            FloatVector sa = toFloat(s.rearrange(ALPHA_SHUFFLE));
+            FloatVector df = toFloat(d);
+            FloatVector a = sa.mul(alpha).div(255.0f);
+            FloatVector ac = one.sub(a);
+
+            IntVector colors = toInt(a.mul(multiplied).add(ac.mul(df)));
+            IntVector alphas = toInt(sa.mul(alpha).add(df.mul(ac)));
+            colors.blend(alphas, ALPHA_LANES).intoArray(dst, i);
+        }
+        ScalarPixelKernels.multiplyBlend(src, dst, alpha, i);
+    }
+
+    /**
+     * The same as PixelUtils.clamp((int) (v + 0.5)), but
+     * without converting to double: the fractional part is
+     * compared separately, which is exact in float.
+     */
+    private static IntVector roundAndClamp(FloatVector v) {
+        // clamping first doesn't change the result, but
+        // keeps the values in the range supported by toInt
+        v = v.max(0.0f).min(256.0f);
+        IntVector truncated = toInt(v);
+        FloatVector fraction = v.sub(toFloat(truncated));
+        VectorMask<Integer> roundUp = fraction.compare(GE, 0.5f).cast(IS);
+        return truncated.add(1, roundUp).min(255);
+    }
+
+    private static IntVector pack(IntVector a, IntVector r, IntVector g, IntVector b) {
+        return a.lanewise(LSHL, 24)
+            .or(r.lanewise(LSHL, 16))
+            .or(g.lanewise(LSHL, 8))
+            .or(b);
+    }
+
+    // keeps the alpha of the original pixels
+    private static IntVector packWithAlpha(IntVector orig, IntVector r, IntVector g, IntVector b) {
+        return orig.and(0xFF_00_00_00)
+            .or(r.lanewise(LSHL, 16))
+            .or(g.lanewise(LSHL, 8))
+            .or(b);
+    }
+
+    private static FloatVector toFloat(IntVector v) {
+        return (FloatVector) v.convert(I2F, 0);
+    }
+
+    /**
+     * The same as the (int) cast for values between 0 and 2^22.
+     * The F2I conversion of the Vector API is not intrinsified on
+     * every platform, therefore the truncation is done by adding 2^23,
+     * which moves the integer part into the low mantissa bits,
+     * and then correcting the cases where this rounded up.
+     */
+    private static IntVector toInt(FloatVector v) {
+        FloatVector shifted = v.add(MAGIC);
+        VectorMask<Float> roundedUp = shifted.sub(MAGIC).compare(GT, v);
+        return shifted.sub(1.0f, roundedUp).reinterpretAsInts().sub(MAGIC_BITS);
+    }
+
+    private static int[] createLaneIndices() {
+        int[] indices = new int[LANES];
+        for (int i = 0; i < LANES; i++) {
+            indices[i] = i;
+        }
+        return indices;
+    }
+
+    /**
+     * The working storage of the line convolution, reused
+     * between the lines processed by the same thread.
+     */
+    private static class LineBuffers {
+        private float[] a = new float[0];
+        private float[] r = a;
+        private float[] g = a;
+        private float[] b = a;
+        private float[] convolvedA = a;
+        private float[] convolvedR = a;
+        private float[] convolvedG = a;
+        private float[] convolvedB = a;
+
+        // the offsets of the transposed output pixels, relative to the first one
+        private final int[] transposeOffsets = new int[LANES];
+
+        LineBuffers ensureCapacity(int width) {
+            if (a.length < width) {
+                a = new float[width];
+                r = new float[width];
+                g = new float[width];
+                b = new float[width];
+                convolvedA = new float[width];
+                convolvedR = new float[width];
+                convolvedG = new float[width];
+                convolvedB = new float[width];
+            }
+            return this;
+        }
+    }
+}
@@ -22,6 +22,7 @@ import pixelitor.Pixelitor;
 import pixelitor.gui.PixelitorWindow;
 import pixelitor.history.History;
 import pixelitor.tools.Tools;
+import pixelitor.utils.MemoryGovernor;
 
 /**
  * A debugging node for the application as a whole, the root of the debug tree
@@ -34,6 +35,7 @@ public class AppNode extends DebugNode {
         add(DebugNodes.createSystemNode());
         add(Tools.getCurrent().getDebugNode());
         add(History.getDebugNode());
+        add(MemoryGovernor.createDebugNode());
 
         addImageNodes();
     }
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdesktop.swingx.painter.effects;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("AbstractAreaEffect tests")
+class AbstractAreaEffectTest {
+    private static final int SIZE = 100;
+    private static final Shape SHAPE = new Ellipse2D.Double(25, 30, 50, 40);
+
+    @Test
+    void glowIsSimilarToStrokedGlow() {
+        var effect = new GlowPathEffect();
+        effect.setEffectWidth(12);
+        effect.setBrushSteps(5);
+
+        BufferedImage actual = render(effect, SHAPE);
+        BufferedImage expected = renderWithStrokes(effect, SHAPE);
+
+        long sumDiff = 0;
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                int diff = Math.abs(alphaAt(actual, x, y) - alphaAt(expected, x, y));
+                assertThat(diff).as("alpha diff at %d, %d", x, y).isLessThan(64);
+                sumDiff += diff;
+            }
+        }
+        assertThat(sumDiff / (double) (SIZE * SIZE)).isLessThan(2.0);
+    }
+
+    @Test
+    void glowFadesWithDistance() {
+        var effect = new GlowPathEffect();
+        effect.setEffectWidth(10);
+
+        BufferedImage image = render(effect, new Rectangle(20, 20, 40, 40));
+
+        assertThat(alphaAt(image, 40, 40)).isZero(); // masked inside
+        assertThat(alphaAt(image, 60, 40)).isGreaterThan(alphaAt(image, 61, 40));
+        assertThat(alphaAt(image, 61, 40)).isGreaterThan(alphaAt(image, 63, 40));
+        assertThat(alphaAt(image, 63, 40)).isPositive();
+        assertThat(alphaAt(image, 66, 40)).isZero();
+    }
+
+    @Test
+    void settingChangesAreNotHiddenByTheCache() {
+        var effect = new NeonBorderEffect(Color.RED, Color.WHITE, 10, 1.0f);
+        int first = render(effect, SHAPE).getRGB(76, 50);
+
+        // the same shape and settings give the same result
+        assertThat(render(effect, SHAPE).getRGB(76, 50)).isEqualTo(first);
+
+        effect.setEdgeColor(Color.BLUE);
+        effect.setCenterColor(Color.BLUE);
+        assertThat(render(effect, SHAPE).getRGB(76, 50)).isEqualTo(Color.BLUE.getRGB());
+
+        // a moved shape
+        Shape moved = new Ellipse2D.Double(35, 30, 50, 40);
+        assertThat(alphaAt(render(effect, moved), 76, 50)).isZero();
+    }
+
+    @Test
+    void movedShapesReuseTheEffectAtTheNewPosition() {
+        var effect = new GlowPathEffect();
+        effect.setEffectWidth(10);
+
+        // the first rendering is cached, and reused for the moved shape
+        render(effect, new Ellipse2D.Double(15, 20, 50, 40));
+        BufferedImage moved = render(effect, new Ellipse2D.Double(25, 30, 50, 40));
+
+        var fresh = new GlowPathEffect();
+        fresh.setEffectWidth(10);
+        BufferedImage expected = render(fresh, new Ellipse2D.Double(25, 30, 50, 40));
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                assertThat(moved.getRGB(x, y)).as("rgb at %d, %d", x, y)
+                    .isEqualTo(expected.getRGB(x, y));
+            }
+        }
+    }
+
+    private static BufferedImage render(AbstractAreaEffect effect, Shape shape) {
+        var image = new BufferedImage(SIZE, SIZE, TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        effect.apply(g, shape, SIZE, SIZE);
+        g.dispose();
+        return image;
+    }
+
+    // the stroke-based glow that was used before the distance-based one
+    private static BufferedImage renderWithStrokes(AbstractAreaEffect effect, Shape shape) {
+        var image = new BufferedImage(SIZE, SIZE, TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setPaint(effect.getBrushColor());
+        int steps = effect.getBrushSteps();
+        g.setComposite(AlphaComposite.getInstance(AlphaComposite.DST_OVER, 1.0f / steps));
+        for (int i = 0; i < steps; i++) {
+            float brushWidth = (float) (i * effect.getEffectWidth() / steps);
+            g.setStroke(new BasicStroke(brushWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+            g.draw(shape);
+        }
+        g.setComposite(AlphaComposite.Clear);
+        g.fill(new Area(shape));
+        g.dispose();
+        return image;
+    }
+
+    private static int alphaAt(BufferedImage image, int x, int y) {
+        return image.getRGB(x, y) >>> 24;
+    }
+}
@@ -21,11 +21,15 @@ import org.junit.jupiter.api.*;
 import pixelitor.Composition.LayerAdder;
 import pixelitor.compactions.Crop;
 import pixelitor.history.History;
+import pixelitor.layers.ImageLayer;
 import pixelitor.layers.Layer;
 import pixelitor.tools.Tools;
+import pixelitor.tools.util.PPoint;
+import pixelitor.utils.ImageUtils;
 
 import java.awt.Rectangle;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 
 import static pixelitor.Composition.LayerAdder.Position.ABOVE_ACTIVE;
 import static pixelitor.Composition.LayerAdder.Position.BELLOW_ACTIVE;
@@ -295,6 +299,61 @@ class CompositionTest {
             .thirdLayerIsActive();
     }
 
+    @Test
+    void copySharesImagesCopyOnWrite() {
+        var layer = (ImageLayer) comp.getLayer(0);
+        var mask = layer.getMask();
+        var maskImage = mask.getImage();
+
+        Composition copy = comp.copy(true, false);
+        var layerCopy = (ImageLayer) copy.getLayer(0);
+        var maskCopy = layerCopy.getMask();
+
+        assertThat(layerCopy.getImage()).isSameAs(layer.getImage());
+        assertThat(maskCopy.getImage()).isSameAs(maskImage);
+        assertThat(maskCopy.isImageShared()).isTrue();
+
+        // simulate a composition action that replaces only the layer image
+        var newImage = ImageUtils.copyImage(layer.getImage());
+        layerCopy.setImage(newImage);
+        assertThat(layerCopy.isImageShared()).isFalse();
+        // the replaced image could be in the history, so it's still protected
+        assertThat(layer.isImageShared()).isTrue();
+
+        // the first write makes a copy with the same pixels
+        maskCopy.copyImageIfShared();
+        assertThat(maskCopy.getImage())
+            .isNotSameAs(maskImage)
+            .isNotNull();
+        var maskRaster = maskImage.getRaster();
+        assertThat(maskCopy.getImage().getRaster().getDataElements(0, 0,
+            maskRaster.getWidth(), maskRaster.getHeight(), null))
+            .isEqualTo(maskRaster.getDataElements(0, 0,
+                maskRaster.getWidth(), maskRaster.getHeight(), null));
+
+        // the original mask is no longer shared, so it doesn't need a copy
+        mask.copyImageIfShared();
+        assertThat(mask.getImage()).isSameAs(maskImage);
+    }
+
+    @Test
+    void duplicatedLayerIsIndependentAfterWrite() {
+        var layer = (ImageLayer) comp.getLayer(0);
+        int origPixel = layer.getImage().getRGB(0, 0);
+
+        comp.setActiveLayer(layer);
+        comp.duplicateActiveLayer();
+        var duplicate = (ImageLayer) comp.getActiveLayer();
+        assertThat(duplicate).isNotSameAs(layer);
+        assertThat(duplicate.getImage()).isSameAs(layer.getImage());
+
+        duplicate.copyImageIfShared();
+        duplicate.getImage().setRGB(0, 0, ~origPixel);
+
+        assertThat(duplicate.getImage()).isNotSameAs(layer.getImage());
+        assertThat(layer.getImage().getRGB(0, 0)).isEqualTo(origPixel);
+    }
+
     @Test
     void flattenImage() {
         assertThat(comp)
@@ -840,4 +899,25 @@ class CompositionTest {
         // There is no undo at this level
         History.assertNumEditsIs(0);
     }
-}
\ No newline at end of file
+
+    @Test
+    void repaintRegionRecalculatesOnlyTheDirtyArea() {
+        BufferedImage composite = comp.getCompositeImage();
+
+        var layer = (ImageLayer) comp.getActiveLayer();
+        layer.getImage().setRGB(3, 3, 0xFF_FF_00_00);
+        layer.getImage().setRGB(15, 8, 0xFF_00_00_FF);
+
+        var view = comp.getView();
+        comp.repaintRegion(PPoint.lazyFromIm(3, 3, view),
+            PPoint.lazyFromIm(4, 3, view), 0.5);
+
+        // the cached image is updated in place, and only in the repainted region
+        assertThat(comp.getCompositeImage()).isSameAs(composite);
+        assertThat(composite.getRGB(3, 3)).isEqualTo(0xFF_FF_00_00);
+        assertThat(composite.getRGB(15, 8)).isNotEqualTo(0xFF_00_00_FF);
+
+        comp.imageChanged();
+        assertThat(comp.getCompositeImage().getRGB(15, 8)).isEqualTo(0xFF_00_00_FF);
+    }
+}
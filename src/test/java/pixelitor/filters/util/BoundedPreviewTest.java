@@ -0,0 +1,117 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pixelitor.Composition;
+import pixelitor.filters.Filter;
+import pixelitor.layers.Drawable;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@DisplayName("BoundedPreview tests")
+class BoundedPreviewTest {
+    private static final int SIZE = 2000;
+    private static final int ORIG = 0xFF_10_20_30;
+    private static final int FILTERED = 0xFF_FF_00_00;
+
+    private Drawable dr;
+    private BufferedImage src;
+    private BoundedPreview preview;
+
+    @BeforeEach
+    void beforeEachTest() {
+        dr = mock(Drawable.class);
+        // without a view, the visible part is determined only by the drawable
+        when(dr.getComp()).thenReturn(mock(Composition.class));
+
+        src = new BufferedImage(SIZE, SIZE, TYPE_INT_ARGB);
+        int[] row = new int[SIZE];
+        Arrays.fill(row, ORIG);
+        for (int y = 0; y < SIZE; y++) {
+            src.setRGB(0, y, SIZE, 1, row, 0, SIZE);
+        }
+        preview = new BoundedPreview(new FillFilter(), dr);
+    }
+
+    @Test
+    void filtersOnlyTheVisiblePart() {
+        when(dr.getVisibleFilterSourceRegion()).thenReturn(new Rectangle(100, 200, 300, 400));
+
+        BufferedImage dest = preview.transform(src);
+
+        assertThat(preview.isPartial()).isTrue();
+        assertThat(dest.getRGB(100, 200)).isEqualTo(FILTERED);
+        assertThat(dest.getRGB(399, 599)).isEqualTo(FILTERED);
+        assertThat(dest.getRGB(99, 200)).isEqualTo(ORIG);
+        assertThat(dest.getRGB(400, 599)).isEqualTo(ORIG);
+        assertThat(src.getRGB(100, 200)).isEqualTo(ORIG);
+    }
+
+    @Test
+    void previousPartIsRestored() {
+        when(dr.getVisibleFilterSourceRegion()).thenReturn(new Rectangle(0, 0, 100, 100));
+        BufferedImage first = preview.transform(src);
+
+        when(dr.getVisibleFilterSourceRegion()).thenReturn(new Rectangle(500, 500, 100, 100));
+        BufferedImage second = preview.transform(src);
+
+        assertThat(second).isSameAs(first);
+        assertThat(second.getRGB(50, 50)).isEqualTo(ORIG);
+        assertThat(second.getRGB(550, 550)).isEqualTo(FILTERED);
+    }
+
+    @Test
+    void largeVisiblePartIsFilteredEntirely() {
+        when(dr.getVisibleFilterSourceRegion()).thenReturn(new Rectangle(0, 0, SIZE, SIZE));
+
+        BufferedImage dest = preview.transform(src);
+
+        assertThat(preview.isPartial()).isFalse();
+        assertThat(dest.getRGB(0, 0)).isEqualTo(FILTERED);
+        assertThat(dest.getRGB(SIZE - 1, SIZE - 1)).isEqualTo(FILTERED);
+    }
+
+    /**
+     * A point filter which fills the image with a color
+     */
+    private static class FillFilter extends Filter {
+        FillFilter() {
+            setPointFilter();
+        }
+
+        @Override
+        protected BufferedImage transform(BufferedImage src, BufferedImage dest) {
+            for (int y = 0; y < dest.getHeight(); y++) {
+                for (int x = 0; x < dest.getWidth(); x++) {
+                    dest.setRGB(x, y, FILTERED);
+                }
+            }
+            return dest;
+        }
+    }
+}
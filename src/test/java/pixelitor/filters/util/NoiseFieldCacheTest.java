@@ -0,0 +1,82 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pixelitor.utils.ProgressTracker;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("NoiseFieldCache tests")
+class NoiseFieldCacheTest {
+    private static final int WIDTH = 30;
+    private static final int HEIGHT = 20;
+
+    private final AtomicInteger numGeneratedLines = new AtomicInteger();
+
+    @BeforeEach
+    void beforeEachTest() {
+        NoiseFieldCache.clear();
+        numGeneratedLines.set(0);
+    }
+
+    @Test
+    void generatesAllLines() {
+        float[] field = get(new NoiseFieldCache.Key("test", WIDTH, HEIGHT, 1.0f));
+
+        assertThat(field).hasSize(WIDTH * HEIGHT);
+        assertThat(numGeneratedLines).hasValue(HEIGHT);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                assertThat(field[y * WIDTH + x]).isEqualTo(x + 1000.0f * y);
+            }
+        }
+    }
+
+    @Test
+    void reusesFieldForEqualKeys() {
+        float[] first = get(new NoiseFieldCache.Key("test", WIDTH, HEIGHT, 1.0f, 3, true));
+        float[] second = get(new NoiseFieldCache.Key("test", WIDTH, HEIGHT, 1.0f, 3, true));
+
+        assertThat(second).isSameAs(first);
+        assertThat(numGeneratedLines).hasValue(HEIGHT);
+    }
+
+    @Test
+    void regeneratesFieldForDifferentKeys() {
+        float[] first = get(new NoiseFieldCache.Key("test", WIDTH, HEIGHT, 1.0f));
+
+        assertThat(get(new NoiseFieldCache.Key("test", WIDTH, HEIGHT, 2.0f))).isNotSameAs(first);
+        assertThat(get(new NoiseFieldCache.Key("other", WIDTH, HEIGHT, 1.0f))).isNotSameAs(first);
+        assertThat(get(new NoiseFieldCache.Key("test", WIDTH + 1, HEIGHT, 1.0f))).hasSize((WIDTH + 1) * HEIGHT);
+        assertThat(numGeneratedLines).hasValue(4 * HEIGHT);
+    }
+
+    private float[] get(NoiseFieldCache.Key key) {
+        return NoiseFieldCache.get(key, (y, line) -> {
+            numGeneratedLines.incrementAndGet();
+            for (int x = 0; x < line.length; x++) {
+                line[x] = x + 1000.0f * y;
+            }
+        }, ProgressTracker.NULL_TRACKER);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.gui.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.EventQueue;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("ThumbCache tests")
+class ThumbCacheTest {
+    private static final int THUMB_SIZE = 100;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void thumbsArePersistent() throws Exception {
+        File cacheDir = tempDir.resolve("cache").toFile();
+        File imageFile = createImageFile("a.png");
+
+        var cache = new ThumbCache(cacheDir, 1_000_000, 10, 1);
+        ThumbInfo created = requestThumb(cache, imageFile);
+        assertThat(created.isSuccess()).isTrue();
+        assertThat(created.getThumb().getWidth()).isLessThanOrEqualTo(THUMB_SIZE);
+        assertThat(cache.getIfInMemory(imageFile, THUMB_SIZE, THUMB_SIZE)).isSameAs(created);
+        assertThat(cache.getDiskBytes()).isPositive();
+
+        // a new cache (as after a restart) finds the thumb on the disk
+        var newCache = new ThumbCache(cacheDir, 1_000_000, 10, 1);
+        ThumbInfo loaded = requestThumb(newCache, imageFile);
+        assertThat(loaded.isSuccess()).isTrue();
+        assertThat(loaded.getOrigWidth()).isEqualTo(400);
+        assertThat(loaded.getOrigHeight()).isEqualTo(300);
+        assertThat(newCache.getDiskBytes()).isZero(); // nothing was written
+    }
+
+    @Test
+    void diskCacheIsSizeBounded() throws Exception {
+        File cacheDir = tempDir.resolve("cache").toFile();
+
+        // measure the size of a single thumb file
+        var measuringCache = new ThumbCache(tempDir.resolve("measuring").toFile(), 1_000_000, 10, 1);
+        requestThumb(measuringCache, createImageFile("m.png"));
+        long thumbBytes = measuringCache.getDiskBytes();
+
+        var cache = new ThumbCache(cacheDir, thumbBytes * 5 / 2, 10, 1);
+        for (int i = 0; i < 3; i++) {
+            requestThumb(cache, createImageFile(i + ".png"));
+        }
+
+        assertThat(cacheDir.listFiles()).hasSize(2);
+        assertThat(cache.getDiskBytes()).isEqualTo(2 * thumbBytes);
+    }
+
+    @Test
+    void prefetchedThumbsAreInMemory() throws Exception {
+        var cache = new ThumbCache(tempDir.resolve("cache").toFile(), 1_000_000, 10, 2);
+        List<File> files = List.of(createImageFile("a.png"), createImageFile("b.png"));
+
+        cache.prefetch(files, THUMB_SIZE, THUMB_SIZE);
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline && !allInMemory(cache, files)) {
+            Thread.sleep(20);
+        }
+        assertThat(allInMemory(cache, files)).isTrue();
+    }
+
+    @Test
+    void failuresAreNotWrittenToDisk() throws Exception {
+        File cacheDir = tempDir.resolve("cache").toFile();
+        File notAnImage = tempDir.resolve("bad.png").toFile();
+        Files.writeString(notAnImage.toPath(), "not an image");
+
+        var cache = new ThumbCache(cacheDir, 1_000_000, 10, 1);
+        ThumbInfo thumbInfo = requestThumb(cache, notAnImage);
+
+        assertThat(thumbInfo.isSuccess()).isFalse();
+        assertThat(cache.getDiskBytes()).isZero();
+    }
+
+    @Test
+    void memoryCacheIsSizeBounded() throws Exception {
+        var cache = new ThumbCache(tempDir.resolve("cache").toFile(), 1_000_000, 2, 1);
+        File a = createImageFile("a.png");
+        File b = createImageFile("b.png");
+        File c = createImageFile("c.png");
+
+        requestThumb(cache, a);
+        requestThumb(cache, b);
+        cache.getIfInMemory(a, THUMB_SIZE, THUMB_SIZE); // makes b the least recently used
+        requestThumb(cache, c);
+
+        assertThat(cache.getIfInMemory(a, THUMB_SIZE, THUMB_SIZE)).isNotNull();
+        assertThat(cache.getIfInMemory(b, THUMB_SIZE, THUMB_SIZE)).isNull();
+        assertThat(cache.getIfInMemory(c, THUMB_SIZE, THUMB_SIZE)).isNotNull();
+    }
+
+    @Test
+    void modifiedFilesGetNewThumbs() throws Exception {
+        var cache = new ThumbCache(tempDir.resolve("cache").toFile(), 1_000_000, 10, 1);
+        File file = createImageFile("a.png");
+        ThumbInfo first = requestThumb(cache, file);
+
+        ImageIO.write(new BufferedImage(600, 200, TYPE_INT_RGB), "PNG", file);
+        file.setLastModified(file.lastModified() + 10_000);
+        ThumbInfo second = requestThumb(cache, file);
+
+        assertThat(second).isNotSameAs(first);
+        assertThat(second.getOrigWidth()).isEqualTo(600);
+        assertThat(cache.getIfInMemory(file, THUMB_SIZE, THUMB_SIZE)).isSameAs(second);
+    }
+
+    @Test
+    void backgroundTasksRunOutsideTheEDT() throws Exception {
+        var cache = new ThumbCache(tempDir.resolve("cache").toFile(), 1_000_000, 10, 1);
+        var result = new CompletableFuture<Boolean>();
+
+        cache.runInBackground(EventQueue::isDispatchThread,
+            onEDT -> result.complete(!onEDT && EventQueue.isDispatchThread()));
+
+        assertThat(result.get(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private static boolean allInMemory(ThumbCache cache, List<File> files) {
+        return files.stream()
+            .allMatch(f -> cache.getIfInMemory(f, THUMB_SIZE, THUMB_SIZE) != null);
+    }
+
+    private static ThumbInfo requestThumb(ThumbCache cache, File file) throws Exception {
+        var future = new CompletableFuture<ThumbInfo>();
+        cache.request(file, THUMB_SIZE, THUMB_SIZE, null, future::complete);
+        return future.get(10, TimeUnit.SECONDS);
+    }
+
+    private File createImageFile(String name) throws IOException {
+        // large enough to be subsampled
+        var img = new BufferedImage(400, 300, TYPE_INT_RGB);
+        for (int y = 0; y < 300; y++) {
+            for (int x = 0; x < 400; x++) {
+                img.setRGB(x, y, x * 0x100 + y);
+            }
+        }
+        File file = tempDir.resolve(name).toFile();
+        ImageIO.write(img, "PNG", file);
+        return file;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.history;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pixelitor.Composition;
+import pixelitor.TestHelper;
+import pixelitor.layers.Drawable;
+import pixelitor.utils.MemoryInfo;
+
+import java.awt.Dimension;
+import java.awt.EventQueue;
+import java.awt.image.BufferedImage;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@DisplayName("ImageEdit tests")
+class ImageEditTest {
+    @BeforeAll
+    static void beforeAllTests() {
+        TestHelper.setUnitTestingMode();
+    }
+
+    @Test
+    void offHeapBackupIsMaterializedOnce() {
+        // large enough to be stored off-heap
+        var backup = new BufferedImage(2500, 2000, TYPE_INT_ARGB);
+        backup.setRGB(10, 20, 0xFF_12_34_56);
+
+        Drawable dr = mock(Drawable.class);
+        when(dr.getImage()).thenReturn(new BufferedImage(2500, 2000, TYPE_INT_ARGB));
+        var edit = new ImageEdit("test", mock(Composition.class), dr, backup, true, false);
+
+        assertThat(edit.getBackupSize()).isEqualTo(new Dimension(2500, 2000));
+
+        BufferedImage first = edit.getBackupImage();
+        assertThat(first).isNotSameAs(backup);
+        assertThat(first.getRGB(10, 20)).isEqualTo(0xFF_12_34_56);
+        assertThat(edit.getBackupImage()).isSameAs(first);
+
+        edit.die();
+        assertThat(edit.getBackupImage()).isNull();
+    }
+
+    @Test
+    void heapBackupsAreMovedOffHeapInTheBackground() throws Exception {
+        var backup = new BufferedImage(100, 100, TYPE_INT_ARGB);
+        backup.setRGB(1, 2, 0xFF_12_34_56);
+
+        Drawable dr = mock(Drawable.class);
+        when(dr.getImage()).thenReturn(new BufferedImage(100, 100, TYPE_INT_ARGB));
+        var edit = new ImageEdit("test", mock(Composition.class), dr, backup, true, false);
+
+        // the second call happens on the EDT before the move can finish
+        long[] released = new long[2];
+        EventQueue.invokeAndWait(() -> {
+            released[0] = edit.moveBackupsOffHeap();
+            released[1] = edit.moveBackupsOffHeap();
+        });
+        assertThat(released[0]).isEqualTo(MemoryInfo.getImageSize(backup));
+        // the move is not started again while it's running
+        assertThat(released[1]).isEqualTo(released[0]);
+
+        BufferedImage moved = waitForMovedBackup(edit, backup);
+        assertThat(moved.getRGB(1, 2)).isEqualTo(0xFF_12_34_56);
+        assertThat(edit.getMemoryUsage()).isZero();
+
+        edit.die();
+    }
+
+    // the off-heap backup is set on the EDT
+    private static BufferedImage waitForMovedBackup(ImageEdit edit, BufferedImage heapBackup) throws Exception {
+        BufferedImage[] current = new BufferedImage[1];
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            EventQueue.invokeAndWait(() -> current[0] = edit.getBackupImage());
+            if (current[0] != heapBackup) {
+                return current[0];
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("the backup was not moved");
+    }
+}
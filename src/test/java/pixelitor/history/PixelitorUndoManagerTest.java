@@ -147,6 +147,50 @@ class PixelitorUndoManagerTest {
         verify(edit2, never()).redo();
     }
 
+    @Test
+    void discardingOldestEditsForMemory() {
+        when(edit0.getMemoryUsage()).thenReturn(100L);
+        when(edit1.getMemoryUsage()).thenReturn(100L);
+        when(edit2.getMemoryUsage()).thenReturn(100L);
+        assertThat(undoManager.getMemoryUsage()).isEqualTo(300L);
+
+        int numDiscarded = undoManager.discardOldestEdits(150);
+
+        assertThat(numDiscarded).isEqualTo(2);
+        verify(edit0, times(1)).die();
+        verify(edit1, times(1)).die();
+        verify(edit2, never()).die();
+        assertThat(undoManager.getSize()).isEqualTo(1);
+        assertThat(undoManager.getSelectedIndex()).isEqualTo(0);
+        assertThat(undoManager.getLastEdit()).isSameAs(edit2);
+
+        // the current edit is always kept
+        assertThat(undoManager.discardOldestEdits(1000)).isZero();
+        assertThat(undoManager.canUndo()).isTrue();
+    }
+
+    @Test
+    void discardingOldestEditsKeepsTheRedoableEdits() {
+        when(edit0.getMemoryUsage()).thenReturn(100L);
+        when(edit1.getMemoryUsage()).thenReturn(100L);
+        when(edit2.getMemoryUsage()).thenReturn(100L);
+        undoManager.undo();
+        undoManager.undo();
+
+        // only the edits before the current one can be discarded
+        assertThat(undoManager.discardOldestEdits(1000)).isZero();
+        assertThat(undoManager.getSize()).isEqualTo(3);
+
+        undoManager.redo();
+        assertThat(undoManager.discardOldestEdits(1000)).isEqualTo(1);
+        verify(edit0, times(1)).die();
+        verify(edit1, never()).die();
+        verify(edit2, never()).die();
+        assertThat(undoManager.getSize()).isEqualTo(2);
+        assertThat(undoManager.getSelectedIndex()).isEqualTo(0);
+        assertThat(undoManager.canRedo()).isTrue();
+    }
+
     private void selectIndex(int index) {
         ListSelectionModel selectionModel = undoManager.getSelectionModel();
         selectionModel.setSelectionInterval(index, index);
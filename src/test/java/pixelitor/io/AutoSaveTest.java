@@ -0,0 +1,81 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pixelitor.Composition;
+import pixelitor.TestHelper;
+import pixelitor.utils.MessageHandler;
+import pixelitor.utils.Messages;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+@DisplayName("AutoSave tests")
+class AutoSaveTest {
+    @TempDir
+    File tempDir;
+
+    @BeforeAll
+    static void beforeAllTests() {
+        TestHelper.setUnitTestingMode();
+    }
+
+    @Test
+    void recoversTheLastSnapshot() throws IOException {
+        Composition comp = TestHelper.create2LayerComp(false);
+        File journalFile = new File(tempDir, "id-1" + RecoveryJournal.FILE_EXT);
+        try (var journal = new RecoveryJournal(journalFile, 0)) {
+            journal.append(RecoveryJournal.Snapshot.capture(comp, null));
+        }
+        AutoSave.setDir(tempDir);
+
+        var recoverables = AutoSave.findRecoverables();
+
+        assertThat(recoverables).hasSize(1);
+        assertThat(recoverables.get(0).getJournalFile()).isEqualTo(journalFile);
+    }
+
+    @Test
+    void unreadableJournalsAreReported() throws IOException {
+        File journalFile = new File(tempDir, "id-1" + RecoveryJournal.FILE_EXT);
+        Files.writeString(journalFile.toPath(), "not a journal");
+        AutoSave.setDir(tempDir);
+
+        MessageHandler origHandler = Messages.getMessageHandler();
+        MessageHandler handler = mock(MessageHandler.class);
+        Messages.setMsgHandler(handler);
+        try {
+            assertThat(AutoSave.findRecoverables()).isEmpty();
+
+            verify(handler).showExceptionOnEDT(any(IOException.class));
+            assertThat(journalFile).doesNotExist();
+        } finally {
+            Messages.setMsgHandler(origHandler);
+        }
+    }
+}
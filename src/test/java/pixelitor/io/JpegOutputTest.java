@@ -0,0 +1,100 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("JpegOutput tests")
+class JpegOutputTest {
+    private static BufferedImage image;
+
+    @BeforeAll
+    static void beforeAllTests() {
+        image = new BufferedImage(160, 120, TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int gradient = (x + y) & 0xFF;
+                image.setRGB(x, y, gradient << 16 | random.nextInt(64) << 8 | gradient);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {10, 55, 90})
+    void findsHighestQualityForSize(int referenceQuality) throws IOException {
+        int maxBytes = sizeAt(referenceQuality);
+
+        int quality = JpegOutput.findQualityForSize(image, maxBytes, false);
+
+        assertThat(quality).isGreaterThanOrEqualTo(referenceQuality);
+        assertThat(sizeAt(quality)).isLessThanOrEqualTo(maxBytes);
+        if (quality < 100) {
+            assertThat(sizeAt(quality + 1)).isGreaterThan(maxBytes);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 100_000_000})
+    void extremeSizes(int maxBytes) throws IOException {
+        int quality = JpegOutput.findQualityForSize(image, maxBytes, false);
+
+        assertThat(quality).isEqualTo(maxBytes == 1 ? 1 : 100);
+    }
+
+    @Test
+    void cancelledSearchStops() throws IOException {
+        AtomicInteger numChecks = new AtomicInteger();
+
+        // cancelled after the first step
+        int quality = JpegOutput.findQualityForSize(image, sizeAt(50), false,
+            () -> numChecks.incrementAndGet() > 1);
+
+        assertThat(quality).isEqualTo(-1);
+    }
+
+    @Test
+    void settingsWithMaxSizeUseTheSearchedQuality() throws IOException {
+        int maxBytes = sizeAt(70);
+        var settings = JpegSettings.withMaxSize(maxBytes, false, new File("out.jpg"));
+
+        JpegInfo jpegInfo = settings.getJpegInfoFor(image);
+
+        int expectedQuality = JpegOutput.findQualityForSize(image, maxBytes, false);
+        int size = JpegOutput.calcEncodedSize(image, jpegInfo);
+        assertThat(size).isEqualTo(sizeAt(expectedQuality));
+        assertThat(size).isLessThanOrEqualTo(maxBytes);
+    }
+
+    private static int sizeAt(int quality) throws IOException {
+        return JpegOutput.calcEncodedSize(image, new JpegInfo(quality / 100.0f, false));
+    }
+}
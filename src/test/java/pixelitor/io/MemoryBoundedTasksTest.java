@@ -0,0 +1,80 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("MemoryBoundedTasks tests")
+class MemoryBoundedTasksTest {
+    @Test
+    void memoryIsReservedUntilTheResultIsConsumed() throws IOException {
+        List<String> consumed = new ArrayList<>();
+        var tasks = new MemoryBoundedTasks<String>(10, (name, result) -> consumed.add(result));
+
+        tasks.submit("a", 6, () -> "A");
+        assertThat(consumed).isEmpty();
+        assertThat(tasks.getReservedKB()).isEqualTo(6);
+
+        // there is not enough memory for both
+        tasks.submit("b", 6, () -> "B");
+        assertThat(consumed).containsExactly("A");
+        assertThat(tasks.getReservedKB()).isEqualTo(6);
+
+        tasks.submit("c", 3, () -> "C");
+        assertThat(tasks.getReservedKB()).isEqualTo(9);
+
+        tasks.finish();
+        assertThat(consumed).containsExactly("A", "B", "C");
+        assertThat(tasks.getReservedKB()).isZero();
+    }
+
+    @Test
+    void tasksLargerThanTheBudgetRunAlone() throws IOException {
+        List<String> consumed = new ArrayList<>();
+        var tasks = new MemoryBoundedTasks<String>(10, (name, result) -> consumed.add(name));
+
+        tasks.submit("small", 1, () -> "");
+        tasks.submit("large", 100, () -> "");
+        assertThat(consumed).containsExactly("small");
+
+        tasks.finish();
+        assertThat(consumed).containsExactly("small", "large");
+    }
+
+    @Test
+    void failuresAreReported() throws IOException {
+        var tasks = new MemoryBoundedTasks<String>(10, (name, result) -> {
+        });
+        tasks.submit("bad", 1, () -> {
+            throw new IOException("test");
+        });
+
+        assertThatThrownBy(tasks::finish)
+            .isInstanceOf(IOException.class)
+            .hasMessage("test");
+        assertThat(tasks.getReservedKB()).isZero();
+    }
+}
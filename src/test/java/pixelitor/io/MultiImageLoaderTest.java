@@ -0,0 +1,125 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pixelitor.utils.MessageHandler;
+import pixelitor.utils.Messages;
+import pixelitor.utils.ProgressTracker;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+@DisplayName("MultiImageLoader tests")
+class MultiImageLoaderTest {
+    @TempDir
+    File tempDir;
+
+    @Test
+    void loadsImages() throws Exception {
+        List<File> files = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            var img = new BufferedImage(10 * i, 5 * i, TYPE_INT_RGB);
+            img.setRGB(0, 0, 0x00_10_20_30 * i);
+            File file = new File(tempDir, i + ".png");
+            ImageIO.write(img, "png", file);
+            files.add(file);
+        }
+
+        for (int i = 0; i < files.size(); i++) {
+            BufferedImage loaded = MultiImageLoader.load(files.get(i), (f, img) -> img)
+                .get(10, TimeUnit.SECONDS);
+            int size = i + 1;
+            assertThat(loaded.getWidth()).isEqualTo(10 * size);
+            assertThat(loaded.getHeight()).isEqualTo(5 * size);
+            assertThat(loaded.getRGB(0, 0) & 0xFF_FF_FF).isEqualTo(0x00_10_20_30 * size);
+        }
+    }
+
+    @Test
+    void consumesInOrder() throws Exception {
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(new CompletableFuture<>());
+        }
+        List<String> consumed = new ArrayList<>();
+        var done = MultiImageLoader.consumeInOrder(futures,
+            consumed::add, ProgressTracker.NULL_TRACKER);
+
+        // complete them in reverse order
+        for (int i = futures.size() - 1; i >= 0; i--) {
+            futures.get(i).complete("result " + i);
+        }
+        done.get(10, TimeUnit.SECONDS);
+
+        assertThat(consumed).containsExactly(
+            "result 0", "result 1", "result 2", "result 3");
+    }
+
+    @Test
+    void consumerFailuresDontStopTheOthers() throws Exception {
+        MessageHandler origHandler = Messages.getMessageHandler();
+        MessageHandler handler = mock(MessageHandler.class);
+        Messages.setMsgHandler(handler);
+        try {
+            List<CompletableFuture<String>> futures = List.of(
+                CompletableFuture.completedFuture("bad"),
+                CompletableFuture.completedFuture("good"));
+            List<String> consumed = new ArrayList<>();
+            var done = MultiImageLoader.consumeInOrder(futures, result -> {
+                if (result.equals("bad")) {
+                    throw new IllegalStateException(result);
+                }
+                consumed.add(result);
+            }, ProgressTracker.NULL_TRACKER);
+
+            done.get(10, TimeUnit.SECONDS);
+
+            assertThat(consumed).containsExactly("good");
+            verify(handler).showExceptionOnEDT(any(IllegalStateException.class));
+        } finally {
+            Messages.setMsgHandler(origHandler);
+        }
+    }
+
+    @Test
+    void nothingIsConsumedBeforeTheFirstResult() {
+        var first = new CompletableFuture<String>();
+        var second = CompletableFuture.completedFuture("second");
+        List<String> consumed = new ArrayList<>();
+
+        var done = MultiImageLoader.consumeInOrder(List.of(first, second),
+            consumed::add, ProgressTracker.NULL_TRACKER);
+
+        assertThat(done).isNotDone();
+        assertThat(consumed).isEmpty();
+    }
+}
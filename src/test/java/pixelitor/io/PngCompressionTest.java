@@ -0,0 +1,83 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import pixelitor.utils.ProgressTracker;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("PngCompression tests")
+class PngCompressionTest {
+    private static BufferedImage image;
+
+    @BeforeAll
+    static void beforeAllTests() {
+        image = new BufferedImage(120, 80, TYPE_INT_ARGB);
+        Random random = new Random(42);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int gradient = (x + 2 * y) & 0xFF;
+                image.setRGB(x, y, (0x80 + x) << 24 | gradient << 16 | random.nextInt(16) << 8 | gradient);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(PngCompression.class)
+    void isLossless(PngCompression compression) throws IOException {
+        byte[] png = encode(compression);
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(png));
+
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                assertThat(decoded.getRGB(x, y)).isEqualTo(image.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    void compressionResultsInSmallerFiles() throws IOException {
+        int noneSize = encode(PngCompression.NONE).length;
+
+        assertThat(noneSize).isGreaterThan(image.getWidth() * image.getHeight() * 4);
+        assertThat(encode(PngCompression.FAST).length).isLessThan(noneSize);
+        assertThat(encode(PngCompression.BEST).length).isLessThan(noneSize);
+    }
+
+    private static byte[] encode(PngCompression compression) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var ios = ImageIO.createImageOutputStream(bytes)) {
+            TrackedIO.writeToIOS(image, ios, "png",
+                ProgressTracker.NULL_TRACKER, compression.toCustomizer());
+        }
+        return bytes.toByteArray();
+    }
+}
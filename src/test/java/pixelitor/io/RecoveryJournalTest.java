@@ -0,0 +1,147 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pixelitor.Composition;
+import pixelitor.TestHelper;
+import pixelitor.layers.ImageLayer;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("RecoveryJournal tests")
+class RecoveryJournalTest {
+    @TempDir
+    File tempDir;
+
+    private File journalFile;
+    private Composition comp;
+
+    @BeforeAll
+    static void beforeAllTests() {
+        TestHelper.setUnitTestingMode();
+    }
+
+    @BeforeEach
+    void beforeEachTest() {
+        journalFile = new File(tempDir, "test" + RecoveryJournal.FILE_EXT);
+        comp = TestHelper.create2LayerComp(false);
+
+        Random random = new Random(42);
+        for (int i = 0; i < comp.getNumLayers(); i++) {
+            BufferedImage img = getImage(comp, i);
+            for (int y = 0; y < img.getHeight(); y++) {
+                for (int x = 0; x < img.getWidth(); x++) {
+                    img.setRGB(x, y, random.nextInt());
+                }
+            }
+        }
+    }
+
+    @Test
+    void restoresLastSnapshot() throws IOException {
+        try (var journal = new RecoveryJournal(journalFile, 0)) {
+            journal.append(RecoveryJournal.Snapshot.capture(comp, null));
+            getImage(comp, 1).setRGB(3, 4, 0xFF_12_34_56);
+            journal.append(RecoveryJournal.Snapshot.capture(comp, Set.of(getImage(comp, 1))));
+        }
+
+        assertRestoredPixelsMatch();
+    }
+
+    @Test
+    void unchangedChunksAreNotWrittenAgain() throws IOException {
+        try (var journal = new RecoveryJournal(journalFile, 0)) {
+            journal.append(RecoveryJournal.Snapshot.capture(comp, null));
+            long sizeAfterFirst = journal.getNumBytes();
+
+            // even if all images are checked, their chunks are already stored
+            journal.append(RecoveryJournal.Snapshot.capture(comp, null));
+            long secondSnapshotSize = journal.getNumBytes() - sizeAfterFirst;
+
+            int pixelBytes = TestHelper.TEST_WIDTH * TestHelper.TEST_HEIGHT * 4;
+            assertThat(secondSnapshotSize).isLessThan(sizeAfterFirst - pixelBytes);
+            assertThat(journal.getLiveBytes()).isLessThan(journal.getNumBytes());
+        }
+    }
+
+    @Test
+    void ignoresIncompleteLastSnapshot() throws IOException {
+        int origRGB = getImage(comp, 0).getRGB(0, 0);
+        long completeSize;
+        try (var journal = new RecoveryJournal(journalFile, 0)) {
+            journal.append(RecoveryJournal.Snapshot.capture(comp, null));
+            completeSize = journal.getNumBytes();
+
+            getImage(comp, 0).setRGB(0, 0, ~origRGB);
+            journal.append(RecoveryJournal.Snapshot.capture(comp, Set.of(getImage(comp, 0))));
+        }
+
+        // simulate a crash while writing the second snapshot
+        try (var raf = new RandomAccessFile(journalFile, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        getImage(comp, 0).setRGB(0, 0, origRGB);
+        assertThat(journalFile.length()).isGreaterThan(completeSize);
+
+        assertRestoredPixelsMatch();
+    }
+
+    @Test
+    void closedJournalIsOrphaned() throws IOException {
+        try (var journal = new RecoveryJournal(journalFile, 0)) {
+            journal.append(RecoveryJournal.Snapshot.capture(comp, null));
+            assertThat(RecoveryJournal.isOrphaned(journalFile)).isFalse();
+        }
+        assertThat(RecoveryJournal.isOrphaned(journalFile)).isTrue();
+    }
+
+    private void assertRestoredPixelsMatch() throws IOException {
+        var recoverable = RecoveryJournal.scan(journalFile);
+        assertThat(recoverable).isNotNull();
+        assertThat(recoverable.getCompName()).isEqualTo(comp.getName());
+
+        Composition restored = recoverable.restore();
+        assertThat(restored.getNumLayers()).isEqualTo(comp.getNumLayers());
+        assertThat(restored.isDirty()).isTrue();
+        for (int i = 0; i < comp.getNumLayers(); i++) {
+            BufferedImage expected = getImage(comp, i);
+            BufferedImage actual = getImage(restored, i);
+            for (int y = 0; y < expected.getHeight(); y++) {
+                for (int x = 0; x < expected.getWidth(); x++) {
+                    assertThat(actual.getRGB(x, y)).isEqualTo(expected.getRGB(x, y));
+                }
+            }
+        }
+    }
+
+    private static BufferedImage getImage(Composition comp, int layerIndex) {
+        return ((ImageLayer) comp.getLayer(layerIndex)).getImage();
+    }
+}
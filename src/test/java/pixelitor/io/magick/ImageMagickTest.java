@@ -0,0 +1,158 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io.magick;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.awt.image.BufferedImage.*;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.data.Offset.offset;
+
+/**
+ * Tests the raw pixel streaming with a stub executable
+ * instead of a real ImageMagick installation.
+ */
+@DisplayName("ImageMagick tests")
+@DisabledOnOs(OS.WINDOWS)
+class ImageMagickTest {
+    // the pixels of the 3x2 test image as non-premultiplied ARGB
+    private static final int[] PIXELS = {
+        0xFF_FF_00_00, 0xFF_00_FF_00, 0xFF_00_00_FF,
+        0x80_FF_80_00, 0x00_00_00_00, 0xFF_12_34_56};
+
+    // the same pixels as raw RGBA bytes
+    private static final byte[] RAW = {
+        (byte) 0xFF, 0x00, 0x00, (byte) 0xFF,
+        0x00, (byte) 0xFF, 0x00, (byte) 0xFF,
+        0x00, 0x00, (byte) 0xFF, (byte) 0xFF,
+        (byte) 0xFF, (byte) 0x80, 0x00, (byte) 0x80,
+        0x00, 0x00, 0x00, 0x00,
+        0x12, 0x34, 0x56, (byte) 0xFF};
+
+    // The stub behaves like ImageMagick for the used command lines:
+    // exporting copies the standard input into the output file,
+    // importing copies the input file to the standard output.
+    private static final String STUB_SCRIPT = """
+        #!/bin/sh
+        echo "$@" >> "$(dirname "$0")/args.txt"
+        case "$1" in
+          identify) printf '3 2\\n' ;;
+          convert)
+            if [ "$2" = "-size" ]; then
+              for last; do :; done
+              cat > "$last"
+            else
+              cat "${2%"[0]"}"
+            fi ;;
+        esac
+        """;
+
+    @TempDir
+    Path tempDir;
+
+    private File stub;
+
+    @BeforeEach
+    void beforeEachTest() throws IOException {
+        stub = tempDir.resolve("magick").toFile();
+        Files.writeString(stub.toPath(), STUB_SCRIPT, UTF_8);
+        assertThat(stub.setExecutable(true)).isTrue();
+    }
+
+    @Test
+    void exportSendsRawRGBA() throws IOException {
+        BufferedImage img = createTestImage(TYPE_INT_ARGB);
+        File out = tempDir.resolve("out.webp").toFile();
+
+        ImageMagick.exportImage(stub, img, out, ExportSettings.DEFAULTS);
+
+        assertThat(Files.readAllBytes(out.toPath())).isEqualTo(RAW);
+        assertThat(readArgs()).contains("convert -size 3x2 -depth 8 rgba:- ");
+    }
+
+    @Test
+    void exportUnpremultipliesPixels() throws IOException {
+        BufferedImage img = createTestImage(TYPE_INT_ARGB_PRE);
+        File out = tempDir.resolve("out.webp").toFile();
+
+        ImageMagick.exportImage(stub, img, out, ExportSettings.DEFAULTS);
+
+        byte[] exported = Files.readAllBytes(out.toPath());
+        assertThat(exported).hasSize(RAW.length);
+        for (int i = 0; i < RAW.length; i++) {
+            // premultiplication loses some precision
+            assertThat(exported[i] & 0xFF).isCloseTo(RAW[i] & 0xFF, offset(2));
+        }
+    }
+
+    @Test
+    void exportConvertsOtherImageTypes() throws IOException {
+        BufferedImage img = new BufferedImage(3, 2, TYPE_3BYTE_BGR);
+        img.setRGB(0, 0, 3, 2, PIXELS, 0, 3);
+        File out = tempDir.resolve("out.webp").toFile();
+
+        ImageMagick.exportImage(stub, img, out, ExportSettings.DEFAULTS);
+
+        byte[] exported = Files.readAllBytes(out.toPath());
+        for (int i = 0; i < PIXELS.length; i++) {
+            int exportedRGB = (exported[4 * i] & 0xFF) << 16
+                | (exported[4 * i + 1] & 0xFF) << 8
+                | exported[4 * i + 2] & 0xFF;
+            assertThat(exportedRGB).isEqualTo(img.getRGB(i % 3, i / 3) & 0xFF_FF_FF);
+            assertThat(exported[4 * i + 3]).isEqualTo((byte) 0xFF);
+        }
+    }
+
+    @Test
+    void importReadsRawRGBA() throws IOException {
+        File in = tempDir.resolve("in.webp").toFile();
+        Files.write(in.toPath(), RAW);
+
+        BufferedImage img = ImageMagick.importImage(stub, in);
+
+        assertThat(img.getWidth()).isEqualTo(3);
+        assertThat(img.getHeight()).isEqualTo(2);
+        assertThat(img.getRGB(0, 0, 3, 2, null, 0, 3)).isEqualTo(PIXELS);
+        // only the first frame is identified and decoded
+        String firstFrame = in.getAbsolutePath() + "[0]";
+        assertThat(readArgs()).contains("identify -ping",
+            firstFrame + "\nconvert " + firstFrame + " -depth 8");
+    }
+
+    private static BufferedImage createTestImage(int type) {
+        BufferedImage img = new BufferedImage(3, 2, type);
+        img.setRGB(0, 0, 3, 2, PIXELS, 0, 3);
+        return img;
+    }
+
+    private String readArgs() throws IOException {
+        return Files.readString(tempDir.resolve("args.txt"), UTF_8);
+    }
+}
@@ -36,12 +36,16 @@ import pixelitor.testutils.WithTranslation;
 import pixelitor.utils.ImageUtils;
 
 import java.awt.AlphaComposite;
+import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.util.Arrays;
 import java.util.Collection;
 
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -540,9 +544,14 @@ public class ImageLayerTest {
             .opacityIs(layer.getOpacity())
             .contentBoundsIsEqualTo(layer.getContentBounds());
 
+        // the image is shared until the first write
         BufferedImage image = layer.getImage();
+        assertSame(duplicate.getImage(), image);
+        duplicate.copyImageIfShared();
+
         BufferedImage duplicateImage = duplicate.getImage();
         assertNotSame(duplicateImage, image);
+        assertSame(image, layer.getImage());
         assertThat(image)
             .widthIs(duplicateImage.getWidth())
             .heightIs(duplicateImage.getHeight());
@@ -550,6 +559,25 @@ public class ImageLayerTest {
         iconUpdates.check(0, 0);
     }
 
+    @Test
+    public void effectiveBoundingBoxFollowsPixelChanges() {
+        assertThat(layer.getEffectiveBoundingBox().isEmpty()).isTrue();
+
+        layer.getImage().setRGB(5, 7, 0xFF_00_00_00);
+        layer.pixelsChanged(new Rectangle(5, 7, 1, 1));
+
+        int tx = layer.getTx();
+        int ty = layer.getTy();
+        assertThat(layer.getEffectiveBoundingBox())
+            .isEqualTo(new Rectangle(tx + 5, ty + 7, 1, 1));
+        assertThat(layer.getMouseHitPixelAtPoint(new Point(tx + 50, ty + 7))).isZero();
+
+        layer.getImage().setRGB(5, 7, 0);
+        layer.pixelsChanged(new Rectangle(0, 0, 10, 10));
+
+        assertThat(layer.getEffectiveBoundingBox().isEmpty()).isTrue();
+    }
+
     @Test
     public void applyLayerMask() {
         if (withMask.isTrue()) {
@@ -571,4 +599,69 @@ public class ImageLayerTest {
             iconUpdates.check(3, 0);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void undoDoesNotLoseTheImageShare() {
+        ImageLayer duplicate = layer.duplicate(false);
+        BufferedImage duplicateImage = duplicate.getImage();
+        int duplicatePixel = duplicateImage.getRGB(1, 1);
+
+        // a filter without selection keeps the shared image in the history
+        History.clear();
+        BufferedImage filtered = ImageUtils.copyImage(layer.getImage());
+        filtered.setRGB(1, 1, 0xFF_00_FF_00);
+        layer.filterWithoutDialogFinished(filtered, FILTER_WITHOUT_DIALOG, "opName");
+        History.undo("opName");
+
+        // paint on the layer after the undo
+        layer.copyImageIfShared();
+        layer.getImage().setRGB(1, 1, 0xFF_FF_00_00);
+
+        assertSame(duplicateImage, duplicate.getImage());
+        assertEquals(duplicatePixel, duplicateImage.getRGB(1, 1));
+    }
+
+    @Test
+    public void shareImageWithReader() {
+        BufferedImage image = layer.getImage();
+        int pixel = image.getRGB(1, 1);
+
+        // while the reader uses the image, the layer copies it before writing
+        Runnable release = layer.shareImageWithReader();
+        layer.copyImageIfShared();
+        layer.getImage().setRGB(1, 1, 0xFF_FF_00_00);
+        assertNotSame(image, layer.getImage());
+        assertEquals(pixel, image.getRGB(1, 1));
+        release.run();
+
+        // after the release there is no need to copy
+        BufferedImage copy = layer.getImage();
+        layer.shareImageWithReader().run();
+        layer.copyImageIfShared();
+        assertSame(copy, layer.getImage());
+    }
+
+    @Test
+    public void pastedImageIsSharedWithTheClipboard() {
+        BufferedImage pasted = ImageUtils.createSysCompatibleImage(
+            comp.getCanvasWidth(), comp.getCanvasHeight());
+        ImageLayer.addPermanentReader(pasted);
+
+        // the new layer uses the image of the clipboard without copying it...
+        ImageLayer pastedLayer = new ImageLayer(comp, pasted, "pasted");
+        assertSame(pasted, pastedLayer.getImage());
+
+        // ...but it copies the image before writing
+        pastedLayer.copyImageIfShared();
+        assertNotSame(pasted, pastedLayer.getImage());
+    }
+
+    @Test
+    public void smallExternalImagesArePadded() {
+        var pasted = new BufferedImage(4, 2, TYPE_INT_ARGB);
+        BufferedImage prepared = ImageLayer.prepareExternalImage(pasted, 10, 6);
+
+        assertEquals(10, prepared.getWidth());
+        assertEquals(6, prepared.getHeight());
+    }
+}
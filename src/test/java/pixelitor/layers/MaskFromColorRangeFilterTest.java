@@ -0,0 +1,143 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.layers;
+
+import net.jafama.FastMath;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.data.Offset.offset;
+
+@DisplayName("MaskFromColorRangeFilter tests")
+class MaskFromColorRangeFilterTest {
+    private static final int SIZE = 50;
+
+    private static final Color REF_COLOR = new Color(200, 60, 40);
+    private static final double TOLERANCE = 50;
+    private static final double SOFTNESS = 0.3;
+
+    @ParameterizedTest
+    @ValueSource(ints = {
+        MaskFromColorRangeFilter.RGB,
+        MaskFromColorRangeFilter.HSB,
+        MaskFromColorRangeFilter.HUE,
+        MaskFromColorRangeFilter.SAT})
+    void grayMaskMatchesReference(int distType) {
+        BufferedImage src = createRandomImage(SIZE, SIZE, TYPE_INT_ARGB, distType, true);
+
+        checkMask(src, distType);
+    }
+
+    @Test
+    void subImage() {
+        // like the canvas-sized part of a layer that is bigger than the canvas
+        BufferedImage bigImage = createRandomImage(SIZE + 30, SIZE + 20, TYPE_INT_ARGB, 1, true);
+        BufferedImage src = bigImage.getSubimage(13, 7, SIZE, SIZE);
+
+        checkMask(src, MaskFromColorRangeFilter.RGB);
+    }
+
+    @Test
+    void premultipliedImage() {
+        BufferedImage src = createRandomImage(SIZE, SIZE, TYPE_INT_ARGB_PRE, 2, false);
+
+        checkMask(src, MaskFromColorRangeFilter.RGB);
+    }
+
+    private static BufferedImage createRandomImage(int width, int height, int type,
+                                                   long seed, boolean opaque) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int alpha = opaque ? 0xFF : 0x80 + random.nextInt(0x80);
+                image.setRGB(x, y, alpha << 24 | random.nextInt(0x1_00_00_00));
+            }
+        }
+        return image;
+    }
+
+    private static void checkMask(BufferedImage src, int distType) {
+        var filter = new MaskFromColorRangeFilter("test");
+        filter.setProgressTracker(ProgressTracker.NULL_TRACKER);
+        filter.setDistType(distType);
+        filter.setColor(REF_COLOR);
+        filter.setTolerance(TOLERANCE, SOFTNESS);
+
+        BufferedImage mask = filter.createGrayMask(src);
+
+        for (int y = 0; y < src.getHeight(); y++) {
+            for (int x = 0; x < src.getWidth(); x++) {
+                int expected = referenceValue(src.getRGB(x, y), REF_COLOR,
+                    distType, TOLERANCE, SOFTNESS);
+                int actual = mask.getRaster().getSample(x, y, 0);
+                assertThat(actual).isCloseTo(expected, offset(1));
+            }
+        }
+    }
+
+    /**
+     * The mask value calculated in the straightforward way, using Color.RGBtoHSB
+     */
+    private static int referenceValue(int rgb, Color ref, int distType,
+                                      double tolerance, double softness) {
+        Color c = new Color(rgb);
+        float[] hsb = Color.RGBtoHSB(c.getRed(), c.getGreen(), c.getBlue(), null);
+        float[] refHsb = Color.RGBtoHSB(ref.getRed(), ref.getGreen(), ref.getBlue(), null);
+
+        float deltaHue = hsb[0] - refHsb[0];
+        if (deltaHue > 0.5f) {
+            deltaHue = 1.0f - deltaHue;
+        } else if (deltaHue < -0.5f) {
+            deltaHue = 1.0f + deltaHue;
+        }
+        float deltaSat = hsb[1] - refHsb[1];
+        float deltaBri = hsb[2] - refHsb[2];
+        int deltaR = c.getRed() - ref.getRed();
+        int deltaG = c.getGreen() - ref.getGreen();
+        int deltaB = c.getBlue() - ref.getBlue();
+
+        double dist = switch (distType) {
+            case MaskFromColorRangeFilter.RGB -> FastMath.sqrtQuick(deltaR * deltaR + deltaG * deltaG + deltaB * deltaB);
+            case MaskFromColorRangeFilter.HSB -> 150 * FastMath.sqrtQuick(deltaHue * deltaHue + deltaSat * deltaSat + deltaBri * deltaBri);
+            case MaskFromColorRangeFilter.HUE -> Math.abs(1000 * deltaHue);
+            case MaskFromColorRangeFilter.SAT -> 150 * Math.abs(deltaSat);
+            default -> throw new IllegalStateException("distType = " + distType);
+        };
+
+        double adjustedTolerance = tolerance + 0.1;
+        double maxTolerance = adjustedTolerance * (1.0 - softness);
+        double minTolerance = adjustedTolerance * (1.0 + softness);
+        if (dist > minTolerance) {
+            return 0;
+        } else if (dist < maxTolerance) {
+            return 255;
+        }
+        return (int) ((minTolerance - dist) * 255 / (minTolerance - maxTolerance));
+    }
+}
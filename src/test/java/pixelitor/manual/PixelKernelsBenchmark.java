@@ -0,0 +1,115 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.manual;
+
+import pixelitor.utils.PixelKernels;
+
+import java.util.Random;
+
+import static com.jhlabs.image.ConvolveFilter.CLAMP_EDGES;
+
+/**
+ * Compares the speed of the scalar and SIMD {@link PixelKernels}.
+ * Must be run with "--add-modules jdk.incubator.vector" JVM argument.
+ */
+public class PixelKernelsBenchmark {
+    private static final int WIDTH = 4000;
+    private static final int HEIGHT = 3000;
+    private static final int NUM_WARMUPS = 10;
+    private static final int NUM_RUNS = 10;
+
+    private PixelKernelsBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        PixelKernels scalar = PixelKernels.getScalar();
+        PixelKernels vectorized = PixelKernels.getVectorized();
+        if (vectorized == null) {
+            throw new IllegalStateException("the Vector API is not available");
+        }
+
+        int[] pixels = new int[WIDTH * HEIGHT];
+        Random random = new Random(42);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        int[] work = new int[pixels.length];
+        int[] out = new int[pixels.length];
+        float[] matrix = new float[21];
+        for (int i = 0; i < matrix.length; i++) {
+            matrix[i] = 1.0f / matrix.length;
+        }
+        int[] samples = new int[WIDTH * 4];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = random.nextInt(256);
+        }
+        int[] dstSamples = new int[samples.length];
+
+        System.out.printf("%-14s %10s %10s %8s%n", "kernel", "scalar ms", "SIMD ms", "speedup");
+        for (PixelKernels kernels : new PixelKernels[]{scalar, vectorized}) {
+            System.out.println("using " + kernels.getName());
+        }
+
+        compare("premultiply", scalar, vectorized, k -> {
+            System.arraycopy(pixels, 0, work, 0, pixels.length);
+            k.premultiply(work, 0, work.length);
+        });
+        compare("unpremultiply", scalar, vectorized, k -> {
+            System.arraycopy(pixels, 0, work, 0, pixels.length);
+            k.unpremultiply(work, 0, work.length);
+        });
+        compare("gaussian line", scalar, vectorized, k -> {
+            for (int y = 0; y < HEIGHT; y++) {
+                k.convolveAndTransposeLine(matrix, pixels, out, WIDTH, HEIGHT,
+                    true, true, false, CLAMP_EDGES, y);
+            }
+        });
+        compare("multiply blend", scalar, vectorized, k -> {
+            for (int y = 0; y < HEIGHT; y++) {
+                System.arraycopy(samples, 0, dstSamples, 0, samples.length);
+                k.multiplyBlend(samples, dstSamples, 0.7f);
+            }
+        });
+    }
+
+    private static void compare(String name, PixelKernels scalar,
+                                PixelKernels vectorized, Task task) {
+        double scalarMillis = measure(scalar, task);
+        double vectorMillis = measure(vectorized, task);
+        System.out.printf("%-14s %10.1f %10.1f %7.2fx%n",
+            name, scalarMillis, vectorMillis, scalarMillis / vectorMillis);
+    }
+
+    // returns the best time in milliseconds
+    private static double measure(PixelKernels kernels, Task task) {
+        for (int i = 0; i < NUM_WARMUPS; i++) {
+            task.run(kernels);
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < NUM_RUNS; i++) {
+            long start = System.nanoTime();
+            task.run(kernels);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1_000_000.0;
+    }
+
+    private interface Task {
+        void run(PixelKernels kernels);
+    }
+}
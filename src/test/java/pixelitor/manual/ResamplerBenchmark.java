@@ -0,0 +1,83 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.manual;
+
+import pixelitor.utils.ImageUtils;
+import pixelitor.utils.Resampler;
+import pixelitor.utils.Resampler.Filter;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static java.awt.RenderingHints.VALUE_INTERPOLATION_BICUBIC;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+
+/**
+ * Compares the speed of the {@link Resampler} with the previously used
+ * multi-step Java2D scaling in {@link ImageUtils#getFasterScaledInstance}.
+ */
+public class ResamplerBenchmark {
+    private static final int WIDTH = 4000;
+    private static final int HEIGHT = 3000;
+    private static final int NUM_WARMUPS = 5;
+    private static final int NUM_RUNS = 5;
+
+    private ResamplerBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        BufferedImage src = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB_PRE);
+        int[] pixels = ImageUtils.getPixelsAsArray(src);
+        Random random = new Random(42);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF_00_00_00 | random.nextInt(0x1_00_00_00);
+        }
+
+        System.out.printf("%-18s %10s %10s %10s %10s%n",
+            "target size", "Java2D ms", "Box ms", "Mitchell ms", "Lanczos3 ms");
+        int[][] targetSizes = {{2000, 1500}, {1000, 750}, {333, 250}, {6000, 4500}};
+        for (int[] size : targetSizes) {
+            int w = size[0];
+            int h = size[1];
+            boolean progressive = w < WIDTH / 2 || h < HEIGHT / 2;
+            double java2D = measure(() -> ImageUtils.getFasterScaledInstance(
+                src, w, h, VALUE_INTERPOLATION_BICUBIC, progressive));
+            double box = measure(() -> Resampler.resample(src, w, h, Filter.BOX));
+            double mitchell = measure(() -> Resampler.resample(src, w, h, Filter.MITCHELL));
+            double lanczos = measure(() -> Resampler.resample(src, w, h, Filter.LANCZOS3));
+            System.out.printf("%-18s %10.1f %10.1f %10.1f %10.1f%n",
+                w + "x" + h, java2D, box, mitchell, lanczos);
+        }
+        System.exit(0);
+    }
+
+    // returns the best time in milliseconds
+    private static double measure(Supplier<BufferedImage> task) {
+        for (int i = 0; i < NUM_WARMUPS; i++) {
+            task.get();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < NUM_RUNS; i++) {
+            long start = System.nanoTime();
+            task.get();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1_000_000.0;
+    }
+}
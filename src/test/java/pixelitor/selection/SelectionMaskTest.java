@@ -0,0 +1,167 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.selection;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.PathIterator;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+@DisplayName("SelectionMask tests")
+class SelectionMaskTest {
+    private static final Rectangle CANVAS = new Rectangle(0, 0, 300, 200);
+
+    @Test
+    void rectangleCoverage() {
+        var mask = SelectionMask.render(new Rectangle(10, 20, 150, 100));
+
+        assertThat(mask.getCoverage(10, 20)).isEqualTo(255);
+        assertThat(mask.getCoverage(159, 119)).isEqualTo(255);
+        assertThat(mask.getCoverage(9, 20)).isEqualTo(0);
+        assertThat(mask.getCoverage(160, 50)).isEqualTo(0);
+        assertThat(mask.getCoverage(1000, 1000)).isEqualTo(0);
+    }
+
+    @Test
+    void cachedForTheSameShape() {
+        Shape shape = new Ellipse2D.Double(10, 10, 100, 50);
+        var mask = SelectionMask.render(shape);
+
+        assertThat(mask.isFor(shape)).isTrue();
+        assertThat(mask.isFor(new Ellipse2D.Double(10, 10, 100, 50))).isFalse();
+    }
+
+    @Test
+    void expandAndContractRectangle() {
+        var mask = SelectionMask.render(new Rectangle(50, 50, 100, 80));
+
+        Shape expanded = mask.modify(SelectionModifyType.EXPAND, 10, CANVAS);
+        assertThat(expanded.getBounds()).isEqualTo(new Rectangle(45, 45, 110, 90));
+
+        Shape contracted = mask.modify(SelectionModifyType.CONTRACT, 10, CANVAS);
+        assertThat(contracted.getBounds()).isEqualTo(new Rectangle(55, 55, 90, 70));
+
+        Shape border = mask.modify(SelectionModifyType.BORDER_IN, 10, CANVAS);
+        assertThat(border.contains(52, 100)).isTrue();
+        assertThat(border.contains(100, 100)).isFalse();
+        assertThat(border.contains(48, 100)).isFalse();
+    }
+
+    @Test
+    void expandIsClippedToTheCanvas() {
+        var mask = SelectionMask.render(new Rectangle(0, 0, 100, 100));
+
+        Shape expanded = mask.modify(SelectionModifyType.EXPAND, 20, CANVAS);
+        assertThat(expanded.getBounds()).isEqualTo(new Rectangle(0, 0, 110, 110));
+    }
+
+    @Test
+    void traceContourWithHole() {
+        // a 5x5 square with a 1x1 hole in the middle
+        float[] levels = new float[25];
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = i == 12 ? -1 : 1;
+        }
+        Shape shape = SelectionMask.traceContour(levels, 5, 5, 10, 20);
+
+        assertThat(shape.getBounds()).isEqualTo(new Rectangle(10, 20, 5, 5));
+        assertThat(shape.contains(10.5, 20.5)).isTrue();
+        assertThat(shape.contains(12.5, 22.5)).isFalse();
+        assertThat(new Area(shape).isSingular()).isFalse();
+    }
+
+    @Test
+    void contourIsSimplified() {
+        var mask = SelectionMask.render(new Rectangle(50, 50, 100, 80));
+
+        // the straight sides of the contracted rectangle are single segments,
+        // there are at most 8 corners (the corners are cut), a move and a close
+        Shape contracted = mask.modify(SelectionModifyType.CONTRACT, 10, CANVAS);
+        assertThat(countSegments(contracted)).isLessThanOrEqualTo(10);
+
+        // a circle with a radius of 60 pixels has ~500 grid line crossings
+        var circleMask = SelectionMask.render(new Ellipse2D.Double(50, 50, 100, 100));
+        Shape expanded = circleMask.modify(SelectionModifyType.EXPAND, 20, CANVAS);
+        assertThat(countSegments(expanded)).isLessThan(200);
+    }
+
+    @Test
+    void expandedCircleHasSubPixelOutline() {
+        var mask = SelectionMask.render(new Ellipse2D.Double(50, 50, 100, 100));
+
+        Shape expanded = mask.modify(SelectionModifyType.EXPAND, 20, CANVAS);
+        var expected = new Ellipse2D.Double(40, 40, 120, 120);
+
+        // the points of the outline are close to the expected circle,
+        // and they are not restricted to the pixel corners
+        boolean hasFractionalPoints = false;
+        double[] coords = new double[6];
+        for (PathIterator it = expanded.getPathIterator(null); !it.isDone(); it.next()) {
+            if (it.currentSegment(coords) == PathIterator.SEG_CLOSE) {
+                continue;
+            }
+            double dist = Math.hypot(coords[0] - 100, coords[1] - 100);
+            assertThat(dist).isCloseTo(60, within(1.0));
+            if (coords[0] != Math.rint(coords[0]) || coords[1] != Math.rint(coords[1])) {
+                hasFractionalPoints = true;
+            }
+        }
+        assertThat(hasFractionalPoints).isTrue();
+        assertThat(expanded.getBounds()).isEqualTo(expected.getBounds());
+    }
+
+    @Test
+    void blendRespectsCoverage() {
+        var mask = SelectionMask.render(new Rectangle(10, 10, 20, 20));
+        var dest = new BufferedImage(50, 50, TYPE_INT_ARGB_PRE);
+        var src = new BufferedImage(20, 20, TYPE_INT_ARGB_PRE);
+        src.setRGB(0, 0, 20, 20, filledArray(400, 0xFF_FF_00_00), 0, 20);
+
+        boolean blended = mask.blend(src, 10, 10, dest, 0, 0);
+
+        assertThat(blended).isTrue();
+        assertThat(dest.getRGB(10, 10)).isEqualTo(0xFF_FF_00_00);
+        assertThat(dest.getRGB(29, 29)).isEqualTo(0xFF_FF_00_00);
+        assertThat(dest.getRGB(9, 9)).isEqualTo(0);
+        assertThat(dest.getRGB(30, 30)).isEqualTo(0);
+    }
+
+    private static int countSegments(Shape shape) {
+        int count = 0;
+        for (PathIterator it = shape.getPathIterator(null); !it.isDone(); it.next()) {
+            count++;
+        }
+        return count;
+    }
+
+    private static int[] filledArray(int length, int value) {
+        int[] array = new int[length];
+        Arrays.fill(array, value);
+        return array;
+    }
+}
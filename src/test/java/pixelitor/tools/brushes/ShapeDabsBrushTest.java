@@ -0,0 +1,77 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.tools.brushes;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pixelitor.Composition;
+import pixelitor.gui.View;
+import pixelitor.tools.shapes.ShapeType;
+import pixelitor.tools.util.PPoint;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+@DisplayName("ShapeDabsBrush tests")
+class ShapeDabsBrushTest {
+    private static final int SIZE = 60;
+
+    @Test
+    void randomStarDabsDiffer() {
+        var settings = new ShapeDabsBrushSettings(AngleSettings.NOT_ANGLE_AWARE,
+            new RadiusRatioSpacing(2.0), ShapeType.RANDOM_STAR);
+        var brush = new ShapeDabsBrush(20, settings);
+        var comp = mock(Composition.class);
+        var view = mock(View.class);
+
+        BufferedImage first = putDab(brush, comp, view);
+        BufferedImage second = putDab(brush, comp, view);
+
+        assertThat(countDifferentPixels(first, second)).isPositive();
+    }
+
+    private static BufferedImage putDab(ShapeDabsBrush brush, Composition comp, View view) {
+        var image = new BufferedImage(SIZE, SIZE, TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.BLACK);
+        brush.setTarget(comp, g);
+
+        PPoint center = PPoint.lazyFromIm(SIZE / 2.0, SIZE / 2.0, view);
+        brush.rememberPrevious(center);
+        brush.putDab(center, 0);
+        g.dispose();
+        return image;
+    }
+
+    private static int countDifferentPixels(BufferedImage a, BufferedImage b) {
+        int count = 0;
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                if (a.getRGB(x, y) != b.getRGB(x, y)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.tools.brushes;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.awt.RenderingHints.KEY_ANTIALIASING;
+import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+@DisplayName("StampCache tests")
+class StampCacheTest {
+    private final List<double[]> renderCalls = new ArrayList<>();
+
+    private void renderCircle(Graphics2D g, double centerX, double centerY, double theta) {
+        renderCalls.add(new double[]{centerX, centerY, theta});
+        g.setColor(Color.RED);
+        g.fill(new Ellipse2D.Double(centerX - 5, centerY - 5, 10, 10));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"0, 0", "6.283185307179586, 0", "-0.01, 0", "3.141592653589793, 32",
+        "-1.5707963267948966, 48", "0.1, 1"})
+    void quantizeAngle(double theta, int expectedIndex) {
+        assertThat(StampCache.quantizeAngle(theta)).isEqualTo(expectedIndex);
+    }
+
+    @Test
+    void alignedDabIsSameAsDirectRendering() {
+        StampCache cache = StampCache.create(this::renderCircle, 5, false, 0);
+        var cached = new BufferedImage(40, 40, TYPE_INT_ARGB_PRE);
+        Graphics2D g = cached.createGraphics();
+        cache.putDab(g, 20, 15, 0);
+        g.dispose();
+
+        var direct = new BufferedImage(40, 40, TYPE_INT_ARGB_PRE);
+        g = direct.createGraphics();
+        g.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
+        renderCircle(g, 20, 15, 0);
+        g.dispose();
+
+        for (int y = 0; y < 40; y++) {
+            for (int x = 0; x < 40; x++) {
+                int cachedAlpha = cached.getRGB(x, y) >>> 24;
+                int directAlpha = direct.getRGB(x, y) >>> 24;
+                assertThat(cachedAlpha).isCloseTo(directAlpha, within(1));
+            }
+        }
+    }
+
+    @Test
+    void stampsAreReused() {
+        StampCache cache = StampCache.create(this::renderCircle, 5, true, 0);
+        var image = new BufferedImage(100, 100, TYPE_INT_ARGB_PRE);
+        Graphics2D g = image.createGraphics();
+
+        cache.putDab(g, 20, 20, 0.5);
+        cache.putDab(g, 60, 30, 0.5);
+        cache.putDab(g, 41, 70, 0.5 + 0.01);
+        assertThat(renderCalls).hasSize(1);
+
+        // a different sub-pixel position
+        cache.putDab(g, 20.25, 20.5, 0.5);
+        assertThat(renderCalls).hasSize(2);
+        double[] lastCall = renderCalls.get(1);
+        assertThat(lastCall[0] % 1).isEqualTo(0.25);
+        assertThat(lastCall[1] % 1).isEqualTo(0.5);
+
+        // a different angle
+        cache.putDab(g, 20, 20, 1.0);
+        assertThat(renderCalls).hasSize(3);
+        g.dispose();
+    }
+
+    @Test
+    void unrotatedCacheIgnoresTheAngle() {
+        StampCache cache = StampCache.create(this::renderCircle, 5, false, 0);
+        var image = new BufferedImage(50, 50, TYPE_INT_ARGB_PRE);
+        Graphics2D g = image.createGraphics();
+
+        cache.putDab(g, 20, 20, 0);
+        cache.putDab(g, 30, 30, 2.0);
+        g.dispose();
+
+        assertThat(renderCalls).hasSize(1);
+        assertThat(renderCalls.get(0)[2]).isZero();
+    }
+
+    @Test
+    void tooLargeDabsAreNotCached() {
+        assertThat(StampCache.create(this::renderCircle, 1000, true, 0)).isNull();
+        assertThat(StampCache.create(this::renderCircle, 1000, false, 0)).isNotNull();
+    }
+}
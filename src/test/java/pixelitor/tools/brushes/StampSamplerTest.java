@@ -0,0 +1,161 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.tools.brushes;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("StampSampler tests")
+class StampSamplerTest {
+    private static final int SIZE = 8;
+
+    private BufferedImage src;
+    private int[] fullMask;
+
+    @BeforeEach
+    void beforeEachTest() {
+        src = new BufferedImage(20, 15, TYPE_INT_ARGB);
+        var random = new Random(42);
+        for (int y = 0; y < src.getHeight(); y++) {
+            for (int x = 0; x < src.getWidth(); x++) {
+                src.setRGB(x, y, random.nextInt());
+            }
+        }
+        fullMask = new int[SIZE * SIZE];
+        Arrays.fill(fullMask, 255);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"0, 0", "5, 3", "-3, -2", "15, 10", "25, 0"})
+    void copyTranslated(int offsetX, int offsetY) {
+        int[] stamp = new int[SIZE * SIZE];
+
+        StampSampler.copyTranslated(src, offsetX, offsetY, stamp, SIZE, fullMask);
+
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                int srcX = x + offsetX;
+                int srcY = y + offsetY;
+                int expected = 0;
+                if (srcX >= 0 && srcY >= 0 && srcX < src.getWidth() && srcY < src.getHeight()) {
+                    expected = src.getRGB(srcX, srcY);
+                }
+                assertThat(stamp[y * SIZE + x]).isEqualTo(expected);
+            }
+        }
+    }
+
+    @Test
+    void copyTranslatedFromPremultipliedSubImage() {
+        var pre = new BufferedImage(30, 30, TYPE_INT_ARGB_PRE);
+        pre.setRGB(12, 13, 0x80_40_20_10);
+        pre.setRGB(10, 10, 0xFF_11_22_33);
+        BufferedImage sub = pre.getSubimage(10, 10, 10, 10);
+        int[] stamp = new int[SIZE * SIZE];
+
+        StampSampler.copyTranslated(sub, 0, 0, stamp, SIZE, fullMask);
+
+        assertThat(stamp[0]).isEqualTo(0xFF_11_22_33);
+        assertThat(stamp[3 * SIZE + 2]).isEqualTo(sub.getRGB(2, 3));
+        assertThat(stamp[1]).isZero();
+    }
+
+    @Test
+    void maskIsApplied() {
+        src.setRGB(0, 0, 0xFF_10_20_30);
+        src.setRGB(1, 0, 0x80_10_20_30);
+        int[] mask = new int[SIZE * SIZE];
+        mask[0] = 255;
+        mask[1] = 128;
+        int[] stamp = new int[SIZE * SIZE];
+
+        StampSampler.copyTranslated(src, 0, 0, stamp, SIZE, mask);
+
+        assertThat(stamp[0]).isEqualTo(0xFF_10_20_30);
+        assertThat(stamp[1]).isEqualTo(0x40_10_20_30);
+        assertThat(stamp[2]).isZero();
+    }
+
+    @Test
+    void transformedWithIntegerTranslationIsExact() {
+        var transform = AffineTransform.getTranslateInstance(4, 3);
+        int[] transformed = new int[SIZE * SIZE];
+        int[] copied = new int[SIZE * SIZE];
+
+        StampSampler.sampleTransformed(src, transform, transformed, SIZE, fullMask);
+        StampSampler.copyTranslated(src, 4, 3, copied, SIZE, fullMask);
+
+        // the colors of (almost) transparent pixels can't be preserved
+        for (int i = 0; i < copied.length; i++) {
+            int expected = copied[i];
+            int alpha = expected >>> 24;
+            if (alpha >= 128) {
+                assertThat(transformed[i] >>> 24).isEqualTo(alpha);
+                assertThat(channelDiff(transformed[i], expected)).isLessThanOrEqualTo(2);
+            }
+        }
+    }
+
+    @Test
+    void transformedInterpolatesBilinearly() {
+        var opaque = new BufferedImage(2, 1, TYPE_INT_ARGB);
+        opaque.setRGB(0, 0, 0xFF_00_00_00);
+        opaque.setRGB(1, 0, 0xFF_FF_FF_FF);
+        // samples the source at the middle between the two pixels
+        var transform = AffineTransform.getTranslateInstance(0.5, 0);
+        int[] stamp = new int[4];
+        int[] mask = {255, 255, 255, 255};
+
+        StampSampler.sampleTransformed(opaque, transform, stamp, 2, mask);
+
+        assertThat(stamp[0]).isEqualTo(0xFF_80_80_80);
+    }
+
+    @Test
+    void fill() {
+        int[] mask = new int[SIZE * SIZE];
+        mask[5] = 255;
+        int[] stamp = new int[SIZE * SIZE];
+
+        StampSampler.fill(0xFF_AA_BB_CC, stamp, mask);
+
+        assertThat(stamp[5]).isEqualTo(0xFF_AA_BB_CC);
+        assertThat(stamp[4] >>> 24).isZero();
+    }
+
+    private static int channelDiff(int a, int b) {
+        int max = 0;
+        for (int shift = 0; shift < 24; shift += 8) {
+            int diff = Math.abs(((a >>> shift) & 0xFF) - ((b >>> shift) & 0xFF));
+            max = Math.max(max, diff);
+        }
+        return max;
+    }
+}
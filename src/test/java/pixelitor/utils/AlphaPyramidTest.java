@@ -0,0 +1,125 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_4BYTE_ABGR;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("AlphaPyramid tests")
+class AlphaPyramidTest {
+    @Test
+    void transparentImage() {
+        var image = new BufferedImage(100, 70, TYPE_INT_ARGB);
+        var index = new AlphaPyramid(image);
+
+        assertThat(index.getTrimRect(image).isEmpty()).isTrue();
+        assertThat(index.getMaxAlpha(image, 50, 50)).isZero();
+    }
+
+    @Test
+    void trimRect() {
+        var image = new BufferedImage(300, 200, TYPE_INT_ARGB);
+        image.setRGB(40, 150, 0x01_00_00_00);
+        image.setRGB(250, 3, 0xFF_FF_00_00);
+        var index = new AlphaPyramid(image);
+
+        assertThat(index.getTrimRect(image)).isEqualTo(new Rectangle(40, 3, 211, 148));
+        assertThat(index.getMaxAlpha(image, 40, 150)).isEqualTo(1);
+        assertThat(index.getMaxAlpha(image, 0, 0)).isZero();
+    }
+
+    @Test
+    void incrementalUpdate() {
+        var image = new BufferedImage(300, 200, TYPE_INT_ARGB);
+        image.setRGB(100, 100, 0xFF_00_00_00);
+        var index = new AlphaPyramid(image);
+        assertThat(index.getTrimRect(image)).isEqualTo(new Rectangle(100, 100, 1, 1));
+
+        // the index isn't updated until the change is reported
+        image.setRGB(299, 199, 0x80_00_00_00);
+        image.setRGB(100, 100, 0);
+        assertThat(index.getTrimRect(image)).isEqualTo(new Rectangle(100, 100, 1, 1));
+
+        index.markDirty(new Rectangle(290, 190, 50, 50));
+        index.markDirty(new Rectangle(100, 100, 1, 1));
+        assertThat(index.getTrimRect(image)).isEqualTo(new Rectangle(299, 199, 1, 1));
+        assertThat(index.getMaxAlpha(image, 100, 100)).isZero();
+        assertThat(index.getMaxAlpha(image, 299, 199)).isEqualTo(0x80);
+    }
+
+    @Test
+    void matchesFullScan() {
+        var random = new Random(7);
+        var image = new BufferedImage(257, 129, TYPE_INT_ARGB);
+        var index = new AlphaPyramid(image);
+        for (int i = 0; i < 20; i++) {
+            int x = random.nextInt(image.getWidth());
+            int y = random.nextInt(image.getHeight());
+            image.setRGB(x, y, random.nextInt() | 0x01_00_00_00);
+            index.markDirty(new Rectangle(x, y, 1, 1));
+
+            assertThat(index.getTrimRect(image)).isEqualTo(scanTrimRect(image));
+        }
+    }
+
+    @Test
+    void otherImageTypes() {
+        var abgr = new BufferedImage(80, 80, TYPE_4BYTE_ABGR);
+        abgr.setRGB(5, 70, 0x40_12_34_56);
+        assertThat(new AlphaPyramid(abgr).getTrimRect(abgr))
+            .isEqualTo(new Rectangle(5, 70, 1, 1));
+
+        // images without alpha are opaque
+        var rgb = new BufferedImage(80, 60, TYPE_INT_RGB);
+        assertThat(new AlphaPyramid(rgb).getTrimRect(rgb))
+            .isEqualTo(new Rectangle(0, 0, 80, 60));
+    }
+
+    @Test
+    void subImage() {
+        var image = new BufferedImage(100, 100, TYPE_INT_ARGB);
+        image.setRGB(10, 10, 0xFF_00_00_00);
+        image.setRGB(60, 50, 0xFF_00_00_00);
+        BufferedImage sub = image.getSubimage(20, 20, 50, 50);
+
+        assertThat(new AlphaPyramid(sub).getTrimRect(sub))
+            .isEqualTo(new Rectangle(40, 30, 1, 1));
+    }
+
+    private static Rectangle scanTrimRect(BufferedImage image) {
+        Rectangle result = null;
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                if (image.getRGB(x, y) >>> 24 != 0) {
+                    var pixel = new Rectangle(x, y, 1, 1);
+                    result = result == null ? pixel : result.union(pixel);
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_4BYTE_ABGR;
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("ImageTrimUtil tests")
+class ImageTrimUtilTest {
+    @ParameterizedTest
+    @CsvSource({"40, 30, 1", "40, 30, 5", "700, 600, 3", "700, 600, 50"})
+    void matchesFullScan(int width, int height, int numPixels) {
+        var random = new Random(width + numPixels);
+        var image = new BufferedImage(width, height, TYPE_INT_ARGB);
+        for (int i = 0; i < numPixels; i++) {
+            image.setRGB(random.nextInt(width), random.nextInt(height),
+                random.nextInt() | 0x01_00_00_00);
+        }
+
+        assertThat(ImageTrimUtil.getTrimRect(image)).isEqualTo(scanTrimRect(image));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"50, 40", "800, 700"})
+    void transparentImage(int width, int height) {
+        var image = new BufferedImage(width, height, TYPE_INT_ARGB_PRE);
+
+        assertThat(ImageTrimUtil.getTrimRect(image).isEmpty()).isTrue();
+        assertThat(ImageTrimUtil.trimImage(image)).isNull();
+    }
+
+    @Test
+    void edgePixels() {
+        var image = new BufferedImage(30, 20, TYPE_INT_ARGB);
+        image.setRGB(0, 19, 0xFF_00_00_00);
+        image.setRGB(29, 0, 0xFF_00_00_00);
+
+        assertThat(ImageTrimUtil.getTrimRect(image)).isEqualTo(new Rectangle(30, 20));
+    }
+
+    @Test
+    void subImage() {
+        var image = new BufferedImage(100, 100, TYPE_INT_ARGB);
+        image.setRGB(10, 10, 0xFF_00_00_00);
+        image.setRGB(60, 50, 0xFF_00_00_00);
+        image.setRGB(30, 80, 0xFF_00_00_00);
+        BufferedImage sub = image.getSubimage(20, 20, 50, 50);
+
+        assertThat(ImageTrimUtil.getTrimRect(sub)).isEqualTo(new Rectangle(40, 30, 1, 1));
+    }
+
+    @Test
+    void byteImages() {
+        var gray = new BufferedImage(60, 50, TYPE_BYTE_GRAY);
+        gray.getRaster().setSample(7, 9, 0, 1);
+        gray.getRaster().setSample(50, 40, 0, 255);
+        assertThat(ImageTrimUtil.getTrimRect(gray)).isEqualTo(new Rectangle(7, 9, 44, 32));
+
+        var abgr = new BufferedImage(60, 50, TYPE_4BYTE_ABGR);
+        abgr.setRGB(12, 3, 0x40_FF_FF_FF);
+        abgr.setRGB(2, 5, 0x00_FF_FF_FF);
+        BufferedImage sub = abgr.getSubimage(10, 0, 20, 20);
+        assertThat(ImageTrimUtil.getTrimRect(sub)).isEqualTo(new Rectangle(2, 3, 1, 1));
+    }
+
+    @Test
+    void updateTrimRect() {
+        var image = new BufferedImage(200, 100, TYPE_INT_ARGB);
+        image.setRGB(50, 50, 0xFF_00_00_00);
+        image.setRGB(100, 60, 0xFF_00_00_00);
+        Rectangle trimRect = ImageTrimUtil.getTrimRect(image);
+
+        // growing
+        image.setRGB(150, 10, 0xFF_00_00_00);
+        trimRect = ImageTrimUtil.updateTrimRect(image, trimRect, new Rectangle(145, 5, 10, 10));
+        assertThat(trimRect).isEqualTo(new Rectangle(50, 10, 101, 51));
+
+        // a change inside doesn't change it
+        image.setRGB(80, 30, 0xFF_00_00_00);
+        trimRect = ImageTrimUtil.updateTrimRect(image, trimRect, new Rectangle(80, 30, 1, 1));
+        assertThat(trimRect).isEqualTo(new Rectangle(50, 10, 101, 51));
+
+        // shrinking
+        image.setRGB(150, 10, 0);
+        image.setRGB(50, 50, 0);
+        trimRect = ImageTrimUtil.updateTrimRect(image, trimRect, new Rectangle(150, 10, 1, 1));
+        trimRect = ImageTrimUtil.updateTrimRect(image, trimRect, new Rectangle(40, 40, 20, 20));
+        assertThat(trimRect).isEqualTo(scanTrimRect(image));
+
+        // becoming empty
+        image.setRGB(80, 30, 0);
+        image.setRGB(100, 60, 0);
+        trimRect = ImageTrimUtil.updateTrimRect(image, trimRect, new Rectangle(200, 100));
+        assertThat(trimRect.isEmpty()).isTrue();
+    }
+
+    @Test
+    void getTrimRects() {
+        var first = new BufferedImage(10, 10, TYPE_INT_ARGB);
+        first.setRGB(3, 4, 0xFF_00_00_00);
+        var second = new BufferedImage(600, 500, TYPE_INT_ARGB);
+        second.setRGB(599, 0, 0xFF_00_00_00);
+
+        List<Rectangle> trimRects = ImageTrimUtil.getTrimRects(List.of(first, second));
+
+        assertThat(trimRects).containsExactly(
+            new Rectangle(3, 4, 1, 1), new Rectangle(599, 0, 1, 1));
+    }
+
+    private static Rectangle scanTrimRect(BufferedImage image) {
+        Rectangle result = new Rectangle();
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                if (image.getRGB(x, y) >>> 24 != 0) {
+                    var pixel = new Rectangle(x, y, 1, 1);
+                    result = result.isEmpty() ? pixel : result.union(pixel);
+                }
+            }
+        }
+        return result;
+    }
+}
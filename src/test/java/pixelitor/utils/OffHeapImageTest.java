@@ -0,0 +1,135 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("OffHeapImage tests")
+class OffHeapImageTest {
+    // not a multiple of the tile size, so that there are partial edge tiles
+    private static final int WIDTH = 600;
+    private static final int HEIGHT = 300;
+
+    @ParameterizedTest
+    @ValueSource(ints = {TYPE_INT_ARGB, TYPE_INT_ARGB_PRE, TYPE_INT_RGB, TYPE_BYTE_GRAY})
+    void roundTripWithSwapping(int imageType) {
+        BufferedImage img = createRandomImage(imageType);
+
+        // the budget is smaller than a single tile, so
+        // every unpinned tile is written to the swap file
+        var cache = new OffHeapTileCache(1000);
+        OffHeapImage stored = OffHeapImage.store(img, cache);
+        assertThat(cache.getSwappedBytes()).isEqualTo(stored.getSizeInBytes());
+        assertThat(cache.getResidentBytes()).isZero();
+
+        BufferedImage restored = stored.toBufferedImage();
+        assertThat(restored.getType()).isEqualTo(imageType);
+        assertSamePixels(restored, img);
+
+        stored.dispose();
+        assertThat(cache.getSwappedBytes()).isZero();
+        assertThat(cache.getResidentBytes()).isZero();
+    }
+
+    @Test
+    void forEachTileVisitsAllPixels() {
+        BufferedImage img = createRandomImage(TYPE_INT_ARGB);
+        OffHeapImage stored = OffHeapImage.store(img, new OffHeapTileCache(1000));
+
+        long[] numPixels = {0};
+        stored.forEachTile((bounds, pixels) -> {
+            var ints = pixels.asIntBuffer();
+            assertThat(ints.remaining()).isEqualTo(bounds.width * bounds.height);
+            assertThat(ints.get(0)).isEqualTo(img.getRGB(bounds.x, bounds.y));
+            numPixels[0] += ints.remaining();
+        });
+        assertThat(numPixels[0]).isEqualTo((long) WIDTH * HEIGHT);
+
+        stored.dispose();
+    }
+
+    @Test
+    void disposedImageCantBeUsed() {
+        OffHeapImage stored = OffHeapImage.store(
+            createRandomImage(TYPE_INT_RGB), new OffHeapTileCache(1_000_000_000));
+        stored.dispose();
+
+        assertThatThrownBy(stored::toBufferedImage)
+            .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void reclaimableImagesAreFreedOverTheTotalBudget() {
+        BufferedImage img = createRandomImage(TYPE_INT_RGB);
+        long imageBytes = (long) WIDTH * HEIGHT * 4;
+        var cache = new OffHeapTileCache(1_000_000_000, imageBytes * 3 / 2);
+
+        OffHeapImage reclaimable = OffHeapImage.store(img, cache);
+        reclaimable.makeReclaimable();
+        assertThat(reclaimable.isReclaimed()).isFalse();
+
+        // storing another image exceeds the total budget
+        OffHeapImage other = OffHeapImage.store(img, cache);
+        assertThat(reclaimable.isReclaimed()).isTrue();
+        assertThat(reclaimable.toBufferedImage()).isNull();
+        assertThat(other.isReclaimed()).isFalse();
+        assertThat(cache.getResidentBytes()).isEqualTo(other.getSizeInBytes());
+
+        // the image in use is not reclaimed
+        other.makeReclaimable();
+        assertThat(other.forEachTile((bounds, pixels) ->
+            OffHeapImage.store(img, cache).dispose())).isTrue();
+
+        reclaimable.dispose();
+        other.dispose();
+        assertThat(cache.getResidentBytes()).isZero();
+    }
+
+    private static BufferedImage createRandomImage(int imageType) {
+        Random random = new Random(imageType);
+        BufferedImage img = new BufferedImage(WIDTH, HEIGHT, imageType);
+        var raster = img.getRaster();
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                for (int band = 0; band < raster.getNumBands(); band++) {
+                    raster.setSample(x, y, band, random.nextInt(256));
+                }
+            }
+        }
+        return img;
+    }
+
+    private static void assertSamePixels(BufferedImage a, BufferedImage b) {
+        var ra = a.getRaster();
+        var rb = b.getRaster();
+        for (int y = 0; y < HEIGHT; y++) {
+            assertThat(ra.getPixels(0, y, WIDTH, 1, (int[]) null))
+                .isEqualTo(rb.getPixels(0, y, WIDTH, 1, (int[]) null));
+        }
+    }
+}
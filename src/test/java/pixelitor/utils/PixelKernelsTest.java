@@ -0,0 +1,164 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Random;
+
+import static com.jhlabs.image.ConvolveFilter.CLAMP_EDGES;
+import static com.jhlabs.image.ConvolveFilter.WRAP_EDGES;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Checks that the SIMD kernels give exactly the same results as the scalar ones.
+ * The tests are skipped if the Vector API is not available.
+ */
+@DisplayName("PixelKernels tests")
+class PixelKernelsTest {
+    private final PixelKernels scalar = PixelKernels.getScalar();
+    private PixelKernels vectorized;
+    private final Random random = new Random(42);
+
+    @BeforeEach
+    void beforeEachTest() {
+        vectorized = PixelKernels.getVectorized();
+        assumeTrue(vectorized != null, "no Vector API");
+    }
+
+    @ParameterizedTest
+    @CsvSource({"0, 1000", "3, 997", "5, 2", "0, 0"})
+    void premultiply(int offset, int length) {
+        int[] pixels = createRandomPixels(1000);
+        int[] expected = pixels.clone();
+        scalar.premultiply(expected, offset, length);
+
+        vectorized.premultiply(pixels, offset, length);
+
+        assertThat(pixels).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"0, 1000", "3, 997", "5, 2", "0, 0"})
+    void unpremultiply(int offset, int length) {
+        int[] pixels = createRandomPixels(1000);
+        scalar.premultiply(pixels, 0, pixels.length);
+        int[] expected = pixels.clone();
+        scalar.unpremultiply(expected, offset, length);
+
+        vectorized.unpremultiply(pixels, offset, length);
+
+        assertThat(pixels).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "1, 300, true, true, false",
+        "1, 300, true, false, true",
+        "5, 97, false, false, false",
+        "5, 7, true, true, false",
+        "20, 30, true, false, true",
+        "2.5, 64, true, true, true",
+    })
+    void convolveAndTransposeLine(float radius, int width, boolean alpha,
+                                  boolean premultiply, boolean unpremultiply) {
+        int height = 5;
+        float[] matrix = createGaussianMatrix(radius);
+        int[] in = createRandomPixels(width * height);
+
+        for (int edgeAction : new int[]{CLAMP_EDGES, WRAP_EDGES}) {
+            int[] expected = new int[width * height];
+            int[] actual = new int[width * height];
+            for (int y = 0; y < height; y++) {
+                scalar.convolveAndTransposeLine(matrix, in, expected, width, height,
+                    alpha, premultiply, unpremultiply, edgeAction, y);
+                vectorized.convolveAndTransposeLine(matrix, in, actual, width, height,
+                    alpha, premultiply, unpremultiply, edgeAction, y);
+            }
+            assertThat(actual).isEqualTo(expected);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(floats = {1.0f, 0.5f, 0.03f})
+    void multiplyBlend(float alpha) {
+        // unpacked RGBA samples, with a number of
+        // pixels that isn't a multiple of the vector size
+        int[] src = createRandomSamples(4 * 103);
+        int[] dst = createRandomSamples(4 * 103);
+        int[] expected = dst.clone();
+        scalar.multiplyBlend(src, expected, alpha);
+
+        vectorized.multiplyBlend(src, dst, alpha);
+
+        assertThat(dst).isEqualTo(expected);
+    }
+
+    @Test
+    void extremeValues() {
+        int[] pixels = {0, 0xFF_FF_FF_FF, 0x00_FF_FF_FF, 0xFF_00_00_00,
+            0x01_FF_FF_FF, 0x80_80_80_80, 0xFE_01_01_01, 0x7F_7F_00_FF};
+        int[] expected = pixels.clone();
+        scalar.unpremultiply(expected, 0, expected.length);
+        scalar.premultiply(expected, 0, expected.length);
+
+        vectorized.unpremultiply(pixels, 0, pixels.length);
+        vectorized.premultiply(pixels, 0, pixels.length);
+
+        assertThat(pixels).isEqualTo(expected);
+    }
+
+    private int[] createRandomPixels(int length) {
+        int[] pixels = new int[length];
+        for (int i = 0; i < length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        return pixels;
+    }
+
+    private int[] createRandomSamples(int length) {
+        int[] samples = new int[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = random.nextInt(256);
+        }
+        return samples;
+    }
+
+    // the same as GaussianFilter.makeKernel
+    private static float[] createGaussianMatrix(float radius) {
+        int r = (int) Math.ceil(radius);
+        float[] matrix = new float[r * 2 + 1];
+        float sigma = radius / 3;
+        float total = 0;
+        for (int i = 0; i < matrix.length; i++) {
+            int d = i - r;
+            matrix[i] = (float) Math.exp(-d * d / (2 * sigma * sigma));
+            total += matrix[i];
+        }
+        for (int i = 0; i < matrix.length; i++) {
+            matrix[i] /= total;
+        }
+        return matrix;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import pixelitor.utils.Resampler.Filter;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Resampler tests")
+class ResamplerTest {
+    @ParameterizedTest
+    @EnumSource(Filter.class)
+    void keepsUniformColors(Filter filter) {
+        int color = 0xFF_20_80_C0;
+        var src = new BufferedImage(97, 61, TYPE_INT_ARGB);
+        fill(src, color);
+
+        for (int[] size : new int[][]{{31, 20}, {200, 150}, {97, 10}}) {
+            BufferedImage dst = Resampler.resample(src, size[0], size[1], filter);
+
+            assertThat(dst.getWidth()).isEqualTo(size[0]);
+            assertThat(dst.getHeight()).isEqualTo(size[1]);
+            assertThat(dst.getType()).isEqualTo(TYPE_INT_ARGB);
+            for (int y = 0; y < dst.getHeight(); y++) {
+                for (int x = 0; x < dst.getWidth(); x++) {
+                    assertThat(dst.getRGB(x, y)).isEqualTo(color);
+                }
+            }
+        }
+    }
+
+    // the Mitchell filter is not interpolating, it slightly blurs even at the same size
+    @ParameterizedTest
+    @EnumSource(value = Filter.class, names = {"BOX", "LANCZOS3"})
+    void sameSizeIsIdentity(Filter filter) {
+        var src = new BufferedImage(40, 30, TYPE_INT_ARGB_PRE);
+        var random = new Random(42);
+        for (int y = 0; y < src.getHeight(); y++) {
+            for (int x = 0; x < src.getWidth(); x++) {
+                src.setRGB(x, y, 0xFF_00_00_00 | random.nextInt(0x1_00_00_00));
+            }
+        }
+
+        BufferedImage dst = Resampler.resample(src, 40, 30, filter);
+
+        assertThat(dst.getRGB(0, 0, 40, 30, null, 0, 40))
+            .isEqualTo(src.getRGB(0, 0, 40, 30, null, 0, 40));
+    }
+
+    @Test
+    void boxDownscalingAverages() {
+        var src = new BufferedImage(4, 2, TYPE_INT_ARGB);
+        // the left 2x2 block is black and white, the right one is all red
+        src.setRGB(0, 0, 0xFF_00_00_00);
+        src.setRGB(1, 0, 0xFF_FF_FF_FF);
+        src.setRGB(0, 1, 0xFF_FF_FF_FF);
+        src.setRGB(1, 1, 0xFF_00_00_00);
+        for (int y = 0; y < 2; y++) {
+            src.setRGB(2, y, 0xFF_FF_00_00);
+            src.setRGB(3, y, 0xFF_FF_00_00);
+        }
+
+        BufferedImage dst = Resampler.resample(src, 2, 1, Filter.BOX);
+
+        assertThat(dst.getRGB(0, 0)).isEqualTo(0xFF_80_80_80);
+        assertThat(dst.getRGB(1, 0)).isEqualTo(0xFF_FF_00_00);
+    }
+
+    @ParameterizedTest
+    @EnumSource(Filter.class)
+    void transparentColorsDoNotBleed(Filter filter) {
+        var src = new BufferedImage(20, 20, TYPE_INT_ARGB);
+        for (int y = 0; y < 20; y++) {
+            for (int x = 0; x < 20; x++) {
+                // fully transparent green on the left, opaque red on the right
+                src.setRGB(x, y, x < 10 ? 0x00_00_FF_00 : 0xFF_FF_00_00);
+            }
+        }
+
+        BufferedImage dst = Resampler.resample(src, 7, 7, filter);
+
+        for (int y = 0; y < dst.getHeight(); y++) {
+            for (int x = 0; x < dst.getWidth(); x++) {
+                int rgb = dst.getRGB(x, y);
+                if (rgb >>> 24 > 0) {
+                    assertThat((rgb >>> 8) & 0xFF).isZero();
+                }
+            }
+        }
+    }
+
+    @Test
+    void resamplesGraySubImages() {
+        var src = new BufferedImage(30, 30, TYPE_BYTE_GRAY);
+        byte[] data = new byte[30 * 30];
+        for (int i = 0; i < data.length; i++) {
+            // white inside the central 10x10 square
+            int x = i % 30;
+            int y = i / 30;
+            data[i] = (byte) (x >= 10 && x < 20 && y >= 10 && y < 20 ? 255 : 0);
+        }
+        src.getRaster().setDataElements(0, 0, 30, 30, data);
+        BufferedImage sub = src.getSubimage(10, 10, 10, 10);
+
+        BufferedImage dst = Resampler.resample(sub, 5, 5, Filter.LANCZOS3);
+
+        assertThat(dst.getType()).isEqualTo(TYPE_BYTE_GRAY);
+        byte[] dstData = (byte[]) dst.getRaster().getDataElements(0, 0, 5, 5, null);
+        for (byte value : dstData) {
+            assertThat(value & 0xFF).isEqualTo(255);
+        }
+    }
+
+    private static void fill(BufferedImage img, int color) {
+        for (int y = 0; y < img.getHeight(); y++) {
+            for (int x = 0; x < img.getWidth(); x++) {
+                img.setRGB(x, y, color);
+            }
+        }
+    }
+}